@@ -0,0 +1,79 @@
+package org.heigit.bigspatialdata.oshdb.api.db;
+
+import java.io.Serializable;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityStatistics;
+
+/**
+ * Estimated amount of data a query has to process, computed from the statistics catalog of an
+ * oshdb (see {@link OSHDBDatabase#estimateCost}).
+ *
+ * <p>All numbers are upper bounds: cells which are only partially covered by the area of interest
+ * are counted completely.</p>
+ */
+public class OSHDBCostEstimate implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private long cells = 0;
+  private long bytes = 0;
+  private long entities = 0;
+  private long versions = 0;
+  private long matchingEntities = 0;
+
+  /**
+   * Adds the statistics of a cell to this estimate.
+   *
+   * @param statistics the statistics of the cell
+   * @param requiredTagKeys the tag keys required by the query, see
+   *        {@link GridOSHEntityStatistics#estimateEntityCount(int[][])}
+   * @return this estimate
+   */
+  OSHDBCostEstimate add(GridOSHEntityStatistics statistics, int[][] requiredTagKeys) {
+    this.cells++;
+    this.bytes += statistics.getBytes();
+    this.entities += statistics.getEntityCount();
+    this.versions += statistics.getVersionCount();
+    this.matchingEntities += statistics.estimateEntityCount(requiredTagKeys);
+    return this;
+  }
+
+  /**
+   * Returns the number of cells (partitions) which have to be read.
+   */
+  public long getCells() {
+    return cells;
+  }
+
+  /**
+   * Returns the size of the cells which have to be read in bytes.
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the number of entities in the cells which have to be read.
+   */
+  public long getEntities() {
+    return entities;
+  }
+
+  /**
+   * Returns the number of versions of the entities in the cells which have to be read.
+   */
+  public long getVersions() {
+    return versions;
+  }
+
+  /**
+   * Returns the estimated number of entities matching the tag filter of the query.
+   */
+  public long getMatchingEntities() {
+    return matchingEntities;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d cells, %d bytes, %d entities (%d matching), %d versions", cells,
+        bytes, entities, matchingEntities, versions);
+  }
+}
@@ -1,9 +1,19 @@
 package org.heigit.bigspatialdata.oshdb.api.db;
 
+import java.util.Optional;
 import java.util.OptionalLong;
+import java.util.Set;
+import java.util.stream.Stream;
 import org.heigit.bigspatialdata.oshdb.OSHDB;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducerBatch;
 import org.heigit.bigspatialdata.oshdb.api.object.OSHDBMapReducible;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityPartitioner;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityStatistics;
+import org.heigit.bigspatialdata.oshdb.index.GridTree;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
 import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBTimeoutException;
 
 /**
@@ -12,6 +22,8 @@ import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBTimeoutException;
 public abstract class OSHDBDatabase extends OSHDB implements AutoCloseable {
   private String prefix = "";
   private Long timeout = null;
+  private GridTree grid = null;
+  private Integer partitions = null;
 
   /**
    * Factory function that creates a mapReducer object of the appropriate data type class for this
@@ -23,6 +35,16 @@ public abstract class OSHDBDatabase extends OSHDB implements AutoCloseable {
    */
   public abstract <X extends OSHDBMapReducible> MapReducer<X> createMapReducer(Class<X> forClass);
 
+  /**
+   * Creates a batch of queries, which are executed on this oshdb in as few passes over the data as
+   * possible.
+   *
+   * @return a new (empty) batch of queries
+   */
+  public MapReducerBatch batch() {
+    return new MapReducerBatch(this);
+  }
+
   /**
    * Returns metadata about the given OSHDB.
    *
@@ -45,6 +67,107 @@ public abstract class OSHDBDatabase extends OSHDB implements AutoCloseable {
     return this.prefix;
   }
 
+  /**
+   * Sets the grid the cells of this oshdb are numbered with.
+   *
+   * <p>Only needed if the grid can't be determined from the metadata of the oshdb (see
+   * {@link GridTree#METADATA_KEY}), or to change the number of cell id ranges queried per zoom
+   * level, e.g. <code>grid(new HilbertGridTree(OSHDB.MAXZOOM, 64))</code>.</p>
+   *
+   * @param grid the grid used by this oshdb
+   * @return the current oshdb object
+   */
+  public OSHDBDatabase grid(GridTree grid) {
+    this.grid = grid;
+    return this;
+  }
+
+  /**
+   * Returns the grid the cells of this oshdb are numbered with.
+   *
+   * <p>If not set explicitly, the grid is read from the metadata of the oshdb, falling back to the
+   * xy grid for databases without such an entry.</p>
+   */
+  public GridTree grid() {
+    if (this.grid == null) {
+      this.grid = GridTree.of(this.metadata(GridTree.METADATA_KEY));
+    }
+    return this.grid;
+  }
+
+  /**
+   * Sets the maximum number of partitions the grid cells of this oshdb are split into.
+   *
+   * <p>Only needed if this number can't be determined from the metadata of the oshdb (see
+   * {@link GridOSHEntityPartitioner#METADATA_KEY}), e.g. for ignite backends.</p>
+   *
+   * @param partitions the maximum number of partitions of a grid cell
+   * @return the current oshdb object
+   */
+  public OSHDBDatabase partitions(int partitions) {
+    if (partitions < 1 || partitions > CellId.MAX_PARTITIONS) {
+      throw new IllegalArgumentException("invalid number of partitions: " + partitions);
+    }
+    this.partitions = partitions;
+    return this;
+  }
+
+  /**
+   * Returns the maximum number of partitions the grid cells of this oshdb are split into.
+   *
+   * <p>The backends process each partition of a cell as an independent unit of work. If not set
+   * explicitly, the number is read from the metadata of the oshdb, falling back to a single
+   * partition for databases without such an entry.</p>
+   */
+  public int partitions() {
+    if (this.partitions == null) {
+      String value = this.metadata(GridOSHEntityPartitioner.METADATA_KEY);
+      this.partitions = value == null ? 1 : Integer.parseInt(value);
+    }
+    return this.partitions;
+  }
+
+  /**
+   * Returns true if this oshdb has a statistics catalog of its grid cells.
+   */
+  public boolean hasStatistics() {
+    return false;
+  }
+
+  /**
+   * Returns the statistics of the grid cells (partitions) of the given type in a range of cell ids.
+   *
+   * @param type the osm type of the cells
+   * @param cellIdRange the range of cells of one zoom level
+   * @return the statistics of all cells of this range, empty if there is no statistics catalog
+   */
+  public Stream<GridOSHEntityStatistics> statistics(OSMType type, CellIdRange cellIdRange) {
+    return Stream.empty();
+  }
+
+  /**
+   * Estimates the amount of data a query has to process from the statistics catalog.
+   *
+   * @param cellIdRanges the cells covered by the area of interest of the query
+   * @param types the osm types of the query
+   * @param requiredTagKeys groups of tag keys, of each group at least one key has to be used by an
+   *        entity, see {@link GridOSHEntityStatistics#estimateEntityCount(int[][])}
+   * @return the estimated cost, or an empty optional if there is no statistics catalog
+   */
+  public Optional<OSHDBCostEstimate> estimateCost(Iterable<CellIdRange> cellIdRanges,
+      Set<OSMType> types, int[][] requiredTagKeys) {
+    if (!this.hasStatistics()) {
+      return Optional.empty();
+    }
+    OSHDBCostEstimate result = new OSHDBCostEstimate();
+    for (OSMType type : types) {
+      for (CellIdRange cellIdRange : cellIdRanges) {
+        this.statistics(type, cellIdRange).forEach(cell -> result.add(cell, requiredTagKeys));
+      }
+    }
+    return Optional.of(result);
+  }
+
   /**
    * Set a timeout for queries on this ignite oshdb backend.
    *
@@ -2,18 +2,32 @@ package org.heigit.bigspatialdata.oshdb.api.db;
 
 import com.google.common.base.Joiner;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.query.QueryCursor;
+import org.apache.ignite.cache.query.ScanQuery;
 import org.apache.ignite.Ignition;
 import org.apache.ignite.lang.IgniteRunnable;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.MapReducerIgniteAffinityCall;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.MapReducerIgniteAuto;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.MapReducerIgniteLocalPeek;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.MapReducerIgniteScanQuery;
 import org.heigit.bigspatialdata.oshdb.api.object.OSHDBMapReducible;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityStatistics;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
 import org.heigit.bigspatialdata.oshdb.osm.OSMType;
 import org.heigit.bigspatialdata.oshdb.util.TableNames;
 import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBTableNotFoundException;
@@ -25,7 +39,12 @@ public class OSHDBIgnite extends OSHDBDatabase implements AutoCloseable {
   public enum ComputeMode {
     LocalPeek,
     ScanQuery,
-    AffinityCall
+    AffinityCall,
+    /**
+     * Chooses one of the other compute modes separately for each query and osm type, see
+     * {@link MapReducerIgniteAuto}.
+     */
+    Auto
   }
 
   private final transient Ignite ignite;
@@ -33,6 +52,11 @@ public class OSHDBIgnite extends OSHDBDatabase implements AutoCloseable {
 
   private IgniteRunnable onCloseCallback = null;
 
+  private transient Map<OSMType, Map<Integer, TreeMap<Long, List<GridOSHEntityStatistics>>>>
+      statisticsCatalog = null;
+  // total size of the cells of each osm type in the statistics catalog
+  private transient Map<OSMType, Long> statisticsTotalBytes = null;
+
   public OSHDBIgnite() {
     this(new File("ignite-config.xml"));
   }
@@ -60,6 +84,8 @@ public class OSHDBIgnite extends OSHDBDatabase implements AutoCloseable {
 
   @Override
   public OSHDBIgnite prefix(String prefix) {
+    this.statisticsCatalog = null;
+    this.statisticsTotalBytes = null;
     return (OSHDBIgnite) super.prefix(prefix);
   }
 
@@ -84,6 +110,9 @@ public class OSHDBIgnite extends OSHDBDatabase implements AutoCloseable {
       case AffinityCall:
         mapReducer = new MapReducerIgniteAffinityCall<X>(this, forClass);
         break;
+      case Auto:
+        mapReducer = new MapReducerIgniteAuto<X>(this, forClass);
+        break;
       default:
         throw new UnsupportedOperationException("Backend not implemented for this compute mode.");
     }
@@ -92,8 +121,75 @@ public class OSHDBIgnite extends OSHDBDatabase implements AutoCloseable {
 
   @Override
   public String metadata(String property) {
-    // todo: implement this
-    return null;
+    IgniteCache<String, String> cache =
+        this.ignite.cache(TableNames.T_METADATA.toString(this.prefix()));
+    if (cache == null) {
+      // oshdbs imported into ignite before the metadata was copied
+      return null;
+    }
+    return cache.get(property);
+  }
+
+  @Override
+  public boolean hasStatistics() {
+    return this.ignite.cacheNames().contains(TableNames.T_STATISTICS.toString(this.prefix()));
+  }
+
+  @Override
+  public Stream<GridOSHEntityStatistics> statistics(OSMType type, CellIdRange cellIdRange) {
+    TreeMap<Long, List<GridOSHEntityStatistics>> cells = this.getStatisticsCatalog()
+        .getOrDefault(type, Collections.emptyMap())
+        .get(cellIdRange.getStart().getZoomLevel());
+    if (cells == null) {
+      return Stream.empty();
+    }
+    return cells.subMap(cellIdRange.getStart().getId(), true, cellIdRange.getEnd().getId(), true)
+        .values().stream()
+        .flatMap(Collection::stream);
+  }
+
+  /**
+   * Returns the total size of the data of an osm type according to the statistics catalog.
+   *
+   * <p>The totals are computed once, when the statistics catalog is loaded.</p>
+   *
+   * @param type the osm type
+   * @return the sum of the bytes of all cells (partitions) of the osm type, or nothing if there is
+   *         no statistics catalog
+   */
+  public synchronized OptionalLong totalBytes(OSMType type) {
+    if (!this.hasStatistics()) {
+      return OptionalLong.empty();
+    }
+    this.getStatisticsCatalog();
+    return OptionalLong.of(this.statisticsTotalBytes.getOrDefault(type, 0L));
+  }
+
+  // the (small) statistics cache is loaded completely once and indexed by type, level and id
+  private synchronized Map<OSMType, Map<Integer, TreeMap<Long, List<GridOSHEntityStatistics>>>>
+      getStatisticsCatalog() {
+    if (this.statisticsCatalog == null) {
+      Map<OSMType, Map<Integer, TreeMap<Long, List<GridOSHEntityStatistics>>>> catalog =
+          new EnumMap<>(OSMType.class);
+      Map<OSMType, Long> totalBytes = new EnumMap<>(OSMType.class);
+      IgniteCache<String, GridOSHEntityStatistics> cache =
+          this.ignite.cache(TableNames.T_STATISTICS.toString(this.prefix()));
+      if (cache != null) {
+        try (QueryCursor<GridOSHEntityStatistics> cursor = cache.query(
+            new ScanQuery<String, GridOSHEntityStatistics>(), entry -> entry.getValue())) {
+          for (GridOSHEntityStatistics cell : cursor) {
+            catalog.computeIfAbsent(cell.getType(), ignored -> new HashMap<>())
+                .computeIfAbsent(cell.getLevel(), ignored -> new TreeMap<>())
+                .computeIfAbsent(cell.getId(), ignored -> new ArrayList<>(1))
+                .add(cell);
+            totalBytes.merge(cell.getType(), cell.getBytes(), Long::sum);
+          }
+        }
+      }
+      this.statisticsTotalBytes = totalBytes;
+      this.statisticsCatalog = catalog;
+    }
+    return this.statisticsCatalog;
   }
 
   public Ignite getIgnite() {
@@ -6,6 +6,7 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
@@ -16,6 +17,8 @@ import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.MapReducerJdbcMultithread;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.MapReducerJdbcSinglethread;
 import org.heigit.bigspatialdata.oshdb.api.object.OSHDBMapReducible;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityStatistics;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
 import org.heigit.bigspatialdata.oshdb.osm.OSMType;
 import org.heigit.bigspatialdata.oshdb.util.TableNames;
 import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBTableNotFoundException;
@@ -96,6 +99,49 @@ public class OSHDBJdbc extends OSHDBDatabase implements AutoCloseable {
     }
   }
 
+  @Override
+  public boolean hasStatistics() {
+    try {
+      ResultSet rs = this.getConnection().getMetaData().getTables(null, null,
+          "%", new String[]{"TABLE"}
+      );
+      String statisticsTable = TableNames.T_STATISTICS.toString(this.prefix());
+      while (rs.next()) {
+        if (statisticsTable.equalsIgnoreCase(rs.getString("TABLE_NAME"))) {
+          return true;
+        }
+      }
+      return false;
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public Stream<GridOSHEntityStatistics> statistics(OSMType type, CellIdRange cellIdRange) {
+    List<GridOSHEntityStatistics> result = new ArrayList<>();
+    try (PreparedStatement stmt = connection.prepareStatement(
+        "SELECT level, id, part, bytes, entities, versions, mintimestamp, maxtimestamp, tagkeys"
+            + " from " + TableNames.T_STATISTICS.toString(this.prefix())
+            + " where type = ? and level = ? and id between ? and ?"
+    )) {
+      stmt.setInt(1, type.intValue());
+      stmt.setInt(2, cellIdRange.getStart().getZoomLevel());
+      stmt.setLong(3, cellIdRange.getStart().getId());
+      stmt.setLong(4, cellIdRange.getEnd().getId());
+      ResultSet rs = stmt.executeQuery();
+      while (rs.next()) {
+        int[][] tagKeys = GridOSHEntityStatistics.decodeTagKeys(rs.getString(9));
+        result.add(new GridOSHEntityStatistics(type, rs.getInt(1), rs.getLong(2), rs.getInt(3),
+            rs.getLong(4), rs.getInt(5), rs.getLong(6), rs.getLong(7), rs.getLong(8),
+            tagKeys[0], tagKeys[1]));
+      }
+    } catch (SQLException e) {
+      throw new RuntimeException(e);
+    }
+    return result.stream();
+  }
+
   public Connection getConnection() {
     return this.connection;
   }
@@ -0,0 +1,79 @@
+package org.heigit.bigspatialdata.oshdb.api.db;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.MapReducerMapped;
+import org.heigit.bigspatialdata.oshdb.api.object.OSHDBMapReducible;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityFile;
+
+/**
+ * OSHDB database backend connector to a memory mapped oshdb file.
+ *
+ * <p>The grid cells are read directly from the (read only) file via memory mapped buffers, which
+ * avoids the overhead of a SQL database on single machine setups. Opening the file only reads its
+ * cell directory, the data itself is paged in by the operating system on demand.</p>
+ *
+ * <p>Such a file can be created from an existing H2 oshdb with the `OSHDB2Mapped` tool of the
+ * oshdb etl. As the file doesn't contain keytables, these have to be provided separately via
+ * {@link MapReducer#keytables(OSHDBJdbc)}.</p>
+ */
+public class OSHDBMapped extends OSHDBDatabase implements AutoCloseable {
+
+  private final transient GridOSHEntityFile file;
+  private boolean useMultithreading = true;
+
+  /**
+   * Opens an oshdb file.
+   *
+   * @param file the file name and path to the oshdb file
+   * @throws IOException if the file couldn't be opened
+   */
+  public OSHDBMapped(String file) throws IOException {
+    this(Paths.get(file));
+  }
+
+  /**
+   * Opens an oshdb file.
+   *
+   * @param file the path to the oshdb file
+   * @throws IOException if the file couldn't be opened
+   */
+  public OSHDBMapped(Path file) throws IOException {
+    this.file = GridOSHEntityFile.open(file);
+  }
+
+  @Override
+  public OSHDBMapped prefix(String prefix) {
+    return (OSHDBMapped) super.prefix(prefix);
+  }
+
+  @Override
+  public <X extends OSHDBMapReducible> MapReducer<X> createMapReducer(Class<X> forClass) {
+    return new MapReducerMapped<X>(this, forClass);
+  }
+
+  @Override
+  public String metadata(String property) {
+    return this.file.metadata(property);
+  }
+
+  public GridOSHEntityFile getFile() {
+    return this.file;
+  }
+
+  public OSHDBMapped multithreading(boolean useMultithreading) {
+    this.useMultithreading = useMultithreading;
+    return this;
+  }
+
+  public boolean multithreading() {
+    return this.useMultithreading;
+  }
+
+  @Override
+  public void close() throws Exception {
+    this.file.close();
+  }
+}
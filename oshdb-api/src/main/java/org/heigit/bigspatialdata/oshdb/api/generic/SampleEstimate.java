@@ -0,0 +1,62 @@
+package org.heigit.bigspatialdata.oshdb.api.generic;
+
+/**
+ * Immutable object that stores a value estimated from a random sample and its standard error.
+ * Used as the result of the estimated aggregations of sampled queries.
+ */
+public class SampleEstimate {
+  // quantile of the standard normal distribution for a 95% confidence interval
+  private static final double Z_95 = 1.959963984540054;
+
+  private final double value;
+  private final double standardError;
+
+  public SampleEstimate(double value, double standardError) {
+    this.value = value;
+    this.standardError = standardError;
+  }
+
+  /**
+   * Returns the estimated value.
+   *
+   * @return the estimated value
+   */
+  public double getValue() {
+    return value;
+  }
+
+  /**
+   * Returns the standard error of the estimated value.
+   *
+   * @return the estimated standard error, zero if the value wasn't estimated from a sample
+   */
+  public double getStandardError() {
+    return standardError;
+  }
+
+  /**
+   * Returns the lower bound of the 95% confidence interval of the estimated value.
+   *
+   * <p>The confidence interval assumes normally distributed estimates, which is only a good
+   * approximation if the sample contains a sufficient number of cells.</p>
+   *
+   * @return the lower bound of the confidence interval
+   */
+  public double getLowerBound() {
+    return value - Z_95 * standardError;
+  }
+
+  /**
+   * Returns the upper bound of the 95% confidence interval of the estimated value.
+   *
+   * @return the upper bound of the confidence interval, see {@link #getLowerBound()}
+   */
+  public double getUpperBound() {
+    return value + Z_95 * standardError;
+  }
+
+  @Override
+  public String toString() {
+    return value + " ± " + Z_95 * standardError;
+  }
+}
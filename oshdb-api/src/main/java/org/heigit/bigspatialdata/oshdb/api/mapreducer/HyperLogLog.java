@@ -0,0 +1,227 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * HyperLogLog sketch to estimate the number of distinct values in a map-reduce system.
+ *
+ * <p>See: https://hal.archives-ouvertes.fr/hal-00406166/document (the original algorithm) and
+ * https://research.google.com/pubs/archive/40671.pdf (64 bit hashes and a sparse representation
+ * for small cardinalities).</p>
+ *
+ * <p>The sketch uses 2^precision registers, and the relative standard error of the estimates is
+ * about 1.04/sqrt(2^precision). As long as only a few registers are in use (which is the case for
+ * most of the sketches of single cells), only the used registers are stored.</p>
+ */
+class HyperLogLog implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The default precision of 14 results in 16384 registers (16kB) and a relative standard error
+   * of about 0.8%.
+   */
+  static final int DEFAULT_PRECISION = 14;
+  static final int MIN_PRECISION = 4;
+  static final int MAX_PRECISION = 18;
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private final int precision;
+  // sparse representation: used registers as (index << 8 | value), sorted by index
+  private int[] sparse;
+  private int sparseSize = 0;
+  // dense representation: one byte per register
+  private byte[] registers = null;
+
+  HyperLogLog(int precision) {
+    checkPrecision(precision);
+    this.precision = precision;
+    this.sparse = new int[4];
+  }
+
+  private HyperLogLog(HyperLogLog other) {
+    this.precision = other.precision;
+    this.sparse = other.sparse == null ? null : Arrays.copyOf(other.sparse, other.sparse.length);
+    this.sparseSize = other.sparseSize;
+    this.registers = other.registers == null ? null : other.registers.clone();
+  }
+
+  static void checkPrecision(int precision) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException(String.format(
+          "precision must be between %d and %d", MIN_PRECISION, MAX_PRECISION));
+    }
+  }
+
+  static <X> HyperLogLog accumulator(HyperLogLog acc, X cur) {
+    acc.add(hash(cur));
+    return acc;
+  }
+
+  static HyperLogLog combiner(HyperLogLog a, HyperLogLog b) {
+    if (b.isEmpty()) {
+      return a;
+    } else if (a.isEmpty()) {
+      return b;
+    }
+    if (a.precision != b.precision) {
+      throw new IllegalArgumentException("cannot combine sketches of different precision");
+    }
+    HyperLogLog result = new HyperLogLog(a);
+    result.merge(b);
+    return result;
+  }
+
+  /**
+   * Returns the estimated number of distinct values added to this sketch.
+   */
+  long estimate() {
+    final int m = 1 << this.precision;
+    double sum = 0.0;
+    int zeros = 0;
+    if (this.registers != null) {
+      for (byte value : this.registers) {
+        sum += 1.0 / (1L << value);
+        if (value == 0) {
+          zeros++;
+        }
+      }
+    } else {
+      for (int i = 0; i < this.sparseSize; i++) {
+        sum += 1.0 / (1L << (this.sparse[i] & 0xFF));
+      }
+      zeros = m - this.sparseSize;
+      sum += zeros;
+    }
+    double estimate = alpha(m) * m * m / sum;
+    if (estimate <= 2.5 * m && zeros > 0) {
+      // linear counting gives better estimates for small cardinalities
+      estimate = m * Math.log((double) m / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  private static double alpha(int m) {
+    switch (m) {
+      case 16:
+        return 0.673;
+      case 32:
+        return 0.697;
+      case 64:
+        return 0.709;
+      default:
+        return 0.7213 / (1.0 + 1.079 / m);
+    }
+  }
+
+  /**
+   * Hashes a value to 64 bits.
+   *
+   * <p>The hashes need to be the same on all nodes of a cluster, which is why enums are hashed by
+   * their names. Other objects (except numbers and strings, which are hashed by their values) are
+   * hashed by their `hashCode`.</p>
+   */
+  static long hash(Object value) {
+    if (value instanceof Long) {
+      return HASH_FUNCTION.hashLong((Long) value).asLong();
+    } else if (value instanceof Integer) {
+      return HASH_FUNCTION.hashInt((Integer) value).asLong();
+    } else if (value instanceof CharSequence) {
+      return HASH_FUNCTION.hashUnencodedChars((CharSequence) value).asLong();
+    } else if (value instanceof Enum) {
+      return HASH_FUNCTION.hashUnencodedChars(((Enum<?>) value).name()).asLong();
+    } else {
+      return HASH_FUNCTION.hashInt(Objects.hashCode(value)).asLong();
+    }
+  }
+
+  private boolean isEmpty() {
+    return this.registers == null && this.sparseSize == 0;
+  }
+
+  private void add(long hash) {
+    int index = (int) (hash >>> (64 - this.precision));
+    int value = Math.min(Long.numberOfLeadingZeros(hash << this.precision), 64 - this.precision)
+        + 1;
+    this.set(index, value);
+  }
+
+  private void set(int index, int value) {
+    if (this.registers != null) {
+      if (this.registers[index] < value) {
+        this.registers[index] = (byte) value;
+      }
+      return;
+    }
+    int low = 0;
+    int high = this.sparseSize - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midIndex = this.sparse[mid] >>> 8;
+      if (midIndex < index) {
+        low = mid + 1;
+      } else if (midIndex > index) {
+        high = mid - 1;
+      } else {
+        if ((this.sparse[mid] & 0xFF) < value) {
+          this.sparse[mid] = index << 8 | value;
+        }
+        return;
+      }
+    }
+    if (this.sparseSize == this.sparse.length) {
+      this.sparse = Arrays.copyOf(this.sparse, this.sparse.length * 2);
+    }
+    System.arraycopy(this.sparse, low, this.sparse, low + 1, this.sparseSize - low);
+    this.sparse[low] = index << 8 | value;
+    this.sparseSize++;
+    // switch to the dense representation once the sparse one uses more than half of its memory
+    if (this.sparseSize > (1 << this.precision) / 8) {
+      this.toDense();
+    }
+  }
+
+  private void toDense() {
+    this.registers = new byte[1 << this.precision];
+    for (int i = 0; i < this.sparseSize; i++) {
+      this.registers[this.sparse[i] >>> 8] = (byte) (this.sparse[i] & 0xFF);
+    }
+    this.sparse = null;
+    this.sparseSize = 0;
+  }
+
+  private void merge(HyperLogLog other) {
+    if (other.registers != null) {
+      if (this.registers == null) {
+        this.toDense();
+      }
+      for (int i = 0; i < this.registers.length; i++) {
+        if (this.registers[i] < other.registers[i]) {
+          this.registers[i] = other.registers[i];
+        }
+      }
+    } else {
+      for (int i = 0; i < other.sparseSize; i++) {
+        this.set(other.sparse[i] >>> 8, other.sparse[i] & 0xFF);
+      }
+    }
+  }
+
+  // only the used part of the sparse registers is written, without modifying the sketch
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    ObjectOutputStream.PutField fields = out.putFields();
+    fields.put("precision", this.precision);
+    fields.put("sparse", this.sparse != null && this.sparse.length > this.sparseSize
+        ? Arrays.copyOf(this.sparse, Math.max(this.sparseSize, 1))
+        : this.sparse);
+    fields.put("sparseSize", this.sparseSize);
+    fields.put("registers", this.registers);
+    out.writeFields();
+  }
+}
@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -23,8 +24,8 @@ import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import org.heigit.bigspatialdata.oshdb.api.generic.NumberUtils;
 import org.heigit.bigspatialdata.oshdb.api.generic.OSHDBCombinedIndex;
+import org.heigit.bigspatialdata.oshdb.api.generic.SampleEstimate;
 import org.heigit.bigspatialdata.oshdb.api.generic.WeightedValue;
 import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableBiConsumer;
 import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableBiFunction;
@@ -58,6 +59,9 @@ import org.locationtech.jts.geom.Polygonal;
  * "bins". This can be used to aggregate results by timestamp, geographic region, user id, osm tag,
  * etc.</p>
  *
+ * <p>Results are grouped in hash maps while they are computed and only sorted at the end, so the
+ * index values need to implement `equals` and `hashCode` consistently with their ordering.</p>
+ *
  * <p>Internally, this wraps around an existing MapReducer object, which still continues to be
  * responsible for all actual calculations.</p>
  *
@@ -376,12 +380,14 @@ public class MapAggregator<U extends Comparable<U> & Serializable, X> implements
    */
   @Contract(pure = true)
   public SortedMap<U, Number> sum() throws Exception {
-    return this
-        .makeNumeric()
-        .reduce(
-            () -> 0,
-            NumberUtils::add
-        );
+    return transformSortedMap(
+        this.makeNumeric().reduceOperation("sum").reduce(
+            NumberSum::identitySupplier,
+            NumberSum::accumulator,
+            NumberSum::combiner
+        ),
+        NumberSum::getValue
+    );
   }
 
   /**
@@ -397,12 +403,8 @@ public class MapAggregator<U extends Comparable<U> & Serializable, X> implements
   @Contract(pure = true)
   public <R extends Number> SortedMap<U, R> sum(SerializableFunction<X, R> mapper)
       throws Exception {
-    return this
-        .map(mapper)
-        .reduce(
-            () -> (R) (Integer) 0,
-            NumberUtils::add
-        );
+    //noinspection unchecked – same as NumberUtils.add, the sum is of the type of the values
+    return (SortedMap<U, R>) this.map(mapper).sum();
   }
 
   /**
@@ -412,7 +414,14 @@ public class MapAggregator<U extends Comparable<U> & Serializable, X> implements
    */
   @Contract(pure = true)
   public SortedMap<U, Integer> count() throws Exception {
-    return this.sum(ignored -> 1);
+    return transformSortedMap(
+        this.reduceOperation("count").reduce(
+            NumberSum::identitySupplier,
+            NumberSum::countAccumulator,
+            NumberSum::combiner
+        ),
+        x -> x.getValue().intValue()
+    );
   }
 
   /**
@@ -425,7 +434,7 @@ public class MapAggregator<U extends Comparable<U> & Serializable, X> implements
    */
   @Contract(pure = true)
   public SortedMap<U, Set<X>> uniq() throws Exception {
-    return this.reduce(
+    return this.reduceOperation("uniq").reduce(
         MapReducer::uniqIdentitySupplier,
         MapReducer::uniqAccumulator,
         MapReducer::uniqCombiner
@@ -459,6 +468,156 @@ public class MapAggregator<U extends Comparable<U> & Serializable, X> implements
     return transformSortedMap(this.uniq(), Set::size);
   }
 
+  /**
+   * Estimates the number of unique values of the results.
+   *
+   * <p>Uses the HyperLogLog algorithm with a precision of 14, which gives estimates with a
+   * relative standard error of about 0.8% while using at most 16kB of memory, regardless of the
+   * number of unique values. See {@link #estimatedCountUniq(int)}.</p>
+   *
+   * @return the estimated numbers of distinct values
+   */
+  @Contract(pure = true)
+  public SortedMap<U, Long> estimatedCountUniq() throws Exception {
+    return this.estimatedCountUniq(HyperLogLog.DEFAULT_PRECISION);
+  }
+
+  /**
+   * Estimates the number of unique values of the results.
+   *
+   * <p>
+   * Uses the HyperLogLog algorithm to estimate the number of distinct values in a map-reduce
+   * system: https://hal.archives-ouvertes.fr/hal-00406166/document
+   * </p>
+   *
+   * <p>The sketches use 2^precision bytes of memory, and the relative standard error of the
+   * estimates is about 1.04/sqrt(2^precision). Values are hashed by their value if they are
+   * numbers, strings or enums and by their `hashCode` otherwise, which therefore needs to be the
+   * same on all nodes of a cluster.</p>
+   *
+   * @param precision the precision of the sketches (between 4 and 18)
+   * @return the estimated numbers of distinct values
+   * @throws IllegalArgumentException if the precision is out of range
+   */
+  @Contract(pure = true)
+  public SortedMap<U, Long> estimatedCountUniq(int precision) throws Exception {
+    HyperLogLog.checkPrecision(precision);
+    return transformSortedMap(
+        this.reduceOperation("estimatedCountUniq:" + precision).reduce(
+            () -> new HyperLogLog(precision),
+            HyperLogLog::accumulator,
+            HyperLogLog::combiner
+        ),
+        HyperLogLog::estimate
+    );
+  }
+
+  /**
+   * Estimates the most frequent values of the results.
+   *
+   * <p>Uses a space-saving sketch monitoring 10*k (but at least 100) values. See
+   * {@link #estimatedTopK(int, int)}.</p>
+   *
+   * @param k the number of values to return
+   * @return the (up to) k most frequent values and their estimated counts, ordered by descending
+   *         counts
+   */
+  @Contract(pure = true)
+  public SortedMap<U, List<Entry<X, Long>>> estimatedTopK(int k) throws Exception {
+    return this.estimatedTopK(k, SpaceSaving.defaultCapacity(k));
+  }
+
+  /**
+   * Estimates the most frequent values of the results.
+   *
+   * <p>
+   * Uses the space-saving algorithm to find frequent values in a map-reduce system:
+   * https://www.cs.ucsb.edu/sites/default/files/documents/2005-23.pdf
+   * </p>
+   *
+   * <p>The sketches monitor at most `capacity` values. The returned counts are upper bounds, which
+   * overestimate the actual counts by at most n/capacity, where n is the total number of results.
+   * </p>
+   *
+   * @param k the number of values to return
+   * @param capacity the maximum number of values monitored by the sketches (at least k)
+   * @return the (up to) k most frequent values and their estimated counts, ordered by descending
+   *         counts
+   * @throws IllegalArgumentException if k is not positive or the capacity is smaller than k
+   */
+  @Contract(pure = true)
+  public SortedMap<U, List<Entry<X, Long>>> estimatedTopK(int k, int capacity) throws Exception {
+    if (k < 1 || capacity < k) {
+      throw new IllegalArgumentException("k must be positive and not larger than the capacity");
+    }
+    return transformSortedMap(
+        this.reduceOperation("estimatedTopK:" + capacity).reduce(
+            () -> new SpaceSaving<X>(capacity),
+            SpaceSaving::accumulator,
+            SpaceSaving::combiner
+        ),
+        sketch -> sketch.top(k)
+    );
+  }
+
+  /**
+   * Estimates the number of results in the whole area of interest from a sample of cells.
+   *
+   * <p>See {@link MapReducer#sample(double, long)}. Without sampling, the exact counts are
+   * returned (with a standard error of zero).</p>
+   *
+   * @return the estimated total count of features or modifications, summed up over all timestamps
+   */
+  @Contract(pure = true)
+  public SortedMap<U, SampleEstimate> estimatedCount() throws Exception {
+    final double fraction = this.mapReducer.getSampleFraction();
+    final boolean partitioned = this.mapReducer.getPartitions() > 1;
+    return transformSortedMap(
+        this.reduceOperation("estimatedCount").reduce(
+            () -> new SampledSum(partitioned),
+            SampledSum::countAccumulator,
+            SampledSum::combiner
+        ),
+        x -> x.getEstimate(fraction)
+    );
+  }
+
+  /**
+   * Estimates the sum of the current data in the whole area of interest from a sample of cells.
+   *
+   * <p>See {@link MapReducer#sample(double, long)}. The current data values need to be numeric
+   * (castable to "Number" type), otherwise a runtime exception will be thrown.</p>
+   *
+   * @return the estimated sum of the current data
+   */
+  @Contract(pure = true)
+  public SortedMap<U, SampleEstimate> estimatedSum() throws Exception {
+    final double fraction = this.mapReducer.getSampleFraction();
+    final boolean partitioned = this.mapReducer.getPartitions() > 1;
+    return transformSortedMap(
+        this.makeNumeric().reduceOperation("estimatedSum").reduce(
+            () -> new SampledSum(partitioned),
+            SampledSum::accumulator,
+            SampledSum::combiner
+        ),
+        x -> x.getEstimate(fraction)
+    );
+  }
+
+  /**
+   * Estimates the sum of the results provided by a given `mapper` function in the whole area of
+   * interest from a sample of cells.
+   *
+   * @param mapper function that returns the numbers to sum up
+   * @param <R> the numeric type that is returned by the `mapper` function
+   * @return the estimated sum of the results of the `mapper` function
+   */
+  @Contract(pure = true)
+  public <R extends Number> SortedMap<U, SampleEstimate> estimatedSum(
+      SerializableFunction<X, R> mapper) throws Exception {
+    return this.map(mapper).estimatedSum();
+  }
+
   /**
    * Calculates the averages of the results.
    *
@@ -502,7 +661,7 @@ public class MapAggregator<U extends Comparable<U> & Serializable, X> implements
   public SortedMap<U, Double> weightedAverage(SerializableFunction<X, WeightedValue> mapper)
       throws Exception {
     return transformSortedMap(
-        this.map(mapper).reduce(
+        this.map(mapper).reduceOperation("weightedAverage").reduce(
             PayloadWithWeight::identitySupplier,
             PayloadWithWeight::accumulator,
             PayloadWithWeight::combiner
@@ -667,7 +826,7 @@ public class MapAggregator<U extends Comparable<U> & Serializable, X> implements
   @Contract(pure = true)
   private <R extends Number> SortedMap<U, TDigest> digest(SerializableFunction<X, R> mapper)
       throws Exception {
-    return this.map(mapper).reduce(
+    return this.map(mapper).reduceOperation("digest").reduce(
         TDigestReducer::identitySupplier,
         TDigestReducer::accumulator,
         TDigestReducer::combiner
@@ -703,7 +862,7 @@ public class MapAggregator<U extends Comparable<U> & Serializable, X> implements
    */
   @Contract(pure = true)
   public SortedMap<U, List<X>> collect() throws Exception {
-    return this.reduce(
+    return this.reduceOperation("collect").reduce(
         MapReducer::collectIdentitySupplier,
         MapReducer::collectAccumulator,
         MapReducer::collectCombiner
@@ -850,23 +1009,22 @@ public class MapAggregator<U extends Comparable<U> & Serializable, X> implements
       SerializableBiFunction<S, X, S> accumulator,
       SerializableBinaryOperator<S> combiner)
       throws Exception {
-    SortedMap<U, S> result = this.mapReducer.reduce(
-        TreeMap::new,
-        (TreeMap<U, S> m, IndexValuePair<U, X> r) -> {
-          m.put(r.getKey(), accumulator.apply(
-              m.getOrDefault(r.getKey(), identitySupplier.get()),
-              r.getValue()
-          ));
+    HashMap<U, S> accumulated = this.mapReducer.reduce(
+        HashMap::new,
+        (HashMap<U, S> m, IndexValuePair<U, X> r) -> {
+          S current = m.get(r.getKey());
+          if (current == null) {
+            current = identitySupplier.get();
+          }
+          S next = accumulator.apply(current, r.getValue());
+          if (next != current || !m.containsKey(r.getKey())) {
+            m.put(r.getKey(), next);
+          }
           return m;
         },
-        (a,b) -> {
-          TreeMap<U, S> combined = new TreeMap<U, S>(a);
-          for (SortedMap.Entry<U, S> entry: b.entrySet()) {
-            combined.merge(entry.getKey(), entry.getValue(), combiner);
-          }
-          return combined;
-        }
+        (a, b) -> mergeGroups(a, b, combiner)
     );
+    SortedMap<U, S> result = new TreeMap<>(accumulated);
     // fill nodata entries with "0"
     //noinspection unchecked – all zerofills must "add up" to <U>
     Collection<U> zerofill = (Collection<U>) this.completeZerofill(
@@ -936,6 +1094,12 @@ public class MapAggregator<U extends Comparable<U> & Serializable, X> implements
   // Some helper methods for internal use in the mapReduce functions
   // -----------------------------------------------------------------------------------------------
 
+  // sets the name of the aggregation method, see MapReducer.reduceOperation()
+  @Contract(pure = true)
+  private MapAggregator<U, X> reduceOperation(String operation) {
+    return this.copyTransform(this.mapReducer.reduceOperation(operation));
+  }
+
   // casts current results to a numeric type, for summing and averaging
   @Contract(pure = true)
   private MapAggregator<U, Number> makeNumeric() {
@@ -987,6 +1151,40 @@ public class MapAggregator<U extends Comparable<U> & Serializable, X> implements
     }
   }
 
+  /**
+   * Merges two maps of grouped intermediate results.
+   *
+   * <p>Empty maps are never altered, because they might be a shared identity value of the
+   * underlying reduce operation. Otherwise the smaller map is merged into the larger one, which
+   * is safe because non-empty maps are only ever produced by the accumulator or by this method,
+   * and are not used anymore after being combined. The individual values are still merged with
+   * the (pure) `combiner` function, retaining their order.</p>
+   */
+  private static <U, S> HashMap<U, S> mergeGroups(
+      HashMap<U, S> a,
+      HashMap<U, S> b,
+      SerializableBinaryOperator<S> combiner
+  ) {
+    if (a.isEmpty()) {
+      return b;
+    }
+    if (b.isEmpty()) {
+      return a;
+    }
+    if (a.size() >= b.size()) {
+      for (Map.Entry<U, S> entry : b.entrySet()) {
+        a.merge(entry.getKey(), entry.getValue(), combiner);
+      }
+      return a;
+    } else {
+      for (Map.Entry<U, S> entry : a.entrySet()) {
+        b.merge(entry.getKey(), entry.getValue(), (bValue, aValue) ->
+            combiner.apply(aValue, bValue));
+      }
+      return b;
+    }
+  }
+
   // transforms the values of a sorted map by a given function (similar to Stream::map)
   private <A, B> SortedMap<U, B> transformSortedMap(SortedMap<U, A> in, Function<A, B> transform) {
     return in.entrySet().stream().collect(Collectors.toMap(
@@ -1,12 +1,18 @@
 package org.heigit.bigspatialdata.oshdb.api.mapreducer;
 
+import java.util.Collections;
 import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableFunction;
+import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializablePredicate;
 
 /**
  * A function that has a flag: <i>isFlatMapper</i>.
+ *
+ * <p>Filters are flat mappers returning zero or one result, which can also be applied directly
+ * as a predicate (see {@link #isFilter()}).</p>
  */
 class MapFunction implements SerializableFunction {
   private SerializableFunction mapper;
+  private SerializablePredicate filter;
   private boolean isFlatMapper;
 
   MapFunction(SerializableFunction mapper, boolean isFlatMapper) {
@@ -14,15 +20,33 @@ class MapFunction implements SerializableFunction {
     this.isFlatMapper = isFlatMapper;
   }
 
+  MapFunction(SerializablePredicate filter) {
+    this.filter = filter;
+    this.isFlatMapper = true;
+  }
+
   boolean isFlatMapper() {
     return this.isFlatMapper;
   }
 
+  boolean isFilter() {
+    return this.filter != null;
+  }
+
+  @SuppressWarnings("unchecked")
+  // see apply()
+  boolean test(Object o) {
+    return this.filter.test(o);
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   // mappers are using raw types because they work on arbitrary data types
   // the necessary type checks are done at the respective setters
   public Object apply(Object o) {
+    if (this.filter != null) {
+      return this.filter.test(o) ? Collections.singletonList(o) : Collections.emptyList();
+    }
     return this.mapper.apply(o);
   }
 }
@@ -1,13 +1,15 @@
 package org.heigit.bigspatialdata.oshdb.api.mapreducer;
 
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Streams;
+import com.google.common.hash.Hashing;
 import com.tdunning.math.stats.TDigest;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -17,17 +19,20 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.DoubleUnaryOperator;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import org.heigit.bigspatialdata.oshdb.OSHDB;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBCostEstimate;
 import org.heigit.bigspatialdata.oshdb.api.db.OSHDBDatabase;
 import org.heigit.bigspatialdata.oshdb.api.db.OSHDBJdbc;
 import org.heigit.bigspatialdata.oshdb.api.generic.NumberUtils;
+import org.heigit.bigspatialdata.oshdb.api.generic.SampleEstimate;
 import org.heigit.bigspatialdata.oshdb.api.generic.WeightedValue;
 import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableBiFunction;
 import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableBinaryOperator;
@@ -38,11 +43,12 @@ import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableSupplier
 import org.heigit.bigspatialdata.oshdb.api.object.OSHDBMapReducible;
 import org.heigit.bigspatialdata.oshdb.api.object.OSMContribution;
 import org.heigit.bigspatialdata.oshdb.api.object.OSMEntitySnapshot;
-import org.heigit.bigspatialdata.oshdb.index.XYGridTree;
+import org.heigit.bigspatialdata.oshdb.index.GridTree;
 import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
 import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
 import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTag;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTagKey;
@@ -51,6 +57,7 @@ import org.heigit.bigspatialdata.oshdb.util.celliterator.CellIterator;
 import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBKeytablesNotFoundException;
 import org.heigit.bigspatialdata.oshdb.util.geometry.Geo;
 import org.heigit.bigspatialdata.oshdb.util.geometry.OSHDBGeometryBuilder;
+import org.heigit.bigspatialdata.oshdb.util.geometry.fip.FastPolygonCellCoverage;
 import org.heigit.bigspatialdata.oshdb.util.taginterpreter.DefaultTagInterpreter;
 import org.heigit.bigspatialdata.oshdb.util.taginterpreter.TagInterpreter;
 import org.heigit.bigspatialdata.oshdb.util.tagtranslator.OSMTag;
@@ -116,6 +123,15 @@ public abstract class MapReducer<X> implements
 
   protected Long timeout = null;
 
+  // cache of partial (per cell) results of reduce operations, see cachePartialResults()
+  protected transient PartialResultCache partialResultCache = null;
+  private String partialResultFingerprint = null;
+  // name of the aggregation method of the query, see reduceOperation()
+  private String reduceOperation = null;
+
+  // records (and replays) the reduce operations of a query executed in a batch, see MapReducerBatch
+  transient MapReducerBatch.Recorder batchRecorder = null;
+
   // internal state
   Class<? extends OSHDBMapReducible> forClass;
 
@@ -132,6 +148,14 @@ public abstract class MapReducer<X> implements
     return false;
   }
 
+  /**
+   * Returns if the current backend can cache partial results, see
+   * {@link #cachePartialResults(PartialResultCache, String)}.
+   */
+  public boolean isPartialResultCacheSupported() {
+    return false;
+  }
+
   // utility objects
   private transient TagTranslator tagTranslator = null;
   private TagInterpreter tagInterpreter = null;
@@ -144,10 +168,17 @@ public abstract class MapReducer<X> implements
   );
   protected OSHDBBoundingBox bboxFilter = new OSHDBBoundingBox(-180, -90, 180, 90);
   private Geometry polyFilter = null;
+  // cell coverage of the polygon filter, computed on first use and shared by all copies
+  private AtomicReference<FastPolygonCellCoverage> polyFilterCoverage = new AtomicReference<>();
   protected EnumSet<OSMType> typeFilter = EnumSet.of(OSMType.NODE, OSMType.WAY, OSMType.RELATION);
   private final List<SerializablePredicate<OSHEntity>> preFilters = new ArrayList<>();
+  // tag keys of which matching entities have at least one, used to skip cells via their summary
+  private final List<int[]> preFilterTagKeys = new ArrayList<>();
   private final List<SerializablePredicate<OSMEntity>> filters = new ArrayList<>();
   final List<MapFunction> mappers = new LinkedList<>();
+  // random sample of the grid cells to process, see sample()
+  private double sampleFraction = 1.0;
+  private long sampleSeed = 0;
 
 
   // basic constructor
@@ -164,16 +195,25 @@ public abstract class MapReducer<X> implements
     this.forClass = obj.forClass;
     this.grouping = obj.grouping;
 
+    this.partialResultCache = obj.partialResultCache;
+    this.partialResultFingerprint = obj.partialResultFingerprint;
+    this.reduceOperation = obj.reduceOperation;
+    this.batchRecorder = obj.batchRecorder;
+
     this.tagTranslator = obj.tagTranslator;
     this.tagInterpreter = obj.tagInterpreter;
 
     this.tstamps = obj.tstamps;
     this.bboxFilter = obj.bboxFilter;
     this.polyFilter = obj.polyFilter;
+    this.polyFilterCoverage = obj.polyFilterCoverage;
     this.typeFilter = obj.typeFilter.clone();
     this.preFilters.addAll(obj.preFilters);
+    this.preFilterTagKeys.addAll(obj.preFilterTagKeys);
     this.filters.addAll(obj.filters);
     this.mappers.addAll(obj.mappers);
+    this.sampleFraction = obj.sampleFraction;
+    this.sampleSeed = obj.sampleSeed;
   }
 
   @NotNull
@@ -227,6 +267,72 @@ public abstract class MapReducer<X> implements
     return ret;
   }
 
+  /**
+   * Enables caching of the partial results of reduce operations.
+   *
+   * <p>The results of each cell are stored in the given cache, and later queries with the same
+   * fingerprint only process the cells whose results are not in the cache yet.</p>
+   *
+   * <p>The view, osm types, timestamps and the grouping of the query, the type of the reduced
+   * values and the used aggregation method (e.g. count or sum) are added to the fingerprint
+   * automatically, as well as the area of interest for cells which are only partially covered by
+   * it (so that queries with slightly different areas of interest can reuse the results of all
+   * fully covered cells). Everything else the results depend on has to be identified by the given
+   * fingerprint: the tag and custom filters, the map/flatMap/filter functions, any aggregation
+   * indices and the functions of custom reduce operations.</p>
+   *
+   * <p>Only supported by the jdbc backends (see {@link #isPartialResultCacheSupported()}), other
+   * backends ignore this setting.</p>
+   *
+   * @param cache the cache to store the partial results in
+   * @param fingerprint a string identifying the filters, mappers and the reduce operation of the
+   *        query
+   * @return a modified copy of this mapReducer (can be used to chain multiple commands together)
+   */
+  @Contract(pure = true)
+  public MapReducer<X> cachePartialResults(PartialResultCache cache, String fingerprint) {
+    if (!this.isPartialResultCacheSupported()) {
+      LOG.warn("The database backend doesn't support caching partial results");
+    }
+    MapReducer<X> ret = this.copy();
+    ret.partialResultCache = cache;
+    ret.partialResultFingerprint = fingerprint;
+    return ret;
+  }
+
+  /**
+   * Restricts the analysis to a random sample of the grid cells of the area of interest.
+   *
+   * <p>Each cell is sampled with the given probability, decided deterministically by its id and
+   * the given seed: repeated queries with the same seed process the same cells. The usual
+   * result-generating functions (e.g. `count`, `sum`) return the results of the sampled cells
+   * only, while {@link #estimatedCount()} and {@link #estimatedSum()} (and their aggregated
+   * variants) extrapolate them to the whole area of interest, together with a confidence
+   * interval. All partitions of a cell are sampled together and form a single sampling unit of
+   * these estimates.</p>
+   *
+   * <p>All cells are sampled with the same probability, regardless of their size. Cells are not
+   * weighted by the number of entities they contain (e.g. from the statistics catalog of
+   * {@link org.heigit.bigspatialdata.oshdb.api.db.OSHDBIgnite}), since this catalog is only
+   * available for some backends. Samples of areas with few very large cells therefore have wide
+   * confidence intervals: a larger fraction is needed for precise estimates there.</p>
+   *
+   * @param fraction the probability of each cell to be sampled, greater than 0 and at most 1
+   * @param seed the seed of the pseudo-random sample
+   * @return a modified copy of this mapReducer (can be used to chain multiple commands together)
+   * @throws IllegalArgumentException if the fraction is out of range
+   */
+  @Contract(pure = true)
+  public MapReducer<X> sample(double fraction, long seed) {
+    if (!(fraction > 0 && fraction <= 1)) {
+      throw new IllegalArgumentException("sample fraction must be greater than 0 and at most 1");
+    }
+    MapReducer<X> ret = this.copy();
+    ret.sampleFraction = fraction;
+    ret.sampleSeed = seed;
+    return ret;
+  }
+
   // -----------------------------------------------------------------------------------------------
   // Filtering methods
   // -----------------------------------------------------------------------------------------------
@@ -246,6 +352,7 @@ public abstract class MapReducer<X> implements
     } else {
       ret.polyFilter = Geo.clip(ret.polyFilter, bboxFilter);
       ret.bboxFilter = OSHDBGeometryBuilder.boundingBoxOf(ret.polyFilter.getEnvelopeInternal());
+      ret.polyFilterCoverage = new AtomicReference<>();
     }
     return ret;
   }
@@ -266,6 +373,7 @@ public abstract class MapReducer<X> implements
       ret.polyFilter = Geo.clip(polygonFilter, ret.getPolyFilter());
     }
     ret.bboxFilter = OSHDBGeometryBuilder.boundingBoxOf(ret.polyFilter.getEnvelopeInternal());
+    ret.polyFilterCoverage = new AtomicReference<>();
     return ret;
   }
 
@@ -458,10 +566,12 @@ public abstract class MapReducer<X> implements
     if (!keyId.isPresentInKeytables()) {
       LOG.warn("Tag key {} not found. No data will match this filter.", key.toString());
       ret.preFilters.add(ignored -> false);
+      ret.preFilterTagKeys.add(new int[0]);
       ret.filters.add(ignored -> false);
       return ret;
     }
     ret.preFilters.add(oshEntitiy -> oshEntitiy.hasTagKey(keyId));
+    ret.preFilterTagKeys.add(new int[] { keyId.toInt() });
     ret.filters.add(osmEntity -> osmEntity.hasTagKey(keyId));
     return ret;
   }
@@ -494,11 +604,13 @@ public abstract class MapReducer<X> implements
       LOG.warn("Tag {}={} not found. No data will match this filter.",
           tag.getKey(), tag.getValue());
       ret.preFilters.add(ignored -> false);
+      ret.preFilterTagKeys.add(new int[0]);
       ret.filters.add(ignored -> false);
       return ret;
     }
     OSHDBTagKey keyId = new OSHDBTagKey(keyValueId.getKey());
     ret.preFilters.add(oshEntitiy -> oshEntitiy.hasTagKey(keyId));
+    ret.preFilterTagKeys.add(new int[] { keyId.toInt() });
     ret.filters.add(osmEntity -> osmEntity.hasTagValue(keyValueId.getKey(), keyValueId.getValue()));
     return ret;
   }
@@ -520,6 +632,7 @@ public abstract class MapReducer<X> implements
       LOG.warn((values.size() > 0 ? "Tag key {} not found." : "Empty tag value list.")
           + " No data will match this filter.", key);
       ret.preFilters.add(ignored -> false);
+      ret.preFilterTagKeys.add(new int[0]);
       ret.filters.add(ignored -> false);
       return ret;
     }
@@ -533,6 +646,7 @@ public abstract class MapReducer<X> implements
       }
     }
     ret.preFilters.add(oshEntitiy -> oshEntitiy.hasTagKey(keyId));
+    ret.preFilterTagKeys.add(new int[] { keyId });
     ret.filters.add(osmEntity -> {
       int[] tags = osmEntity.getRawTags();
       for (int i = 0; i < tags.length; i += 2) {
@@ -564,10 +678,12 @@ public abstract class MapReducer<X> implements
     if (!oshdbKey.isPresentInKeytables()) {
       LOG.warn("Tag key {} not found. No data will match this filter.", key);
       ret.preFilters.add(ignored -> false);
+      ret.preFilterTagKeys.add(new int[0]);
       ret.filters.add(ignored -> false);
       return ret;
     }
     ret.preFilters.add(oshEntitiy -> oshEntitiy.hasTagKey(keyId));
+    ret.preFilterTagKeys.add(new int[] { keyId });
     ret.filters.add(osmEntity -> {
       int[] tags = osmEntity.getRawTags();
       for (int i = 0; i < tags.length; i += 2) {
@@ -597,6 +713,7 @@ public abstract class MapReducer<X> implements
     if (tags.size() == 0) {
       LOG.warn("Empty tag list. No data will match this filter.");
       ret.preFilters.add(ignored -> false);
+      ret.preFilterTagKeys.add(new int[0]);
       ret.filters.add(ignored -> false);
       return ret;
     }
@@ -612,6 +729,7 @@ public abstract class MapReducer<X> implements
         keyValueIds.add(keyValueId);
       }
     }
+    ret.preFilterTagKeys.add(keyIds.stream().mapToInt(Integer::intValue).toArray());
     ret.preFilters.add(oshEntitiy -> {
       for (int key : oshEntitiy.getRawTagKeys()) {
         if (keyIds.contains(key)) {
@@ -678,8 +796,9 @@ public abstract class MapReducer<X> implements
    */
   @Contract(pure = true)
   public MapReducer<X> filter(SerializablePredicate<X> f) {
-    return this
-        .flatMap(data -> f.test(data) ? Collections.singletonList(data) : Collections.emptyList());
+    MapReducer<X> ret = this.copy();
+    ret.mappers.add(new MapFunction(f));
+    return ret;
   }
 
   // -----------------------------------------------------------------------------------------------
@@ -806,7 +925,10 @@ public abstract class MapReducer<X> implements
       MapAggregator<OSHDBTimestamp, ?> mapAggregator =
           new MapAggregator<>(ret, indexer, this.getZerofillTimestamps());
       for (MapFunction action : mappers) {
-        if (action.isFlatMapper()) {
+        if (action.isFilter()) {
+          //noinspection unchecked – applying untyped function (we don't know intermediate types)
+          mapAggregator = mapAggregator.filter(action::test);
+        } else if (action.isFlatMapper()) {
           //noinspection unchecked – applying untyped function (we don't know intermediate types)
           mapAggregator = mapAggregator.flatMap(action);
         } else {
@@ -939,6 +1061,9 @@ public abstract class MapReducer<X> implements
       SerializableBiFunction<S, X, S> accumulator,
       SerializableBinaryOperator<S> combiner)
       throws Exception {
+    if (this.batchRecorder != null) {
+      return this.batchRecorder.reduce(this, identitySupplier, accumulator, combiner);
+    }
     checkTimeout();
     switch (this.grouping) {
       case NONE:
@@ -969,58 +1094,46 @@ public abstract class MapReducer<X> implements
                 "Unimplemented data view: " + this.forClass.toString());
           }
         } else {
-          final SerializableFunction<Object, Iterable<X>> flatMapper = this.getFlatMapper();
+          // the results of the flatMap functions are directly folded into the accumulation value
+          final SerializableBiFunction<S, Object, S> flatMapAccumulator =
+              this.getFlatMapAccumulator(accumulator);
           if (this.forClass.equals(OSMContribution.class)) {
-            return this.flatMapReduceCellsOSMContributionGroupedById(
-                (List<OSMContribution> inputList) -> {
-                  List<X> outputList = new LinkedList<>();
-                  inputList.stream()
-                      .map((SerializableFunction<OSMContribution, Iterable<X>>) flatMapper::apply)
-                      .forEach(data -> Iterables.addAll(outputList, data));
-                  return outputList;
-                }, identitySupplier, accumulator, combiner);
+            return this.mapReduceCellsOSMContribution(
+                (SerializableFunction<OSMContribution, Object>) data -> data,
+                identitySupplier,
+                flatMapAccumulator,
+                combiner
+            );
           } else if (this.forClass.equals(OSMEntitySnapshot.class)) {
-            return this.flatMapReduceCellsOSMEntitySnapshotGroupedById(
-                (List<OSMEntitySnapshot> inputList) -> {
-                  List<X> outputList = new LinkedList<>();
-                  inputList.stream()
-                      .map((SerializableFunction<OSMEntitySnapshot, Iterable<X>>) flatMapper::apply)
-                      .forEach(data -> Iterables.addAll(outputList, data));
-                  return outputList;
-                }, identitySupplier, accumulator, combiner);
+            return this.mapReduceCellsOSMEntitySnapshot(
+                (SerializableFunction<OSMEntitySnapshot, Object>) data -> data,
+                identitySupplier,
+                flatMapAccumulator,
+                combiner
+            );
           } else {
             throw new UnsupportedOperationException(
                 "Unimplemented data view: " + this.forClass.toString());
           }
         }
       case BY_ID:
-        final SerializableFunction<Object, Iterable<X>> flatMapper;
-        if (this.mappers.stream().noneMatch(MapFunction::isFlatMapper)) {
-          final SerializableFunction<Object, X> mapper = this.getMapper();
-          flatMapper = data -> Collections.singletonList(mapper.apply(data));
-          // todo: check if this is actually necessary, doesn't getFlatMapper() do the "same" in
-          // this case? should we add this as optimization case to getFlatMapper()??
-        } else {
-          flatMapper = this.getFlatMapper();
-        }
+        // the results of the (flat)map functions are directly folded into the accumulation value
+        final SerializableBiFunction<S, Object, S> flatMapAccumulator =
+            this.getFlatMapAccumulator(accumulator);
         if (this.forClass.equals(OSMContribution.class)) {
-          //noinspection Convert2MethodRef having just `flatMapper::apply` here is problematic, see https://github.com/GIScience/oshdb/pull/37
-          final SerializableFunction<List<OSMContribution>, Iterable<X>> contributionFlatMapper =
-              data -> flatMapper.apply(data);
           return this.flatMapReduceCellsOSMContributionGroupedById(
-              contributionFlatMapper,
+              (SerializableFunction<List<OSMContribution>, Iterable<Object>>)
+                  data -> Collections.singletonList(data),
               identitySupplier,
-              accumulator,
+              flatMapAccumulator,
               combiner
           );
         } else if (this.forClass.equals(OSMEntitySnapshot.class)) {
-          //noinspection Convert2MethodRef having just `flatMapper::apply` here is problematic, see https://github.com/GIScience/oshdb/pull/37
-          final SerializableFunction<List<OSMEntitySnapshot>, Iterable<X>> snapshotFlatMapper =
-              data -> flatMapper.apply(data);
           return this.flatMapReduceCellsOSMEntitySnapshotGroupedById(
-              snapshotFlatMapper,
+              (SerializableFunction<List<OSMEntitySnapshot>, Iterable<Object>>)
+                  data -> Collections.singletonList(data),
               identitySupplier,
-              accumulator,
+              flatMapAccumulator,
               combiner
           );
         } else {
@@ -1095,7 +1208,7 @@ public abstract class MapReducer<X> implements
    */
   @Contract(pure = true)
   public Number sum() throws Exception {
-    return this.makeNumeric().reduce(() -> 0, NumberUtils::add);
+    return this.makeNumeric().reduceOperation("sum").reduce(() -> 0, NumberUtils::add);
   }
 
   /**
@@ -1110,7 +1223,7 @@ public abstract class MapReducer<X> implements
    */
   @Contract(pure = true)
   public <R extends Number> R sum(SerializableFunction<X, R> mapper) throws Exception {
-    return this.map(mapper).reduce(() -> (R) (Integer) 0, NumberUtils::add);
+    return this.map(mapper).reduceOperation("sum").reduce(() -> (R) (Integer) 0, NumberUtils::add);
   }
 
   /**
@@ -1120,7 +1233,7 @@ public abstract class MapReducer<X> implements
    */
   @Contract(pure = true)
   public Integer count() throws Exception {
-    return this.sum(ignored -> 1);
+    return this.reduceOperation("count").sum(ignored -> 1);
   }
 
   /**
@@ -1133,7 +1246,7 @@ public abstract class MapReducer<X> implements
    */
   @Contract(pure = true)
   public Set<X> uniq() throws Exception {
-    return this.reduce(
+    return this.reduceOperation("uniq").reduce(
         MapReducer::uniqIdentitySupplier,
         MapReducer::uniqAccumulator,
         MapReducer::uniqCombiner
@@ -1167,6 +1280,142 @@ public abstract class MapReducer<X> implements
     return this.uniq().size();
   }
 
+  /**
+   * Estimates the number of unique values of the results.
+   *
+   * <p>Uses the HyperLogLog algorithm with a precision of 14, which gives estimates with a
+   * relative standard error of about 0.8% while using at most 16kB of memory, regardless of the
+   * number of unique values. See {@link #estimatedCountUniq(int)}.</p>
+   *
+   * @return the estimated number of distinct values
+   */
+  @Contract(pure = true)
+  public Long estimatedCountUniq() throws Exception {
+    return this.estimatedCountUniq(HyperLogLog.DEFAULT_PRECISION);
+  }
+
+  /**
+   * Estimates the number of unique values of the results.
+   *
+   * <p>
+   * Uses the HyperLogLog algorithm to estimate the number of distinct values in a map-reduce
+   * system: https://hal.archives-ouvertes.fr/hal-00406166/document
+   * </p>
+   *
+   * <p>The sketches use 2^precision bytes of memory, and the relative standard error of the
+   * estimates is about 1.04/sqrt(2^precision). Values are hashed by their value if they are
+   * numbers, strings or enums and by their `hashCode` otherwise, which therefore needs to be the
+   * same on all nodes of a cluster.</p>
+   *
+   * @param precision the precision of the sketches (between 4 and 18)
+   * @return the estimated number of distinct values
+   * @throws IllegalArgumentException if the precision is out of range
+   */
+  @Contract(pure = true)
+  public Long estimatedCountUniq(int precision) throws Exception {
+    HyperLogLog.checkPrecision(precision);
+    return this.reduceOperation("estimatedCountUniq:" + precision).reduce(
+        () -> new HyperLogLog(precision),
+        HyperLogLog::accumulator,
+        HyperLogLog::combiner
+    ).estimate();
+  }
+
+  /**
+   * Estimates the most frequent values of the results.
+   *
+   * <p>Uses a space-saving sketch monitoring 10*k (but at least 100) values. See
+   * {@link #estimatedTopK(int, int)}.</p>
+   *
+   * @param k the number of values to return
+   * @return the (up to) k most frequent values and their estimated counts, ordered by descending
+   *         counts
+   */
+  @Contract(pure = true)
+  public List<Entry<X, Long>> estimatedTopK(int k) throws Exception {
+    return this.estimatedTopK(k, SpaceSaving.defaultCapacity(k));
+  }
+
+  /**
+   * Estimates the most frequent values of the results.
+   *
+   * <p>
+   * Uses the space-saving algorithm to find frequent values in a map-reduce system:
+   * https://www.cs.ucsb.edu/sites/default/files/documents/2005-23.pdf
+   * </p>
+   *
+   * <p>The sketches monitor at most `capacity` values. The returned counts are upper bounds, which
+   * overestimate the actual counts by at most n/capacity, where n is the total number of results.
+   * </p>
+   *
+   * @param k the number of values to return
+   * @param capacity the maximum number of values monitored by the sketches (at least k)
+   * @return the (up to) k most frequent values and their estimated counts, ordered by descending
+   *         counts
+   * @throws IllegalArgumentException if k is not positive or the capacity is smaller than k
+   */
+  @Contract(pure = true)
+  public List<Entry<X, Long>> estimatedTopK(int k, int capacity) throws Exception {
+    if (k < 1 || capacity < k) {
+      throw new IllegalArgumentException("k must be positive and not larger than the capacity");
+    }
+    return this.reduceOperation("estimatedTopK:" + capacity).reduce(
+        () -> new SpaceSaving<X>(capacity),
+        SpaceSaving::accumulator,
+        SpaceSaving::combiner
+    ).top(k);
+  }
+
+  /**
+   * Estimates the number of results in the whole area of interest from a sample of cells.
+   *
+   * <p>See {@link #sample(double, long)}. Without sampling, the exact count is returned (with a
+   * standard error of zero).</p>
+   *
+   * @return the estimated total count of features or modifications, summed up over all timestamps
+   */
+  @Contract(pure = true)
+  public SampleEstimate estimatedCount() throws Exception {
+    final boolean partitioned = this.getPartitions() > 1;
+    return this.reduceOperation("estimatedCount").reduce(
+        () -> new SampledSum(partitioned),
+        SampledSum::countAccumulator,
+        SampledSum::combiner
+    ).getEstimate(this.sampleFraction);
+  }
+
+  /**
+   * Estimates the sum of the current data in the whole area of interest from a sample of cells.
+   *
+   * <p>See {@link #sample(double, long)}. The current data values need to be numeric (castable to
+   * "Number" type), otherwise a runtime exception will be thrown.</p>
+   *
+   * @return the estimated sum of the current data
+   */
+  @Contract(pure = true)
+  public SampleEstimate estimatedSum() throws Exception {
+    final boolean partitioned = this.getPartitions() > 1;
+    return this.makeNumeric().reduceOperation("estimatedSum").reduce(
+        () -> new SampledSum(partitioned),
+        SampledSum::accumulator,
+        SampledSum::combiner
+    ).getEstimate(this.sampleFraction);
+  }
+
+  /**
+   * Estimates the sum of the results provided by a given `mapper` function in the whole area of
+   * interest from a sample of cells.
+   *
+   * @param mapper function that returns the numbers to sum up
+   * @param <R> the numeric type that is returned by the `mapper` function
+   * @return the estimated sum of the results of the `mapper` function
+   */
+  @Contract(pure = true)
+  public <R extends Number> SampleEstimate estimatedSum(SerializableFunction<X, R> mapper)
+      throws Exception {
+    return this.map(mapper).estimatedSum();
+  }
+
   /**
    * Calculates the averages of the results.
    *
@@ -1206,7 +1455,7 @@ public abstract class MapReducer<X> implements
   @Contract(pure = true)
   public Double weightedAverage(SerializableFunction<X, WeightedValue> mapper) throws Exception {
     PayloadWithWeight<Double> runningSums =
-        this.map(mapper).reduce(
+        this.map(mapper).reduceOperation("weightedAverage").reduce(
             PayloadWithWeight::identitySupplier,
             PayloadWithWeight::accumulator,
             PayloadWithWeight::combiner
@@ -1362,7 +1611,7 @@ public abstract class MapReducer<X> implements
    */
   @Contract(pure = true)
   private <R extends Number> TDigest digest(SerializableFunction<X, R> mapper) throws Exception {
-    return this.map(mapper).reduce(
+    return this.map(mapper).reduceOperation("digest").reduce(
         TDigestReducer::identitySupplier,
         TDigestReducer::accumulator,
         TDigestReducer::combiner
@@ -1402,7 +1651,7 @@ public abstract class MapReducer<X> implements
    */
   @Contract(pure = true)
   public List<X> collect() throws Exception {
-    return this.reduce(
+    return this.reduceOperation("collect").reduce(
         MapReducer::collectIdentitySupplier,
         MapReducer::collectAccumulator,
         MapReducer::collectCombiner
@@ -1432,6 +1681,10 @@ public abstract class MapReducer<X> implements
 
   @Contract(pure = true)
   private Stream<X> streamInternal() throws Exception {
+    if (this.batchRecorder != null) {
+      // batched queries can only be executed via reduce operations
+      throw new UnsupportedOperationException("stream not supported in batched queries");
+    }
     checkTimeout();
     switch (this.grouping) {
       case NONE:
@@ -1452,23 +1705,26 @@ public abstract class MapReducer<X> implements
                 "Unimplemented data view: " + this.forClass.toString());
           }
         } else {
-          final SerializableFunction<Object, Iterable<X>> flatMapper = this.getFlatMapper();
+          // the results of the flatMap functions of all data of an entity are collected directly
+          // into a single output list
+          final SerializableBiFunction<List<X>, Object, List<X>> flatMapCollector =
+              this.getFlatMapAccumulator(MapReducer::collectAccumulator);
           if (this.forClass.equals(OSMContribution.class)) {
             return this.flatMapStreamCellsOSMContributionGroupedById(
                 (List<OSMContribution> inputList) -> {
-                  List<X> outputList = new LinkedList<>();
-                  inputList.stream()
-                      .map((SerializableFunction<OSMContribution, Iterable<X>>) flatMapper::apply)
-                      .forEach(data -> Iterables.addAll(outputList, data));
+                  List<X> outputList = new ArrayList<>();
+                  for (OSMContribution data : inputList) {
+                    flatMapCollector.apply(outputList, data);
+                  }
                   return outputList;
                 });
           } else if (this.forClass.equals(OSMEntitySnapshot.class)) {
             return this.flatMapStreamCellsOSMEntitySnapshotGroupedById(
                 (List<OSMEntitySnapshot> inputList) -> {
-                  List<X> outputList = new LinkedList<>();
-                  inputList.stream()
-                      .map((SerializableFunction<OSMEntitySnapshot, Iterable<X>>) flatMapper::apply)
-                      .forEach(data -> Iterables.addAll(outputList, data));
+                  List<X> outputList = new ArrayList<>();
+                  for (OSMEntitySnapshot data : inputList) {
+                    flatMapCollector.apply(outputList, data);
+                  }
                   return outputList;
                 });
           } else {
@@ -1477,15 +1733,7 @@ public abstract class MapReducer<X> implements
           }
         }
       case BY_ID:
-        final SerializableFunction<Object, Iterable<X>> flatMapper;
-        if (this.mappers.stream().noneMatch(MapFunction::isFlatMapper)) {
-          final SerializableFunction<Object, X> mapper = this.getMapper();
-          flatMapper = data -> Collections.singletonList(mapper.apply(data));
-          // todo: check if this is actually necessary, doesn't getFlatMapper() do the "same" in
-          // this case? should we add this as optimization case to getFlatMapper()??
-        } else {
-          flatMapper = this.getFlatMapper();
-        }
+        final SerializableFunction<Object, Iterable<X>> flatMapper = this.getFlatMapper();
         if (this.forClass.equals(OSMContribution.class)) {
           //noinspection Convert2MethodRef having just `mapper::apply` here is problematic, see https://github.com/GIScience/oshdb/pull/37
           final SerializableFunction<List<OSMContribution>, Iterable<X>> contributionFlatMapper =
@@ -1506,6 +1754,27 @@ public abstract class MapReducer<X> implements
     }
   }
 
+  // -----------------------------------------------------------------------------------------------
+  // Query planning
+  // -----------------------------------------------------------------------------------------------
+
+  /**
+   * Estimates the amount of data this query has to process, without running it.
+   *
+   * <p>The estimate is computed from the statistics catalog of the oshdb, taking into account the
+   * area of interest, the osm type filter and the tag filters set by the
+   * {@link #osmTag(String) osmTag} methods.</p>
+   *
+   * @return the estimated cost, or an empty optional if the oshdb has no statistics catalog
+   */
+  public Optional<OSHDBCostEstimate> estimateCost() {
+    return this.oshdb.estimateCost(
+        this.getCellIdRanges(),
+        this.typeFilter,
+        this.preFilterTagKeys.toArray(new int[0][])
+    );
+  }
+
   // -----------------------------------------------------------------------------------------------
   // Generic map-stream functions (internal).
   // These need to be implemented by the actual db/processing backend!
@@ -1763,16 +2032,54 @@ public abstract class MapReducer<X> implements
 
   // Helper that chains multiple oshEntity filters together
   protected CellIterator.OSHEntityFilter getPreFilter() {
-    return this.preFilters.isEmpty()
-        ? oshEntity -> true
-        : oshEntity -> {
-          for (SerializablePredicate<OSHEntity> filter : this.preFilters) {
-            if (!filter.test(oshEntity)) {
-              return false;
-            }
+    return new CellIterator.OSHEntityFilter() {
+      @Override
+      public boolean test(OSHEntity oshEntity) {
+        for (SerializablePredicate<OSHEntity> filter : preFilters) {
+          if (!filter.test(oshEntity)) {
+            return false;
           }
-          return true;
-        };
+        }
+        return true;
+      }
+
+      @Override
+      public int[][] getRequiredTagKeys() {
+        return preFilterTagKeys.toArray(new int[0][]);
+      }
+
+      @Override
+      public boolean mayMatch(CellId cellId) {
+        return isSampledCell(cellId);
+      }
+    };
+  }
+
+  // true if a cell is part of the random sample of cells, see sample()
+  private boolean isSampledCell(CellId cellId) {
+    if (this.sampleFraction >= 1.0) {
+      return true;
+    }
+    long hash = mixBits(mixBits(this.sampleSeed ^ cellId.getZoomLevel()) ^ cellId.getId());
+    // the upper 53 bits of the hash as a uniformly distributed number in [0, 1)
+    return (hash >>> 11) * 0x1.0p-53 < this.sampleFraction;
+  }
+
+  // the finalizer of the SplitMix64 pseudo-random number generator
+  private static long mixBits(long value) {
+    value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+    value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+    return value ^ (value >>> 31);
+  }
+
+  // the probability of each cell to be processed, see sample()
+  double getSampleFraction() {
+    return this.sampleFraction;
+  }
+
+  // the seed of the random sample of cells, see sample()
+  long getSampleSeed() {
+    return this.sampleSeed;
   }
 
   // Helper that chains multiple osmEntity filters together
@@ -1789,9 +2096,19 @@ public abstract class MapReducer<X> implements
         };
   }
 
-  // get all cell ids covered by the current area of interest's bounding box
+  // the grid the cells of the current oshdb are numbered with
+  protected GridTree getGrid() {
+    return this.oshdb.grid();
+  }
+
+  // the maximum number of partitions the cells of the current oshdb are split into
+  protected int getPartitions() {
+    return this.oshdb.partitions();
+  }
+
+  // get all cell ids covered by the current area of interest
   protected Iterable<CellIdRange> getCellIdRanges() {
-    XYGridTree grid = new XYGridTree(OSHDB.MAXZOOM);
+    GridTree grid = this.getGrid();
     if (this.bboxFilter == null
         || this.bboxFilter.getMinLon() >= this.bboxFilter.getMaxLon()
         || this.bboxFilter.getMinLat() >= this.bboxFilter.getMaxLat()) {
@@ -1799,9 +2116,48 @@ public abstract class MapReducer<X> implements
       LOG.warn("area of interest not set or empty");
       return Collections.emptyList();
     }
+    if (this.polyFilter != null) {
+      // skip the cells of the bbox which are outside of the polygon
+      return this.getPolyFilterCoverage(grid).getCellIdRanges();
+    }
     return grid.bbox2CellIdRanges(this.bboxFilter, true);
   }
 
+  // get the cells covered by the current polygonal area of interest
+  protected FastPolygonCellCoverage getPolyFilterCoverage(GridTree grid) {
+    return this.polyFilterCoverage.updateAndGet(coverage ->
+        coverage != null && coverage.getGrid() == grid
+            ? coverage
+            : new FastPolygonCellCoverage(this.getPolyFilter(), grid)
+    );
+  }
+
+  /**
+   * Returns a fingerprint of the current query, used in the keys of cached partial results.
+   *
+   * @param identity the identity value of the reduce operation
+   * @param includeAreaOfInterest if the fingerprint should depend on the area of interest
+   */
+  protected String getPartialResultFingerprint(Object identity, boolean includeAreaOfInterest) {
+    StringBuilder query = new StringBuilder()
+        .append(this.partialResultFingerprint).append('|')
+        .append(this.reduceOperation).append('|')
+        .append(this.forClass.getName()).append('|')
+        .append(this.grouping).append('|')
+        .append(this.typeFilter).append('|')
+        .append(this.tstamps.get()).append('|')
+        .append(identity == null ? null : identity.getClass().getName()).append('|')
+        .append(this.sampleFraction).append('|')
+        .append(this.sampleSeed);
+    if (includeAreaOfInterest) {
+      query.append('|').append(this.bboxFilter);
+      if (this.polyFilter != null) {
+        query.append('|').append(this.polyFilter.toText());
+      }
+    }
+    return Hashing.sha256().hashString(query, StandardCharsets.UTF_8).toString();
+  }
+
   // hack, so that we can use a variable that is of both Geometry and implements Polygonal (i.e.
   // Polygon or MultiPolygon) as required in further processing steps
   protected <P extends Geometry & Polygonal> P getPolyFilter() {
@@ -1809,49 +2165,128 @@ public abstract class MapReducer<X> implements
     return (P) this.polyFilter;
   }
 
-  // concatenates all applied `map` functions
+  // concatenates all applied `map` functions into a single function
   private SerializableFunction<Object, X> getMapper() {
-    // todo: maybe we can somehow optimize this?? at least for special cases like
-    // this.mappers.size() == 1
-    return (SerializableFunction<Object, X>) (data -> {
-      Object result = data;
-      for (MapFunction mapper : this.mappers) {
-        if (mapper.isFlatMapper()) {
-          assert false : "flatMap callback requested in getMapper";
-          throw new UnsupportedOperationException("cannot flat map this");
-        } else {
-          //noinspection unchecked – we don't know the actual intermediate types ¯\_(ツ)_/¯
-          result = mapper.apply(result);
-        }
-      }
-      //noinspection unchecked – after applying all mapper functions, the result type is X
-      return (X) result;
-    });
+    final MapFunction[] mappers = this.mappers.toArray(new MapFunction[0]);
+    if (Arrays.stream(mappers).anyMatch(MapFunction::isFlatMapper)) {
+      assert false : "flatMap callback requested in getMapper";
+      throw new UnsupportedOperationException("cannot flat map this");
+    }
+    switch (mappers.length) {
+      case 0:
+        //noinspection unchecked – without mapper functions, the result type is X
+        return data -> (X) data;
+      case 1:
+        //noinspection unchecked – after applying the only mapper function, the result type is X
+        return (SerializableFunction<Object, X>) mappers[0];
+      default:
+        return data -> {
+          Object result = data;
+          for (MapFunction mapper : mappers) {
+            //noinspection unchecked – we don't know the actual intermediate types ¯\_(ツ)_/¯
+            result = mapper.apply(result);
+          }
+          //noinspection unchecked – after applying all mapper functions, the result type is X
+          return (X) result;
+        };
+    }
   }
 
-  // concatenates all applied `flatMap` and `map` functions
+  // concatenates all applied `flatMap`, `filter` and `map` functions into a single function
   private SerializableFunction<Object, Iterable<X>> getFlatMapper() {
-    // todo: maybe we can somehow optimize this?? at least for special cases like
-    // this.mappers.size() == 1
-    return (SerializableFunction<Object, Iterable<X>>) (data -> {
-      List<Object> results = new LinkedList<>();
-      results.add(data);
-      for (MapFunction mapper : this.mappers) {
-        List<Object> newResults = new LinkedList<>();
-        if (mapper.isFlatMapper()) {
-          //noinspection unchecked – we don't know the actual intermediate types ¯\_(ツ)_/¯
-          results.forEach(result ->
-              Iterables.addAll(newResults, (Iterable<?>) mapper.apply(result))
-          );
-        } else {
-          //noinspection unchecked – we don't know the actual intermediate types ¯\_(ツ)_/¯
-          results.forEach(result -> newResults.add(mapper.apply(result)));
+    if (this.mappers.size() == 1 && this.mappers.get(0).isFlatMapper()
+        && !this.mappers.get(0).isFilter()) {
+      //noinspection unchecked – the only mapper function is a flat mapper returning Iterable<X>
+      return (SerializableFunction<Object, Iterable<X>>) this.mappers.get(0);
+    }
+    final SerializableBiFunction<List<X>, Object, List<X>> flatMapCollector =
+        this.getFlatMapAccumulator(MapReducer::collectAccumulator);
+    return data -> flatMapCollector.apply(new ArrayList<>(), data);
+  }
+
+  /**
+   * Fuses all applied `map`, `flatMap` and `filter` functions with an accumulator function.
+   *
+   * <p>The returned function pushes a data entry through the chain of functions and folds each of
+   * the results directly into the accumulation value, without collecting intermediate results in
+   * lists.</p>
+   */
+  <S> SerializableBiFunction<S, Object, S> getFlatMapAccumulator(
+      SerializableBiFunction<S, X, S> accumulator) {
+    final MapFunction[] mappers = this.mappers.toArray(new MapFunction[0]);
+    return (accumulationValue, data) ->
+        pushThroughMappers(mappers, 0, data, accumulationValue, accumulator);
+  }
+
+  // applies the (flat)map functions from the given stage on and accumulates the results
+  private static <S, X> S pushThroughMappers(MapFunction[] mappers, int stage, Object data,
+      S accumulationValue, SerializableBiFunction<S, X, S> accumulator) {
+    Object result = data;
+    for (int i = stage; i < mappers.length; i++) {
+      final MapFunction mapper = mappers[i];
+      if (mapper.isFilter()) {
+        if (!mapper.test(result)) {
+          return accumulationValue;
+        }
+      } else if (mapper.isFlatMapper()) {
+        //noinspection unchecked – we don't know the actual intermediate types ¯\_(ツ)_/¯
+        for (Object flatMappedResult : (Iterable<?>) mapper.apply(result)) {
+          accumulationValue = pushThroughMappers(
+              mappers, i + 1, flatMappedResult, accumulationValue, accumulator);
         }
-        results = newResults;
+        return accumulationValue;
+      } else {
+        //noinspection unchecked – we don't know the actual intermediate types ¯\_(ツ)_/¯
+        result = mapper.apply(result);
       }
-      //noinspection unchecked – after applying all mapper functions, the result type is List<X>
-      return (Iterable<X>) results;
-    });
+    }
+    //noinspection unchecked – after applying all mapper functions, the result type is X
+    return accumulator.apply(accumulationValue, (X) result);
+  }
+
+  /**
+   * Sets the name of the aggregation method which performs the following reduce operation.
+   *
+   * <p>The name is part of the keys of cached partial results, so that different aggregations of
+   * the same query never share results, even if they use the same type of reduced values. If a
+   * name is already set, it is kept: aggregation methods implemented on top of other ones (e.g.
+   * count via sum) are identified by the outermost method.</p>
+   *
+   * @param operation the name of the aggregation method, including any parameters it uses
+   * @return a copy of this mapReducer with the given name, or this mapReducer if it already has one
+   */
+  MapReducer<X> reduceOperation(String operation) {
+    if (this.reduceOperation != null) {
+      return this;
+    }
+    MapReducer<X> ret = this.copy();
+    ret.reduceOperation = operation;
+    return ret;
+  }
+
+  /**
+   * Returns a copy of this mapReducer which only uses the given filters.
+   *
+   * <p>All other filters, map functions and the grouping are removed, the returned mapReducer
+   * iterates over the plain data view. Used to execute the shared scan of a
+   * {@link MapReducerBatch}.</p>
+   */
+  <R> MapReducer<R> withFiltersOnly(EnumSet<OSMType> typeFilter,
+      CellIterator.OSHEntityFilter preFilter, CellIterator.OSMEntityFilter filter) {
+    MapReducer<X> ret = this.copy();
+    ret.batchRecorder = null;
+    ret.partialResultCache = null;
+    ret.grouping = Grouping.NONE;
+    ret.mappers.clear();
+    ret.typeFilter = typeFilter.clone();
+    ret.preFilters.clear();
+    ret.preFilters.add(preFilter::test);
+    ret.preFilterTagKeys.clear();
+    ret.preFilterTagKeys.addAll(Arrays.asList(preFilter.getRequiredTagKeys()));
+    ret.filters.clear();
+    ret.filters.add(filter::test);
+    //noinspection unchecked – without map functions, the result type is the type of the view
+    return (MapReducer<R>) ret;
   }
 
   // gets list of timestamps to use for zerofilling
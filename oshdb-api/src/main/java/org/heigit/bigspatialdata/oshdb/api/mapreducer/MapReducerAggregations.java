@@ -175,6 +175,87 @@ interface MapReducerAggregations<X> {
    */
   Object countUniq() throws Exception;
 
+  /**
+   * Estimates the number of unique values of the results.
+   *
+   * <p>
+   * Uses the HyperLogLog algorithm to estimate the number of distinct values in a map-reduce
+   * system: https://hal.archives-ouvertes.fr/hal-00406166/document
+   * </p>
+   *
+   * @return the estimated number of distinct values
+   */
+  Object estimatedCountUniq() throws Exception;
+
+  /**
+   * Estimates the number of unique values of the results, using sketches of the given precision.
+   *
+   * <p>
+   * Uses the HyperLogLog algorithm to estimate the number of distinct values in a map-reduce
+   * system: https://hal.archives-ouvertes.fr/hal-00406166/document
+   * </p>
+   *
+   * @param precision the precision of the sketches (between 4 and 18)
+   * @return the estimated number of distinct values
+   */
+  Object estimatedCountUniq(int precision) throws Exception;
+
+  /**
+   * Estimates the most frequent values of the results.
+   *
+   * <p>
+   * Uses the space-saving algorithm to find frequent values in a map-reduce system:
+   * https://www.cs.ucsb.edu/sites/default/files/documents/2005-23.pdf
+   * </p>
+   *
+   * @param k the number of values to return
+   * @return the most frequent values and their estimated counts
+   */
+  Object estimatedTopK(int k) throws Exception;
+
+  /**
+   * Estimates the most frequent values of the results, using sketches of the given capacity.
+   *
+   * <p>
+   * Uses the space-saving algorithm to find frequent values in a map-reduce system:
+   * https://www.cs.ucsb.edu/sites/default/files/documents/2005-23.pdf
+   * </p>
+   *
+   * @param k the number of values to return
+   * @param capacity the maximum number of values monitored by the sketches (at least k)
+   * @return the most frequent values and their estimated counts
+   */
+  Object estimatedTopK(int k, int capacity) throws Exception;
+
+  /**
+   * Estimates the number of results in the whole area of interest from a sample of cells.
+   *
+   * @return the estimated total count of features or modifications, with a confidence interval
+   */
+  Object estimatedCount() throws Exception;
+
+  /**
+   * Estimates the sum of the current data in the whole area of interest from a sample of cells.
+   *
+   * <p>
+   * The current data values need to be numeric (castable to "Number" type), otherwise a runtime
+   * exception will be thrown.
+   * </p>
+   *
+   * @return the estimated sum of the current data, with a confidence interval
+   */
+  Object estimatedSum() throws Exception;
+
+  /**
+   * Estimates the sum of the results provided by a given `mapper` function in the whole area of
+   * interest from a sample of cells.
+   *
+   * @param mapper function that returns the numbers to sum up
+   * @param <R> the numeric type that is returned by the `mapper` function
+   * @return the estimated sum of the results of the `mapper` function, with a confidence interval
+   */
+  <R extends Number> Object estimatedSum(SerializableFunction<X, R> mapper) throws Exception;
+
   /**
    * Calculates the averages of the results.
    *
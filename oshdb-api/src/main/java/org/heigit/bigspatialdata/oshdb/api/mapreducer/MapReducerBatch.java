@@ -0,0 +1,384 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBDatabase;
+import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableBiFunction;
+import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableBinaryOperator;
+import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableSupplier;
+import org.heigit.bigspatialdata.oshdb.api.object.OSMEntitySnapshot;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.celliterator.CellIterator;
+
+/**
+ * Executes multiple queries on the same data in a single pass.
+ *
+ * <p>Example: <code>oshdb.batch().add(mr1, mr -&gt; mr.count()).add(mr2, mr -&gt;
+ * mr.aggregateByTimestamp().sum(...)).execute()</code>.</p>
+ *
+ * <p>The reduce operations of all entity snapshot queries with the same timestamps and area of
+ * interest are executed in one shared scan of the data: every cell is read and iterated only once
+ * and each entity snapshot (including its lazily built geometry) is passed on to all queries it
+ * matches. Other queries (e.g. of the contribution view, whose results depend on the exact
+ * filters used while iterating the data) are executed one after another.</p>
+ *
+ * <p>To find out which reduce operations a query uses, each query function is called twice: once
+ * with a mapReducer which records the reduce operations (and returns empty results), and once more
+ * after the shared scan to compute the final result from the results of the shared scan. The
+ * query functions therefore must not have side effects.</p>
+ */
+public class MapReducerBatch {
+  /**
+   * A query function, which computes a result from a mapReducer (e.g. <code>mr -&gt;
+   * mr.count()</code>).
+   *
+   * @param <X> the type of the mapReducer
+   * @param <R> the type of the result
+   */
+  @FunctionalInterface
+  public interface Query<X, R> {
+    R apply(MapReducer<X> mapReducer) throws Exception;
+  }
+
+  private final OSHDBDatabase oshdb;
+  private final List<BatchEntry<?>> entries = new ArrayList<>();
+
+  public MapReducerBatch(OSHDBDatabase oshdb) {
+    this.oshdb = oshdb;
+  }
+
+  /**
+   * Adds a query to this batch.
+   *
+   * @param mapReducer the mapReducer to run the query on
+   * @param query a function computing the result of the query from the mapReducer
+   * @param <X> the type of the mapReducer
+   * @return this batch (can be used to chain multiple commands together)
+   */
+  public <X> MapReducerBatch add(MapReducer<X> mapReducer, Query<X, ?> query) {
+    if (mapReducer.oshdb != this.oshdb) {
+      throw new IllegalArgumentException("all queries of a batch must use the same oshdb");
+    }
+    this.entries.add(new BatchEntry<>(mapReducer, query));
+    return this;
+  }
+
+  /**
+   * Executes all queries of this batch.
+   *
+   * @return the results of the queries, in the order they were added to this batch
+   * @throws Exception if one of the queries throws an exception
+   */
+  public List<Object> execute() throws Exception {
+    // collect the reduce operations of all queries, grouped by the data they are iterating over
+    Map<List<Object>, List<Reduction<?, ?>>> scans = new LinkedHashMap<>();
+    for (BatchEntry<?> entry : this.entries) {
+      entry.record();
+      if (entry.recorder != null) {
+        for (Reduction<?, ?> reduction : entry.recorder.reductions) {
+          scans.computeIfAbsent(reduction.getScanKey(), ignored -> new ArrayList<>())
+              .add(reduction);
+        }
+      }
+    }
+    for (List<Reduction<?, ?>> reductions : scans.values()) {
+      if (reductions.size() == 1) {
+        reductions.get(0).execute();
+      } else {
+        executeSharedScan(reductions);
+      }
+    }
+    List<Object> results = new ArrayList<>(this.entries.size());
+    for (BatchEntry<?> entry : this.entries) {
+      results.add(entry.replay());
+    }
+    return results;
+  }
+
+  // executes the reduce operations of multiple queries with a single combined query
+  private static void executeSharedScan(List<Reduction<?, ?>> reductions) throws Exception {
+    final SharedReduce[] sharedReduces = new SharedReduce[reductions.size()];
+    final EnumSet<OSMType> typeFilter = EnumSet.noneOf(OSMType.class);
+    for (int i = 0; i < sharedReduces.length; i++) {
+      sharedReduces[i] = reductions.get(i).getSharedReduce();
+      typeFilter.addAll(sharedReduces[i].typeFilter);
+    }
+    MapReducer<OSMEntitySnapshot> combined = reductions.get(0).mapReducer.withFiltersOnly(
+        typeFilter,
+        new SharedPreFilter(sharedReduces),
+        osmEntity -> Arrays.stream(sharedReduces).anyMatch(shared -> shared.test(osmEntity))
+    );
+    final int n = sharedReduces.length;
+    Object[] results = combined.groupByEntity().reduce(
+        () -> {
+          Object[] identity = new Object[n];
+          for (int i = 0; i < n; i++) {
+            identity[i] = sharedReduces[i].identitySupplier.get();
+          }
+          return identity;
+        },
+        (accumulationValues, snapshots) -> {
+          for (int i = 0; i < n; i++) {
+            accumulationValues[i] = sharedReduces[i].accumulate(accumulationValues[i], snapshots);
+          }
+          return accumulationValues;
+        },
+        (a, b) -> {
+          Object[] combinedValues = new Object[n];
+          for (int i = 0; i < n; i++) {
+            combinedValues[i] = sharedReduces[i].combiner.apply(a[i], b[i]);
+          }
+          return combinedValues;
+        }
+    );
+    for (int i = 0; i < n; i++) {
+      reductions.get(i).result = results[i];
+    }
+  }
+
+  /**
+   * A query of a batch.
+   */
+  private static class BatchEntry<X> {
+    private final MapReducer<X> mapReducer;
+    private final Query<X, ?> query;
+    // null if the reduce operations of the query couldn't be recorded
+    private Recorder recorder = null;
+
+    BatchEntry(MapReducer<X> mapReducer, Query<X, ?> query) {
+      this.mapReducer = mapReducer;
+      this.query = query;
+    }
+
+    void record() {
+      Recorder recorder = new Recorder();
+      try {
+        this.query.apply(this.withRecorder(recorder));
+      } catch (Exception e) {
+        // the query will be executed (and fail) on its own
+        return;
+      }
+      this.recorder = recorder;
+    }
+
+    Object replay() throws Exception {
+      if (this.recorder == null) {
+        return this.query.apply(this.mapReducer);
+      }
+      this.recorder.replaying = true;
+      Object result = this.query.apply(this.withRecorder(this.recorder));
+      if (this.recorder.replayed != this.recorder.reductions.size()) {
+        throw new IllegalStateException("batched query used different reduce operations");
+      }
+      return result;
+    }
+
+    private MapReducer<X> withRecorder(Recorder recorder) {
+      MapReducer<X> ret = this.mapReducer.copy();
+      ret.batchRecorder = recorder;
+      return ret;
+    }
+  }
+
+  /**
+   * Records the reduce operations of a query, and later replays their results.
+   */
+  static class Recorder {
+    private final List<Reduction<?, ?>> reductions = new ArrayList<>();
+    private boolean replaying = false;
+    private int replayed = 0;
+
+    <X, S> S reduce(
+        MapReducer<X> mapReducer,
+        SerializableSupplier<S> identitySupplier,
+        SerializableBiFunction<S, X, S> accumulator,
+        SerializableBinaryOperator<S> combiner
+    ) {
+      if (!this.replaying) {
+        this.reductions.add(new Reduction<>(mapReducer, identitySupplier, accumulator, combiner));
+        return identitySupplier.get();
+      }
+      if (this.replayed >= this.reductions.size()) {
+        throw new IllegalStateException("batched query used different reduce operations");
+      }
+      //noinspection unchecked – the replayed reduce operations are the recorded ones
+      return (S) this.reductions.get(this.replayed++).result;
+    }
+  }
+
+  /**
+   * A recorded reduce operation of a query.
+   */
+  private static class Reduction<X, S> {
+    private final MapReducer<X> mapReducer;
+    private final SerializableSupplier<S> identitySupplier;
+    private final SerializableBiFunction<S, X, S> accumulator;
+    private final SerializableBinaryOperator<S> combiner;
+    private Object result = null;
+
+    Reduction(MapReducer<X> mapReducer, SerializableSupplier<S> identitySupplier,
+        SerializableBiFunction<S, X, S> accumulator, SerializableBinaryOperator<S> combiner) {
+      this.mapReducer = mapReducer.copy();
+      this.mapReducer.batchRecorder = null;
+      this.identitySupplier = identitySupplier;
+      this.accumulator = accumulator;
+      this.combiner = combiner;
+    }
+
+    boolean isShareable() {
+      return this.mapReducer.forClass.equals(OSMEntitySnapshot.class);
+    }
+
+    // reduce operations with the same key iterate over exactly the same entity snapshots
+    List<Object> getScanKey() {
+      if (!this.isShareable()) {
+        return Collections.singletonList(this);
+      }
+      return Arrays.asList(
+          this.mapReducer.getClass(),
+          this.mapReducer.keytables,
+          this.mapReducer.tstamps.get(),
+          this.mapReducer.bboxFilter,
+          this.mapReducer.getPolyFilter() == null ? null : this.mapReducer.getPolyFilter().toText(),
+          this.mapReducer.getSampleFraction(),
+          this.mapReducer.getSampleSeed()
+      );
+    }
+
+    // executes this reduce operation on its own
+    void execute() throws Exception {
+      this.result = this.mapReducer.reduce(this.identitySupplier, this.accumulator, this.combiner);
+    }
+
+    @SuppressWarnings("unchecked") // the types of the reduce functions match each other
+    SharedReduce getSharedReduce() {
+      return new SharedReduce(
+          this.mapReducer.typeFilter,
+          this.mapReducer.getPreFilter(),
+          this.mapReducer.getFilter(),
+          this.mapReducer.grouping == MapReducer.Grouping.BY_ID,
+          (SerializableSupplier<Object>) this.identitySupplier,
+          (SerializableBiFunction<Object, Object, Object>)
+              (SerializableBiFunction<?, Object, ?>) this.mapReducer.getFlatMapAccumulator(
+                  this.accumulator),
+          (SerializableBinaryOperator<Object>) this.combiner
+      );
+    }
+  }
+
+  /**
+   * The part of a reduce operation executed in a shared scan.
+   */
+  private static class SharedReduce implements Serializable {
+    private final EnumSet<OSMType> typeFilter;
+    private final CellIterator.OSHEntityFilter preFilter;
+    private final CellIterator.OSMEntityFilter filter;
+    private final boolean groupedById;
+    private final SerializableSupplier<Object> identitySupplier;
+    private final SerializableBiFunction<Object, Object, Object> accumulator;
+    private final SerializableBinaryOperator<Object> combiner;
+
+    SharedReduce(EnumSet<OSMType> typeFilter, CellIterator.OSHEntityFilter preFilter,
+        CellIterator.OSMEntityFilter filter, boolean groupedById,
+        SerializableSupplier<Object> identitySupplier,
+        SerializableBiFunction<Object, Object, Object> accumulator,
+        SerializableBinaryOperator<Object> combiner) {
+      this.typeFilter = typeFilter.clone();
+      this.preFilter = preFilter;
+      this.filter = filter;
+      this.groupedById = groupedById;
+      this.identitySupplier = identitySupplier;
+      this.accumulator = accumulator;
+      this.combiner = combiner;
+    }
+
+    boolean test(OSHEntity oshEntity) {
+      return this.typeFilter.contains(oshEntity.getType()) && this.preFilter.test(oshEntity);
+    }
+
+    boolean test(OSMEntity osmEntity) {
+      return this.typeFilter.contains(osmEntity.getType()) && this.filter.test(osmEntity);
+    }
+
+    // accumulates the matching snapshots of an entity
+    Object accumulate(Object accumulationValue, List<OSMEntitySnapshot> snapshots) {
+      if (!this.test(snapshots.get(0).getOSHEntity())) {
+        return accumulationValue;
+      }
+      if (this.groupedById) {
+        List<OSMEntitySnapshot> matching = new ArrayList<>(snapshots.size());
+        for (OSMEntitySnapshot snapshot : snapshots) {
+          if (this.filter.test(snapshot.getEntity())) {
+            matching.add(snapshot);
+          }
+        }
+        return matching.isEmpty()
+            ? accumulationValue
+            : this.accumulator.apply(accumulationValue, matching);
+      }
+      for (OSMEntitySnapshot snapshot : snapshots) {
+        if (this.filter.test(snapshot.getEntity())) {
+          accumulationValue = this.accumulator.apply(accumulationValue, snapshot);
+        }
+      }
+      return accumulationValue;
+    }
+  }
+
+  /**
+   * Matches all entities matching any of the pre-filters of the shared reduce operations.
+   */
+  private static class SharedPreFilter implements CellIterator.OSHEntityFilter {
+    private final SharedReduce[] sharedReduces;
+    private final int[][] requiredTagKeys;
+
+    SharedPreFilter(SharedReduce[] sharedReduces) {
+      this.sharedReduces = sharedReduces;
+      // every matching entity has one of the tag keys of (any) one of the required groups of tag
+      // keys of each reduce operation
+      TreeSet<Integer> tagKeys = new TreeSet<>();
+      boolean restricted = true;
+      for (SharedReduce sharedReduce : sharedReduces) {
+        int[][] groups = sharedReduce.preFilter.getRequiredTagKeys();
+        if (groups.length == 0) {
+          restricted = false;
+          break;
+        }
+        int[] smallestGroup = groups[0];
+        for (int[] group : groups) {
+          if (group.length < smallestGroup.length) {
+            smallestGroup = group;
+          }
+        }
+        Arrays.stream(smallestGroup).forEach(tagKeys::add);
+      }
+      this.requiredTagKeys = restricted
+          ? new int[][] { tagKeys.stream().mapToInt(Integer::intValue).toArray() }
+          : new int[0][];
+    }
+
+    @Override
+    public boolean test(OSHEntity oshEntity) {
+      for (SharedReduce sharedReduce : this.sharedReduces) {
+        if (sharedReduce.test(oshEntity)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public int[][] getRequiredTagKeys() {
+      return this.requiredTagKeys;
+    }
+  }
+}
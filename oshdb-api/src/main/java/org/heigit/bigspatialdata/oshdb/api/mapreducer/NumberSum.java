@@ -0,0 +1,64 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer;
+
+import java.io.Serializable;
+
+/**
+ * Mutable sum of numeric values, stored as primitive values.
+ *
+ * <p>For internal use to do faster aggregation during reduce operations. The resulting sum has the
+ * same type as one obtained by summing up the values with
+ * {@link org.heigit.bigspatialdata.oshdb.api.generic.NumberUtils#add NumberUtils.add} starting at
+ * (Integer) zero: an Integer if all values are integers, a Double otherwise.</p>
+ */
+class NumberSum implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private int intSum = 0;
+  private double doubleSum = 0.0;
+  private boolean isDouble = false;
+
+  static NumberSum identitySupplier() {
+    return new NumberSum();
+  }
+
+  static NumberSum accumulator(NumberSum acc, Number cur) {
+    if (!acc.isDouble && cur instanceof Integer) {
+      acc.intSum += cur.intValue();
+    } else {
+      acc.toDouble();
+      acc.doubleSum += cur.doubleValue();
+    }
+    return acc;
+  }
+
+  static NumberSum countAccumulator(NumberSum acc, Object ignored) {
+    acc.intSum++;
+    return acc;
+  }
+
+  static NumberSum combiner(NumberSum a, NumberSum b) {
+    NumberSum result = new NumberSum();
+    if (!a.isDouble && !b.isDouble) {
+      result.intSum = a.intSum + b.intSum;
+    } else {
+      result.isDouble = true;
+      result.doubleSum = a.doubleValue() + b.doubleValue();
+    }
+    return result;
+  }
+
+  Number getValue() {
+    return this.isDouble ? (Number) this.doubleSum : (Number) this.intSum;
+  }
+
+  private double doubleValue() {
+    return this.isDouble ? this.doubleSum : this.intSum;
+  }
+
+  private void toDouble() {
+    if (!this.isDouble) {
+      this.doubleSum = this.intSum;
+      this.isDouble = true;
+    }
+  }
+}
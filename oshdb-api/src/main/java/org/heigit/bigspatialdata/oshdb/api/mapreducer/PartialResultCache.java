@@ -0,0 +1,230 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer;
+
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of the partial (per cell) results of reduce operations.
+ *
+ * <p>Results are stored in serialized form, which allows to bound the cache by its size in bytes
+ * and makes sure that cached results can't be altered by later (mutating) reduce steps. When the
+ * cache is full, the least recently used results are evicted, either to an (optional) on-disk
+ * tier or dropped completely. The on-disk tier is not bounded, it can be emptied with
+ * {@link #clear()}.</p>
+ *
+ * <p>The cache doesn't detect changes of the underlying data: when an oshdb is updated, the cache
+ * has to be cleared (or the queries need to use new fingerprints).</p>
+ *
+ * <p>See {@link MapReducer#cachePartialResults(PartialResultCache, String)}.</p>
+ */
+public class PartialResultCache {
+  private static final Logger LOG = LoggerFactory.getLogger(PartialResultCache.class);
+
+  private final long maxBytes;
+  private final Path directory;
+  // in-memory tier, in access order
+  private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytes = 0;
+
+  private final AtomicLong hits = new AtomicLong(0);
+  private final AtomicLong misses = new AtomicLong(0);
+
+  /**
+   * Creates an in-memory cache.
+   *
+   * @param maxBytes the maximum size of the cached results in bytes
+   */
+  public PartialResultCache(long maxBytes) {
+    this(maxBytes, null);
+  }
+
+  /**
+   * Creates a cache with an on-disk tier.
+   *
+   * @param maxBytes the maximum size of the results cached in memory in bytes
+   * @param directory a directory to store results evicted from memory in, or null
+   */
+  public PartialResultCache(long maxBytes, Path directory) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("maximum size must not be negative");
+    }
+    this.maxBytes = maxBytes;
+    this.directory = directory;
+    if (directory != null) {
+      try {
+        Files.createDirectories(directory);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Returns a cached result.
+   *
+   * @param key the key of the result, see {@link #put(String, Object)}
+   * @param <S> the type of the result
+   * @return a copy of the cached result, or nothing if it isn't in the cache
+   */
+  public <S> Optional<S> get(String key) {
+    byte[] data;
+    synchronized (this) {
+      data = this.entries.get(key);
+    }
+    if (data == null && this.directory != null) {
+      data = this.readFromDisk(key);
+      if (data != null) {
+        this.putInMemory(key, data);
+      }
+    }
+    if (data == null) {
+      this.misses.incrementAndGet();
+      return Optional.empty();
+    }
+    this.hits.incrementAndGet();
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+      //noinspection unchecked – the type of results is part of their key
+      return Optional.of((S) in.readObject());
+    } catch (IOException | ClassNotFoundException e) {
+      LOG.warn("could not read cached result {}", key, e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Stores a result in the cache.
+   *
+   * <p>Results which can't be serialized are not cached.</p>
+   *
+   * @param key a key identifying the query and the cell of the result
+   * @param value the result
+   */
+  public void put(String key, Object value) {
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(data)) {
+      out.writeObject(value);
+    } catch (IOException e) {
+      LOG.warn("could not cache result {}", key, e);
+      return;
+    }
+    this.putInMemory(key, data.toByteArray());
+  }
+
+  /**
+   * Removes all results from the cache (including the on-disk tier).
+   */
+  public void clear() {
+    synchronized (this) {
+      this.entries.clear();
+      this.bytes = 0;
+    }
+    if (this.directory != null) {
+      try (Stream<Path> files = Files.list(this.directory)) {
+        Iterator<Path> it = files.filter(file -> file.toString().endsWith(".bin")).iterator();
+        while (it.hasNext()) {
+          Files.deleteIfExists(it.next());
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Returns the size of the results cached in memory in bytes.
+   */
+  public synchronized long getBytes() {
+    return this.bytes;
+  }
+
+  /**
+   * Returns the number of lookups of results which were found in the cache.
+   */
+  public long getHitCount() {
+    return this.hits.get();
+  }
+
+  /**
+   * Returns the number of lookups of results which were not found in the cache.
+   */
+  public long getMissCount() {
+    return this.misses.get();
+  }
+
+  private void putInMemory(String key, byte[] data) {
+    if (data.length > this.maxBytes) {
+      this.writeToDisk(key, data);
+      return;
+    }
+    synchronized (this) {
+      byte[] previous = this.entries.put(key, data);
+      if (previous != null) {
+        this.bytes -= previous.length;
+      }
+      this.bytes += data.length;
+      Iterator<Map.Entry<String, byte[]>> eldest = this.entries.entrySet().iterator();
+      while (this.bytes > this.maxBytes) {
+        Map.Entry<String, byte[]> evicted = eldest.next();
+        eldest.remove();
+        this.bytes -= evicted.getValue().length;
+        this.writeToDisk(evicted.getKey(), evicted.getValue());
+      }
+    }
+  }
+
+  private Path fileOf(String key) {
+    return this.directory.resolve(
+        Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString() + ".bin");
+  }
+
+  private void writeToDisk(String key, byte[] data) {
+    if (this.directory == null) {
+      return;
+    }
+    try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(this.fileOf(key)))) {
+      out.writeUTF(key);
+      out.write(data);
+    } catch (IOException e) {
+      LOG.warn("could not write cached result {} to disk", key, e);
+    }
+  }
+
+  private byte[] readFromDisk(String key) {
+    Path file = this.fileOf(key);
+    if (!Files.exists(file)) {
+      return null;
+    }
+    try {
+      byte[] content = Files.readAllBytes(file);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+      if (!key.equals(in.readUTF())) {
+        // hash collision
+        return null;
+      }
+      byte[] data = new byte[in.available()];
+      in.readFully(data);
+      return data;
+    } catch (IOException e) {
+      LOG.warn("could not read cached result {} from disk", key, e);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import org.heigit.bigspatialdata.oshdb.api.generic.SampleEstimate;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.heigit.bigspatialdata.oshdb.util.celliterator.CellIterator;
+
+/**
+ * Mutable sum of numeric values of randomly sampled cells, which also tracks the sums of the
+ * individual cells.
+ *
+ * <p>For internal use to estimate sums from a random sample of cells (see
+ * {@link MapReducer#sample(double, long)}). The backends reduce the results of each cell starting
+ * with a new identity value and combine the results of different cells afterwards, so the values
+ * accumulated before a combine step always belong to a single cell.</p>
+ *
+ * <p>The estimate is the Horvitz-Thompson estimator of the total: the sum of the sampled cells
+ * divided by the inclusion probability p of each cell, with an estimated variance of
+ * (1-p)/p^2 times the sum of the squared cell sums.</p>
+ *
+ * <p>The partitions of a cell are always sampled together, so they form a single sampling unit.
+ * As the backends process them independently, the sums of partitioned oshdbs are kept by cell
+ * (see {@link CellIterator#getCurrentCellId()}) until the estimate is computed.</p>
+ */
+class SampledSum implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  // if the sums of the partitions of a cell have to be merged
+  private final boolean partitioned;
+  // cell (see CellId#getLevelId) and sum of the values of a single cell, not yet added to the
+  // totals
+  private Long cell = null;
+  private double cellSum = 0.0;
+  private double sum = 0.0;
+  private double squaredCellSums = 0.0;
+  // sums of the cells of a partitioned oshdb combined into this object, by cell
+  private HashMap<Long, Double> cellSums = null;
+
+  SampledSum(boolean partitioned) {
+    this.partitioned = partitioned;
+  }
+
+  static SampledSum accumulator(SampledSum acc, Number cur) {
+    acc.setCell();
+    acc.cellSum += cur.doubleValue();
+    return acc;
+  }
+
+  static SampledSum countAccumulator(SampledSum acc, Object ignored) {
+    acc.setCell();
+    acc.cellSum++;
+    return acc;
+  }
+
+  /**
+   * Combines the sums of two sets of cells.
+   *
+   * <p>Without partitions, this is a pure function. Otherwise the cell sums of the smaller object
+   * are merged into the larger one, like the groups of {@link MapAggregator}: objects without any
+   * cells are never altered (they might be a shared identity value), and all other objects are
+   * not used anymore after being combined.</p>
+   */
+  static SampledSum combiner(SampledSum a, SampledSum b) {
+    if (!a.partitioned) {
+      SampledSum result = new SampledSum(false);
+      result.sum = a.getSum() + b.getSum();
+      result.squaredCellSums = a.getSquaredCellSums() + b.getSquaredCellSums();
+      return result;
+    }
+    if (a.isEmpty()) {
+      return b;
+    }
+    if (b.isEmpty()) {
+      return a;
+    }
+    a.moveCellSumToCellSums();
+    b.moveCellSumToCellSums();
+    SampledSum larger = a.cellSums.size() >= b.cellSums.size() ? a : b;
+    SampledSum smaller = larger == a ? b : a;
+    for (Map.Entry<Long, Double> entry : smaller.cellSums.entrySet()) {
+      larger.cellSums.merge(entry.getKey(), entry.getValue(), Double::sum);
+    }
+    return larger;
+  }
+
+  /**
+   * Returns the estimated total of all cells.
+   *
+   * @param fraction the probability of each cell to be sampled
+   */
+  SampleEstimate getEstimate(double fraction) {
+    return new SampleEstimate(
+        this.getSum() / fraction,
+        Math.sqrt((1 - fraction) * this.getSquaredCellSums()) / fraction
+    );
+  }
+
+  // the values of a partitioned oshdb are kept by cell, so they need the cell they belong to
+  private void setCell() {
+    if (this.partitioned && this.cell == null) {
+      CellId cellId = CellIterator.getCurrentCellId();
+      // values without a known cell are merged into one (conservatively large) sampling unit
+      this.cell = cellId == null ? Long.MIN_VALUE : cellId.getLevelId();
+    }
+  }
+
+  private boolean isEmpty() {
+    return this.cell == null && this.cellSums == null;
+  }
+
+  private void moveCellSumToCellSums() {
+    if (this.cellSums == null) {
+      this.cellSums = new HashMap<>();
+    }
+    if (this.cell != null) {
+      this.cellSums.merge(this.cell, this.cellSum, Double::sum);
+      this.cell = null;
+      this.cellSum = 0.0;
+    }
+  }
+
+  private double getSum() {
+    double result = this.sum + this.cellSum;
+    if (this.cellSums != null) {
+      for (double value : this.cellSums.values()) {
+        result += value;
+      }
+    }
+    return result;
+  }
+
+  private double getSquaredCellSums() {
+    double result = this.squaredCellSums + this.cellSum * this.cellSum;
+    if (this.cellSums != null) {
+      for (double value : this.cellSums.values()) {
+        result += value * value;
+      }
+    }
+    return result;
+  }
+}
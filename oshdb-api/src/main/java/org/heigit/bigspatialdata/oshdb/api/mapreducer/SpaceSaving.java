@@ -0,0 +1,191 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Space-saving sketch to find the most frequent values in a map-reduce system.
+ *
+ * <p>See: https://www.cs.ucsb.edu/sites/default/files/documents/2005-23.pdf (the algorithm) and
+ * https://www.cs.utah.edu/~jeffp/papers/merge-summ.pdf (merging of sketches).</p>
+ *
+ * <p>The sketch monitors at most `capacity` values. The counts of the monitored values are
+ * overestimated by at most n/capacity (where n is the total number of values added to the
+ * sketch), and every value occurring more often than that is guaranteed to be monitored.</p>
+ *
+ * @param <X> the type of the counted values
+ */
+class SpaceSaving<X> implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The default capacity used for a given number of requested top values.
+   */
+  static int defaultCapacity(int k) {
+    return Math.max(10 * k, 100);
+  }
+
+  private final int capacity;
+  // min-heap of the monitored values, ordered by their counts
+  private int size = 0;
+  private Object[] items;
+  private long[] counts;
+  // position of each monitored value in the heap
+  private transient HashMap<X, Integer> positions = new HashMap<>();
+
+  SpaceSaving(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    this.capacity = capacity;
+    int initialSize = Math.min(capacity, 8);
+    this.items = new Object[initialSize];
+    this.counts = new long[initialSize];
+  }
+
+  static <X> SpaceSaving<X> accumulator(SpaceSaving<X> acc, X cur) {
+    acc.add(cur);
+    return acc;
+  }
+
+  static <X> SpaceSaving<X> combiner(SpaceSaving<X> a, SpaceSaving<X> b) {
+    if (b.size == 0) {
+      return a;
+    } else if (a.size == 0) {
+      return b;
+    }
+    // values not monitored by a full sketch can have occurred at most as often as its minimum
+    final long minA = a.size == a.capacity ? a.counts[0] : 0;
+    final long minB = b.size == b.capacity ? b.counts[0] : 0;
+    Set<X> values = new HashSet<>(a.positions.keySet());
+    values.addAll(b.positions.keySet());
+    List<Entry<X, Long>> merged = new ArrayList<>(values.size());
+    for (X value : values) {
+      Integer posA = a.positions.get(value);
+      Integer posB = b.positions.get(value);
+      merged.add(new SimpleImmutableEntry<>(
+          value,
+          (posA != null ? a.counts[posA] : minA) + (posB != null ? b.counts[posB] : minB)
+      ));
+    }
+    merged.sort(Entry.<X, Long>comparingByValue().reversed());
+    SpaceSaving<X> result = new SpaceSaving<>(Math.max(a.capacity, b.capacity));
+    for (Entry<X, Long> entry : merged.subList(0, Math.min(merged.size(), result.capacity))) {
+      result.push(entry.getKey(), entry.getValue());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the (up to) k most frequent values and their estimated counts, ordered by descending
+   * counts.
+   */
+  @SuppressWarnings("unchecked") // items only contains values of type X
+  List<Entry<X, Long>> top(int k) {
+    List<Entry<X, Long>> result = new ArrayList<>(this.size);
+    for (int i = 0; i < this.size; i++) {
+      result.add(new SimpleImmutableEntry<>((X) this.items[i], this.counts[i]));
+    }
+    result.sort(Entry.<X, Long>comparingByValue().reversed());
+    return new ArrayList<>(result.subList(0, Math.min(k, result.size())));
+  }
+
+  private void add(X value) {
+    Integer pos = this.positions.get(value);
+    if (pos != null) {
+      this.counts[pos]++;
+      this.siftDown(pos);
+    } else if (this.size < this.capacity) {
+      this.push(value, 1);
+    } else {
+      // replace the least frequent monitored value
+      this.positions.remove(this.items[0]);
+      this.items[0] = value;
+      this.counts[0]++;
+      this.positions.put(value, 0);
+      this.siftDown(0);
+    }
+  }
+
+  private void push(X value, long count) {
+    if (this.size == this.items.length) {
+      int newLength = Math.min(this.capacity, Math.max(8, this.items.length * 2));
+      this.items = Arrays.copyOf(this.items, newLength);
+      this.counts = Arrays.copyOf(this.counts, newLength);
+    }
+    int pos = this.size++;
+    this.items[pos] = value;
+    this.counts[pos] = count;
+    this.positions.put(value, pos);
+    this.siftUp(pos);
+  }
+
+  private void siftUp(int pos) {
+    while (pos > 0) {
+      int parent = (pos - 1) / 2;
+      if (this.counts[parent] <= this.counts[pos]) {
+        return;
+      }
+      this.swap(pos, parent);
+      pos = parent;
+    }
+  }
+
+  private void siftDown(int pos) {
+    while (true) {
+      int child = 2 * pos + 1;
+      if (child >= this.size) {
+        return;
+      }
+      if (child + 1 < this.size && this.counts[child + 1] < this.counts[child]) {
+        child++;
+      }
+      if (this.counts[pos] <= this.counts[child]) {
+        return;
+      }
+      this.swap(pos, child);
+      pos = child;
+    }
+  }
+
+  @SuppressWarnings("unchecked") // items only contains values of type X
+  private void swap(int i, int j) {
+    Object item = this.items[i];
+    this.items[i] = this.items[j];
+    this.items[j] = item;
+    long count = this.counts[i];
+    this.counts[i] = this.counts[j];
+    this.counts[j] = count;
+    this.positions.put((X) this.items[i], i);
+    this.positions.put((X) this.items[j], j);
+  }
+
+  // only the used part of the heap is written, without modifying the sketch
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    ObjectOutputStream.PutField fields = out.putFields();
+    fields.put("capacity", this.capacity);
+    fields.put("size", this.size);
+    fields.put("items", Arrays.copyOf(this.items, this.size));
+    fields.put("counts", Arrays.copyOf(this.counts, this.size));
+    out.writeFields();
+  }
+
+  @SuppressWarnings("unchecked") // items only contains values of type X
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    this.positions = new HashMap<>();
+    for (int i = 0; i < this.size; i++) {
+      this.positions.put((X) this.items[i], i);
+    }
+  }
+}
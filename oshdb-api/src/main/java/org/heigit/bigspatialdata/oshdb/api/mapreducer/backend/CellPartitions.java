@@ -0,0 +1,94 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBDatabase;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+
+/**
+ * Numbers of partitions of the grid cells a query reads from the caches of the ignite backends,
+ * see {@link CellId#getLevelId(int, long, int)}.
+ *
+ * <p>Only a few oversized cells are split into partitions. If the oshdb has a statistics catalog,
+ * it is used to find these cells, so that only the keys of existing partitions are looked up.
+ * Otherwise every cell is assumed to have the maximum number of partitions of the oshdb.</p>
+ */
+class CellPartitions implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final int maxPartitions;
+  // numbers of partitions of the cells with more than one partition by their level id, or null
+  // if they are not known
+  private final HashMap<Long, Integer> partitionedCells;
+
+  CellPartitions(int maxPartitions, HashMap<Long, Integer> partitionedCells) {
+    this.maxPartitions = Math.max(1, maxPartitions);
+    this.partitionedCells = partitionedCells;
+  }
+
+  /**
+   * Returns the partitions of the cells of the given types and ranges of an oshdb.
+   */
+  static CellPartitions of(OSHDBDatabase oshdb, Iterable<OSMType> types,
+      Iterable<CellIdRange> cellIdRanges) {
+    final int maxPartitions = oshdb.partitions();
+    if (maxPartitions <= 1 || !oshdb.hasStatistics()) {
+      return new CellPartitions(maxPartitions, null);
+    }
+    HashMap<Long, Integer> partitionedCells = new HashMap<>();
+    for (OSMType type : types) {
+      for (CellIdRange cellIdRange : cellIdRanges) {
+        oshdb.statistics(type, cellIdRange)
+            .filter(cell -> cell.getPartition() > 0)
+            .forEach(cell -> partitionedCells.merge(
+                CellId.getLevelId(cell.getLevel(), cell.getId()),
+                cell.getPartition() + 1,
+                Math::max));
+      }
+    }
+    return new CellPartitions(maxPartitions, partitionedCells);
+  }
+
+  /**
+   * Returns the number of partitions of a cell.
+   */
+  int get(int level, long id) {
+    if (this.partitionedCells == null) {
+      return this.maxPartitions;
+    }
+    return this.partitionedCells.getOrDefault(CellId.getLevelId(level, id), 1);
+  }
+
+  /**
+   * Returns the cache keys of all partitions of the cells of a cell id range.
+   */
+  LongStream keys(CellIdRange cellIdRange) {
+    final int level = cellIdRange.getStart().getZoomLevel();
+    final long from = cellIdRange.getStart().getId();
+    final long to = cellIdRange.getEnd().getId();
+    if (this.maxPartitions == 1) {
+      return LongStream.rangeClosed(from, to).map(id -> CellId.getLevelId(level, id));
+    }
+    return LongStream.rangeClosed(from, to).flatMap(id -> IntStream.range(0, this.get(level, id))
+        .mapToLong(partition -> CellId.getLevelId(level, id, partition)));
+  }
+
+  /**
+   * Returns the number of cache keys of the cells of the given cell id ranges.
+   */
+  long count(Iterable<CellIdRange> cellIdRanges) {
+    if (this.partitionedCells == null) {
+      return MapReducerIgniteAuto.countCandidateCells(cellIdRanges, this.maxPartitions);
+    }
+    long result = MapReducerIgniteAuto.countCandidateCells(cellIdRanges, 1);
+    // the statistics of a query only contain the partitioned cells of its cell id ranges
+    for (int partitions : this.partitionedCells.values()) {
+      result += partitions - 1;
+    }
+    return result;
+  }
+}
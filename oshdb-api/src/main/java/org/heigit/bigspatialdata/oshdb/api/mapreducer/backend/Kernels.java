@@ -4,9 +4,7 @@ import com.google.common.collect.Iterables;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.annotation.Nonnull;
@@ -35,6 +33,15 @@ class Kernels implements Serializable {
 
   private static final CancelableProcessStatus NC = new NonCancelableProcessStatus();
 
+  // mutable accumulation value of a cell reducer, only used by the thread iterating the cell
+  private static class Accumulation<S> {
+    S value;
+
+    Accumulation(S value) {
+      this.value = value;
+    }
+  }
+
   // === map-reduce processors ===
 
   @Nonnull
@@ -55,14 +62,14 @@ class Kernels implements Serializable {
   ) {
     return (oshEntityCell, cellIterator) -> {
       // iterate over the history of all OSM objects in the current cell
-      AtomicReference<S> accInternal = new AtomicReference<>(identitySupplier.get());
-      cellIterator.iterateByContribution(oshEntityCell)
-          .filter(ignored -> process.isActive())
-          .forEach(contribution -> {
-            OSMContribution osmContribution = new OSMContribution(contribution);
-            accInternal.set(accumulator.apply(accInternal.get(), mapper.apply(osmContribution)));
-          });
-      return accInternal.get();
+      Accumulation<S> accInternal = new Accumulation<>(identitySupplier.get());
+      cellIterator.iterateByContribution(oshEntityCell, contribution -> {
+        if (process.isActive()) {
+          OSMContribution osmContribution = new OSMContribution(contribution);
+          accInternal.value = accumulator.apply(accInternal.value, mapper.apply(osmContribution));
+        }
+      });
+      return accInternal.value;
     };
   }
 
@@ -83,31 +90,32 @@ class Kernels implements Serializable {
       CancelableProcessStatus process
   ) {
     return (oshEntityCell, cellIterator) -> {
-      AtomicReference<S> accInternal = new AtomicReference<>(identitySupplier.get());
+      Accumulation<S> accInternal = new Accumulation<>(identitySupplier.get());
       // iterate over the history of all OSM objects in the current cell
       List<OSMContribution> contributions = new ArrayList<>();
-      cellIterator.iterateByContribution(oshEntityCell)
-          .filter(ignored -> process.isActive())
-          .forEach(contribution -> {
-            OSMContribution thisContribution = new OSMContribution(contribution);
-            if (contributions.size() > 0
-                && thisContribution.getEntityAfter().getId() != contributions
-                .get(contributions.size() - 1).getEntityAfter().getId()) {
-              // immediately fold the results
-              for (R r : mapper.apply(contributions)) {
-                accInternal.set(accumulator.apply(accInternal.get(), r));
-              }
-              contributions.clear();
-            }
-            contributions.add(thisContribution);
-          });
+      cellIterator.iterateByContribution(oshEntityCell, contribution -> {
+        if (!process.isActive()) {
+          return;
+        }
+        OSMContribution thisContribution = new OSMContribution(contribution);
+        if (contributions.size() > 0
+            && thisContribution.getEntityAfter().getId() != contributions
+            .get(contributions.size() - 1).getEntityAfter().getId()) {
+          // immediately fold the results
+          for (R r : mapper.apply(contributions)) {
+            accInternal.value = accumulator.apply(accInternal.value, r);
+          }
+          contributions.clear();
+        }
+        contributions.add(thisContribution);
+      });
       // apply mapper and fold results one more time for last entity in current cell
       if (contributions.size() > 0) {
         for (R r : mapper.apply(contributions)) {
-          accInternal.set(accumulator.apply(accInternal.get(), r));
+          accInternal.value = accumulator.apply(accInternal.value, r);
         }
       }
-      return accInternal.get();
+      return accInternal.value;
     };
   }
 
@@ -129,15 +137,15 @@ class Kernels implements Serializable {
   ) {
     return (oshEntityCell, cellIterator) -> {
       // iterate over the history of all OSM objects in the current cell
-      AtomicReference<S> accInternal = new AtomicReference<>(identitySupplier.get());
-      cellIterator.iterateByTimestamps(oshEntityCell)
-          .filter(ignored -> process.isActive())
-          .forEach(data -> {
-            OSMEntitySnapshot snapshot = new OSMEntitySnapshot(data);
-            // immediately fold the result
-            accInternal.set(accumulator.apply(accInternal.get(), mapper.apply(snapshot)));
-          });
-      return accInternal.get();
+      Accumulation<S> accInternal = new Accumulation<>(identitySupplier.get());
+      cellIterator.iterateByTimestamps(oshEntityCell, data -> {
+        if (process.isActive()) {
+          OSMEntitySnapshot snapshot = new OSMEntitySnapshot(data);
+          // immediately fold the result
+          accInternal.value = accumulator.apply(accInternal.value, mapper.apply(snapshot));
+        }
+      });
+      return accInternal.value;
     };
   }
 
@@ -159,30 +167,31 @@ class Kernels implements Serializable {
   ) {
     return (oshEntityCell, cellIterator) -> {
       // iterate over the history of all OSM objects in the current cell
-      AtomicReference<S> accInternal = new AtomicReference<>(identitySupplier.get());
+      Accumulation<S> accInternal = new Accumulation<>(identitySupplier.get());
       List<OSMEntitySnapshot> osmEntitySnapshots = new ArrayList<>();
-      cellIterator.iterateByTimestamps(oshEntityCell)
-          .filter(ignored -> process.isActive())
-          .forEach(data -> {
-            OSMEntitySnapshot thisSnapshot = new OSMEntitySnapshot(data);
-            if (osmEntitySnapshots.size() > 0
-                && thisSnapshot.getEntity().getId() != osmEntitySnapshots
-                .get(osmEntitySnapshots.size() - 1).getEntity().getId()) {
-              // immediately fold the results
-              for (R r : mapper.apply(osmEntitySnapshots)) {
-                accInternal.set(accumulator.apply(accInternal.get(), r));
-              }
-              osmEntitySnapshots.clear();
-            }
-            osmEntitySnapshots.add(thisSnapshot);
-          });
+      cellIterator.iterateByTimestamps(oshEntityCell, data -> {
+        if (!process.isActive()) {
+          return;
+        }
+        OSMEntitySnapshot thisSnapshot = new OSMEntitySnapshot(data);
+        if (osmEntitySnapshots.size() > 0
+            && thisSnapshot.getEntity().getId() != osmEntitySnapshots
+            .get(osmEntitySnapshots.size() - 1).getEntity().getId()) {
+          // immediately fold the results
+          for (R r : mapper.apply(osmEntitySnapshots)) {
+            accInternal.value = accumulator.apply(accInternal.value, r);
+          }
+          osmEntitySnapshots.clear();
+        }
+        osmEntitySnapshots.add(thisSnapshot);
+      });
       // apply mapper and fold results one more time for last entity in current cell
       if (osmEntitySnapshots.size() > 0) {
         for (R r : mapper.apply(osmEntitySnapshots)) {
-          accInternal.set(accumulator.apply(accInternal.get(), r));
+          accInternal.value = accumulator.apply(accInternal.value, r);
         }
       }
-      return accInternal.get();
+      return accInternal.value;
     };
   }
 
@@ -224,19 +233,20 @@ class Kernels implements Serializable {
     return (oshEntityCell, cellIterator) -> {
       // iterate over the history of all OSM objects in the current cell
       List<OSMContribution> contributions = new ArrayList<>();
-      List<S> result = new LinkedList<>();
-      cellIterator.iterateByContribution(oshEntityCell)
-          .filter(ignored -> process.isActive())
-          .map(OSMContribution::new)
-          .forEach(contribution -> {
-            if (contributions.size() > 0 && contribution.getEntityAfter().getId()
-                != contributions.get(contributions.size() - 1).getEntityAfter().getId()) {
-              // immediately flatten the results
-              Iterables.addAll(result, mapper.apply(contributions));
-              contributions.clear();
-            }
-            contributions.add(contribution);
-          });
+      List<S> result = new ArrayList<>();
+      cellIterator.iterateByContribution(oshEntityCell, data -> {
+        if (!process.isActive()) {
+          return;
+        }
+        OSMContribution contribution = new OSMContribution(data);
+        if (contributions.size() > 0 && contribution.getEntityAfter().getId()
+            != contributions.get(contributions.size() - 1).getEntityAfter().getId()) {
+          // immediately flatten the results
+          Iterables.addAll(result, mapper.apply(contributions));
+          contributions.clear();
+        }
+        contributions.add(contribution);
+      });
       // apply mapper and fold results one more time for last entity in current cell
       if (contributions.size() > 0) {
         Iterables.addAll(result, mapper.apply(contributions));
@@ -281,19 +291,20 @@ class Kernels implements Serializable {
     return (oshEntityCell, cellIterator) -> {
       // iterate over the history of all OSM objects in the current cell
       List<OSMEntitySnapshot> snapshots = new ArrayList<>();
-      List<S> result = new LinkedList<>();
-      cellIterator.iterateByTimestamps(oshEntityCell)
-          .filter(ignored -> process.isActive())
-          .map(OSMEntitySnapshot::new)
-          .forEach(contribution -> {
-            if (snapshots.size() > 0 && contribution.getEntity().getId()
-                != snapshots.get(snapshots.size() - 1).getEntity().getId()) {
-              // immediately flatten the results
-              Iterables.addAll(result, mapper.apply(snapshots));
-              snapshots.clear();
-            }
-            snapshots.add(contribution);
-          });
+      List<S> result = new ArrayList<>();
+      cellIterator.iterateByTimestamps(oshEntityCell, data -> {
+        if (!process.isActive()) {
+          return;
+        }
+        OSMEntitySnapshot snapshot = new OSMEntitySnapshot(data);
+        if (snapshots.size() > 0 && snapshot.getEntity().getId()
+            != snapshots.get(snapshots.size() - 1).getEntity().getId()) {
+          // immediately flatten the results
+          Iterables.addAll(result, mapper.apply(snapshots));
+          snapshots.clear();
+        }
+        snapshots.add(snapshot);
+      });
       // apply mapper and fold results one more time for last entity in current cell
       if (snapshots.size() > 0) {
         Iterables.addAll(result, mapper.apply(snapshots));
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -45,7 +46,6 @@ import org.heigit.bigspatialdata.oshdb.api.object.OSMEntitySnapshot;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
 import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
 import org.heigit.bigspatialdata.oshdb.osm.OSMType;
-import org.heigit.bigspatialdata.oshdb.util.CellId;
 import org.heigit.bigspatialdata.oshdb.util.TableNames;
 import org.heigit.bigspatialdata.oshdb.util.celliterator.CellIterator;
 import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBTimeoutException;
@@ -82,8 +82,8 @@ public class MapReducerIgniteAffinityCall<X> extends MapReducer<X>
     super(oshdb, forClass);
   }
 
-  // copy constructor
-  private MapReducerIgniteAffinityCall(MapReducerIgniteAffinityCall obj) {
+  // copy constructor, also used by MapReducerIgniteAuto to run a query with this implementation
+  MapReducerIgniteAffinityCall(MapReducer<?> obj) {
     super(obj);
   }
 
@@ -106,14 +106,15 @@ public class MapReducerIgniteAffinityCall<X> extends MapReducer<X>
     return true;
   }
 
+  /**
+   * Returns the cache keys of all partitions of the cells of a cell id range.
+   *
+   * @param partitions the partitions of the cells
+   */
   @Nonnull
-  private static SerializableFunction<CellIdRange, LongStream> cellIdRangeToCellIds() {
-    return cellIdRange -> {
-      int level = cellIdRange.getStart().getZoomLevel();
-      long from = CellId.getLevelId(level, cellIdRange.getStart().getId());
-      long to = CellId.getLevelId(level, cellIdRange.getEnd().getId());
-      return LongStream.rangeClosed(from, to);
-    };
+  private static SerializableFunction<CellIdRange, LongStream> cellIdRangeToCellIds(
+      CellPartitions partitions) {
+    return partitions::keys;
   }
 
   /**
@@ -161,7 +162,7 @@ public class MapReducerIgniteAffinityCall<X> extends MapReducer<X>
         this.tstamps.get(),
         this.bboxFilter, this.getPolyFilter(),
         this.getTagInterpreter(), this.getPreFilter(), this.getFilter(), false
-    );
+    ).grid(this.getGrid());
 
     final Iterable<CellIdRange> cellIdRanges = this.getCellIdRanges();
 
@@ -174,9 +175,11 @@ public class MapReducerIgniteAffinityCall<X> extends MapReducer<X>
       assert TableNames.forOSMType(osmType).isPresent();
       String cacheName = TableNames.forOSMType(osmType).get().toString(this.oshdb.prefix());
       IgniteCache<Long, GridOSHEntity> cache = ignite.cache(cacheName);
+      CellPartitions partitions =
+          CellPartitions.of(this.oshdb, EnumSet.of(osmType), cellIdRanges);
 
       return Streams.stream(cellIdRanges)
-          .flatMapToLong(cellIdRangeToCellIds())
+          .flatMapToLong(cellIdRangeToCellIds(partitions))
           .parallel()
           .filter(ignored -> this.isActive())
           .mapToObj(cellLongId -> asyncGetHandleTimeouts(
@@ -213,7 +216,7 @@ public class MapReducerIgniteAffinityCall<X> extends MapReducer<X>
         this.tstamps.get(),
         this.bboxFilter, this.getPolyFilter(),
         this.getTagInterpreter(), this.getPreFilter(), this.getFilter(), false
-    );
+    ).grid(this.getGrid());
 
     final Iterable<CellIdRange> cellIdRanges = this.getCellIdRanges();
 
@@ -227,24 +230,24 @@ public class MapReducerIgniteAffinityCall<X> extends MapReducer<X>
       assert TableNames.forOSMType(osmType).isPresent();
       String cacheName = TableNames.forOSMType(osmType).get().toString(this.oshdb.prefix());
       IgniteCache<Long, GridOSHEntity> cache = ignite.cache(cacheName);
+      CellPartitions partitions =
+          CellPartitions.of(this.oshdb, EnumSet.of(osmType), cellIdRanges);
 
+      // the cells with data are looked up by a scan query or by local peeks, chosen the same way
+      // as the "Auto" implementation chooses between these two implementations
+      MapReducerIgniteAffinityCall<X> typeQuery = new MapReducerIgniteAffinityCall<>(this);
+      typeQuery.typeFilter = EnumSet.of(osmType);
       GetMatchingKeysPreflight preflight;
-      int maxNumCells = 0;
-      for (CellIdRange cellIdRange : cellIdRanges) {
-        maxNumCells += cellIdRange.getEnd().getId() - cellIdRange.getStart().getId();
-      }
-      // if number of "maximum to be requested cells" is larger than the total avaiable cells
-      // -> use scanquery based preflight, otherwise use localpeek implementation.
-      // this works as long as the assumption that calling "localPeek" is about the same effort
-      // than checking wether a cell is in the requested area.
-      // todo: benchmark if this assumption is really the case
-      if (maxNumCells > cache.size()) {
+      if (MapReducerIgniteAuto.preferScanQuery(
+          partitions.count(cellIdRanges),
+          cache.size(),
+          MapReducerIgniteAuto.coveredFraction(oshdb, osmType, typeQuery.estimateCost()))) {
         preflight = new GetMatchingKeysPreflightScanQuery(
-            cacheName, cellIdRangeToCellIds(), cellIdRanges, cellProcessor, cellIterator
+            cacheName, cellIdRangeToCellIds(partitions), cellIdRanges, cellProcessor, cellIterator
         );
       } else {
         preflight = new GetMatchingKeysPreflightLocalPeek(
-            cacheName, cellIdRangeToCellIds(), cellIdRanges, cellProcessor, cellIterator
+            cacheName, cellIdRangeToCellIds(partitions), cellIdRanges, cellProcessor, cellIterator
         );
       }
       List<Long> cellsWithData = asyncGetHandleTimeouts(
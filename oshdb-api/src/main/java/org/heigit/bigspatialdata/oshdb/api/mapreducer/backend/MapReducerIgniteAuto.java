@@ -0,0 +1,215 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
+
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+import java.util.stream.Stream;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBCostEstimate;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBDatabase;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBIgnite;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBIgnite.ComputeMode;
+import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableBiFunction;
+import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableBinaryOperator;
+import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableSupplier;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
+import org.heigit.bigspatialdata.oshdb.api.object.OSHDBMapReducible;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.TableNames;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@inheritDoc}
+ *
+ * <p>
+ * The "Auto" implementation chooses one of the other Ignite implementations separately for each
+ * query and osm type, based on the number of cells covered by the area of interest and (if the
+ * oshdb has a statistics catalog) the share of the data of the osm type these cells hold:
+ * </p>
+ * <ul>
+ * <li>queries of only a few cells are run as "AffinityCall", which avoids the overhead of
+ * broadcasting the query to all nodes of the cluster,</li>
+ * <li>queries covering (almost) the whole data set are run as "ScanQuery",</li>
+ * <li>all other queries are run as "LocalPeek".</li>
+ * </ul>
+ */
+public class MapReducerIgniteAuto<X> extends MapReducer<X> {
+  private static final Logger LOG = LoggerFactory.getLogger(MapReducerIgniteAuto.class);
+
+  /**
+   * Queries of at most this many cells (per osm type) are run with the "AffinityCall"
+   * implementation.
+   */
+  static final long AFFINITY_CALL_MAX_CELLS = 64;
+
+  /**
+   * Queries reading at least this share of the data of an osm type are run with the "ScanQuery"
+   * implementation. Only used if the oshdb has a statistics catalog.
+   */
+  static final double SCAN_QUERY_MIN_FRACTION = 0.5;
+
+  public MapReducerIgniteAuto(OSHDBDatabase oshdb,
+      Class<? extends OSHDBMapReducible> forClass) {
+    super(oshdb, forClass);
+  }
+
+  // copy constructor
+  private MapReducerIgniteAuto(MapReducerIgniteAuto obj) {
+    super(obj);
+  }
+
+  @NotNull
+  @Override
+  protected MapReducer<X> copy() {
+    return new MapReducerIgniteAuto<X>(this);
+  }
+
+  @Override
+  public boolean isCancelable() {
+    return true;
+  }
+
+  @Override
+  public <S> S reduce(
+      SerializableSupplier<S> identitySupplier,
+      SerializableBiFunction<S, X, S> accumulator,
+      SerializableBinaryOperator<S> combiner)
+      throws Exception {
+    S result = identitySupplier.get();
+    for (OSMType osmType : this.typeFilter) {
+      result = combiner.apply(
+          result,
+          this.plan(osmType).reduce(identitySupplier, accumulator, combiner)
+      );
+    }
+    return result;
+  }
+
+  @Override
+  public Stream<X> stream() throws Exception {
+    Stream<X> result = Stream.empty();
+    for (OSMType osmType : this.typeFilter) {
+      result = Stream.concat(result, this.plan(osmType).stream());
+    }
+    return result;
+  }
+
+  /**
+   * Chooses the compute mode for the data of one osm type of the current query.
+   *
+   * @return a mapreducer of the chosen implementation, restricted to the given osm type
+   */
+  private MapReducer<X> plan(OSMType osmType) {
+    MapReducerIgniteAuto<X> query = new MapReducerIgniteAuto<X>(this);
+    query.typeFilter = EnumSet.of(osmType);
+
+    OSHDBIgnite oshdb = (OSHDBIgnite) this.oshdb;
+    assert TableNames.forOSMType(osmType).isPresent();
+    String cacheName = TableNames.forOSMType(osmType).get().toString(oshdb.prefix());
+
+    Iterable<CellIdRange> cellIdRanges = query.getCellIdRanges();
+    long candidateCells = CellPartitions.of(oshdb, query.typeFilter, cellIdRanges)
+        .count(cellIdRanges);
+    long cachedCells = oshdb.getIgnite().cache(cacheName).size();
+    Optional<OSHDBCostEstimate> estimate = query.estimateCost();
+    OptionalDouble coveredFraction = coveredFraction(oshdb, osmType, estimate);
+
+    ComputeMode computeMode = chooseComputeMode(candidateCells, cachedCells, coveredFraction);
+    LOG.info("{}: using compute mode {} ({} candidate cells, {} cached cells, estimate: {})",
+        osmType, computeMode, candidateCells, cachedCells,
+        estimate.map(OSHDBCostEstimate::toString).orElse("no statistics"));
+
+    switch (computeMode) {
+      case AffinityCall:
+        return new MapReducerIgniteAffinityCall<X>(query);
+      case ScanQuery:
+        return new MapReducerIgniteScanQuery<X>(query);
+      case LocalPeek:
+      default:
+        return new MapReducerIgniteLocalPeek<X>(query);
+    }
+  }
+
+  /**
+   * Chooses the cheapest compute mode for the data of one osm type.
+   *
+   * @param candidateCells the number of cells (partitions) covered by the area of interest
+   * @param cachedCells the number of cells stored in the cache of the osm type
+   * @param coveredFraction the share of the data of the osm type stored in the candidate cells,
+   *        if known
+   * @return the compute mode to be used
+   */
+  static ComputeMode chooseComputeMode(long candidateCells, long cachedCells,
+      OptionalDouble coveredFraction) {
+    if (candidateCells <= AFFINITY_CALL_MAX_CELLS) {
+      return ComputeMode.AffinityCall;
+    }
+    if (preferScanQuery(candidateCells, cachedCells, coveredFraction)) {
+      return ComputeMode.ScanQuery;
+    }
+    return ComputeMode.LocalPeek;
+  }
+
+  /**
+   * Decides if scanning over all cells of a cache is cheaper than looking up each candidate cell.
+   *
+   * <p>Without statistics this is assumed when there are more candidate cells than cached cells,
+   * i.e. when calling "localPeek" for every candidate is about the same effort as checking if a
+   * scanned cell is in the requested area.</p>
+   */
+  static boolean preferScanQuery(long candidateCells, long cachedCells,
+      OptionalDouble coveredFraction) {
+    if (coveredFraction.isPresent()) {
+      return coveredFraction.getAsDouble() >= SCAN_QUERY_MIN_FRACTION;
+    }
+    return candidateCells > cachedCells;
+  }
+
+  /**
+   * Returns the number of cells (partitions) a list of cell id ranges covers.
+   *
+   * @param partitions the number of partitions of every cell
+   */
+  static long countCandidateCells(Iterable<CellIdRange> cellIdRanges, int partitions) {
+    long result = 0;
+    for (CellIdRange cellIdRange : cellIdRanges) {
+      result += (cellIdRange.getEnd().getId() - cellIdRange.getStart().getId() + 1)
+          * Math.max(1, partitions);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the share of the data of an osm type a query has to read, if the oshdb has a
+   * statistics catalog.
+   *
+   * @param estimate the cost estimate of the query, restricted to the osm type
+   */
+  static OptionalDouble coveredFraction(OSHDBIgnite oshdb, OSMType osmType,
+      Optional<OSHDBCostEstimate> estimate) {
+    return coveredFraction(
+        estimate, estimate.isPresent() ? oshdb.totalBytes(osmType) : OptionalLong.empty());
+  }
+
+  /**
+   * Returns the share of the data of an osm type a query has to read, as estimated from the
+   * statistics catalog.
+   *
+   * @param estimate the cost estimate of the query, restricted to the osm type
+   * @param totalBytes the size of all data of the osm type, see {@link OSHDBIgnite#totalBytes}
+   * @return the share of bytes (0 to 1), or nothing if there is no statistics catalog
+   */
+  static OptionalDouble coveredFraction(Optional<OSHDBCostEstimate> estimate,
+      OptionalLong totalBytes) {
+    if (!estimate.isPresent() || !totalBytes.isPresent()) {
+      return OptionalDouble.empty();
+    }
+    if (totalBytes.getAsLong() == 0) {
+      return OptionalDouble.of(0.0);
+    }
+    return OptionalDouble.of((double) estimate.get().getBytes() / totalBytes.getAsLong());
+  }
+}
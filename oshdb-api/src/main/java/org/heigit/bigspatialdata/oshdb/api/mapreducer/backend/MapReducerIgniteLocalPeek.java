@@ -2,6 +2,7 @@ package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
 
 import com.google.common.collect.Streams;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -11,7 +12,6 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
-import java.util.stream.LongStream;
 import org.apache.ignite.Ignite;
 import org.apache.ignite.IgniteCache;
 import org.apache.ignite.IgniteCompute;
@@ -32,7 +32,7 @@ import org.heigit.bigspatialdata.oshdb.api.object.OSMContribution;
 import org.heigit.bigspatialdata.oshdb.api.object.OSMEntitySnapshot;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
 import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
-import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
 import org.heigit.bigspatialdata.oshdb.util.TableNames;
@@ -60,8 +60,8 @@ public class MapReducerIgniteLocalPeek<X> extends MapReducer<X> {
     super(oshdb, forClass);
   }
 
-  // copy constructor
-  private MapReducerIgniteLocalPeek(MapReducerIgniteLocalPeek obj) {
+  // copy constructor, also used by MapReducerIgniteAuto to run a query with this implementation
+  MapReducerIgniteLocalPeek(MapReducer<?> obj) {
     super(obj);
   }
 
@@ -151,6 +151,8 @@ class IgniteLocalPeekHelper {
     final SerializableSupplier<S> identitySupplier;
     final SerializableBiFunction<S, R, S> accumulator;
     final SerializableBinaryOperator<S> combiner;
+    // partitions of the cells, see CellId.getLevelId(int, long, int)
+    CellPartitions partitions = new CellPartitions(1, null);
 
     MapReduceCellsOnIgniteCacheComputeJob(TagInterpreter tagInterpreter, List<String> cacheNames,
         Iterable<CellIdRange> cellIdRanges,
@@ -192,14 +194,8 @@ class IgniteLocalPeekHelper {
       CellKeysIterator(Iterable<CellIdRange> cellIdRanges) {
         this.cellIds = Streams.stream(cellIdRanges)
         .filter(ignored -> isActive())
-        .flatMap(cellIdRange -> {
-          int level = cellIdRange.getStart().getZoomLevel();
-          long fromId = cellIdRange.getStart().getId();
-          long toId = cellIdRange.getEnd().getId();
-          return LongStream.rangeClosed(fromId, toId)
-              .map(id -> CellId.getLevelId(level, id))
-              .boxed();
-        }).iterator();
+        .flatMap(cellIdRange -> partitions.keys(cellIdRange).boxed())
+        .iterator();
         buffer = new ArrayList<>(bufferSize);
       }
 
@@ -362,6 +358,14 @@ class IgniteLocalPeekHelper {
       MapReduceCellsOnIgniteCacheComputeJob<V, R, M, S, P> computeJob) {
     Ignite ignite = oshdb.getIgnite();
     IgniteCompute compute = ignite.compute();
+    computeJob.cellIterator.grid(oshdb.grid());
+    // the osm types of the caches read by the job
+    List<OSMType> types = Arrays.stream(OSMType.values())
+        .filter(type -> TableNames.forOSMType(type)
+            .filter(table -> computeJob.cacheNames.contains(table.toString(oshdb.prefix())))
+            .isPresent())
+        .collect(Collectors.toList());
+    computeJob.partitions = CellPartitions.of(oshdb, types, computeJob.cellIdRanges);
 
     ComputeTaskFuture<S> asyncResult = compute.executeAsync(
         new OSHDBIgniteMapReduceComputeTask<Object, S>(
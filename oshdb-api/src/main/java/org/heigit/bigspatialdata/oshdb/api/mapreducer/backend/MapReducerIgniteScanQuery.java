@@ -71,8 +71,8 @@ public class MapReducerIgniteScanQuery<X> extends MapReducer<X> {
     super(oshdb, forClass);
   }
 
-  // copy constructor
-  private MapReducerIgniteScanQuery(MapReducerIgniteScanQuery obj) {
+  // copy constructor, also used by MapReducerIgniteAuto to run a query with this implementation
+  MapReducerIgniteScanQuery(MapReducer<?> obj) {
     super(obj);
   }
 
@@ -480,6 +480,7 @@ class IgniteScanQueryHelperMapReduce {
     // async execute compute job on all ignite nodes and further reduce+return result(s)
     IgniteCompute compute = ignite.compute(ignite.cluster().forNodeIds(nodesToPart.keySet()));
     computeJob.setNodesToPart(nodesToPart);
+    computeJob.cellIterator.grid(oshdb.grid());
     IgniteRunnable onClose = oshdb.onClose().orElse(() -> { });
     ComputeTaskFuture<S> result = compute.executeAsync(
         new OSHDBIgniteMapReduceComputeTask<Object, S>(
@@ -578,6 +579,7 @@ class IgniteScanQueryHelperMapStream {
       CellIterator cellIterator,
       CellProcessor<Stream<X>> cellProcessor
   ) {
+    cellIterator.grid(oshdb.grid());
     QueryCursor<List<X>> cursor = oshdb.getIgnite().cache(cacheName).withKeepBinary().query(
         new ScanQuery<Long, Object>((key, cell) ->
             /*isActive() &&*/ MapReducerIgniteScanQuery.cellKeyInRange(key, cellIdRangesByLevel)
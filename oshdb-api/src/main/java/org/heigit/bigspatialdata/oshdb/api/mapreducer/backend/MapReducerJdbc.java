@@ -1,7 +1,6 @@
 package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -16,11 +15,16 @@ import javax.annotation.Nonnull;
 import org.heigit.bigspatialdata.oshdb.api.db.OSHDBDatabase;
 import org.heigit.bigspatialdata.oshdb.api.db.OSHDBJdbc;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.PartialResultCache;
 import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.Kernels.CancelableProcessStatus;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.Kernels.CellProcessor;
 import org.heigit.bigspatialdata.oshdb.api.object.OSHDBMapReducible;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityCodec;
 import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
 import org.heigit.bigspatialdata.oshdb.util.TableNames;
+import org.heigit.bigspatialdata.oshdb.util.celliterator.CellIterator;
 import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBTimeoutException;
 
 abstract class MapReducerJdbc<X> extends MapReducer<X> implements CancelableProcessStatus {
@@ -40,6 +44,11 @@ abstract class MapReducerJdbc<X> extends MapReducer<X> implements CancelableProc
     super(obj);
   }
 
+  @Override
+  public boolean isPartialResultCacheSupported() {
+    return true;
+  }
+
   @Override
   public boolean isActive() {
     if (timeout != null && System.currentTimeMillis() - executionStartTimeMillis > timeout) {
@@ -50,17 +59,35 @@ abstract class MapReducerJdbc<X> extends MapReducer<X> implements CancelableProc
 
   protected ResultSet getOshCellsRawDataFromDb(CellIdRange cellIdRange)
       throws SQLException {
+    return getOshCellsRawDataFromDb(cellIdRange, -1);
+  }
+
+  /**
+   * Queries the data of the cells of a cell id range.
+   *
+   * @param cellIdRange the cells to query
+   * @param partition the partition of the cells to query, or -1 for all partitions
+   */
+  protected ResultSet getOshCellsRawDataFromDb(CellIdRange cellIdRange, int partition)
+      throws SQLException {
+    final String partitionCondition = partition < 0 ? "" : " and part = ?4";
+    // databases without partitioned cells might not have a partition column
+    final String partitionColumn = this.getPartitions() > 1 ? "part" : "0";
     String sqlQuery = this.typeFilter.stream()
         .map(osmType ->
             TableNames.forOSMType(osmType).map(tn -> tn.toString(this.oshdb.prefix()))
         )
         .filter(Optional::isPresent).map(Optional::get)
-        .map(tn -> "(select data from " + tn + " where level = ?1 and id between ?2 and ?3)")
+        .map(tn -> "(select data, level, id, " + partitionColumn + " from " + tn
+            + " where level = ?1 and id between ?2 and ?3" + partitionCondition + ")")
         .collect(Collectors.joining(" union all "));
     PreparedStatement pstmt = ((OSHDBJdbc)this.oshdb).getConnection().prepareStatement(sqlQuery);
     pstmt.setInt(1, cellIdRange.getStart().getZoomLevel());
     pstmt.setLong(2, cellIdRange.getStart().getId());
     pstmt.setLong(3, cellIdRange.getEnd().getId());
+    if (partition >= 0) {
+      pstmt.setInt(4, partition);
+    }
     return pstmt.executeQuery();
   }
 
@@ -69,19 +96,88 @@ abstract class MapReducerJdbc<X> extends MapReducer<X> implements CancelableProc
    */
   protected GridOSHEntity readOshCellRawData(ResultSet oshCellsRawData)
       throws IOException, ClassNotFoundException, SQLException {
-    return (GridOSHEntity)
-        (new ObjectInputStream(oshCellsRawData.getBinaryStream(1))).readObject();
+    return GridOSHEntityCodec.fromBytes(oshCellsRawData.getBytes(1));
+  }
+
+  /**
+   * A function processing one cell of the raw data stream.
+   */
+  protected interface CellRawDataProcessor<T> {
+    T apply(ResultSet oshCellsRawData) throws IOException, ClassNotFoundException, SQLException;
+  }
+
+  /**
+   * Returns a function applying a cell processor to the cells of the raw data stream.
+   *
+   * <p>If a partial result cache is set, the results of the cells are looked up in (and stored
+   * into) the cache, and cells whose result is found are not decoded at all.</p>
+   *
+   * @param cellProcessor the cell processor to apply
+   * @param cellIterator the cell iterator of the current query
+   * @param identity the identity value of the current reduce operation
+   */
+  protected <S> CellRawDataProcessor<S> getCellRawDataProcessor(
+      CellProcessor<S> cellProcessor, CellIterator cellIterator, S identity) {
+    final PartialResultCache cache = this.partialResultCache;
+    if (cache == null) {
+      return oshCellsRawData ->
+          cellProcessor.apply(readOshCellRawData(oshCellsRawData), cellIterator);
+    }
+    final String fingerprint = this.getPartialResultFingerprint(identity, false);
+    final String fingerprintWithAreaOfInterest = this.getPartialResultFingerprint(identity, true);
+    return oshCellsRawData -> {
+      CellId cellId = new CellId(oshCellsRawData.getInt(2), oshCellsRawData.getLong(3));
+      String key = (cellIterator.isFullyInside(cellId) ? fingerprint
+          : fingerprintWithAreaOfInterest)
+          + "/" + cellId.getZoomLevel() + "/" + cellId.getId() + "/" + oshCellsRawData.getInt(4);
+      Optional<S> cached = cache.get(key);
+      if (cached.isPresent()) {
+        return cached.get();
+      }
+      S result = cellProcessor.apply(readOshCellRawData(oshCellsRawData), cellIterator);
+      // don't cache incomplete results of canceled queries
+      if (this.isActive()) {
+        cache.put(key, result);
+      }
+      return result;
+    };
   }
 
   @Nonnull
   protected Stream<? extends GridOSHEntity> getOshCellsStream(CellIdRange cellIdRange) {
+    return getOshCellsStream(cellIdRange, -1);
+  }
+
+  /**
+   * Returns the cells of a cell id range.
+   *
+   * @param cellIdRange the cells to return
+   * @param partition the partition of the cells to return, or -1 for all partitions
+   */
+  @Nonnull
+  protected Stream<? extends GridOSHEntity> getOshCellsStream(CellIdRange cellIdRange,
+      int partition) {
+    return this.getOshCellsStream(cellIdRange, partition, this::readOshCellRawData);
+  }
+
+  /**
+   * Processes the cells of a cell id range.
+   *
+   * @param cellIdRange the cells to process
+   * @param partition the partition of the cells to process, or -1 for all partitions
+   * @param processor the function to apply to each cell of the raw data stream
+   * @return the results of the processed cells
+   */
+  @Nonnull
+  protected <T> Stream<T> getOshCellsStream(CellIdRange cellIdRange,
+      int partition, CellRawDataProcessor<T> processor) {
     try {
-      ResultSet oshCellsRawData = getOshCellsRawDataFromDb(cellIdRange);
+      ResultSet oshCellsRawData = getOshCellsRawDataFromDb(cellIdRange, partition);
       if (!oshCellsRawData.next()) {
         return Stream.empty();
       }
       return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
-          new Iterator<GridOSHEntity>() {
+          new Iterator<T>() {
             @Override
             public boolean hasNext() {
               try {
@@ -92,12 +188,12 @@ abstract class MapReducerJdbc<X> extends MapReducer<X> implements CancelableProc
             }
 
             @Override
-            public GridOSHEntity next() {
+            public T next() {
               try {
                 if (!hasNext()) {
                   throw new NoSuchElementException();
                 }
-                GridOSHEntity data = readOshCellRawData(oshCellsRawData);
+                T data = processor.apply(oshCellsRawData);
                 if (!oshCellsRawData.next()) {
                   oshCellsRawData.close();
                 }
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.heigit.bigspatialdata.oshdb.api.db.OSHDBDatabase;
 import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableBiFunction;
@@ -54,17 +55,15 @@ public class MapReducerJdbcMultithread<X> extends MapReducerJdbc<X> {
         this.tstamps.get(),
         this.bboxFilter, this.getPolyFilter(),
         this.getTagInterpreter(), this.getPreFilter(), this.getFilter(), false
-    );
-
-    final List<CellIdRange> cellIdRanges = new ArrayList<>();
-    this.getCellIdRanges().forEach(cellIdRanges::add);
-
-    return cellIdRanges.parallelStream()
-        .filter(ignored -> this.isActive())
-        .flatMap(this::getOshCellsStream)
-        .filter(ignored -> this.isActive())
-        .map(oshCell -> processor.apply(oshCell, cellIterator))
-        .reduce(identitySupplier.get(), combiner);
+    ).grid(this.getGrid());
+
+    final CellRawDataProcessor<S> cellRawDataProcessor =
+        this.getCellRawDataProcessor(processor, cellIterator, identitySupplier.get());
+    // cells are only processed while the query is active, skipped cells add nothing to the result
+    return this.getOshCellsStreams(oshCellsRawData -> this.isActive()
+        ? cellRawDataProcessor.apply(oshCellsRawData)
+        : identitySupplier.get()
+    ).reduce(identitySupplier.get(), combiner);
   }
 
   private Stream<X> stream(
@@ -76,16 +75,30 @@ public class MapReducerJdbcMultithread<X> extends MapReducerJdbc<X> {
         this.tstamps.get(),
         this.bboxFilter, this.getPolyFilter(),
         this.getTagInterpreter(), this.getPreFilter(), this.getFilter(), false
-    );
+    ).grid(this.getGrid());
 
+    return this.getOshCellsStreams(this::readOshCellRawData)
+        .filter(ignored -> this.isActive())
+        .flatMap(oshCell -> processor.apply(oshCell, cellIterator));
+  }
+
+  // each partition of the cells of each cell id range is queried as an independent task, so
+  // that the partitions of huge cells are processed in parallel
+  private <T> Stream<T> getOshCellsStreams(CellRawDataProcessor<T> cellRawDataProcessor) {
     final List<CellIdRange> cellIdRanges = new ArrayList<>();
     this.getCellIdRanges().forEach(cellIdRanges::add);
-
-    return cellIdRanges.parallelStream()
-        .filter(ignored -> this.isActive())
-        .flatMap(this::getOshCellsStream)
+    final int partitions = this.getPartitions();
+
+    if (partitions <= 1) {
+      return cellIdRanges.parallelStream()
+          .filter(ignored -> this.isActive())
+          .flatMap(cellIdRange -> this.getOshCellsStream(cellIdRange, -1, cellRawDataProcessor));
+    }
+    return IntStream.range(0, cellIdRanges.size() * partitions).parallel()
         .filter(ignored -> this.isActive())
-        .flatMap(oshCell -> processor.apply(oshCell, cellIterator));
+        .boxed()
+        .flatMap(task -> this.getOshCellsStream(
+            cellIdRanges.get(task / partitions), task % partitions, cellRawDataProcessor));
   }
 
   // === map-reduce operations ===
@@ -16,7 +16,6 @@ import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.Kernels.CellProces
 import org.heigit.bigspatialdata.oshdb.api.object.OSHDBMapReducible;
 import org.heigit.bigspatialdata.oshdb.api.object.OSMContribution;
 import org.heigit.bigspatialdata.oshdb.api.object.OSMEntitySnapshot;
-import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
 import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
 import org.heigit.bigspatialdata.oshdb.util.celliterator.CellIterator;
 import org.jetbrains.annotations.NotNull;
@@ -55,17 +54,18 @@ public class MapReducerJdbcSinglethread<X> extends MapReducerJdbc<X> {
         this.tstamps.get(),
         this.bboxFilter, this.getPolyFilter(),
         this.getTagInterpreter(), this.getPreFilter(), this.getFilter(), false
-    );
+    ).grid(this.getGrid());
 
     S result = identitySupplier.get();
+    CellRawDataProcessor<S> cellRawDataProcessor =
+        this.getCellRawDataProcessor(cellProcessor, cellIterator, result);
     for (CellIdRange cellIdRange : this.getCellIdRanges()) {
       ResultSet oshCellsRawData = getOshCellsRawDataFromDb(cellIdRange);
 
       while (oshCellsRawData.next()) {
-        GridOSHEntity oshCellRawData = readOshCellRawData(oshCellsRawData);
         result = combiner.apply(
             result,
-            cellProcessor.apply(oshCellRawData, cellIterator)
+            cellRawDataProcessor.apply(oshCellsRawData)
         );
       }
     }
@@ -81,7 +81,7 @@ public class MapReducerJdbcSinglethread<X> extends MapReducerJdbc<X> {
         this.tstamps.get(),
         this.bboxFilter, this.getPolyFilter(),
         this.getTagInterpreter(), this.getPreFilter(), this.getFilter(), false
-    );
+    ).grid(this.getGrid());
 
     return Streams.stream(this.getCellIdRanges())
         .flatMap(this::getOshCellsStream)
@@ -0,0 +1,248 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.annotation.Nonnull;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBDatabase;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBMapped;
+import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableBiFunction;
+import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableBinaryOperator;
+import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableFunction;
+import org.heigit.bigspatialdata.oshdb.api.generic.function.SerializableSupplier;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.Kernels.CancelableProcessStatus;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.backend.Kernels.CellProcessor;
+import org.heigit.bigspatialdata.oshdb.api.object.OSHDBMapReducible;
+import org.heigit.bigspatialdata.oshdb.api.object.OSMContribution;
+import org.heigit.bigspatialdata.oshdb.api.object.OSMEntitySnapshot;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityFile;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.util.celliterator.CellIterator;
+import org.heigit.bigspatialdata.oshdb.util.exceptions.OSHDBTimeoutException;
+import org.jetbrains.annotations.NotNull;
+import org.json.simple.parser.ParseException;
+
+/**
+ * A MapReducer backend operating on a memory mapped oshdb file (see {@link OSHDBMapped}).
+ *
+ * <p>Each cell id range maps to a contiguous byte range of the file, the ranges are processed in
+ * parallel (unless multithreading is disabled on the oshdb object).</p>
+ */
+public class MapReducerMapped<X> extends MapReducer<X> implements CancelableProcessStatus {
+
+  /**
+   * Stores the start time of reduce/stream operation as returned by
+   * {@link System#currentTimeMillis()}. Used to determine query timeouts.
+   */
+  protected long executionStartTimeMillis;
+
+  public MapReducerMapped(OSHDBDatabase oshdb, Class<? extends OSHDBMapReducible> forClass) {
+    super(oshdb, forClass);
+  }
+
+  // copy constructor
+  private MapReducerMapped(MapReducerMapped obj) {
+    super(obj);
+  }
+
+  @NotNull
+  @Override
+  protected MapReducer<X> copy() {
+    return new MapReducerMapped<X>(this);
+  }
+
+  @Override
+  public boolean isCancelable() {
+    return true;
+  }
+
+  @Override
+  public boolean isActive() {
+    if (timeout != null && System.currentTimeMillis() - executionStartTimeMillis > timeout) {
+      throw new OSHDBTimeoutException();
+    }
+    return true;
+  }
+
+  @Nonnull
+  private Stream<GridOSHEntity> getOshCellsStream(CellIdRange cellIdRange) {
+    final GridOSHEntityFile file = ((OSHDBMapped) this.oshdb).getFile();
+    return this.typeFilter.stream()
+        .flatMap(osmType -> StreamSupport.stream(file.cells(
+            osmType,
+            cellIdRange.getStart().getZoomLevel(),
+            cellIdRange.getStart().getId(),
+            cellIdRange.getEnd().getId()
+        ).spliterator(), false));
+  }
+
+  private Stream<CellIdRange> getCellIdRangesStream() {
+    final List<CellIdRange> cellIdRanges = new ArrayList<>();
+    this.getCellIdRanges().forEach(cellIdRanges::add);
+    if (((OSHDBMapped) this.oshdb).multithreading()) {
+      return cellIdRanges.parallelStream();
+    } else {
+      return cellIdRanges.stream();
+    }
+  }
+
+  // if cells are split into partitions, the cells (which only reference the mapped file) are
+  // collected first, so that each partition of a huge cell is processed as an independent task
+  private Stream<GridOSHEntity> getOshCellsStreams() {
+    if (this.getPartitions() <= 1 || !((OSHDBMapped) this.oshdb).multithreading()) {
+      return this.getCellIdRangesStream()
+          .filter(ignored -> this.isActive())
+          .flatMap(this::getOshCellsStream);
+    }
+    final List<GridOSHEntity> cells = new ArrayList<>();
+    for (CellIdRange cellIdRange : this.getCellIdRanges()) {
+      this.getOshCellsStream(cellIdRange).forEach(cells::add);
+    }
+    return cells.parallelStream();
+  }
+
+  private <S> S reduce(
+      CellProcessor<S> processor,
+      SerializableSupplier<S> identitySupplier,
+      SerializableBinaryOperator<S> combiner
+  ) throws ParseException, SQLException, IOException {
+    this.executionStartTimeMillis = System.currentTimeMillis();
+
+    CellIterator cellIterator = new CellIterator(
+        this.tstamps.get(),
+        this.bboxFilter, this.getPolyFilter(),
+        this.getTagInterpreter(), this.getPreFilter(), this.getFilter(), false
+    ).grid(this.getGrid());
+
+    return this.getOshCellsStreams()
+        .filter(ignored -> this.isActive())
+        .map(oshCell -> processor.apply(oshCell, cellIterator))
+        .reduce(identitySupplier.get(), combiner);
+  }
+
+  private Stream<X> stream(
+      CellProcessor<Stream<X>> processor
+  ) throws ParseException, SQLException, IOException {
+    this.executionStartTimeMillis = System.currentTimeMillis();
+
+    CellIterator cellIterator = new CellIterator(
+        this.tstamps.get(),
+        this.bboxFilter, this.getPolyFilter(),
+        this.getTagInterpreter(), this.getPreFilter(), this.getFilter(), false
+    ).grid(this.getGrid());
+
+    return this.getOshCellsStreams()
+        .filter(ignored -> this.isActive())
+        .flatMap(oshCell -> processor.apply(oshCell, cellIterator));
+  }
+
+  // === map-reduce operations ===
+
+  @Override
+  protected <R, S> S mapReduceCellsOSMContribution(
+      SerializableFunction<OSMContribution, R> mapper,
+      SerializableSupplier<S> identitySupplier,
+      SerializableBiFunction<S, R, S> accumulator,
+      SerializableBinaryOperator<S> combiner
+  ) throws Exception {
+    return this.reduce(
+        Kernels.getOSMContributionCellReducer(
+            mapper,
+            identitySupplier,
+            accumulator,
+            this
+        ),
+        identitySupplier,
+        combiner
+    );
+  }
+
+  @Override
+  protected <R, S> S flatMapReduceCellsOSMContributionGroupedById(
+      SerializableFunction<List<OSMContribution>, Iterable<R>> mapper,
+      SerializableSupplier<S> identitySupplier,
+      SerializableBiFunction<S, R, S> accumulator,
+      SerializableBinaryOperator<S> combiner
+  ) throws Exception {
+    return this.reduce(
+        Kernels.getOSMContributionGroupingCellReducer(
+            mapper,
+            identitySupplier,
+            accumulator,
+            this
+        ),
+        identitySupplier,
+        combiner
+    );
+  }
+
+  @Override
+  protected <R, S> S mapReduceCellsOSMEntitySnapshot(
+      SerializableFunction<OSMEntitySnapshot, R> mapper,
+      SerializableSupplier<S> identitySupplier,
+      SerializableBiFunction<S, R, S> accumulator,
+      SerializableBinaryOperator<S> combiner
+  ) throws Exception {
+    return reduce(
+        Kernels.getOSMEntitySnapshotCellReducer(
+            mapper,
+            identitySupplier,
+            accumulator,
+            this
+        ),
+        identitySupplier,
+        combiner
+    );
+  }
+
+  @Override
+  protected <R, S> S flatMapReduceCellsOSMEntitySnapshotGroupedById(
+      SerializableFunction<List<OSMEntitySnapshot>,Iterable<R>> mapper,
+      SerializableSupplier<S> identitySupplier,
+      SerializableBiFunction<S, R, S> accumulator,
+      SerializableBinaryOperator<S> combiner
+  ) throws Exception {
+    return this.reduce(
+        Kernels.getOSMEntitySnapshotGroupingCellReducer(
+            mapper,
+            identitySupplier,
+            accumulator,
+            this
+        ),
+        identitySupplier,
+        combiner
+    );
+  }
+
+  // === stream operations ===
+
+  @Override
+  protected Stream<X> mapStreamCellsOSMContribution(
+      SerializableFunction<OSMContribution, X> mapper) throws Exception {
+    return this.stream(Kernels.getOSMContributionCellStreamer(mapper, this));
+  }
+
+  @Override
+  protected Stream<X> flatMapStreamCellsOSMContributionGroupedById(
+      SerializableFunction<List<OSMContribution>, Iterable<X>> mapper) throws Exception {
+    return this.stream(Kernels.getOSMContributionGroupingCellStreamer(mapper, this));
+  }
+
+  @Override
+  protected Stream<X> mapStreamCellsOSMEntitySnapshot(
+      SerializableFunction<OSMEntitySnapshot, X> mapper) throws Exception {
+    return this.stream(Kernels.getOSMEntitySnapshotCellStreamer(mapper, this));
+  }
+
+  @Override
+  protected Stream<X> flatMapStreamCellsOSMEntitySnapshotGroupedById(
+      SerializableFunction<List<OSMEntitySnapshot>, Iterable<X>> mapper) throws Exception {
+    return this.stream(Kernels.getOSMEntitySnapshotGroupingCellStreamer(mapper, this));
+  }
+
+}
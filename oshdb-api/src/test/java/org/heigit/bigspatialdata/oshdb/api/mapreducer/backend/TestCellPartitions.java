@@ -0,0 +1,55 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.junit.Test;
+
+/**
+ * Tests the enumeration of the cache keys of partitioned cells of the Ignite backends.
+ */
+public class TestCellPartitions {
+  private final CellIdRange cellIdRange = CellIdRange.of(new CellId(5, 10), new CellId(5, 12));
+
+  @Test
+  public void testUnpartitioned() {
+    CellPartitions partitions = new CellPartitions(1, null);
+    assertArrayEquals(new long[] {
+        CellId.getLevelId(5, 10), CellId.getLevelId(5, 11), CellId.getLevelId(5, 12)
+    }, partitions.keys(cellIdRange).toArray());
+    assertEquals(3, partitions.count(Arrays.asList(cellIdRange)));
+  }
+
+  @Test
+  public void testWithoutStatistics() {
+    // every cell could have the maximum number of partitions
+    CellPartitions partitions = new CellPartitions(2, null);
+    assertEquals(2, partitions.get(5, 10));
+    assertArrayEquals(new long[] {
+        CellId.getLevelId(5, 10, 0), CellId.getLevelId(5, 10, 1),
+        CellId.getLevelId(5, 11, 0), CellId.getLevelId(5, 11, 1),
+        CellId.getLevelId(5, 12, 0), CellId.getLevelId(5, 12, 1)
+    }, partitions.keys(cellIdRange).toArray());
+    assertEquals(6, partitions.count(Arrays.asList(cellIdRange)));
+  }
+
+  @Test
+  public void testWithStatistics() {
+    // only cell 11 is split, into 3 partitions
+    HashMap<Long, Integer> partitionedCells = new HashMap<>();
+    partitionedCells.put(CellId.getLevelId(5, 11), 3);
+    CellPartitions partitions = new CellPartitions(4, partitionedCells);
+    assertEquals(1, partitions.get(5, 10));
+    assertEquals(3, partitions.get(5, 11));
+    assertArrayEquals(new long[] {
+        CellId.getLevelId(5, 10),
+        CellId.getLevelId(5, 11, 0), CellId.getLevelId(5, 11, 1), CellId.getLevelId(5, 11, 2),
+        CellId.getLevelId(5, 12)
+    }, partitions.keys(cellIdRange).toArray());
+    assertEquals(5, partitions.count(Arrays.asList(cellIdRange)));
+  }
+}
@@ -0,0 +1,83 @@
+package org.heigit.bigspatialdata.oshdb.api.mapreducer.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBCostEstimate;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBIgnite.ComputeMode;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.junit.Test;
+
+/**
+ * Tests the choice of the compute mode of the "Auto" Ignite backend.
+ */
+public class TestMapReducerIgniteAuto {
+  private final long maxCells = MapReducerIgniteAuto.AFFINITY_CALL_MAX_CELLS;
+  private final double minFraction = MapReducerIgniteAuto.SCAN_QUERY_MIN_FRACTION;
+
+  @Test
+  public void testAffinityCall() {
+    assertEquals(ComputeMode.AffinityCall,
+        MapReducerIgniteAuto.chooseComputeMode(1, 1000, OptionalDouble.empty()));
+    assertEquals(ComputeMode.AffinityCall,
+        MapReducerIgniteAuto.chooseComputeMode(maxCells, 1000, OptionalDouble.empty()));
+    // few cells are always queried directly, even if they hold all of the data
+    assertEquals(ComputeMode.AffinityCall,
+        MapReducerIgniteAuto.chooseComputeMode(maxCells, 10, OptionalDouble.of(1.0)));
+    assertEquals(ComputeMode.LocalPeek,
+        MapReducerIgniteAuto.chooseComputeMode(maxCells + 1, 1000, OptionalDouble.empty()));
+  }
+
+  @Test
+  public void testWithoutStatistics() {
+    assertFalse(MapReducerIgniteAuto.preferScanQuery(1000, 1000, OptionalDouble.empty()));
+    assertTrue(MapReducerIgniteAuto.preferScanQuery(1001, 1000, OptionalDouble.empty()));
+
+    assertEquals(ComputeMode.LocalPeek,
+        MapReducerIgniteAuto.chooseComputeMode(1000, 1000, OptionalDouble.empty()));
+    assertEquals(ComputeMode.ScanQuery,
+        MapReducerIgniteAuto.chooseComputeMode(1001, 1000, OptionalDouble.empty()));
+  }
+
+  @Test
+  public void testWithStatistics() {
+    // the covered share of the data decides, regardless of the number of cells
+    assertTrue(MapReducerIgniteAuto.preferScanQuery(100, 1000000, OptionalDouble.of(minFraction)));
+    assertFalse(MapReducerIgniteAuto.preferScanQuery(
+        1000000, 100, OptionalDouble.of(Math.nextDown(minFraction))));
+
+    assertEquals(ComputeMode.ScanQuery,
+        MapReducerIgniteAuto.chooseComputeMode(maxCells + 1, 1000000, OptionalDouble.of(1.0)));
+    assertEquals(ComputeMode.LocalPeek,
+        MapReducerIgniteAuto.chooseComputeMode(1000000, 100, OptionalDouble.of(0.0)));
+  }
+
+  @Test
+  public void testCountCandidateCells() {
+    Iterable<CellIdRange> cellIdRanges = Arrays.asList(
+        CellIdRange.of(new CellId(2, 0), new CellId(2, 0)),
+        CellIdRange.of(new CellId(5, 10), new CellId(5, 19))
+    );
+    assertEquals(11, MapReducerIgniteAuto.countCandidateCells(cellIdRanges, 1));
+    assertEquals(44, MapReducerIgniteAuto.countCandidateCells(cellIdRanges, 4));
+    assertEquals(11, MapReducerIgniteAuto.countCandidateCells(cellIdRanges, 0));
+  }
+
+  @Test
+  public void testCoveredFraction() {
+    assertFalse(MapReducerIgniteAuto.coveredFraction(
+        Optional.empty(), OptionalLong.of(100)).isPresent());
+    assertFalse(MapReducerIgniteAuto.coveredFraction(
+        Optional.of(new OSHDBCostEstimate()), OptionalLong.empty()).isPresent());
+    assertEquals(0.0, MapReducerIgniteAuto.coveredFraction(
+        Optional.of(new OSHDBCostEstimate()), OptionalLong.of(0)).getAsDouble(), 0.0);
+    assertEquals(0.0, MapReducerIgniteAuto.coveredFraction(
+        Optional.of(new OSHDBCostEstimate()), OptionalLong.of(100)).getAsDouble(), 0.0);
+  }
+}
@@ -0,0 +1,125 @@
+package org.heigit.bigspatialdata.oshdb.api.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.stream.Collectors;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBDatabase;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBH2;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.OSMContributionView;
+import org.heigit.bigspatialdata.oshdb.api.object.OSMContribution;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.heigit.bigspatialdata.oshdb.util.time.OSHDBTimestamps;
+import org.junit.Test;
+
+/**
+ * Tests the sketch based estimated aggregations (estimatedCountUniq, estimatedTopK).
+ */
+public class TestEstimatedAggregations {
+  private final OSHDBDatabase oshdb;
+
+  private final OSHDBBoundingBox bbox = new OSHDBBoundingBox(8, 49, 9, 50);
+  private final OSHDBTimestamps timestamps72 = new OSHDBTimestamps("2010-01-01", "2015-12-01",
+      OSHDBTimestamps.Interval.MONTHLY);
+
+  private final double REQUIRED_ACCURACY = 0.02;
+
+  public TestEstimatedAggregations() throws Exception {
+    oshdb = new OSHDBH2("./src/test/resources/test-data");
+  }
+
+  private MapReducer<OSMContribution> createMapReducer() {
+    return OSMContributionView.on(oshdb)
+        .timestamps(timestamps72)
+        .osmType(OSMType.NODE)
+        .osmTag("highway")
+        .areaOfInterest(bbox);
+  }
+
+  @Test
+  public void testEstimatedCountUniq() throws Exception {
+    MapReducer<Long> mr = this.createMapReducer()
+        .map(contribution -> contribution.getEntityAfter().getId());
+    int expected = mr.countUniq();
+
+    assertTrue(expected > 1);
+    assertEquals(expected, mr.estimatedCountUniq(), expected * REQUIRED_ACCURACY);
+    assertEquals(expected, mr.estimatedCountUniq(10), expected * 0.1);
+  }
+
+  @Test
+  public void testEstimatedCountUniqAggregated() throws Exception {
+    SortedMap<Boolean, Set<Integer>> expected = this.createMapReducer()
+        .aggregateBy(contribution -> contribution.getEntityAfter().getId() % 2 == 0)
+        .uniq(OSMContribution::getContributorUserId);
+    SortedMap<Boolean, Long> result = this.createMapReducer()
+        .aggregateBy(contribution -> contribution.getEntityAfter().getId() % 2 == 0)
+        .map(OSMContribution::getContributorUserId)
+        .estimatedCountUniq();
+
+    assertEquals(expected.keySet(), result.keySet());
+    for (Boolean key : expected.keySet()) {
+      int size = expected.get(key).size();
+      assertEquals(size, result.get(key), size * REQUIRED_ACCURACY);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEstimatedCountUniqInvalidPrecision() throws Exception {
+    this.createMapReducer().estimatedCountUniq(2);
+  }
+
+  @Test
+  public void testEstimatedTopK() throws Exception {
+    MapReducer<Integer> mr = this.createMapReducer()
+        .map(OSMContribution::getContributorUserId);
+    Map<Integer, Long> counts = mr.stream()
+        .collect(Collectors.groupingBy(userId -> userId, Collectors.counting()));
+
+    // with enough capacity to monitor all values, the counts are exact
+    List<Entry<Integer, Long>> result = mr.estimatedTopK(3, Math.max(3, counts.size()));
+    assertEquals(Math.min(3, counts.size()), result.size());
+    List<Long> expectedCounts = counts.values().stream()
+        .sorted((a, b) -> Long.compare(b, a))
+        .limit(3)
+        .collect(Collectors.toList());
+    List<Long> resultCounts = new ArrayList<>();
+    for (Entry<Integer, Long> entry : result) {
+      assertEquals(counts.get(entry.getKey()), entry.getValue());
+      resultCounts.add(entry.getValue());
+    }
+    assertEquals(expectedCounts, resultCounts);
+
+    // with limited capacity, the counts are upper bounds
+    long total = counts.values().stream().mapToLong(Long::longValue).sum();
+    for (Entry<Integer, Long> entry : mr.estimatedTopK(1, 1)) {
+      assertTrue(entry.getValue() >= counts.get(entry.getKey()));
+      assertTrue(entry.getValue() <= total);
+    }
+  }
+
+  @Test
+  public void testEstimatedTopKAggregated() throws Exception {
+    SortedMap<Boolean, List<Entry<Integer, Long>>> result = this.createMapReducer()
+        .aggregateBy(contribution -> contribution.getEntityAfter().getId() % 2 == 0)
+        .map(OSMContribution::getContributorUserId)
+        .estimatedTopK(1);
+    SortedMap<Boolean, Integer> counts = this.createMapReducer()
+        .aggregateBy(contribution -> contribution.getEntityAfter().getId() % 2 == 0)
+        .count();
+
+    assertEquals(counts.keySet(), result.keySet());
+    for (Boolean key : counts.keySet()) {
+      assertEquals(1, result.get(key).size());
+      assertTrue(result.get(key).get(0).getValue() <= counts.get(key));
+    }
+  }
+}
@@ -16,8 +16,10 @@ import org.heigit.bigspatialdata.oshdb.osm.OSMType;
 import org.heigit.bigspatialdata.oshdb.util.celliterator.ContributionType;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 
@@ -67,4 +69,38 @@ public class TestFilter {
     // should be 3: first version doesn't have the highway tag, remaining 7 versions have 5 different contributor user ids, but last two didn't modify the node's coordinates
     assertEquals(3, result.get(617308093L).size());
   }
+
+  @Test
+  public void testChainedFilters() throws Exception {
+    Set<Integer> expected = createMapReducerOSMContribution()
+        .timestamps(timestamps72)
+        .osmEntityFilter(entity -> entity.getId() == 617308093)
+        .map(OSMContribution::getContributorUserId)
+        .uniq();
+
+    MapReducer<Integer> mapReducer = createMapReducerOSMContribution()
+        .timestamps(timestamps72)
+        .osmEntityFilter(entity -> entity.getId() == 617308093)
+        .map(OSMContribution::getContributorUserId)
+        .filter(uid -> uid > 0)
+        .flatMap(uid -> Arrays.asList(uid, -uid))
+        .filter(uid -> uid < 0)
+        .map(uid -> -uid);
+
+    assertEquals(expected, mapReducer.uniq());
+    assertEquals(expected, mapReducer.stream().collect(Collectors.toSet()));
+
+    Set<Integer> groupedResult = createMapReducerOSMContribution()
+        .timestamps(timestamps72)
+        .osmEntityFilter(entity -> entity.getId() == 617308093)
+        .groupByEntity()
+        .flatMap(contributions -> contributions)
+        .map(OSMContribution::getContributorUserId)
+        .filter(uid -> uid > 0)
+        .map(uid -> -uid)
+        .filter(uid -> uid < 0)
+        .map(uid -> -uid)
+        .uniq();
+    assertEquals(expected, groupedResult);
+  }
 }
@@ -145,4 +145,35 @@ public class TestMapAggregateByIndex {
         OSHDBCombinedIndex.nest(OSHDBCombinedIndex.nest(result));
     assertEquals(1, (int)nestedResult.get(617308093L).get(OSMType.NODE).get(165061));
   }
+
+  @Test
+  public void testManyGroups() throws Exception {
+    MapReducer<OSMContribution> mapReducer = createMapReducerOSMContribution()
+        .timestamps(timestamps72);
+
+    SortedMap<Integer, List<OSMContribution>> collected = mapReducer
+        .aggregateBy(OSMContribution::getContributorUserId)
+        .collect();
+    SortedMap<Integer, Integer> counts = mapReducer
+        .aggregateBy(OSMContribution::getContributorUserId)
+        .count();
+    SortedMap<Integer, Number> intSums = mapReducer
+        .aggregateBy(OSMContribution::getContributorUserId)
+        .map(ignored -> 2)
+        .sum();
+    SortedMap<Integer, Number> doubleSums = mapReducer
+        .aggregateBy(OSMContribution::getContributorUserId)
+        .sum(ignored -> 0.5);
+
+    assertEquals(true, collected.size() > 1);
+    assertEquals(collected.keySet(), counts.keySet());
+    assertEquals(collected.keySet(), intSums.keySet());
+    assertEquals(collected.keySet(), doubleSums.keySet());
+    for (Map.Entry<Integer, List<OSMContribution>> entry : collected.entrySet()) {
+      int size = entry.getValue().size();
+      assertEquals(size, (int) counts.get(entry.getKey()));
+      assertEquals(2 * size, intSums.get(entry.getKey()));
+      assertEquals(0.5 * size, doubleSums.get(entry.getKey()));
+    }
+  }
 }
@@ -0,0 +1,9 @@
+package org.heigit.bigspatialdata.oshdb.api.tests;
+
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBIgnite;
+
+public class TestMapReduceOSHDB_Ignite_Auto extends TestMapReduceOSHDB_Ignite {
+  public TestMapReduceOSHDB_Ignite_Auto() throws Exception {
+    super(new OSHDBIgnite(ignite).computeMode(OSHDBIgnite.ComputeMode.Auto));
+  }
+}
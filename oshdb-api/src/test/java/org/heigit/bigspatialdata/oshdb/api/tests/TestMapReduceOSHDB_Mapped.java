@@ -0,0 +1,40 @@
+package org.heigit.bigspatialdata.oshdb.api.tests;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBH2;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBMapped;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityCodec;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityFile;
+import org.heigit.bigspatialdata.oshdb.util.TableNames;
+
+public class TestMapReduceOSHDB_Mapped extends TestMapReduce {
+  public TestMapReduceOSHDB_Mapped() throws Exception {
+    super(new OSHDBMapped(createFile()));
+
+    this.keytables = new OSHDBH2("./src/test/resources/test-data");
+  }
+
+  private static String createFile() throws Exception {
+    File file = File.createTempFile("oshdb-test", ".oshdb");
+    file.deleteOnExit();
+
+    OSHDBH2 oshdbH2 = new OSHDBH2("./src/test/resources/test-data");
+    Connection h2Conn = oshdbH2.getConnection();
+    try (GridOSHEntityFile.Writer writer = GridOSHEntityFile.writer(file.toPath());
+        Statement h2Stmt = h2Conn.createStatement()) {
+      for (TableNames table : new TableNames[] {
+          TableNames.T_NODES, TableNames.T_WAYS, TableNames.T_RELATIONS }) {
+        try (ResultSet rst = h2Stmt.executeQuery(
+            "select data from " + table.toString() + " order by level, id")) {
+          while (rst.next()) {
+            writer.add(GridOSHEntityCodec.fromBytes(rst.getBytes(1)));
+          }
+        }
+      }
+    }
+    return file.toString();
+  }
+}
@@ -0,0 +1,125 @@
+package org.heigit.bigspatialdata.oshdb.api.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.stream.Collectors;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBDatabase;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBH2;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.OSMContributionView;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.OSMEntitySnapshotView;
+import org.heigit.bigspatialdata.oshdb.api.object.OSMContribution;
+import org.heigit.bigspatialdata.oshdb.api.object.OSMEntitySnapshot;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.heigit.bigspatialdata.oshdb.util.time.OSHDBTimestamps;
+import org.junit.Test;
+
+/**
+ * Tests the execution of multiple queries in a batch.
+ */
+public class TestMapReducerBatch {
+  private final OSHDBDatabase oshdb;
+
+  private final OSHDBBoundingBox bbox = new OSHDBBoundingBox(8, 49, 9, 50);
+  private final OSHDBTimestamps timestamps72 = new OSHDBTimestamps("2010-01-01", "2015-12-01",
+      OSHDBTimestamps.Interval.MONTHLY);
+
+  public TestMapReducerBatch() throws Exception {
+    oshdb = new OSHDBH2("./src/test/resources/test-data");
+  }
+
+  private MapReducer<OSMEntitySnapshot> createMapReducerOSMEntitySnapshot() {
+    return OSMEntitySnapshotView.on(oshdb).timestamps(timestamps72).areaOfInterest(bbox);
+  }
+
+  private MapReducer<OSMContribution> createMapReducerOSMContribution() {
+    return OSMContributionView.on(oshdb).timestamps(timestamps72).areaOfInterest(bbox);
+  }
+
+  @Test
+  public void testSharedScan() throws Exception {
+    MapReducer<OSMEntitySnapshot> highways = this.createMapReducerOSMEntitySnapshot()
+        .osmType(OSMType.WAY)
+        .osmTag("highway");
+    MapReducer<OSMEntitySnapshot> buildings = this.createMapReducerOSMEntitySnapshot()
+        .osmTag("building");
+    MapReducer<OSMEntitySnapshot> nodes = this.createMapReducerOSMEntitySnapshot()
+        .osmType(OSMType.NODE)
+        .osmEntityFilter(entity -> entity.getVersion() > 1);
+
+    List<Object> results = oshdb.batch()
+        .add(highways, mr -> mr.aggregateByTimestamp().count())
+        .add(buildings, mr -> mr.map(snapshot -> snapshot.getGeometry().getArea()).sum())
+        .add(buildings, mr -> mr.filter(snapshot -> snapshot.getEntity().getVersion() > 2)
+            .aggregateByTimestamp().count())
+        .add(nodes, mr -> mr.map(snapshot -> snapshot.getEntity().getId()).countUniq())
+        .add(highways, mr -> mr.groupByEntity().map(List::size).collect())
+        .execute();
+
+    SortedMap<OSHDBTimestamp, Integer> expectedHighways = highways
+        .aggregateByTimestamp()
+        .count();
+    assertEquals(expectedHighways, results.get(0));
+    assertEquals(
+        buildings.map(snapshot -> snapshot.getGeometry().getArea()).sum().doubleValue(),
+        ((Number) results.get(1)).doubleValue(),
+        1E-10
+    );
+    assertEquals(
+        buildings.filter(snapshot -> snapshot.getEntity().getVersion() > 2)
+            .aggregateByTimestamp().count(),
+        results.get(2)
+    );
+    assertEquals(
+        nodes.map(snapshot -> snapshot.getEntity().getId()).countUniq(),
+        results.get(3)
+    );
+    @SuppressWarnings("unchecked")
+    List<Integer> entitySnapshotCounts = (List<Integer>) results.get(4);
+    assertEquals(
+        highways.groupByEntity().map(List::size).collect().stream().sorted()
+            .collect(Collectors.toList()),
+        entitySnapshotCounts.stream().sorted().collect(Collectors.toList())
+    );
+  }
+
+  @Test
+  public void testMixedQueries() throws Exception {
+    MapReducer<OSMEntitySnapshot> snapshots = this.createMapReducerOSMEntitySnapshot()
+        .osmTag("highway");
+    MapReducer<OSMContribution> contributions = this.createMapReducerOSMContribution()
+        .osmTag("highway");
+
+    List<Object> results = oshdb.batch()
+        .add(snapshots, MapReducer::count)
+        .add(contributions, MapReducer::count)
+        .add(snapshots, mr -> mr.count() + mr.map(snapshot -> 1).sum().intValue())
+        .add(snapshots.areaOfInterest(new OSHDBBoundingBox(8, 49, 8.5, 49.5)), MapReducer::count)
+        .add(snapshots, mr -> mr.map(snapshot -> snapshot.getEntity().getId())
+            .stream().distinct().count())
+        .execute();
+
+    Integer expectedSnapshots = snapshots.count();
+    assertEquals(expectedSnapshots, results.get(0));
+    assertEquals(contributions.count(), results.get(1));
+    assertEquals(2 * expectedSnapshots, results.get(2));
+    assertEquals(
+        snapshots.areaOfInterest(new OSHDBBoundingBox(8, 49, 8.5, 49.5)).count(),
+        results.get(3)
+    );
+    assertEquals(
+        snapshots.map(snapshot -> snapshot.getEntity().getId()).stream().distinct().count(),
+        results.get(4)
+    );
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDifferentOshdb() throws Exception {
+    OSHDBDatabase otherOshdb = new OSHDBH2("./src/test/resources/test-data");
+    oshdb.batch().add(OSMEntitySnapshotView.on(otherOshdb), MapReducer::count);
+  }
+}
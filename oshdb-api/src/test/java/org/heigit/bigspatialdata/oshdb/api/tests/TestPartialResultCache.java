@@ -0,0 +1,133 @@
+package org.heigit.bigspatialdata.oshdb.api.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SortedMap;
+import java.util.stream.Stream;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBH2;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.OSMContributionView;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.OSMEntitySnapshotView;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.PartialResultCache;
+import org.heigit.bigspatialdata.oshdb.api.object.OSMContribution;
+import org.heigit.bigspatialdata.oshdb.api.object.OSMEntitySnapshot;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.heigit.bigspatialdata.oshdb.util.time.OSHDBTimestamps;
+import org.junit.Test;
+
+/**
+ * Tests the partial result cache of the jdbc backends.
+ */
+public class TestPartialResultCache {
+  private final OSHDBH2 oshdb;
+
+  private final OSHDBBoundingBox bbox = new OSHDBBoundingBox(8, 49, 9, 50);
+  private final OSHDBTimestamps timestamps72 = new OSHDBTimestamps("2010-01-01", "2015-12-01",
+      OSHDBTimestamps.Interval.MONTHLY);
+
+  public TestPartialResultCache() throws Exception {
+    oshdb = new OSHDBH2("./src/test/resources/test-data");
+  }
+
+  private MapReducer<OSMContribution> createMapReducerOSMContribution(
+      OSHDBBoundingBox bbox, PartialResultCache cache) {
+    return OSMContributionView.on(oshdb)
+        .cachePartialResults(cache, "test")
+        .timestamps(timestamps72)
+        .osmType(OSMType.NODE)
+        .osmTag("highway")
+        .areaOfInterest(bbox);
+  }
+
+  private MapReducer<OSMEntitySnapshot> createMapReducerOSMEntitySnapshot(
+      PartialResultCache cache) {
+    return OSMEntitySnapshotView.on(oshdb)
+        .cachePartialResults(cache, "test")
+        .timestamps(timestamps72)
+        .osmType(OSMType.NODE)
+        .osmTag("highway")
+        .areaOfInterest(bbox);
+  }
+
+  @Test
+  public void testRepeatedQuery() throws Exception {
+    for (boolean multithreading : new boolean[] { false, true }) {
+      oshdb.multithreading(multithreading);
+      PartialResultCache cache = new PartialResultCache(1024 * 1024);
+      SortedMap<OSMType, Integer> expected = this.createMapReducerOSMContribution(bbox, null)
+          .aggregateBy(contribution -> contribution.getEntityAfter().getType())
+          .count();
+
+      SortedMap<OSMType, Integer> result1 = this.createMapReducerOSMContribution(bbox, cache)
+          .aggregateBy(contribution -> contribution.getEntityAfter().getType())
+          .count();
+      long misses = cache.getMissCount();
+      assertEquals(expected, result1);
+      assertEquals(0, cache.getHitCount());
+      assertTrue(misses > 0);
+      assertTrue(cache.getBytes() > 0);
+
+      SortedMap<OSMType, Integer> result2 = this.createMapReducerOSMContribution(bbox, cache)
+          .aggregateBy(contribution -> contribution.getEntityAfter().getType())
+          .count();
+      assertEquals(expected, result2);
+      assertEquals(misses, cache.getHitCount());
+      assertEquals(misses, cache.getMissCount());
+    }
+  }
+
+  @Test
+  public void testDifferentQueries() throws Exception {
+    PartialResultCache cache = new PartialResultCache(1024 * 1024);
+    Integer count = this.createMapReducerOSMContribution(bbox, cache).count();
+    long misses = cache.getMissCount();
+
+    // results of different reduce operations and views must not be mixed up
+    assertEquals(
+        this.createMapReducerOSMContribution(bbox, null).sum(contribution -> 1),
+        this.createMapReducerOSMContribution(bbox, cache).sum(contribution -> 1)
+    );
+    assertEquals(
+        this.createMapReducerOSMEntitySnapshot(null).count(),
+        this.createMapReducerOSMEntitySnapshot(cache).count()
+    );
+    assertEquals(0, cache.getHitCount());
+    assertTrue(cache.getMissCount() > misses);
+
+    // cells fully inside of a different area of interest can be reused
+    OSHDBBoundingBox largerBbox = new OSHDBBoundingBox(7.9, 48.9, 9.1, 50.1);
+    assertEquals(
+        this.createMapReducerOSMContribution(largerBbox, null).count(),
+        this.createMapReducerOSMContribution(largerBbox, cache).count()
+    );
+    assertEquals(count, this.createMapReducerOSMContribution(bbox, cache).count());
+    assertTrue(cache.getHitCount() > 0);
+  }
+
+  @Test
+  public void testDiskTier() throws Exception {
+    Path directory = Files.createTempDirectory("oshdb-partial-results");
+    try {
+      PartialResultCache cache = new PartialResultCache(0, directory);
+      Integer expected = this.createMapReducerOSMContribution(bbox, cache).count();
+      assertEquals(0, cache.getBytes());
+      long misses = cache.getMissCount();
+
+      assertEquals(expected, this.createMapReducerOSMContribution(bbox, cache).count());
+      assertEquals(misses, cache.getHitCount());
+
+      cache.clear();
+      assertEquals(expected, this.createMapReducerOSMContribution(bbox, cache).count());
+      assertEquals(misses, cache.getHitCount());
+    } finally {
+      try (Stream<Path> files = Files.list(directory)) {
+        files.forEach(file -> file.toFile().delete());
+      }
+      Files.delete(directory);
+    }
+  }
+}
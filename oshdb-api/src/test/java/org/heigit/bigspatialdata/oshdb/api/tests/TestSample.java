@@ -0,0 +1,120 @@
+package org.heigit.bigspatialdata.oshdb.api.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.SortedMap;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBDatabase;
+import org.heigit.bigspatialdata.oshdb.api.db.OSHDBH2;
+import org.heigit.bigspatialdata.oshdb.api.generic.SampleEstimate;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.MapReducer;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.OSMContributionView;
+import org.heigit.bigspatialdata.oshdb.api.mapreducer.OSMEntitySnapshotView;
+import org.heigit.bigspatialdata.oshdb.api.object.OSMContribution;
+import org.heigit.bigspatialdata.oshdb.api.object.OSMEntitySnapshot;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.heigit.bigspatialdata.oshdb.util.time.OSHDBTimestamps;
+import org.junit.Test;
+
+/**
+ * Tests the sampling of cells and the estimated aggregations.
+ */
+public class TestSample {
+  private final OSHDBDatabase oshdb;
+
+  private final OSHDBBoundingBox bbox = new OSHDBBoundingBox(8, 49, 9, 50);
+  private final OSHDBTimestamps timestamps72 = new OSHDBTimestamps("2010-01-01", "2015-12-01",
+      OSHDBTimestamps.Interval.MONTHLY);
+
+  private final double DELTA = 1e-8;
+
+  public TestSample() throws Exception {
+    oshdb = new OSHDBH2("./src/test/resources/test-data");
+  }
+
+  private MapReducer<OSMEntitySnapshot> createMapReducerOSMEntitySnapshot() {
+    return OSMEntitySnapshotView.on(oshdb)
+        .timestamps(timestamps72)
+        .osmTag("building")
+        .areaOfInterest(bbox);
+  }
+
+  private MapReducer<OSMContribution> createMapReducerOSMContribution() {
+    return OSMContributionView.on(oshdb)
+        .timestamps(timestamps72)
+        .osmType(OSMType.NODE)
+        .osmTag("highway")
+        .areaOfInterest(bbox);
+  }
+
+  @Test
+  public void testWithoutSampling() throws Exception {
+    MapReducer<OSMEntitySnapshot> mr = this.createMapReducerOSMEntitySnapshot();
+    SampleEstimate count = mr.estimatedCount();
+    assertEquals(mr.count(), count.getValue(), DELTA);
+    assertEquals(0, count.getStandardError(), DELTA);
+    assertEquals(count.getValue(), count.getLowerBound(), DELTA);
+    assertEquals(count.getValue(), count.getUpperBound(), DELTA);
+
+    SampleEstimate sum = mr.sample(1.0, 42)
+        .estimatedSum(snapshot -> snapshot.getEntity().getVersion());
+    assertEquals(mr.sum(snapshot -> snapshot.getEntity().getVersion()).doubleValue(),
+        sum.getValue(), DELTA);
+    assertEquals(0, sum.getStandardError(), DELTA);
+  }
+
+  @Test
+  public void testSampledCells() throws Exception {
+    int total = this.createMapReducerOSMContribution().count();
+    MapReducer<OSMContribution> sampled = this.createMapReducerOSMContribution().sample(0.5, 42);
+    int sampledCount = sampled.count();
+    assertTrue(sampledCount <= total);
+    // the sample is deterministic
+    assertEquals(sampledCount, (int) sampled.count());
+
+    SampleEstimate estimate = sampled.estimatedCount();
+    assertEquals(sampledCount / 0.5, estimate.getValue(), DELTA);
+    assertTrue(estimate.getLowerBound() <= estimate.getValue());
+    assertTrue(estimate.getUpperBound() >= estimate.getValue());
+    if (sampledCount > 0) {
+      assertTrue(estimate.getStandardError() > 0);
+    }
+
+    // samples of other seeds are subsets of all cells, too
+    for (long seed = 0; seed < 10; seed++) {
+      assertTrue(this.createMapReducerOSMContribution().sample(0.5, seed).count() <= total);
+    }
+    // a fraction of 1 samples all cells
+    assertEquals(total, (int) this.createMapReducerOSMContribution().sample(1.0, 7).count());
+  }
+
+  @Test
+  public void testEstimatedAggregations() throws Exception {
+    MapReducer<OSMEntitySnapshot> sampled = this.createMapReducerOSMEntitySnapshot()
+        .sample(0.25, 7);
+    SortedMap<OSHDBTimestamp, Integer> counts = sampled.aggregateByTimestamp().count();
+    SortedMap<OSHDBTimestamp, SampleEstimate> estimates = sampled.aggregateByTimestamp()
+        .estimatedCount();
+    assertEquals(counts.keySet(), estimates.keySet());
+    for (OSHDBTimestamp timestamp : counts.keySet()) {
+      assertEquals(counts.get(timestamp) / 0.25, estimates.get(timestamp).getValue(), DELTA);
+    }
+
+    SortedMap<OSHDBTimestamp, Integer> sums = sampled.aggregateByTimestamp()
+        .sum(snapshot -> snapshot.getEntity().getVersion());
+    SortedMap<OSHDBTimestamp, SampleEstimate> estimatedSums = sampled.aggregateByTimestamp()
+        .estimatedSum(snapshot -> snapshot.getEntity().getVersion());
+    assertEquals(sums.keySet(), estimatedSums.keySet());
+    for (OSHDBTimestamp timestamp : sums.keySet()) {
+      assertEquals(sums.get(timestamp).doubleValue() / 0.25,
+          estimatedSums.get(timestamp).getValue(), DELTA);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidFraction() throws Exception {
+    this.createMapReducerOSMEntitySnapshot().sample(0, 42);
+  }
+}
@@ -2,6 +2,7 @@ package org.heigit.bigspatialdata.oshdb.tool.importer.load.cli;
 
 import java.nio.file.Path;
 
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityCompression;
 import org.heigit.bigspatialdata.oshdb.tool.importer.cli.CommonArgs;
 
 import com.beust.jcommander.Parameter;
@@ -33,6 +34,21 @@ public class DBH2Arg {
   @Parameter(names = {"-z", "--maxZoom" }, description = "maximal zoom level", validateWith = PositiveInteger.class,  order = 2)
   public int maxZoom = 15;
     
+  @Parameter(names = {"--compression"}, description = "compression of the grid cells (NONE, LZ4, ZSTD)")
+  public GridOSHEntityCompression compression = GridOSHEntityCompression.NONE;
+
+  @Parameter(names = {"--member-dictionary"}, description = "store the member nodes and ways of the ways and relations of a grid cell only once per cell", arity = 1)
+  public boolean memberDictionary = true;
+
+  @Parameter(names = {"--grid"}, description = "numbering of the grid cells (xy, hilbert)")
+  public String grid = "xy";
+
+  @Parameter(names = {"--max-entities-per-cell"}, description = "split grid cells with more entities into several partitions (0 for no limit)")
+  public int maxEntitiesPerCell = 0;
+
+  @Parameter(names = {"--max-bytes-per-cell"}, description = "split grid cells with more bytes of entities into several partitions (0 for no limit)")
+  public long maxBytesPerCell = 0;
+
   @Parameter(names = {"--attribution"}, required = true)
   public String attribution = "Copyright Right";
   
@@ -5,7 +5,6 @@ import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -13,15 +12,23 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityCodec;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityCompression;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityPartitioner;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityStatistics;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHNodes;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHRelations;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHWays;
+import org.heigit.bigspatialdata.oshdb.index.GridTree;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree;
 import org.heigit.bigspatialdata.oshdb.tool.importer.load.Loader;
 import org.heigit.bigspatialdata.oshdb.tool.importer.load.LoaderKeyTables;
 import org.heigit.bigspatialdata.oshdb.tool.importer.load.LoaderNode;
 import org.heigit.bigspatialdata.oshdb.tool.importer.load.LoaderRelation;
 import org.heigit.bigspatialdata.oshdb.tool.importer.load.LoaderWay;
 import org.heigit.bigspatialdata.oshdb.tool.importer.load.cli.DBH2Arg;
+import org.heigit.bigspatialdata.oshdb.tool.importer.util.ZGrid;
 import org.heigit.bigspatialdata.oshdb.util.TableNames;
 import org.roaringbitmap.longlong.Roaring64NavigableMap;
 
@@ -40,17 +47,67 @@ public class OSHDB2H2Handler extends OSHDBHandler {
   private PreparedStatement insertNode;
   private PreparedStatement insertWay;
   private PreparedStatement insertRelation;
+  private PreparedStatement insertStatistics;
+  private final GridOSHEntityCompression compression;
 
   public OSHDB2H2Handler(Roaring64NavigableMap bitmapNodes, Roaring64NavigableMap bitmapWays,
       PreparedStatement insertKey, PreparedStatement insertValue, PreparedStatement insertRole,
       PreparedStatement insertNode, PreparedStatement insertWay, PreparedStatement insertRelation) {
-    super(bitmapNodes, bitmapWays);
+    this(bitmapNodes, bitmapWays, insertKey, insertValue, insertRole, insertNode, insertWay,
+        insertRelation, GridOSHEntityCompression.NONE);
+  }
+
+  public OSHDB2H2Handler(Roaring64NavigableMap bitmapNodes, Roaring64NavigableMap bitmapWays,
+      PreparedStatement insertKey, PreparedStatement insertValue, PreparedStatement insertRole,
+      PreparedStatement insertNode, PreparedStatement insertWay, PreparedStatement insertRelation,
+      GridOSHEntityCompression compression) {
+    this(bitmapNodes, bitmapWays, insertKey, insertValue, insertRole, insertNode, insertWay,
+        insertRelation, compression, true);
+  }
+
+  public OSHDB2H2Handler(Roaring64NavigableMap bitmapNodes, Roaring64NavigableMap bitmapWays,
+      PreparedStatement insertKey, PreparedStatement insertValue, PreparedStatement insertRole,
+      PreparedStatement insertNode, PreparedStatement insertWay, PreparedStatement insertRelation,
+      GridOSHEntityCompression compression, boolean memberDictionary) {
+    this(bitmapNodes, bitmapWays, insertKey, insertValue, insertRole, insertNode, insertWay,
+        insertRelation, compression, memberDictionary, new XYGridTree(ZGrid.MAX_ZOOM));
+  }
+
+  public OSHDB2H2Handler(Roaring64NavigableMap bitmapNodes, Roaring64NavigableMap bitmapWays,
+      PreparedStatement insertKey, PreparedStatement insertValue, PreparedStatement insertRole,
+      PreparedStatement insertNode, PreparedStatement insertWay, PreparedStatement insertRelation,
+      GridOSHEntityCompression compression, boolean memberDictionary, GridTree grid) {
+    this(bitmapNodes, bitmapWays, insertKey, insertValue, insertRole, insertNode, insertWay,
+        insertRelation, compression, memberDictionary, grid, GridOSHEntityPartitioner.NONE);
+  }
+
+  public OSHDB2H2Handler(Roaring64NavigableMap bitmapNodes, Roaring64NavigableMap bitmapWays,
+      PreparedStatement insertKey, PreparedStatement insertValue, PreparedStatement insertRole,
+      PreparedStatement insertNode, PreparedStatement insertWay, PreparedStatement insertRelation,
+      GridOSHEntityCompression compression, boolean memberDictionary, GridTree grid,
+      GridOSHEntityPartitioner partitioner) {
+    this(bitmapNodes, bitmapWays, insertKey, insertValue, insertRole, insertNode, insertWay,
+        insertRelation, compression, memberDictionary, grid, partitioner, null);
+  }
+
+  /**
+   * @param insertStatistics statement inserting a row into the statistics catalog, or null if no
+   *        statistics should be stored
+   */
+  public OSHDB2H2Handler(Roaring64NavigableMap bitmapNodes, Roaring64NavigableMap bitmapWays,
+      PreparedStatement insertKey, PreparedStatement insertValue, PreparedStatement insertRole,
+      PreparedStatement insertNode, PreparedStatement insertWay, PreparedStatement insertRelation,
+      GridOSHEntityCompression compression, boolean memberDictionary, GridTree grid,
+      GridOSHEntityPartitioner partitioner, PreparedStatement insertStatistics) {
+    super(bitmapNodes, bitmapWays, memberDictionary, grid, partitioner);
     this.insertKey = insertKey;
     this.insertValue = insertValue;
     this.insertRole = insertRole;
     this.insertNode = insertNode;
     this.insertWay = insertWay;
     this.insertRelation = insertRelation;
+    this.insertStatistics = insertStatistics;
+    this.compression = compression;
 
   }
 
@@ -96,20 +153,19 @@ public class OSHDB2H2Handler extends OSHDBHandler {
   FastByteArrayOutputStream out = new FastByteArrayOutputStream(1024);
 
   @Override
-  public void handleNodeGrid(GridOSHNodes grid) {
+  public void handleNodeGrid(GridOSHNodes grid, int partition) {
     // System.out.println("nod "+grid.getLevel()+":"+grid.getId());
     try {
       out.reset();
-      try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
-        oos.writeObject(grid);
-        oos.flush();
-      }
+      GridOSHEntityCodec.write(grid, out, compression);
       FastByteArrayInputStream in = new FastByteArrayInputStream(out.array, 0, out.length);
-      System.out.print("insert "+grid.getLevel()+":"+grid.getId());
+      System.out.print("insert "+grid.getLevel()+":"+grid.getId()+"/"+partition);
       insertNode.setInt(1, grid.getLevel());
       insertNode.setLong(2, grid.getId());
-      insertNode.setBinaryStream(3, in);
+      insertNode.setInt(3, partition);
+      insertNode.setBinaryStream(4, in);
       insertNode.executeUpdate();
+      insertStatistics(grid, partition, out.length);
       System.out.println(" done!");
       
     } catch (IOException | SQLException e) {
@@ -118,20 +174,19 @@ public class OSHDB2H2Handler extends OSHDBHandler {
   }
 
   @Override
-  public void handleWayGrid(GridOSHWays grid) {
+  public void handleWayGrid(GridOSHWays grid, int partition) {
     // System.out.println("way "+grid.getLevel()+":"+grid.getId());
     try {
       out.reset();
-      try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
-        oos.writeObject(grid);
-        oos.flush();
-      }
+      GridOSHEntityCodec.write(grid, out, compression);
       FastByteArrayInputStream in = new FastByteArrayInputStream(out.array, 0, out.length);
 
       insertWay.setInt(1, grid.getLevel());
       insertWay.setLong(2, grid.getId());
-      insertWay.setBinaryStream(3, in);
+      insertWay.setInt(3, partition);
+      insertWay.setBinaryStream(4, in);
       insertWay.executeUpdate();
+      insertStatistics(grid, partition, out.length);
 
     } catch (IOException | SQLException e) {
       throw new RuntimeException(e);
@@ -140,20 +195,19 @@ public class OSHDB2H2Handler extends OSHDBHandler {
   }
 
   @Override
-  public void handleRelationsGrid(GridOSHRelations grid) {
+  public void handleRelationsGrid(GridOSHRelations grid, int partition) {
     // System.out.println("rel "+ grid.getLevel()+":"+grid.getId());
     try {
       out.reset();
-      try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
-        oos.writeObject(grid);
-        oos.flush();
-      }
+      GridOSHEntityCodec.write(grid, out, compression);
       FastByteArrayInputStream in = new FastByteArrayInputStream(out.array, 0, out.length);
 
       insertRelation.setInt(1, grid.getLevel());
       insertRelation.setLong(2, grid.getId());
-      insertRelation.setBinaryStream(3, in);
+      insertRelation.setInt(3, partition);
+      insertRelation.setBinaryStream(4, in);
       insertRelation.executeUpdate();
+      insertStatistics(grid, partition, out.length);
 
     } catch (IOException | SQLException e) {
       throw new RuntimeException(e);
@@ -161,10 +215,29 @@ public class OSHDB2H2Handler extends OSHDBHandler {
 
   }
   
+  private void insertStatistics(GridOSHEntity grid, int partition, long bytes) throws SQLException {
+    if (insertStatistics == null) {
+      return;
+    }
+    GridOSHEntityStatistics statistics = GridOSHEntityStatistics.of(grid, partition, bytes);
+    insertStatistics.setInt(1, statistics.getType().intValue());
+    insertStatistics.setInt(2, statistics.getLevel());
+    insertStatistics.setLong(3, statistics.getId());
+    insertStatistics.setInt(4, statistics.getPartition());
+    insertStatistics.setLong(5, statistics.getBytes());
+    insertStatistics.setInt(6, statistics.getEntityCount());
+    insertStatistics.setLong(7, statistics.getVersionCount());
+    insertStatistics.setLong(8, statistics.getMinTimestamp());
+    insertStatistics.setLong(9, statistics.getMaxTimestamp());
+    insertStatistics.setString(10, statistics.encodeTagKeys());
+    insertStatistics.executeUpdate();
+  }
+
   public static void load(DBH2Arg config) throws ClassNotFoundException {
     final Path workDirectory = config.common.workDir;
     Path oshdb = config.h2db;
     int maxZoomLevel = config.maxZoom;
+    GridTree grid = GridTree.of(config.grid, maxZoomLevel);
 
     int minNodesPerGrid = config.minNodesPerGrid;
     int minWaysPerGrid = config.minWaysPerGrid;
@@ -209,6 +282,10 @@ public class OSHDB2H2Handler extends OSHDBHandler {
           insert.setString(1,"oshdb.maxzoom");
           insert.setString(2,""+maxZoomLevel);
           insert.addBatch();
+
+          insert.setString(1,GridTree.METADATA_KEY);
+          insert.setString(2,grid.getName());
+          insert.addBatch();
           
           insert.executeBatch();
         }
@@ -238,19 +315,26 @@ public class OSHDB2H2Handler extends OSHDBHandler {
         }
         
         stmt.executeUpdate("drop table if exists " + TableNames.T_NODES.toString() + "; create table if not exists "
-            + TableNames.T_NODES.toString() + "(level int, id bigint, data blob,  primary key(level,id))");
+            + TableNames.T_NODES.toString() + "(level int, id bigint, part int default 0, data blob,  primary key(level,id,part))");
         PreparedStatement insertNode = conn
-            .prepareStatement("insert into " + TableNames.T_NODES.toString() + " (level,id,data) values(?,?,?)");
+            .prepareStatement("insert into " + TableNames.T_NODES.toString() + " (level,id,part,data) values(?,?,?,?)");
 
         stmt.executeUpdate("drop table if exists " + TableNames.T_WAYS.toString() + "; create table if not exists "
-            + TableNames.T_WAYS.toString() + "(level int, id bigint, data blob,  primary key(level,id))");
+            + TableNames.T_WAYS.toString() + "(level int, id bigint, part int default 0, data blob,  primary key(level,id,part))");
         PreparedStatement insertWay = conn
-            .prepareStatement("insert into " + TableNames.T_WAYS.toString() + " (level,id,data) values(?,?,?)");
+            .prepareStatement("insert into " + TableNames.T_WAYS.toString() + " (level,id,part,data) values(?,?,?,?)");
 
         stmt.executeUpdate("drop table if exists " + TableNames.T_RELATIONS.toString() + "; create table if not exists "
-            + TableNames.T_RELATIONS.toString() + "(level int, id bigint, data blob,  primary key(level,id))");
+            + TableNames.T_RELATIONS.toString() + "(level int, id bigint, part int default 0, data blob,  primary key(level,id,part))");
         PreparedStatement insertRelation = conn
-            .prepareStatement("insert into " + TableNames.T_RELATIONS.toString() + " (level,id,data) values(?,?,?)");
+            .prepareStatement("insert into " + TableNames.T_RELATIONS.toString() + " (level,id,part,data) values(?,?,?,?)");
+
+        stmt.executeUpdate("drop table if exists " + TableNames.T_STATISTICS.toString() + "; create table if not exists "
+            + TableNames.T_STATISTICS.toString() + "(type int, level int, id bigint, part int, bytes bigint, entities int,"
+            + " versions bigint, mintimestamp bigint, maxtimestamp bigint, tagkeys varchar, primary key(type,level,id,part))");
+        PreparedStatement insertStatistics = conn
+            .prepareStatement("insert into " + TableNames.T_STATISTICS.toString()
+                + " (type,level,id,part,bytes,entities,versions,mintimestamp,maxtimestamp,tagkeys) values(?,?,?,?,?,?,?,?,?,?)");
 
         Roaring64NavigableMap bitmapWays = new Roaring64NavigableMap();
         try (FileInputStream fileIn = new FileInputStream(workDirectory.resolve("transform_wayWithRelation.bitmap").toFile());
@@ -258,8 +342,10 @@ public class OSHDB2H2Handler extends OSHDBHandler {
           bitmapWays.readExternal(in);
         }
 
-        LoaderHandler handler = new OSHDB2H2Handler(Roaring64NavigableMap.bitmapOf(), bitmapWays, insertKey,
-            insertValue, insertRole, insertNode, insertWay, insertRelation);
+        OSHDBHandler handler = new OSHDB2H2Handler(Roaring64NavigableMap.bitmapOf(), bitmapWays, insertKey,
+            insertValue, insertRole, insertNode, insertWay, insertRelation, config.compression,
+            config.memberDictionary, grid,
+            new GridOSHEntityPartitioner(config.maxEntitiesPerCell, config.maxBytesPerCell), insertStatistics);
            
         Stopwatch loadingWatch = Stopwatch.createUnstarted();
         if (!withOutKeyTables) {
@@ -287,6 +373,13 @@ public class OSHDB2H2Handler extends OSHDBHandler {
         loadingWatch.reset().start();
         loader.load();
         System.out.println(" done! "+loadingWatch);
+
+        // only known after all cells have been loaded
+        PreparedStatement updateMetadata = conn.prepareStatement(
+            "merge into " + TableNames.T_METADATA.toString() + " (key,value) key(key) values (?,?)");
+        updateMetadata.setString(1, GridOSHEntityPartitioner.METADATA_KEY);
+        updateMetadata.setString(2, "" + handler.getMaxPartitions());
+        updateMetadata.executeUpdate();
       } 
     }catch (IOException | SQLException e) {
       e.printStackTrace();
@@ -7,13 +7,19 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityBlockIndex;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityPartitioner;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntitySummary;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHNodes;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHRelations;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHWays;
 import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
 import org.heigit.bigspatialdata.oshdb.impl.osh.OSHRelationImpl;
 import org.heigit.bigspatialdata.oshdb.impl.osh.OSHWayImpl;
-import org.heigit.bigspatialdata.oshdb.index.XYGrid;
+import org.heigit.bigspatialdata.oshdb.index.GridTree;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
 import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
 import org.heigit.bigspatialdata.oshdb.osh.OSHRelation;
 import org.heigit.bigspatialdata.oshdb.osh.OSHWay;
@@ -30,18 +36,71 @@ import it.unimi.dsi.fastutil.longs.Long2ObjectAVLTreeMap;
 
 public abstract class OSHDBHandler extends LoaderHandler {
 
-	public abstract void handleNodeGrid(GridOSHNodes grid);
+	/**
+	 * Stores a grid cell, partitions of the same cell have the same level and id but different
+	 * partition numbers, see {@link GridOSHEntityPartitioner}.
+	 */
+	public abstract void handleNodeGrid(GridOSHNodes grid, int partition);
 
-	public abstract void handleWayGrid(GridOSHWays grid);
+	public abstract void handleWayGrid(GridOSHWays grid, int partition);
 
-	public abstract void handleRelationsGrid(GridOSHRelations grid);
+	public abstract void handleRelationsGrid(GridOSHRelations grid, int partition);
 
 	protected final Roaring64NavigableMap bitmapNodeRelation;
 	protected final Roaring64NavigableMap bitmapWayRelation;
 
+	/**
+	 * If the member nodes (and ways) of the ways and relations of a grid cell are stored only once
+	 * per cell, see {@link GridOSHWays#compact(long, int, long, long, long, long, List, boolean)}.
+	 */
+	protected final boolean memberDictionary;
+
 	protected OSHDBHandler(Roaring64NavigableMap bitmapNodeRelation, Roaring64NavigableMap bitmapWayRelation) {
+		this(bitmapNodeRelation, bitmapWayRelation, true);
+	}
+
+	/**
+	 * The grid the ids of the grid cells are calculated with.
+	 */
+	protected final GridTree grid;
+
+	protected OSHDBHandler(Roaring64NavigableMap bitmapNodeRelation, Roaring64NavigableMap bitmapWayRelation,
+			boolean memberDictionary) {
+		this(bitmapNodeRelation, bitmapWayRelation, memberDictionary, new XYGridTree(ZGrid.MAX_ZOOM));
+	}
+
+	protected OSHDBHandler(Roaring64NavigableMap bitmapNodeRelation, Roaring64NavigableMap bitmapWayRelation,
+			boolean memberDictionary, GridTree grid) {
+		this(bitmapNodeRelation, bitmapWayRelation, memberDictionary, grid, GridOSHEntityPartitioner.NONE);
+	}
+
+	/**
+	 * Splits the entities of oversized grid cells into several partitions.
+	 */
+	protected final GridOSHEntityPartitioner partitioner;
+
+	private int maxPartitions = 1;
+
+	protected OSHDBHandler(Roaring64NavigableMap bitmapNodeRelation, Roaring64NavigableMap bitmapWayRelation,
+			boolean memberDictionary, GridTree grid, GridOSHEntityPartitioner partitioner) {
 		this.bitmapNodeRelation = bitmapNodeRelation;
 		this.bitmapWayRelation = bitmapWayRelation;
+		this.memberDictionary = memberDictionary;
+		this.grid = grid;
+		this.partitioner = partitioner;
+	}
+
+	/**
+	 * Returns the maximum number of partitions of the grid cells handled so far.
+	 */
+	public int getMaxPartitions() {
+		return maxPartitions;
+	}
+
+	private <T extends OSHEntity> List<List<T>> partition(List<T> entities) {
+		List<List<T>> partitions = partitioner.partition(entities);
+		maxPartitions = Math.max(maxPartitions, partitions.size());
+		return partitions;
 	}
 
 	@Override
@@ -49,12 +108,11 @@ public abstract class OSHDBHandler extends LoaderHandler {
 		if (zId < 0)
 			return;
 		int zoom = ZGrid.getZoom(zId);
-		XYGrid xyGrid = new XYGrid(zoom);
 
 		OSHDBBoundingBox bbox = ZGrid.getBoundingBox(zId);
 		long longitude = bbox.getMinLonLong() + (bbox.getMaxLonLong() - bbox.getMinLonLong()) / 2;
 		long latitude = bbox.getMinLatLong() + (bbox.getMaxLatLong() - bbox.getMinLatLong()) / 2;
-		long xyId = xyGrid.getId(longitude, latitude);
+		long cellId = grid.getId(zoom, longitude, latitude).getId();
 
 		List<OSHNode> gridNodes = nodes.stream().map(osh2 -> {
 			List<OSMNode> versions = osh2.stream().collect(Collectors.toList());
@@ -68,12 +126,16 @@ public abstract class OSHDBHandler extends LoaderHandler {
 
 		try {
 			if (gridNodes.size() != 0) {
-
-				GridOSHNodes grid = GridOSHNodes.rebase(xyId, zoom, gridNodes.get(0).getId(), 0, longitude, latitude,
-						gridNodes);
-				handleNodeGrid(grid);
+				List<List<OSHNode>> partitions = partition(gridNodes);
+				for (int partition = 0; partition < partitions.size(); partition++) {
+					List<OSHNode> partitionNodes = partitions.get(partition);
+					GridOSHNodes grid = GridOSHNodes.rebase(cellId, zoom, minId(partitionNodes), 0, longitude,
+							latitude, partitionNodes);
+					grid.setSummary(GridOSHEntitySummary.of(partitionNodes));
+					handleNodeGrid(grid, partition);
+				}
 			} else {
-				System.out.println("no noded at " + xyId);
+				System.out.println("no noded at " + cellId);
 			}
 
 		} catch (IOException e) {
@@ -88,12 +150,11 @@ public abstract class OSHDBHandler extends LoaderHandler {
 		if (zId < 0)
 			return;
 		int zoom = ZGrid.getZoom(zId);
-		XYGrid xyGrid = new XYGrid(zoom);
 
 		OSHDBBoundingBox bbox = ZGrid.getBoundingBox(zId);
 		long longitude = bbox.getMinLonLong() + (bbox.getMaxLonLong() - bbox.getMinLonLong()) / 2;
 		long latitude = bbox.getMinLatLong() + (bbox.getMaxLatLong() - bbox.getMinLatLong()) / 2;
-		long xyId = xyGrid.getId(longitude, latitude);
+		long cellId = grid.getId(zoom, longitude, latitude).getId();
 
 		Map<Long, OSHNode> idOshMap = new HashMap<>(nodes.size());
 		nodes.forEach(osh2 -> {
@@ -129,13 +190,20 @@ public abstract class OSHDBHandler extends LoaderHandler {
 			}
 		}).collect(Collectors.toList());
 
-		gridWays.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+		// sort along a space filling curve, which allows to skip blocks of far away ways
+		GridOSHEntityBlockIndex.sortByLocation(gridWays);
 
 		try {
 			if (gridWays.size() != 0) {
-				GridOSHWays grid = GridOSHWays.compact(xyId, zoom, gridWays.get(0).getId(), 0, longitude, latitude,
-						gridWays);
-				handleWayGrid(grid);
+				List<List<OSHWay>> partitions = partition(gridWays);
+				for (int partition = 0; partition < partitions.size(); partition++) {
+					List<OSHWay> partitionWays = partitions.get(partition);
+					GridOSHWays grid = GridOSHWays.compact(cellId, zoom, minId(partitionWays), 0, longitude, latitude,
+							partitionWays, memberDictionary);
+					grid.setSummary(GridOSHEntitySummary.of(partitionWays));
+					setBlockIndex(grid, partitionWays);
+					handleWayGrid(grid, partition);
+				}
 			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
@@ -148,12 +216,11 @@ public abstract class OSHDBHandler extends LoaderHandler {
 		if (zId < 0)
 			return;
 		int zoom = ZGrid.getZoom(zId);
-		XYGrid xyGrid = new XYGrid(zoom);
 
 		OSHDBBoundingBox bbox = ZGrid.getBoundingBox(zId);
 		long longitude = bbox.getMinLonLong() + (bbox.getMaxLonLong() - bbox.getMinLonLong()) / 2;
 		long latitude = bbox.getMinLatLong() + (bbox.getMaxLatLong() - bbox.getMinLatLong()) / 2;
-		long xyId = xyGrid.getId(longitude, latitude);
+		long cellId = grid.getId(zoom, longitude, latitude).getId();
 
 		Map<Long, OSHNode> idOshMap = new HashMap<>(nodes.size());
 		nodes.forEach(osh2 -> {
@@ -198,13 +265,36 @@ public abstract class OSHDBHandler extends LoaderHandler {
 			}
 		}).collect(Collectors.toList());
 
+		GridOSHEntityBlockIndex.sortByLocation(gridRelation);
+
 		try {
-			GridOSHRelations grid = GridOSHRelations.compact(xyId, zoom, gridRelation.get(0).getId(), 0, longitude,
-					latitude, gridRelation);
-			handleRelationsGrid(grid);
+			List<List<OSHRelation>> partitions = partition(gridRelation);
+			for (int partition = 0; partition < partitions.size(); partition++) {
+				List<OSHRelation> partitionRelations = partitions.get(partition);
+				GridOSHRelations grid = GridOSHRelations.compact(cellId, zoom, minId(partitionRelations), 0, longitude,
+						latitude, partitionRelations, memberDictionary);
+				grid.setSummary(GridOSHEntitySummary.of(partitionRelations));
+				setBlockIndex(grid, partitionRelations);
+				handleRelationsGrid(grid, partition);
+			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	private static long minId(List<? extends OSHEntity> entities) {
+		long minId = Long.MAX_VALUE;
+		for (OSHEntity osh : entities) {
+			minId = Math.min(minId, osh.getId());
+		}
+		return minId;
+	}
+
+	private static void setBlockIndex(GridOSHEntity grid, List<? extends OSHEntity> entities) {
+		// cells with a single block can't skip any entities
+		if (entities.size() > GridOSHEntityBlockIndex.DEFAULT_BLOCK_SIZE) {
+			grid.setBlockIndex(GridOSHEntityBlockIndex.of(entities));
+		}
+	}
+
 }
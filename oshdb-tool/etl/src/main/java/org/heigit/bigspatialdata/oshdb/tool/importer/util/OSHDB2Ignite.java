@@ -5,10 +5,10 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDateTime;
@@ -21,9 +21,13 @@ import org.apache.ignite.cache.CacheMode;
 import org.apache.ignite.configuration.CacheConfiguration;
 import org.apache.ignite.configuration.IgniteConfiguration;
 import org.apache.ignite.internal.IgnitionEx;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityCodec;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityCompression;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityStatistics;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHNodes;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHRelations;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHWays;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
 import org.heigit.bigspatialdata.oshdb.util.CellId;
 import org.heigit.bigspatialdata.oshdb.util.TableNames;
 import org.slf4j.Logger;
@@ -42,6 +46,23 @@ public class OSHDB2Ignite {
    * @throws org.apache.ignite.IgniteCheckedException
    */
   public static void load(File igniteXML, Connection oshdb, String prefix) throws IgniteCheckedException {
+    load(igniteXML, oshdb, prefix, GridOSHEntityCompression.NONE);
+  }
+
+  /**
+   * Load your extracted and transformed OSH-Data into Ignite Caches, compressing the grid cells.
+   *
+   * <p>Compressed cells are kept compressed in the caches and decompressed by the compute jobs
+   * when their entities are accessed.</p>
+   *
+   * @param igniteXML Path to the Ignite-XML
+   * @param oshdb Connection to the OSHDB
+   * @param prefix
+   * @param compression the compression of the grid cells in the caches
+   * @throws org.apache.ignite.IgniteCheckedException
+   */
+  public static void load(File igniteXML, Connection oshdb, String prefix,
+      GridOSHEntityCompression compression) throws IgniteCheckedException {
     Ignition.setClientMode(true);
     IgniteConfiguration cfg = IgnitionEx.loadConfiguration(igniteXML.toString()).get1();
     cfg.setIgniteInstanceName("IgniteImportClientInstance");
@@ -50,9 +71,11 @@ public class OSHDB2Ignite {
 
       try (Statement stmt = oshdb.createStatement()) {
 
-        OSHDB2Ignite.<GridOSHNodes>doGridImport(ignite, stmt, TableNames.T_NODES, prefix);
-        OSHDB2Ignite.<GridOSHWays>doGridImport(ignite, stmt, TableNames.T_WAYS, prefix);
-        OSHDB2Ignite.<GridOSHRelations>doGridImport(ignite, stmt, TableNames.T_RELATIONS, prefix);
+        OSHDB2Ignite.<GridOSHNodes>doGridImport(ignite, stmt, TableNames.T_NODES, prefix, compression);
+        OSHDB2Ignite.<GridOSHWays>doGridImport(ignite, stmt, TableNames.T_WAYS, prefix, compression);
+        OSHDB2Ignite.<GridOSHRelations>doGridImport(ignite, stmt, TableNames.T_RELATIONS, prefix, compression);
+        OSHDB2Ignite.doMetadataImport(ignite, stmt, prefix);
+        OSHDB2Ignite.doStatisticsImport(ignite, stmt, prefix);
 
       } catch (SQLException ex) {
         LOG.error("", ex);
@@ -64,7 +87,8 @@ public class OSHDB2Ignite {
     }
   }
 
-  private static <T> void doGridImport(Ignite ignite, Statement stmt, TableNames cacheName, String prefix) {
+  private static <T> void doGridImport(Ignite ignite, Statement stmt, TableNames cacheName, String prefix,
+      GridOSHEntityCompression compression) {
     final String cacheWithPrefix = cacheName.toString(prefix);
 
     ignite.destroyCache(cacheWithPrefix);
@@ -96,25 +120,35 @@ public class OSHDB2Ignite {
         default:
           throw new IllegalArgumentException("unknown cacheName " + cacheName);
       }
-      try (final ResultSet rst = stmt.executeQuery("select level, id, data from " + tableName)) {
+      try (final ResultSet rst = stmt.executeQuery("select * from " + tableName)) {
+        // oshdbs created before cells could be split into partitions have no part column
+        final int partColumn = findColumn(rst.getMetaData(), "part");
+        final int dataColumn = findColumn(rst.getMetaData(), "data");
         int cnt = 0;
+        int maxPartition = 0;
         System.out.println(LocalDateTime.now() + " START loading " + tableName + " into " + cache.getName() + " on Ignite");
         while (rst.next()) {
-          final int level = rst.getInt(1);
-          final long id = rst.getLong(2);
-          final long levelId = CellId.getLevelId(level, id);
+          final int level = rst.getInt("level");
+          final long id = rst.getLong("id");
+          final int partition = partColumn > 0 ? rst.getInt(partColumn) : 0;
+          final long levelId = CellId.getLevelId(level, id, partition);
+          maxPartition = Math.max(maxPartition, partition);
 
-          final ObjectInputStream ois = new ObjectInputStream(rst.getBinaryStream(3));
 //          System.out.printf("level:%d, id:%d -> LevelId:%16s%n", level, id, Long.toHexString(levelId));
           @SuppressWarnings("unchecked")
-          final T grid = (T) ois.readObject();
+          final T grid = (T) GridOSHEntityCodec.compress(
+              GridOSHEntityCodec.read(rst.getBinaryStream(dataColumn)), compression);
           streamer.addData(levelId, grid);
           if (++cnt % 10 == 0) {
             streamer.flush();
           }
         }
         System.out.println(LocalDateTime.now() + " FINISHED loading " + tableName + " into " + cache.getName() + " on Ignite");
-      } catch (IOException | ClassNotFoundException | SQLException e) {
+        if (maxPartition > 0) {
+          System.out.println("cells of " + tableName + " are split into up to " + (maxPartition + 1)
+              + " partitions, see OSHDBDatabase.partitions(int)");
+        }
+      } catch (IOException | SQLException e) {
         LOG.error("Could not import Grid!", e);
       }
     } finally {
@@ -124,6 +158,64 @@ public class OSHDB2Ignite {
     }
   }
 
+  private static void doMetadataImport(Ignite ignite, Statement stmt, String prefix) {
+    final String cacheWithPrefix = TableNames.T_METADATA.toString(prefix);
+    ignite.destroyCache(cacheWithPrefix);
+
+    CacheConfiguration<String, String> cacheCfg = new CacheConfiguration<>(cacheWithPrefix);
+    cacheCfg.setCacheMode(CacheMode.REPLICATED);
+    IgniteCache<String, String> cache = ignite.getOrCreateCache(cacheCfg);
+
+    try (final ResultSet rst = stmt.executeQuery(
+        "select key, value from " + TableNames.T_METADATA.toString())) {
+      while (rst.next()) {
+        cache.put(rst.getString(1), rst.getString(2));
+      }
+      System.out.println(LocalDateTime.now() + " FINISHED loading metadata into " + cache.getName() + " on Ignite");
+    } catch (SQLException e) {
+      LOG.warn("Could not import metadata, continuing without it", e);
+    }
+  }
+
+  private static void doStatisticsImport(Ignite ignite, Statement stmt, String prefix) {
+    final String cacheWithPrefix = TableNames.T_STATISTICS.toString(prefix);
+    ignite.destroyCache(cacheWithPrefix);
+
+    CacheConfiguration<String, GridOSHEntityStatistics> cacheCfg = new CacheConfiguration<>(cacheWithPrefix);
+    cacheCfg.setCacheMode(CacheMode.REPLICATED);
+    IgniteCache<String, GridOSHEntityStatistics> cache = ignite.getOrCreateCache(cacheCfg);
+
+    try (IgniteDataStreamer<String, GridOSHEntityStatistics> streamer = ignite.dataStreamer(cache.getName());
+        final ResultSet rst = stmt.executeQuery("select type, level, id, part, bytes, entities, versions,"
+            + " mintimestamp, maxtimestamp, tagkeys from " + TableNames.T_STATISTICS.toString())) {
+      streamer.allowOverwrite(true);
+      int cnt = 0;
+      while (rst.next()) {
+        final int[][] tagKeys = GridOSHEntityStatistics.decodeTagKeys(rst.getString(10));
+        final GridOSHEntityStatistics statistics = new GridOSHEntityStatistics(
+            OSMType.fromInt(rst.getInt(1)), rst.getInt(2), rst.getLong(3), rst.getInt(4),
+            rst.getLong(5), rst.getInt(6), rst.getLong(7), rst.getLong(8), rst.getLong(9),
+            tagKeys[0], tagKeys[1]);
+        streamer.addData(statistics.getKey(), statistics);
+        cnt++;
+      }
+      System.out.println(LocalDateTime.now() + " FINISHED loading statistics of " + cnt + " cells into "
+          + cache.getName() + " on Ignite");
+    } catch (SQLException e) {
+      // oshdbs created before the statistics catalog was introduced
+      LOG.warn("Could not import cell statistics, continuing without them", e);
+    }
+  }
+
+  private static int findColumn(ResultSetMetaData metaData, String name) throws SQLException {
+    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+      if (name.equalsIgnoreCase(metaData.getColumnName(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   private static class Config {
     @Parameter(names = {"-ignite", "-igniteConfig", "-icfg"}, description = "Path ot ignite-config.xml", required = true, order = 1)
     public File ignitexml;
@@ -134,6 +226,9 @@ public class OSHDB2Ignite {
     @Parameter(names = {"-db", "-oshdb", "-outputDb"}, description = "Path to output H2", required = true, order = 2)
     public File oshdb;
 
+    @Parameter(names = {"--compression"}, description = "compression of the grid cells (NONE, LZ4, ZSTD)", required = false)
+    public GridOSHEntityCompression compression = GridOSHEntityCompression.NONE;
+
     @Parameter(names = {"-help", "--help", "-h", "--h"}, help = true, order = 0)
     public boolean help = false;
 
@@ -158,7 +253,7 @@ public class OSHDB2Ignite {
       return;
     }
     try (Connection con = DriverManager.getConnection("jdbc:h2:" + largs.oshdb, "sa", "")) {
-      OSHDB2Ignite.load(largs.ignitexml, con, largs.prefix);
+      OSHDB2Ignite.load(largs.ignitexml, con, largs.prefix, largs.compression);
     }
   }
 }
@@ -0,0 +1,107 @@
+package org.heigit.bigspatialdata.oshdb.tool.importer.util;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityCodec;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntityFile;
+import org.heigit.bigspatialdata.oshdb.util.TableNames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class OSHDB2Mapped {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OSHDB2Mapped.class);
+
+  /**
+   * Converts the grid cells of an H2 OSHDB into a single memory mappable oshdb file.
+   *
+   * <p>The keytables are not copied and have to be kept in the H2 database.</p>
+   *
+   * @param oshdb Connection to the OSHDB
+   * @param prefix table prefix, may be null
+   * @param output the oshdb file to write
+   * @throws SQLException if the OSHDB couldn't be read
+   * @throws IOException if the output file couldn't be written
+   */
+  public static void convert(Connection oshdb, String prefix, File output)
+      throws SQLException, IOException {
+    try (Statement stmt = oshdb.createStatement();
+        GridOSHEntityFile.Writer writer = GridOSHEntityFile.writer(output.toPath())) {
+      try (final ResultSet rst = stmt.executeQuery(
+          "select key, value from " + TableNames.T_METADATA.toString(prefix))) {
+        while (rst.next()) {
+          writer.metadata(rst.getString(1), rst.getString(2));
+        }
+      } catch (SQLException e) {
+        LOG.warn("Could not read metadata, continuing without it", e);
+      }
+
+      // the file requires its cells ordered by type, level and id
+      doGridConvert(writer, stmt, TableNames.T_NODES.toString(prefix));
+      doGridConvert(writer, stmt, TableNames.T_WAYS.toString(prefix));
+      doGridConvert(writer, stmt, TableNames.T_RELATIONS.toString(prefix));
+    }
+  }
+
+  private static void doGridConvert(GridOSHEntityFile.Writer writer, Statement stmt,
+      String tableName) throws SQLException, IOException {
+    try (final ResultSet rst =
+        stmt.executeQuery("select data from " + tableName + " order by level, id")) {
+      int cnt = 0;
+      System.out.println(LocalDateTime.now() + " START converting " + tableName);
+      while (rst.next()) {
+        writer.add(GridOSHEntityCodec.read(rst.getBinaryStream(1)));
+        cnt++;
+      }
+      System.out.println(LocalDateTime.now() + " FINISHED converting " + cnt + " cells of "
+          + tableName);
+    }
+  }
+
+  private static class Config {
+    @Parameter(names = {"-db", "-oshdb"}, description = "Path to input H2", required = true, order = 1)
+    public File oshdb;
+
+    @Parameter(names = {"-out", "-output"}, description = "Path to output oshdb file", required = true, order = 2)
+    public File output;
+
+    @Parameter(names = {"--prefix"}, description = "table prefix", required = false)
+    public String prefix;
+
+    @Parameter(names = {"-help", "--help", "-h", "--h"}, help = true, order = 0)
+    public boolean help = false;
+
+  }
+
+  public static void main(String[] args) throws SQLException, IOException {
+    Config largs = new Config();
+    JCommander jcom = JCommander.newBuilder().addObject(largs).build();
+    try {
+      jcom.parse(args);
+    } catch (ParameterException e) {
+      System.out.println("");
+      LOG.error(e.getLocalizedMessage());
+      System.out.println("");
+      jcom.usage();
+
+      return;
+    }
+
+    if (largs.help) {
+      jcom.usage();
+      return;
+    }
+    try (Connection con = DriverManager.getConnection("jdbc:h2:" + largs.oshdb, "sa", "")) {
+      OSHDB2Mapped.convert(con, largs.prefix, largs.output);
+    }
+  }
+}
@@ -8,6 +8,11 @@ public class ZGrid {
   
   public static OSHDBBoundingBox WORLD = new OSHDBBoundingBox(-180.0, -90.0, 180.0, 180.0);
   
+  /**
+   * The maximum supported zoom level.
+   */
+  public static final int MAX_ZOOM = 28;
+
   private static final int DIMENSION = 2;
   private static long ZOOM_FACTOR = 1L << 56;
   private static long ID_MASK = 0x00FFFFFFFFFFFFFFL;
@@ -22,8 +27,8 @@ public class ZGrid {
     }
     // maxZoom so that 8 Bit ZoomLevel + maxZoom Bits per Dimension(2) = 64 Bit
     // (Long)
-    if (maxZoom > 28) {
-      throw new IllegalArgumentException("maxZoom must not be > 28 but is " + maxZoom);
+    if (maxZoom > MAX_ZOOM) {
+      throw new IllegalArgumentException("maxZoom must not be > " + MAX_ZOOM + " but is " + maxZoom);
     }
     this.maxZoom = maxZoom;
   }
@@ -40,7 +40,11 @@ public enum TableNames {
   /**
    * Table that holds metadata in the oshdb.
    */
-  T_METADATA("metadata");
+  T_METADATA("metadata"),
+  /**
+   * Table that holds statistics about the grid cells of the oshdb.
+   */
+  T_STATISTICS("grid_statistics");
 
   private final String tablename;
 
@@ -2,22 +2,23 @@ package org.heigit.bigspatialdata.oshdb.util.celliterator;
 
 import com.google.common.collect.Streams;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.EnumSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.SortedMap;
 import java.util.SortedSet;
-import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 import javax.annotation.Nonnull;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
-import org.heigit.bigspatialdata.oshdb.index.XYGrid;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntitySummary;
+import org.heigit.bigspatialdata.oshdb.index.GridTree;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntities;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntityHeaderFilter;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntityTimeline;
 import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
 import org.heigit.bigspatialdata.oshdb.osm.OSMMember;
 import org.heigit.bigspatialdata.oshdb.osm.OSMRelation;
@@ -49,8 +50,51 @@ import org.slf4j.LoggerFactory;
 
 public class CellIterator implements Serializable {
   private static final Logger LOG = LoggerFactory.getLogger(CellIterator.class);
+  private static final ThreadLocal<EntityBuffers> ENTITY_BUFFERS =
+      ThreadLocal.withInitial(EntityBuffers::new);
+  // the cell most recently iterated with a callback on each thread, see getCurrentCellId()
+  private static final ThreadLocal<CellId> CURRENT_CELL = new ThreadLocal<>();
+
+  public interface OSHEntityFilter extends Predicate<OSHEntity>, Serializable {
+    /**
+     * Returns groups of tag keys of which every entity passing this filter has (at some point of
+     * its history) at least one key from each group.
+     *
+     * <p>Used to skip whole cells and entities before decoding them. The default implementation
+     * doesn't know anything about the filter and thus returns no groups.</p>
+     */
+    default int[][] getRequiredTagKeys() {
+      return new int[0][];
+    }
+
+    /**
+     * Checks if any entity of a cell with the given summary could pass this filter.
+     *
+     * @param cellSummary the summary of a grid cell
+     * @return false if no entity of the cell can pass this filter
+     */
+    default boolean mayMatch(GridOSHEntitySummary cellSummary) {
+      for (int[] keys : getRequiredTagKeys()) {
+        if (!cellSummary.mayHaveAnyTagKey(keys)) {
+          return false;
+        }
+      }
+      return true;
+    }
 
-  public interface OSHEntityFilter extends Predicate<OSHEntity>, Serializable {}
+    /**
+     * Checks if any entity of the cell with the given id could pass this filter.
+     *
+     * <p>Used to skip whole cells before decoding them, e.g. cells which aren't part of a random
+     * sample of cells. The default implementation accepts all cells.</p>
+     *
+     * @param cellId the id of a grid cell
+     * @return false if no entity of the cell can pass this filter
+     */
+    default boolean mayMatch(CellId cellId) {
+      return true;
+    }
+  }
 
   public interface OSMEntityFilter extends Predicate<OSMEntity>, Serializable {}
 
@@ -64,6 +108,7 @@ public class CellIterator implements Serializable {
   private OSHEntityFilter oshEntityPreFilter;
   private OSMEntityFilter osmEntityFilter;
   private boolean includeOldStyleMultipolygons;
+  private GridTree grid = new XYGridTree();
 
   /**
    * todo…
@@ -147,6 +192,17 @@ public class CellIterator implements Serializable {
     this.includeOldStyleMultipolygons = includeOldStyleMultipolygons;
   }
 
+  /**
+   * Sets the grid the ids of the iterated cells belong to, by default the {@link XYGridTree}.
+   *
+   * @param grid the grid of the cells' database
+   * @return this cell iterator
+   */
+  public CellIterator grid(GridTree grid) {
+    this.grid = grid;
+    return this;
+  }
+
   public static class IterateByTimestampEntry {
     public final OSHDBTimestamp timestamp;
     public final OSMEntity osmEntity;
@@ -179,171 +235,317 @@ public class CellIterator implements Serializable {
    *         geometries later on in the code.
    */
   public Stream<IterateByTimestampEntry> iterateByTimestamps(GridOSHEntity cell) {
-    final boolean allFullyInside;
-    if (isBoundByPolygon) {
-      // if cell is fully inside bounding box/polygon we can skip all entity-based inclusion checks
-      OSHDBBoundingBox cellBoundingBox = XYGrid.getBoundingBox(new CellId(
-          cell.getLevel(),
-          cell.getId()
-      ), true);
-      if (bboxOutsidePolygon.test(cellBoundingBox)) {
-        return Stream.empty();
+    if (skipCellByTimestamps(cell)) {
+      return Stream.empty();
+    }
+    final Boolean allFullyInside = isCellFullyInside(cell);
+    if (allFullyInside == null) {
+      return Stream.empty();
+    }
+    final OSHDBTimestamp[] requestedTs = timestamps.toArray(new OSHDBTimestamp[0]);
+    // the results of one osh entity at a time are buffered to keep the stream lazy
+    return Streams.stream(getCellEntities(cell, allFullyInside)).flatMap(oshEntity -> {
+      List<IterateByTimestampEntry> results = new ArrayList<>();
+      iterateEntityByTimestamps(oshEntity, allFullyInside, requestedTs, results::add);
+      return results.stream();
+    });
+  }
+
+  /**
+   * Iterates over all entities in a cell that match a given condition/filter as they existed at
+   * the given timestamps, passing each result to a callback.
+   *
+   * <p>This produces the same results as {@link #iterateByTimestamps(GridOSHEntity)}, without
+   * collecting them in intermediate lists and streams. The results of each osh entity are passed
+   * to the callback in the order of their timestamps.</p>
+   *
+   * <p>The callback must not iterate over other cells on the same thread, as the per thread
+   * buffers of the current osh entity are still in use while it is called.</p>
+   *
+   * @param cell the data cell
+   * @param callback a function called for each matching OSMEntity with its clipped Geometry at
+   *        each timestamp
+   */
+  public void iterateByTimestamps(
+      GridOSHEntity cell, Consumer<? super IterateByTimestampEntry> callback
+  ) {
+    CURRENT_CELL.set(new CellId(cell.getLevel(), cell.getId()));
+    if (skipCellByTimestamps(cell)) {
+      return;
+    }
+    final Boolean allFullyInside = isCellFullyInside(cell);
+    if (allFullyInside == null) {
+      return;
+    }
+    final OSHDBTimestamp[] requestedTs = timestamps.toArray(new OSHDBTimestamp[0]);
+    for (OSHEntity oshEntity : getCellEntities(cell, allFullyInside)) {
+      iterateEntityByTimestamps(oshEntity, allFullyInside, requestedTs, callback);
+    }
+  }
+
+  // true if the id or the summary of a cell show that iterateByTimestamps has no results for it
+  private boolean skipCellByTimestamps(GridOSHEntity cell) {
+    if (!oshEntityPreFilter.mayMatch(new CellId(cell.getLevel(), cell.getId()))) {
+      return true;
+    }
+    GridOSHEntitySummary summary = cell.getSummary();
+    // all entities of this cell were created after the requested timestamps or none of them
+    // matches the prefilter -> skip the whole cell without decoding it
+    return summary != null && (
+        summary.getMinTimestamp() > timestamps.last().getRawUnixTimestamp()
+            || !oshEntityPreFilter.mayMatch(summary));
+  }
+
+  /**
+   * Checks if a cell is inside of the area of interest.
+   *
+   * @return true if the cell is fully inside the area of interest (so all entity-based inclusion
+   *         checks can be skipped), false if it may be partially inside and null if it is fully
+   *         outside
+   */
+  private Boolean isCellFullyInside(GridOSHEntity cell) {
+    if (!isBoundByPolygon) {
+      return false;
+    }
+    OSHDBBoundingBox cellBoundingBox = grid.getBoundingBox(new CellId(
+        cell.getLevel(),
+        cell.getId()
+    ), true);
+    if (bboxOutsidePolygon.test(cellBoundingBox)) {
+      return null;
+    }
+    return bboxInPolygon.test(cellBoundingBox);
+  }
+
+  /**
+   * Checks if a cell (including all of its entities) is fully inside of the area of interest.
+   *
+   * <p>The results of iterating over such a cell don't depend on the exact area of interest.</p>
+   *
+   * @param cellId the id of the cell
+   * @return true if the cell is fully inside the area of interest
+   */
+  public boolean isFullyInside(CellId cellId) {
+    OSHDBBoundingBox cellBoundingBox = grid.getBoundingBox(cellId, true);
+    return cellBoundingBox.isInside(boundingBox)
+        && (!isBoundByPolygon || bboxInPolygon.test(cellBoundingBox));
+  }
+
+  /**
+   * Returns the id of the cell which is (or was most recently) iterated with a callback on the
+   * current thread.
+   *
+   * <p>Lets the callbacks of {@link #iterateByTimestamps(GridOSHEntity, Consumer)} and
+   * {@link #iterateByContribution(GridOSHEntity, Consumer)}, and code processing their results
+   * right after the iteration, find out which cell the results belong to. All partitions of a
+   * cell have the same id.</p>
+   *
+   * @return the id of the cell, or null if no cell has been iterated on this thread yet
+   */
+  public static CellId getCurrentCellId() {
+    return CURRENT_CELL.get();
+  }
+
+  // only decode entities with matching tag keys and bounding boxes
+  private Iterable<? extends OSHEntity> getCellEntities(
+      GridOSHEntity cell, boolean allFullyInside
+  ) {
+    return cell.getEntities(new OSHEntityHeaderFilter(
+        oshEntityPreFilter.getRequiredTagKeys(),
+        allFullyInside ? null : boundingBox
+    ));
+  }
+
+  private void iterateEntityByTimestamps(
+      OSHEntity oshEntity, boolean allFullyInside, OSHDBTimestamp[] requestedTs,
+      Consumer<? super IterateByTimestampEntry> callback
+  ) {
+    if (!oshEntityPreFilter.test(oshEntity) ||
+        !allFullyInside && (
+            !oshEntity.getBoundingBox().intersects(boundingBox) ||
+            (isBoundByPolygon && bboxOutsidePolygon.test(oshEntity.getBoundingBox()))
+    )) {
+      // this osh entity doesn't match the prefilter or is fully outside the requested
+      // area of interest -> skip it
+      return;
+    }
+    if (Streams.stream(oshEntity.getVersions()).noneMatch(osmEntityFilter)) {
+      // none of this osh entity's versions matches the filter -> skip it
+      return;
+    }
+    boolean fullyInside = allFullyInside || (
+        oshEntity.getBoundingBox().isInside(boundingBox) &&
+        (!isBoundByPolygon || bboxInPolygon.test(oshEntity.getBoundingBox()))
+    );
+
+    // optimize loop by requesting modification timestamps first, and skip geometry calculations
+    // where not needed: the entity is only looked up at the requested timestamps with indices
+    // queryIndex[0..queryCount), the following requested timestamps up to the next query index
+    // share the result of the lookup
+    final EntityBuffers buffers = ENTITY_BUFFERS.get().reset(requestedTs.length);
+    final int[] queryIndex = buffers.queryIndex;
+    int queryCount = 0;
+    if (!includeOldStyleMultipolygons) {
+      OSHEntityTimeline modTs = buffers.modificationTimestamps;
+      OSHEntities.getModificationTimestamps(oshEntity, osmEntityFilter, modTs);
+      int j = 0;
+      for (int t = 0; t < requestedTs.length; t++) {
+        boolean needToRequest = false;
+        while (j < modTs.size()
+            && modTs.getTimestamp(j) <= requestedTs[t].getRawUnixTimestamp()) {
+          needToRequest = true;
+          j++;
+        }
+        if (needToRequest) {
+          queryIndex[queryCount++] = t;
+        }
       }
-      allFullyInside = bboxInPolygon.test(cellBoundingBox);
     } else {
-      allFullyInside = false;
-    }
-
-    Iterable<? extends OSHEntity> cellData = cell.getEntities();
-    return Streams.stream(cellData).flatMap(oshEntity -> {
-      if (!oshEntityPreFilter.test(oshEntity) ||
-          !allFullyInside && (
-              !oshEntity.getBoundingBox().intersects(boundingBox) ||
-              (isBoundByPolygon && bboxOutsidePolygon.test(oshEntity.getBoundingBox()))
-      )) {
-        // this osh entity doesn't match the prefilter or is fully outside the requested
-        // area of interest -> skip it
-        return Stream.empty();
+      // todo: make this work with old style multipolygons!!?!
+      for (int t = 0; t < requestedTs.length; t++) {
+        queryIndex[queryCount++] = t;
       }
-      if (Streams.stream(oshEntity.getVersions()).noneMatch(osmEntityFilter)) {
-        // none of this osh entity's versions matches the filter -> skip it
-        return Stream.empty();
+    }
+
+    final long[] queryTs = buffers.queryTimestamps;
+    for (int q = 0; q < queryCount; q++) {
+      queryTs[q] = requestedTs[queryIndex[q]].getRawUnixTimestamp();
+    }
+    final OSMEntity[] osmEntityByTimestamps = buffers.osmEntities(queryCount);
+    OSHEntities.getByTimestamps(oshEntity, queryTs, queryCount, osmEntityByTimestamps);
+
+    osmEntityLoop: for (int q = 0; q < queryCount; q++) {
+      OSHDBTimestamp timestamp = requestedTs[queryIndex[q]];
+      OSMEntity osmEntity = osmEntityByTimestamps[q];
+      // the requested timestamps which share this lookup
+      final int nextQueryIndex = q + 1 < queryCount ? queryIndex[q + 1] : requestedTs.length;
+
+      if (osmEntity == null) {
+        // skip because this entity didn't exist yet at this timestamp
+        continue;
+      }
+      if (!osmEntity.isVisible()) {
+        // skip because this entity is deleted at this timestamp
+        continue;
+      }
+      if (osmEntity instanceof OSMWay && ((OSMWay)osmEntity).getRefs().length == 0 ||
+          osmEntity instanceof OSMRelation && ((OSMRelation)osmEntity).getMembers().length == 0) {
+        // skip way/relation with zero nodes/members
+        continue;
       }
-      boolean fullyInside = allFullyInside || (
-          oshEntity.getBoundingBox().isInside(boundingBox) &&
-          (!isBoundByPolygon || bboxInPolygon.test(oshEntity.getBoundingBox()))
-      );
 
-      // optimize loop by requesting modification timestamps first, and skip geometry calculations
-      // where not needed
-      SortedMap<OSHDBTimestamp, List<OSHDBTimestamp>> queryTs = new TreeMap<>();
-      if (!includeOldStyleMultipolygons) {
-        List<OSHDBTimestamp> modTs = OSHEntities.getModificationTimestamps(oshEntity, osmEntityFilter);
-        int j = 0;
-        for (OSHDBTimestamp requestedT : timestamps) {
-          boolean needToRequest = false;
-          while (j < modTs.size() && modTs.get(j).getRawUnixTimestamp() <= requestedT.getRawUnixTimestamp()) {
-            needToRequest = true;
-            j++;
-          }
-          if (needToRequest) {
-            queryTs.put(requestedT, new LinkedList<>());
-          } else if (queryTs.size() > 0) {
-            queryTs.get(queryTs.lastKey()).add(requestedT);
+      boolean isOldStyleMultipolygon = false;
+      if (includeOldStyleMultipolygons && osmEntity instanceof OSMRelation
+          && tagInterpreter.isOldStyleMultipolygon((OSMRelation) osmEntity)) {
+        final OSMRelation rel = (OSMRelation) osmEntity;
+        for (int i = 0; i < rel.getMembers().length; i++) {
+          final OSMMember relMember = rel.getMembers()[i];
+          if (relMember.getType() == OSMType.WAY
+              && tagInterpreter.isMultipolygonOuterMember(relMember)) {
+            OSMEntity way = OSHEntities.getByTimestamp(relMember.getEntity(), timestamp);
+            if (!osmEntityFilter.test(way)) {
+              // skip this old-style-multipolygon because it doesn't match our filter
+              continue osmEntityLoop;
+            } else {
+              // we know this multipolygon only has exactly one outer way, so we can abort the
+              // loop and actually
+              // "continue" with the calculations ^-^
+              isOldStyleMultipolygon = true;
+              break;
+            }
           }
         }
       } else {
-        // todo: make this work with old style multipolygons!!?!
-        for (OSHDBTimestamp ts : timestamps) {
-          queryTs.put(ts, new LinkedList<>());
+        if (!osmEntityFilter.test(osmEntity)) {
+          // skip because this entity doesn't match our filter
+          continue osmEntityLoop;
         }
       }
 
-      SortedMap<OSHDBTimestamp, OSMEntity> osmEntityByTimestamps =
-          OSHEntities.getByTimestamps(oshEntity, new ArrayList<>(queryTs.keySet()));
-
-      List<IterateByTimestampEntry> results = new LinkedList<>();
-      osmEntityLoop: for (Map.Entry<OSHDBTimestamp, OSMEntity> entity : osmEntityByTimestamps.entrySet()) {
-        OSHDBTimestamp timestamp = entity.getKey();
-        OSMEntity osmEntity = entity.getValue();
-
-        if (!osmEntity.isVisible()) {
-          // skip because this entity is deleted at this timestamp
-          continue;
-        }
-        if (osmEntity instanceof OSMWay && ((OSMWay)osmEntity).getRefs().length == 0 ||
-            osmEntity instanceof OSMRelation && ((OSMRelation)osmEntity).getMembers().length == 0) {
-          // skip way/relation with zero nodes/members
-          continue;
-        }
-
-        boolean isOldStyleMultipolygon = false;
-        if (includeOldStyleMultipolygons && osmEntity instanceof OSMRelation
-            && tagInterpreter.isOldStyleMultipolygon((OSMRelation) osmEntity)) {
-          final OSMRelation rel = (OSMRelation) osmEntity;
-          for (int i = 0; i < rel.getMembers().length; i++) {
-            final OSMMember relMember = rel.getMembers()[i];
-            if (relMember.getType() == OSMType.WAY
-                && tagInterpreter.isMultipolygonOuterMember(relMember)) {
-              OSMEntity way = OSHEntities.getByTimestamp(relMember.getEntity(), timestamp);
-              if (!osmEntityFilter.test(way)) {
-                // skip this old-style-multipolygon because it doesn't match our filter
-                continue osmEntityLoop;
-              } else {
-                // we know this multipolygon only has exactly one outer way, so we can abort the
-                // loop and actually
-                // "continue" with the calculations ^-^
-                isOldStyleMultipolygon = true;
-                break;
-              }
-            }
-          }
+      try {
+        LazyEvaluatedObject<Geometry> geom;
+        if (!isOldStyleMultipolygon) {
+          geom = constructClippedGeometry(osmEntity, timestamp, fullyInside);
         } else {
-          if (!osmEntityFilter.test(osmEntity)) {
-            // skip because this entity doesn't match our filter
-            continue osmEntityLoop;
-          }
+          // old style multipolygons: return only the inner holes of the geometry -> this is then
+          // used to "fix" the
+          // results obtained from calculating the geometry on the object's outer way which
+          // doesn't know about the
+          // inner members of the multipolygon relation
+          // todo: check if this is all valid?
+          GeometryFactory gf = new GeometryFactory();
+          geom = new LazyEvaluatedObject<>(() -> {
+            Geometry geometry = OSHDBGeometryBuilder
+                .getGeometry(osmEntity, timestamp, tagInterpreter);
+
+            Polygon poly = (Polygon) geometry;
+            Polygon[] interiorRings = new Polygon[poly.getNumInteriorRing()];
+            for (int i = 0; i < poly.getNumInteriorRing(); i++) {
+              interiorRings[i] =
+                  new Polygon((LinearRing) poly.getInteriorRingN(i), new LinearRing[]{}, gf);
+            }
+            geometry = new MultiPolygon(interiorRings, gf);
+            if (!fullyInside) {
+              geometry = isBoundByPolygon
+                  ? fastPolygonClipper.intersection(geometry)
+                  : Geo.clip(geometry, boundingBox);
+            }
+            return geometry;
+          });
         }
 
-        try {
-          LazyEvaluatedObject<Geometry> geom;
-          if (!isOldStyleMultipolygon) {
-            geom = constructClippedGeometry(osmEntity, timestamp, fullyInside);
-          } else {
-            // old style multipolygons: return only the inner holes of the geometry -> this is then
-            // used to "fix" the
-            // results obtained from calculating the geometry on the object's outer way which
-            // doesn't know about the
-            // inner members of the multipolygon relation
-            // todo: check if this is all valid?
-            GeometryFactory gf = new GeometryFactory();
-            geom = new LazyEvaluatedObject<>(() -> {
-              Geometry geometry = OSHDBGeometryBuilder
-                  .getGeometry(osmEntity, timestamp, tagInterpreter);
-
-              Polygon poly = (Polygon) geometry;
-              Polygon[] interiorRings = new Polygon[poly.getNumInteriorRing()];
-              for (int i = 0; i < poly.getNumInteriorRing(); i++) {
-                interiorRings[i] =
-                    new Polygon((LinearRing) poly.getInteriorRingN(i), new LinearRing[]{}, gf);
-              }
-              geometry = new MultiPolygon(interiorRings, gf);
-              if (!fullyInside) {
-                geometry = isBoundByPolygon
-                    ? fastPolygonClipper.intersection(geometry)
-                    : Geo.clip(geometry, boundingBox);
-              }
-              return geometry;
-            });
-          }
-
-          if (fullyInside || !geom.get().isEmpty()) {
-            LazyEvaluatedObject<Geometry> fullGeom = fullyInside ? geom : new LazyEvaluatedObject<>(
-                () -> OSHDBGeometryBuilder.getGeometry(osmEntity, timestamp, tagInterpreter));
-            results.add(
-                new IterateByTimestampEntry(timestamp, osmEntity, oshEntity, geom, fullGeom)
+        if (fullyInside || !geom.get().isEmpty()) {
+          LazyEvaluatedObject<Geometry> fullGeom = fullyInside ? geom : new LazyEvaluatedObject<>(
+              () -> OSHDBGeometryBuilder.getGeometry(osmEntity, timestamp, tagInterpreter));
+          callback.accept(
+              new IterateByTimestampEntry(timestamp, osmEntity, oshEntity, geom, fullGeom)
+          );
+          // add skipped timestamps (where nothing has changed from the last timestamp) to result
+          for (int t = queryIndex[q] + 1; t < nextQueryIndex; t++) {
+            callback.accept(
+                new IterateByTimestampEntry(requestedTs[t], osmEntity, oshEntity, geom, fullGeom)
             );
-            // add skipped timestamps (where nothing has changed from the last timestamp) to result
-            for (OSHDBTimestamp additionalT : queryTs.get(timestamp)) {
-              results.add(
-                  new IterateByTimestampEntry(additionalT, osmEntity, oshEntity, geom, fullGeom)
-              );
-            }
           }
-        } catch (IllegalArgumentException err) {
-          // maybe some corner case where JTS doesn't support operations on a broken geometry
-          LOG.info("Entity {}/{} skipped because of invalid geometry at timestamp {}",
-              osmEntity.getType().toString().toLowerCase(), osmEntity.getId(), timestamp);
-        } catch (TopologyException err) {
-          // happens e.g. in JTS intersection method when geometries are self-overlapping
-          LOG.info("Topology error with entity {}/{} at timestamp {}: {}",
-              osmEntity.getType().toString().toLowerCase(), osmEntity.getId(), timestamp,
-              err.toString());
         }
+      } catch (IllegalArgumentException err) {
+        // maybe some corner case where JTS doesn't support operations on a broken geometry
+        LOG.info("Entity {}/{} skipped because of invalid geometry at timestamp {}",
+            osmEntity.getType().toString().toLowerCase(), osmEntity.getId(), timestamp);
+      } catch (TopologyException err) {
+        // happens e.g. in JTS intersection method when geometries are self-overlapping
+        LOG.info("Topology error with entity {}/{} at timestamp {}: {}",
+            osmEntity.getType().toString().toLowerCase(), osmEntity.getId(), timestamp,
+            err.toString());
       }
-      // stream this oshEntity's results
-      return results.stream();
-    });
+    }
+  }
+
+  /**
+   * Per thread buffers for the timelines and timestamp queries of a single osh entity in
+   * {@link #iterateByTimestamps} and {@link #iterateByContribution}, which are reused for all
+   * entities.
+   */
+  private static class EntityBuffers {
+    final OSHEntityTimeline modificationTimestamps = new OSHEntityTimeline();
+    final OSHEntityTimeline changesetTimestamps = new OSHEntityTimeline();
+    int[] queryIndex = new int[0];
+    long[] queryTimestamps = new long[0];
+    private OSMEntity[] osmEntities = new OSMEntity[0];
+
+    EntityBuffers reset(int requestedTimestamps) {
+      if (queryIndex.length < requestedTimestamps) {
+        queryIndex = new int[requestedTimestamps];
+        queryTimestamps = new long[requestedTimestamps];
+      }
+      return this;
+    }
+
+    OSMEntity[] osmEntities(int size) {
+      if (osmEntities.length < size) {
+        osmEntities = new OSMEntity[Math.max(size, osmEntities.length * 2)];
+      }
+      return osmEntities;
+    }
   }
 
   private LazyEvaluatedObject<Geometry> constructClippedGeometry(
@@ -435,280 +637,330 @@ public class CellIterator implements Serializable {
    *         intervals.
    */
   public Stream<IterateAllEntry> iterateByContribution(GridOSHEntity cell) {
-    OSHDBTimestampInterval timeInterval = new OSHDBTimestampInterval(timestamps);
-
-    final boolean allFullyInside;
-    if (isBoundByPolygon) {
-      // if cell is fully inside bounding box/polygon we can skip all entity-based inclusion checks
-      OSHDBBoundingBox cellBoundingBox = XYGrid.getBoundingBox(new CellId(
-          cell.getLevel(),
-          cell.getId()
-      ), true);
-      if (bboxOutsidePolygon.test(cellBoundingBox)) {
-        return Stream.empty();
-      }
-      allFullyInside = bboxInPolygon.test(cellBoundingBox);
-    } else {
-      allFullyInside = false;
+    if (skipCellByContribution(cell)) {
+      return Stream.empty();
+    }
+    final Boolean allFullyInside = isCellFullyInside(cell);
+    if (allFullyInside == null) {
+      return Stream.empty();
     }
+    if (includeOldStyleMultipolygons) {
+      //todo: remove this by finishing the functionality below
+      throw new Error("this is not yet properly implemented (probably)");
+    }
+    final OSHDBTimestampInterval timeInterval = new OSHDBTimestampInterval(timestamps);
+    // the results of one osh entity at a time are buffered to keep the stream lazy
+    return Streams.stream(getCellEntities(cell, allFullyInside)).flatMap(oshEntity -> {
+      List<IterateAllEntry> results = new ArrayList<>();
+      iterateEntityByContribution(oshEntity, allFullyInside, timeInterval, results::add);
+      return results.stream();
+    });
+  }
 
+  /**
+   * Iterates over all entity modifications in a cell that match a given condition/filter, passing
+   * each result to a callback.
+   *
+   * <p>This produces the same results as {@link #iterateByContribution(GridOSHEntity)}, without
+   * collecting them in intermediate lists and streams. The results of each osh entity are passed
+   * to the callback in chronological order.</p>
+   *
+   * <p>The callback must not iterate over other cells on the same thread, as the per thread
+   * buffers of the current osh entity are still in use while it is called.</p>
+   *
+   * @param cell the data cell
+   * @param callback a function called for each matching modification with its clipped Geometries
+   */
+  public void iterateByContribution(
+      GridOSHEntity cell, Consumer<? super IterateAllEntry> callback
+  ) {
+    CURRENT_CELL.set(new CellId(cell.getLevel(), cell.getId()));
+    if (skipCellByContribution(cell)) {
+      return;
+    }
+    final Boolean allFullyInside = isCellFullyInside(cell);
+    if (allFullyInside == null) {
+      return;
+    }
     if (includeOldStyleMultipolygons) {
       //todo: remove this by finishing the functionality below
       throw new Error("this is not yet properly implemented (probably)");
     }
+    final OSHDBTimestampInterval timeInterval = new OSHDBTimestampInterval(timestamps);
+    for (OSHEntity oshEntity : getCellEntities(cell, allFullyInside)) {
+      iterateEntityByContribution(oshEntity, allFullyInside, timeInterval, callback);
+    }
+  }
 
-    //noinspection unchecked
-    Iterable<? extends OSHEntity> cellData = cell.getEntities();
+  // true if the id or the summary of a cell show that iterateByContribution has no results
+  private boolean skipCellByContribution(GridOSHEntity cell) {
+    if (!oshEntityPreFilter.mayMatch(new CellId(cell.getLevel(), cell.getId()))) {
+      return true;
+    }
+    GridOSHEntitySummary summary = cell.getSummary();
+    // nothing in this cell was modified in the requested time interval or none of its entities
+    // matches the prefilter -> skip the whole cell without decoding it
+    return summary != null && (
+        !summary.overlaps(
+            timestamps.first().getRawUnixTimestamp(), timestamps.last().getRawUnixTimestamp())
+            || !oshEntityPreFilter.mayMatch(summary));
+  }
 
-    return Streams.stream(cellData).flatMap(oshEntity -> {
-      if (!oshEntityPreFilter.test(oshEntity) ||
-          !allFullyInside && (
-              !oshEntity.getBoundingBox().intersects(boundingBox) ||
-                  (isBoundByPolygon && bboxOutsidePolygon.test(oshEntity.getBoundingBox()))
-          )) {
-        // this osh entity doesn't match the prefilter or is fully outside the requested
-        // area of interest -> skip it
-        return Stream.empty();
-      }
-      if (Streams.stream(oshEntity.getVersions()).noneMatch(osmEntityFilter)) {
-        // none of this osh entity's versions matches the filter -> skip it
-        return Stream.empty();
-      }
+  private void iterateEntityByContribution(
+      OSHEntity oshEntity, boolean allFullyInside, OSHDBTimestampInterval timeInterval,
+      Consumer<? super IterateAllEntry> callback
+  ) {
+    if (!oshEntityPreFilter.test(oshEntity) ||
+        !allFullyInside && (
+            !oshEntity.getBoundingBox().intersects(boundingBox) ||
+                (isBoundByPolygon && bboxOutsidePolygon.test(oshEntity.getBoundingBox()))
+        )) {
+      // this osh entity doesn't match the prefilter or is fully outside the requested
+      // area of interest -> skip it
+      return;
+    }
+    if (Streams.stream(oshEntity.getVersions()).noneMatch(osmEntityFilter)) {
+      // none of this osh entity's versions matches the filter -> skip it
+      return;
+    }
 
-      boolean fullyInside = allFullyInside || (
-          oshEntity.getBoundingBox().isInside(boundingBox) &&
-              (!isBoundByPolygon || bboxInPolygon.test(oshEntity.getBoundingBox()))
-      );
+    boolean fullyInside = allFullyInside || (
+        oshEntity.getBoundingBox().isInside(boundingBox) &&
+            (!isBoundByPolygon || bboxInPolygon.test(oshEntity.getBoundingBox()))
+    );
 
-      Map<OSHDBTimestamp, Long> changesetTs = OSHEntities.getChangesetTimestamps(oshEntity);
-      List<OSHDBTimestamp> modTs =
-          OSHEntities.getModificationTimestamps(oshEntity, osmEntityFilter, changesetTs);
+    // timeline of the (changeset grouped) modifications of the entity and its child entities,
+    // with the changeset of each modification
+    final EntityBuffers buffers = ENTITY_BUFFERS.get();
+    final OSHEntityTimeline changesetTs = buffers.changesetTimestamps;
+    final OSHEntityTimeline modTs = buffers.modificationTimestamps;
+    OSHEntities.getChangesetTimestamps(oshEntity, changesetTs);
+    OSHEntities.getModificationTimestamps(oshEntity, osmEntityFilter, changesetTs, modTs);
+
+    if (modTs.size() == 0 || !timeInterval.intersects(new OSHDBTimestampInterval(
+        new OSHDBTimestamp(modTs.getTimestamp(0)),
+        new OSHDBTimestamp(modTs.getTimestamp(modTs.size() - 1))
+    ))) {
+      // ignore osh entity because it's edit history is fully outside of the given time interval
+      // of interest
+      return;
+    }
 
-      if (modTs.size() == 0 || !timeInterval.intersects(
-          new OSHDBTimestampInterval(modTs.get(0), modTs.get(modTs.size() - 1))
-      )) {
-        // ignore osh entity because it's edit history is fully outside of the given time interval
-        // of interest
-        return Stream.empty();
+    final OSMEntity[] osmEntityByTimestamps = buffers.osmEntities(modTs.size());
+    OSHEntities.getByTimestamps(
+        oshEntity, modTs.getTimestamps(), modTs.size(), osmEntityByTimestamps);
+
+    IterateAllEntry prev = null;
+
+    // single forward pass over the modification timeline
+    OSHDBTimestamp nextTs = new OSHDBTimestamp(modTs.getTimestamp(0));
+    osmEntityLoop:
+    for (int m = 0; m < modTs.size(); m++) {
+      OSHDBTimestamp timestamp = nextTs;
+      nextTs = m + 1 < modTs.size() ? new OSHDBTimestamp(modTs.getTimestamp(m + 1)) : null;
+      OSMEntity osmEntity = osmEntityByTimestamps[m];
+      final long changeset = modTs.getChangeset(m);
+      if (osmEntity == null) {
+        // the entity didn't exist yet at this timestamp
+        continue;
       }
 
-      SortedMap<OSHDBTimestamp, OSMEntity> osmEntityByTimestamps =
-          OSHEntities.getByTimestamps(oshEntity, modTs);
-
-      List<IterateAllEntry> results = new LinkedList<>();
-
-      IterateAllEntry prev = null;
-
-      osmEntityLoop:
-      for (Map.Entry<OSHDBTimestamp, OSMEntity> entity : osmEntityByTimestamps.entrySet()) {
-        OSHDBTimestamp timestamp = entity.getKey();
-        OSMEntity osmEntity = entity.getValue();
-
-        // prev = results.size() > 0 ? results.get(results.size()-1) : null;
-        // todo: replace with variable outside of osmEntitiyLoop (than we can also get rid of
-        // the `|| prev.osmEntity.getId() != osmEntity.getId()`'s below)
-        boolean skipOutput = false;
-
-        OSHDBTimestamp nextTs = null;
-        // todo: better way to figure out if timestamp is not last element??
-        if (modTs.size() > modTs.indexOf(timestamp) + 1) {
-          nextTs = modTs.get(modTs.indexOf(timestamp) + 1);
+      // prev = results.size() > 0 ? results.get(results.size()-1) : null;
+      // todo: replace with variable outside of osmEntitiyLoop (than we can also get rid of
+      // the `|| prev.osmEntity.getId() != osmEntity.getId()`'s below)
+      boolean skipOutput = false;
+
+      if (!timeInterval.includes(timestamp)) {
+        // ignore osm entity because it's outside of the given time interval of interest
+        if (timeInterval.compareTo(timestamp) > 0) { // timestamp in the future of the interval
+          break; // abort current osmEntityByTimestamps loop, continue with next osh entity
+        } else if (!timeInterval.includes(nextTs)) { // next modification state is also in not in
+          // our time frame of interest
+          continue; // continue with next mod. state of current osh entity
+        } else {
+          // next mod. state of current entity will be in the time range of interest. -> skip it
+          // but we still have to process this entity fully, because we need stuff in `prev` for
+          // previousGeometry, etc. during the next iteration
+          skipOutput = true;
         }
+      }
 
-        if (!timeInterval.includes(timestamp)) {
-          // ignore osm entity because it's outside of the given time interval of interest
-          if (timeInterval.compareTo(timestamp) > 0) { // timestamp in the future of the interval
-            break; // abort current osmEntityByTimestamps loop, continue with next osh entity
-          } else if (!timeInterval.includes(nextTs)) { // next modification state is also in not in
-            // our time frame of interest
-            continue; // continue with next mod. state of current osh entity
-          } else {
-            // next mod. state of current entity will be in the time range of interest. -> skip it
-            // but we still have to process this entity fully, because we need stuff in `prev` for
-            // previousGeometry, etc. during the next iteration
-            skipOutput = true;
+      if (!osmEntity.isVisible()) {
+        // this entity is deleted at this timestamp
+        // todo: some of this may be refactorable between the two for loops
+        if (prev != null && !prev.activities.contains(ContributionType.DELETION)) {
+          prev = new IterateAllEntry(timestamp,
+              osmEntity, prev.osmEntity, oshEntity,
+              new LazyEvaluatedObject<>((Geometry)null), prev.geometry,
+              new LazyEvaluatedObject<>((Geometry)null), prev.unclippedGeometry,
+              new LazyEvaluatedContributionTypes(EnumSet.of(ContributionType.DELETION)),
+              osmEntity.getChangesetId()
+          );
+          // cannot normally happen, because prev is never null while skipOutput is true (since no
+          // previous result has yet been generated before the first modification in the query
+          // timestamp inteval). But if the oshdb-api would at some point have to support non-
+          // contiguous timestamp intervals, this case could be needed.
+          if (!skipOutput) {
+            callback.accept(prev);
           }
         }
+        continue osmEntityLoop;
+      }
 
-        if (!osmEntity.isVisible()) {
-          // this entity is deleted at this timestamp
-          // todo: some of this may be refactorable between the two for loops
+      // todo check old style mp code!!1!!!11!
+      boolean isOldStyleMultipolygon = false;
+      if (includeOldStyleMultipolygons && osmEntity instanceof OSMRelation
+          && tagInterpreter.isOldStyleMultipolygon((OSMRelation) osmEntity)) {
+        final OSMRelation rel = (OSMRelation) osmEntity;
+        for (int i = 0; i < rel.getMembers().length; i++) {
+          final OSMMember relMember = rel.getMembers()[i];
+          if (relMember.getType() == OSMType.WAY
+              && tagInterpreter.isMultipolygonOuterMember(relMember)) {
+            OSMEntity way = OSHEntities.getByTimestamp(relMember.getEntity(), timestamp);
+            if (!osmEntityFilter.test(way)) {
+              // skip this old-style-multipolygon because it doesn't match our filter
+              continue osmEntityLoop;
+            } else {
+              // we know this multipolygon only has exactly one outer way, so we can abort the
+              // loop and actually
+              // "continue" with the calculations ^-^
+              isOldStyleMultipolygon = true;
+              break;
+            }
+          }
+        }
+      } else {
+        if (!osmEntityFilter.test(osmEntity)) {
+          // this entity doesn't match our filter (anymore)
+          // TODO?: separate/additional activity type (e.g. "RECYCLED" ??) and still construct
+          // geometries for these?
           if (prev != null && !prev.activities.contains(ContributionType.DELETION)) {
             prev = new IterateAllEntry(timestamp,
                 osmEntity, prev.osmEntity, oshEntity,
                 new LazyEvaluatedObject<>((Geometry)null), prev.geometry,
                 new LazyEvaluatedObject<>((Geometry)null), prev.unclippedGeometry,
                 new LazyEvaluatedContributionTypes(EnumSet.of(ContributionType.DELETION)),
-                osmEntity.getChangesetId()
+                changeset
             );
-            // cannot normally happen, because prev is never null while skipOutput is true (since no
-            // previous result has yet been generated before the first modification in the query
-            // timestamp inteval). But if the oshdb-api would at some point have to support non-
-            // contiguous timestamp intervals, this case could be needed.
             if (!skipOutput) {
-              results.add(prev);
+              callback.accept(prev);
             }
           }
           continue osmEntityLoop;
         }
+      }
 
-        // todo check old style mp code!!1!!!11!
-        boolean isOldStyleMultipolygon = false;
-        if (includeOldStyleMultipolygons && osmEntity instanceof OSMRelation
-            && tagInterpreter.isOldStyleMultipolygon((OSMRelation) osmEntity)) {
-          final OSMRelation rel = (OSMRelation) osmEntity;
-          for (int i = 0; i < rel.getMembers().length; i++) {
-            final OSMMember relMember = rel.getMembers()[i];
-            if (relMember.getType() == OSMType.WAY
-                && tagInterpreter.isMultipolygonOuterMember(relMember)) {
-              OSMEntity way = OSHEntities.getByTimestamp(relMember.getEntity(), timestamp);
-              if (!osmEntityFilter.test(way)) {
-                // skip this old-style-multipolygon because it doesn't match our filter
-                continue osmEntityLoop;
-              } else {
-                // we know this multipolygon only has exactly one outer way, so we can abort the
-                // loop and actually
-                // "continue" with the calculations ^-^
-                isOldStyleMultipolygon = true;
-                break;
-              }
-            }
-          }
+      try {
+        LazyEvaluatedObject<Geometry> geom;
+        if (!isOldStyleMultipolygon) {
+          geom = constructClippedGeometry(osmEntity, timestamp, fullyInside);
         } else {
-          if (!osmEntityFilter.test(osmEntity)) {
-            // this entity doesn't match our filter (anymore)
-            // TODO?: separate/additional activity type (e.g. "RECYCLED" ??) and still construct
-            // geometries for these?
-            if (prev != null && !prev.activities.contains(ContributionType.DELETION)) {
-              prev = new IterateAllEntry(timestamp,
-                  osmEntity, prev.osmEntity, oshEntity,
-                  new LazyEvaluatedObject<>((Geometry)null), prev.geometry,
-                  new LazyEvaluatedObject<>((Geometry)null), prev.unclippedGeometry,
-                  new LazyEvaluatedContributionTypes(EnumSet.of(ContributionType.DELETION)),
-                  changesetTs.get(timestamp)
-              );
-              if (!skipOutput) {
-                results.add(prev);
-              }
+          // old style multipolygons: return only the inner holes of the geometry -> this is then
+          // used to "fix" the results obtained from calculating the geometry on the object's outer
+          // way which doesn't know about the inner members of the multipolygon relation
+          // todo: check if this is all valid?
+          GeometryFactory gf = new GeometryFactory();
+          geom = new LazyEvaluatedObject<>(() -> {
+            Geometry geometry = OSHDBGeometryBuilder.getGeometry(osmEntity, timestamp, tagInterpreter);
+            Polygon poly = (Polygon) geometry;
+            Polygon[] interiorRings = new Polygon[poly.getNumInteriorRing()];
+            for (int i = 0; i < poly.getNumInteriorRing(); i++) {
+              interiorRings[i] =
+                  new Polygon((LinearRing) poly.getInteriorRingN(i), new LinearRing[]{}, gf);
             }
-            continue osmEntityLoop;
-          }
+            geometry = new MultiPolygon(interiorRings, gf);
+            if (!fullyInside) {
+              geometry = Geo.clip(geometry, boundingBox);
+            }
+            return geometry;
+          });
         }
 
-        try {
-          LazyEvaluatedObject<Geometry> geom;
-          if (!isOldStyleMultipolygon) {
-            geom = constructClippedGeometry(osmEntity, timestamp, fullyInside);
-          } else {
-            // old style multipolygons: return only the inner holes of the geometry -> this is then
-            // used to "fix" the results obtained from calculating the geometry on the object's outer
-            // way which doesn't know about the inner members of the multipolygon relation
-            // todo: check if this is all valid?
-            GeometryFactory gf = new GeometryFactory();
-            geom = new LazyEvaluatedObject<>(() -> {
-              Geometry geometry = OSHDBGeometryBuilder.getGeometry(osmEntity, timestamp, tagInterpreter);
-              Polygon poly = (Polygon) geometry;
-              Polygon[] interiorRings = new Polygon[poly.getNumInteriorRing()];
-              for (int i = 0; i < poly.getNumInteriorRing(); i++) {
-                interiorRings[i] =
-                    new Polygon((LinearRing) poly.getInteriorRingN(i), new LinearRing[]{}, gf);
-              }
-              geometry = new MultiPolygon(interiorRings, gf);
-              if (!fullyInside) {
-                geometry = Geo.clip(geometry, boundingBox);
-              }
-              return geometry;
-            });
-          }
-
-          LazyEvaluatedContributionTypes activity;
-          if (!fullyInside && geom.get().isEmpty()) {
-            // either object is outside of current area or has invalid geometry
-            if (prev != null && !prev.activities.contains(ContributionType.DELETION)) {
-              prev = new IterateAllEntry(timestamp,
-                  osmEntity, prev.osmEntity, oshEntity,
-                  new LazyEvaluatedObject<>((Geometry)null), prev.geometry,
-                  new LazyEvaluatedObject<>((Geometry)null), prev.unclippedGeometry,
-                  new LazyEvaluatedContributionTypes(EnumSet.of(ContributionType.DELETION)),
-                  changesetTs.get(timestamp)
-              );
-              if (!skipOutput) {
-                results.add(prev);
-              }
+        LazyEvaluatedContributionTypes activity;
+        if (!fullyInside && geom.get().isEmpty()) {
+          // either object is outside of current area or has invalid geometry
+          if (prev != null && !prev.activities.contains(ContributionType.DELETION)) {
+            prev = new IterateAllEntry(timestamp,
+                osmEntity, prev.osmEntity, oshEntity,
+                new LazyEvaluatedObject<>((Geometry)null), prev.geometry,
+                new LazyEvaluatedObject<>((Geometry)null), prev.unclippedGeometry,
+                new LazyEvaluatedContributionTypes(EnumSet.of(ContributionType.DELETION)),
+                changeset
+            );
+            if (!skipOutput) {
+              callback.accept(prev);
             }
-            continue osmEntityLoop;
-          } else if (prev == null || prev.activities.contains(ContributionType.DELETION)) {
-            activity = new LazyEvaluatedContributionTypes(EnumSet.of(ContributionType.CREATION));
-            // todo: special case when an object gets specific tag/condition again after having them
-            // removed?
-          } else {
-            OSMEntity prevEntity = prev.osmEntity;
-            LazyEvaluatedObject<Geometry> prevGeometry = prev.geometry;
-            activity = new LazyEvaluatedContributionTypes(contributionType -> {
-              switch (contributionType) {
-                case TAG_CHANGE:
-                  // look if tags have been changed between versions
-                  boolean tagsChange = false;
-                  if (prevEntity.getRawTags().length != osmEntity.getRawTags().length) {
-                    tagsChange = true;
-                  } else {
-                    for (int i = 0; i < prevEntity.getRawTags().length; i++) {
-                      if (prevEntity.getRawTags()[i] != osmEntity.getRawTags()[i]) {
-                        tagsChange = true;
-                        break;
-                      }
+          }
+          continue osmEntityLoop;
+        } else if (prev == null || prev.activities.contains(ContributionType.DELETION)) {
+          activity = new LazyEvaluatedContributionTypes(EnumSet.of(ContributionType.CREATION));
+          // todo: special case when an object gets specific tag/condition again after having them
+          // removed?
+        } else {
+          OSMEntity prevEntity = prev.osmEntity;
+          LazyEvaluatedObject<Geometry> prevGeometry = prev.geometry;
+          activity = new LazyEvaluatedContributionTypes(contributionType -> {
+            switch (contributionType) {
+              case TAG_CHANGE:
+                // look if tags have been changed between versions
+                boolean tagsChange = false;
+                if (prevEntity.getRawTags().length != osmEntity.getRawTags().length) {
+                  tagsChange = true;
+                } else {
+                  for (int i = 0; i < prevEntity.getRawTags().length; i++) {
+                    if (prevEntity.getRawTags()[i] != osmEntity.getRawTags()[i]) {
+                      tagsChange = true;
+                      break;
                     }
                   }
-                  return tagsChange;
-                case GEOMETRY_CHANGE:
-                  // look if geometry has been changed between versions
-                  return !prevGeometry.equals(geom);
-                default:
-                  return false;
-              }
-            });
-          }
+                }
+                return tagsChange;
+              case GEOMETRY_CHANGE:
+                // look if geometry has been changed between versions
+                return !prevGeometry.equals(geom);
+              default:
+                return false;
+            }
+          });
+        }
 
-          IterateAllEntry result;
-          LazyEvaluatedObject<Geometry> unclippedGeom = new LazyEvaluatedObject<>(() ->
-              OSHDBGeometryBuilder.getGeometry(osmEntity, timestamp, tagInterpreter)
+        IterateAllEntry result;
+        LazyEvaluatedObject<Geometry> unclippedGeom = new LazyEvaluatedObject<>(() ->
+            OSHDBGeometryBuilder.getGeometry(osmEntity, timestamp, tagInterpreter)
+        );
+        if (prev != null) {
+          result = new IterateAllEntry(timestamp,
+              osmEntity, prev.osmEntity, oshEntity,
+              geom, prev.geometry,
+              unclippedGeom, prev.unclippedGeometry,
+              activity,
+              changeset
           );
-          if (prev != null) {
-            result = new IterateAllEntry(timestamp,
-                osmEntity, prev.osmEntity, oshEntity,
-                geom, prev.geometry,
-                unclippedGeom, prev.unclippedGeometry,
-                activity,
-                changesetTs.get(timestamp)
-            );
-          } else {
-            result = new IterateAllEntry(timestamp,
-                osmEntity, null, oshEntity,
-                geom, new LazyEvaluatedObject<>((Geometry)null),
-                unclippedGeom, new LazyEvaluatedObject<>((Geometry)null),
-                activity,
-                changesetTs.get(timestamp)
-            );
-          }
+        } else {
+          result = new IterateAllEntry(timestamp,
+              osmEntity, null, oshEntity,
+              geom, new LazyEvaluatedObject<>((Geometry)null),
+              unclippedGeom, new LazyEvaluatedObject<>((Geometry)null),
+              activity,
+              changeset
+          );
+        }
 
-          if (!skipOutput) {
-            results.add(result);
-          }
-          prev = result;
-        } catch (IllegalArgumentException err) {
-          // maybe some corner case where JTS doesn't support operations on a broken geometry
-          LOG.info("Entity {}/{} skipped because of invalid geometry at timestamp {}",
-              osmEntity.getType().toString().toLowerCase(), osmEntity.getId(), timestamp);
-        } catch (TopologyException err) {
-          // happens e.g. in JTS intersection method when geometries are self-overlapping
-          LOG.info("Topology error with entity {}/{} at timestamp {}: {}",
-              osmEntity.getType().toString().toLowerCase(), osmEntity.getId(), timestamp,
-              err.toString());
+        if (!skipOutput) {
+          callback.accept(result);
         }
+        prev = result;
+      } catch (IllegalArgumentException err) {
+        // maybe some corner case where JTS doesn't support operations on a broken geometry
+        LOG.info("Entity {}/{} skipped because of invalid geometry at timestamp {}",
+            osmEntity.getType().toString().toLowerCase(), osmEntity.getId(), timestamp);
+      } catch (TopologyException err) {
+        // happens e.g. in JTS intersection method when geometries are self-overlapping
+        LOG.info("Topology error with entity {}/{} at timestamp {}: {}",
+            osmEntity.getType().toString().toLowerCase(), osmEntity.getId(), timestamp,
+            err.toString());
       }
-      // stream this oshEntity's results
-      return results.stream();
-    });
+    }
   }
 
 }
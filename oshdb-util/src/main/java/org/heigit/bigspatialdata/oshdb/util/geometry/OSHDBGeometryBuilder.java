@@ -11,8 +11,10 @@ import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.annotation.Nonnull;
+import org.heigit.bigspatialdata.oshdb.osh.NodeCoordinateTimeline;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntities;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
 import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
 import org.heigit.bigspatialdata.oshdb.osm.OSMMember;
 import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
@@ -85,12 +87,7 @@ public class OSHDBGeometryBuilder {
         return geometryFactory.createLineString((CoordinateSequence) null);
       }
       // todo: handle old-style multipolygons here???
-      Coordinate[] coords =
-          way.getRefEntities(timestamp)
-              .filter(Objects::nonNull)
-              .filter(OSMEntity::isVisible)
-              .map(nd -> new Coordinate(nd.getLongitude(), nd.getLatitude()))
-              .toArray(Coordinate[]::new);
+      Coordinate[] coords = getCoordinates(way, timestamp);
       if (areaDecider.isArea(entity)) {
         if (coords.length >= 4 && coords[0].equals2D(coords[coords.length - 1])) {
           return geometryFactory.createPolygon(coords);
@@ -137,6 +134,31 @@ public class OSHDBGeometryBuilder {
     }
   }
 
+  /**
+   * Returns the coordinates of the (visible) nodes of a way at the given timestamp.
+   *
+   * <p>The coordinates are looked up in the location histories of the way's nodes by binary
+   * search, no node versions are materialized.</p>
+   */
+  private static Coordinate[] getCoordinates(OSMWay way, OSHDBTimestamp timestamp) {
+    final long t = timestamp.getRawUnixTimestamp();
+    final OSMMember[] refs = way.getRefs();
+    final Coordinate[] coords = new Coordinate[refs.length];
+    int size = 0;
+    for (OSMMember ref : refs) {
+      final OSHEntity node = ref.getEntity();
+      if (node == null) {
+        continue;
+      }
+      final NodeCoordinateTimeline timeline = ((OSHNode) node).getCoordinateTimeline();
+      final int index = timeline.indexAt(t);
+      if (index >= 0 && timeline.isVisible(index)) {
+        coords[size++] = new Coordinate(timeline.getLongitude(index), timeline.getLatitude(index));
+      }
+    }
+    return size == coords.length ? coords : Arrays.copyOf(coords, size);
+  }
+
   private static Geometry getGeometryCollectionGeometry(
       OSMRelation relation,
       OSHDBTimestamp timestamp,
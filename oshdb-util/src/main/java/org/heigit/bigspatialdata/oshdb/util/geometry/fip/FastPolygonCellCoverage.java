@@ -0,0 +1,133 @@
+package org.heigit.bigspatialdata.oshdb.util.geometry.fip;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.heigit.bigspatialdata.oshdb.index.GridTree;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.heigit.bigspatialdata.oshdb.util.geometry.OSHDBGeometryBuilder;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygonal;
+
+/**
+ * The grid cells which can hold data of a (multi)polygon, as ranges of cell ids.
+ *
+ * <p>Starting from the cell id ranges of the polygon's bounding box, ranges whose (enlarged)
+ * bounding box is completely outside of the polygon are dropped, and ranges which are neither
+ * completely outside nor completely inside are split until the single cells at the polygon's
+ * boundary are reached. Each resulting range is either fully inside of the polygon or at its
+ * boundary.</p>
+ */
+public class FastPolygonCellCoverage implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final Comparator<CellIdRange> ORDER = Comparator
+      .<CellIdRange>comparingInt(range -> range.getStart().getZoomLevel())
+      .thenComparingLong(range -> range.getStart().getId());
+
+  private final GridTree grid;
+  private final List<CellIdRange> insideRanges = new ArrayList<>();
+  private final List<CellIdRange> boundaryRanges = new ArrayList<>();
+  private final List<CellIdRange> cellIdRanges;
+
+  /**
+   * Computes the cells covering the given polygon.
+   *
+   * @param polygon the (multi)polygon
+   * @param grid the grid the cells are numbered by
+   */
+  public <P extends Geometry & Polygonal> FastPolygonCellCoverage(P polygon, GridTree grid) {
+    this.grid = grid;
+    final FastBboxInPolygon bboxInPolygon = new FastBboxInPolygon(polygon);
+    final FastBboxOutsidePolygon bboxOutsidePolygon = new FastBboxOutsidePolygon(polygon);
+    final OSHDBBoundingBox bbox =
+        OSHDBGeometryBuilder.boundingBoxOf(polygon.getEnvelopeInternal());
+    for (CellIdRange range : grid.bbox2CellIdRanges(bbox, true)) {
+      if (range.getStart().getId() < 0) {
+        // cell of out of bounds data
+        append(boundaryRanges, range);
+      } else {
+        refine(range, bboxInPolygon, bboxOutsidePolygon);
+      }
+    }
+
+    List<CellIdRange> all = new ArrayList<>(insideRanges.size() + boundaryRanges.size());
+    all.addAll(insideRanges);
+    all.addAll(boundaryRanges);
+    all.sort(ORDER);
+    List<CellIdRange> merged = new ArrayList<>(all.size());
+    for (CellIdRange range : all) {
+      append(merged, range);
+    }
+    this.cellIdRanges = Collections.unmodifiableList(merged);
+  }
+
+  private void refine(CellIdRange range, FastBboxInPolygon bboxInPolygon,
+      FastBboxOutsidePolygon bboxOutsidePolygon) {
+    final OSHDBBoundingBox rangeBoundingBox = grid.getBoundingBox(range, true);
+    if (bboxOutsidePolygon.test(rangeBoundingBox)) {
+      return;
+    }
+    if (bboxInPolygon.test(rangeBoundingBox)) {
+      append(insideRanges, range);
+      return;
+    }
+    final long start = range.getStart().getId();
+    final long end = range.getEnd().getId();
+    if (start == end) {
+      append(boundaryRanges, range);
+      return;
+    }
+    final int level = range.getStart().getZoomLevel();
+    final long mid = start + (end - start) / 2;
+    refine(CellIdRange.of(range.getStart(), new CellId(level, mid)),
+        bboxInPolygon, bboxOutsidePolygon);
+    refine(CellIdRange.of(new CellId(level, mid + 1), range.getEnd()),
+        bboxInPolygon, bboxOutsidePolygon);
+  }
+
+  // adds a range to a sorted list of ranges, joining it with the last one if they are adjacent
+  private static void append(List<CellIdRange> ranges, CellIdRange range) {
+    if (!ranges.isEmpty()) {
+      CellIdRange last = ranges.get(ranges.size() - 1);
+      if (last.getEnd().getZoomLevel() == range.getStart().getZoomLevel()
+          && last.getEnd().getId() >= 0
+          && last.getEnd().getId() + 1 == range.getStart().getId()) {
+        ranges.set(ranges.size() - 1, CellIdRange.of(last.getStart(), range.getEnd()));
+        return;
+      }
+    }
+    ranges.add(range);
+  }
+
+  public GridTree getGrid() {
+    return grid;
+  }
+
+  /**
+   * Returns the ranges of cells whose (enlarged) bounding box is fully inside of the polygon.
+   */
+  public List<CellIdRange> getInsideRanges() {
+    return Collections.unmodifiableList(insideRanges);
+  }
+
+  /**
+   * Returns the ranges of cells at the boundary of the polygon, whose entities may or may not be
+   * inside of the polygon.
+   */
+  public List<CellIdRange> getBoundaryRanges() {
+    return Collections.unmodifiableList(boundaryRanges);
+  }
+
+  /**
+   * Returns all ranges of cells covering the polygon, sorted by zoom level and id, with adjacent
+   * inside and boundary ranges joined.
+   */
+  public List<CellIdRange> getCellIdRanges() {
+    return cellIdRanges;
+  }
+}
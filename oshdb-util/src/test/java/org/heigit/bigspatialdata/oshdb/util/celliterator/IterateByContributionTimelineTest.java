@@ -0,0 +1,98 @@
+package org.heigit.bigspatialdata.oshdb.util.celliterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntities;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.heigit.bigspatialdata.oshdb.util.celliterator.CellIterator.IterateAllEntry;
+import org.heigit.bigspatialdata.oshdb.util.celliterator.CellIterator.OSMEntityFilter;
+import org.heigit.bigspatialdata.oshdb.util.celliterator.helpers.GridOSHFactory;
+import org.heigit.bigspatialdata.oshdb.util.geometry.helpers.OSMXmlReaderTagInterpreter;
+import org.heigit.bigspatialdata.oshdb.util.time.OSHDBTimestamps;
+import org.heigit.bigspatialdata.oshdb.util.xmlreader.OSMXmlReader;
+import org.junit.Test;
+
+/**
+ * Checks that the contributions of {@link CellIterator#iterateByContribution} follow the
+ * (changeset grouped) modification timestamps and changesets of the map/list based
+ * {@link OSHEntities} helpers.
+ */
+public class IterateByContributionTimelineTest {
+
+  private static void assertMatchesTimeline(String osmFile, boolean relations,
+      OSMEntityFilter osmEntityFilter) throws IOException {
+    OSMXmlReader osmXmlTestData = new OSMXmlReader();
+    osmXmlTestData.add(osmFile);
+    GridOSHEntity cell = relations
+        ? GridOSHFactory.getGridOSHRelations(osmXmlTestData)
+        : GridOSHFactory.getGridOSHWays(osmXmlTestData);
+
+    List<IterateAllEntry> result = (new CellIterator(
+        new OSHDBTimestamps(
+            "2000-01-01T00:00:00Z",
+            "2018-01-01T00:00:00Z"
+        ).get(),
+        new OSHDBBoundingBox(-180, -90, 180, 90),
+        new OSMXmlReaderTagInterpreter(osmXmlTestData),
+        oshEntity -> true,
+        osmEntityFilter,
+        false
+    )).iterateByContribution(
+        cell
+    ).collect(Collectors.toList());
+    assertTrue(result.size() > 0);
+
+    Map<Long, List<IterateAllEntry>> resultsByEntity = result.stream()
+        .collect(Collectors.groupingBy(entry -> entry.oshEntity.getId()));
+
+    for (OSHEntity oshEntity : cell.getEntities()) {
+      Map<OSHDBTimestamp, Long> changesets = OSHEntities.getChangesetTimestamps(oshEntity);
+      List<OSHDBTimestamp> modTs =
+          OSHEntities.getModificationTimestamps(oshEntity, osmEntityFilter, changesets);
+
+      int j = 0;
+      for (IterateAllEntry entry : resultsByEntity.getOrDefault(
+          oshEntity.getId(), Collections.emptyList())) {
+        // contributions are returned in the order of the modification timestamps
+        while (j < modTs.size() && !modTs.get(j).equals(entry.timestamp)) {
+          j++;
+        }
+        assertTrue(j < modTs.size());
+        assertEquals(
+            OSHEntities.getByTimestamp(oshEntity, entry.timestamp).getVersion(),
+            entry.osmEntity.getVersion()
+        );
+        long expectedChangeset = entry.osmEntity.isVisible()
+            ? changesets.get(entry.timestamp)
+            : entry.osmEntity.getChangesetId();
+        assertEquals(expectedChangeset, entry.changeset);
+        j++;
+      }
+    }
+  }
+
+  @Test
+  public void testWays() throws IOException {
+    assertMatchesTimeline("./src/test/resources/different-timestamps/way.osm", false,
+        osmEntity -> true);
+    assertMatchesTimeline("./src/test/resources/different-timestamps/way.osm", false,
+        osmEntity -> osmEntity.getVersion() % 2 == 1);
+  }
+
+  @Test
+  public void testRelations() throws IOException {
+    assertMatchesTimeline("./src/test/resources/different-timestamps/polygon.osm", true,
+        osmEntity -> true);
+    assertMatchesTimeline("./src/test/resources/different-timestamps/polygon.osm", true,
+        osmEntity -> osmEntity.getVersion() % 2 == 1);
+  }
+}
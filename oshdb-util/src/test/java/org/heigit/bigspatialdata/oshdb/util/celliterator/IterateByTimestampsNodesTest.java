@@ -1,6 +1,7 @@
 package org.heigit.bigspatialdata.oshdb.util.celliterator;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import org.heigit.bigspatialdata.oshdb.grid.GridOSHNodes;
@@ -249,4 +250,34 @@ public class IterateByTimestampsNodesTest {
     assertTrue(result.get(1).osmEntity.getId() == 13);
     assertTrue(result.get(2).osmEntity.getId() == 14);
   }
+
+  @Test
+  public void testCallback() {
+    // the callback variant has to produce the same results as the stream variant
+    CellIterator cellIterator = new CellIterator(
+        new OSHDBTimestamps(
+            "2000-01-01T00:00:00Z",
+            "2018-01-01T00:00:00Z",
+            "P1Y"
+        ).get(),
+        new OSHDBBoundingBox(-180,-90, 180, 90),
+        areaDecider,
+        oshEntity -> true,
+        osmEntity -> true,
+        false
+    );
+    List<IterateByTimestampEntry> expected = cellIterator.iterateByTimestamps(
+        oshdbDataGridCell
+    ).collect(Collectors.toList());
+    List<IterateByTimestampEntry> result = new ArrayList<>();
+    cellIterator.iterateByTimestamps(oshdbDataGridCell, result::add);
+
+    assertTrue(expected.size() > 0);
+    assertEquals(expected.size(), result.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).timestamp, result.get(i).timestamp);
+      assertEquals(expected.get(i).osmEntity.getId(), result.get(i).osmEntity.getId());
+      assertEquals(expected.get(i).osmEntity.getVersion(), result.get(i).osmEntity.getVersion());
+    }
+  }
 }
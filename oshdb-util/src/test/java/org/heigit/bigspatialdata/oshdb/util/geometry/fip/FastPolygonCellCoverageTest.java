@@ -0,0 +1,68 @@
+package org.heigit.bigspatialdata.oshdb.util.geometry.fip;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.heigit.bigspatialdata.oshdb.index.GridTree;
+import org.heigit.bigspatialdata.oshdb.index.HilbertGridTree;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.heigit.bigspatialdata.oshdb.util.geometry.OSHDBGeometryBuilder;
+import org.junit.Test;
+import org.locationtech.jts.geom.Polygon;
+
+public class FastPolygonCellCoverageTest {
+
+  private static Set<CellId> cells(Iterable<CellIdRange> ranges) {
+    Set<CellId> result = new HashSet<>();
+    for (CellIdRange range : ranges) {
+      for (long id = range.getStart().getId(); id <= range.getEnd().getId(); id++) {
+        result.add(new CellId(range.getStart().getZoomLevel(), id));
+      }
+    }
+    return result;
+  }
+
+  private static void assertCoverage(GridTree grid) {
+    Polygon p = FastPointInPolygonTest.createPolygon();
+    FastBboxInPolygon bip = new FastBboxInPolygon(p);
+    FastBboxOutsidePolygon bop = new FastBboxOutsidePolygon(p);
+    FastPolygonCellCoverage coverage = new FastPolygonCellCoverage(p, grid);
+
+    Set<CellId> bboxCells = cells(grid.bbox2CellIdRanges(
+        OSHDBGeometryBuilder.boundingBoxOf(p.getEnvelopeInternal()), true));
+    Set<CellId> coveredCells = cells(coverage.getCellIdRanges());
+    // all cells which can hold data of the polygon are covered
+    for (CellId cell : bboxCells) {
+      if (!bop.test(grid.getBoundingBox(cell, true))) {
+        assertTrue(coveredCells.contains(cell));
+      }
+    }
+    // cells in the concave part of the polygon are skipped
+    assertTrue(coveredCells.size() < bboxCells.size());
+    assertTrue(bboxCells.containsAll(coveredCells));
+
+    Set<CellId> insideCells = cells(coverage.getInsideRanges());
+    Set<CellId> boundaryCells = cells(coverage.getBoundaryRanges());
+    assertFalse(insideCells.isEmpty());
+    for (CellId cell : insideCells) {
+      assertTrue(bip.test(grid.getBoundingBox(cell, true)));
+      assertFalse(boundaryCells.contains(cell));
+    }
+    assertEquals(coveredCells.size(), insideCells.size() + boundaryCells.size());
+  }
+
+  @Test
+  public void testXYGrid() {
+    assertCoverage(new XYGridTree(12));
+  }
+
+  @Test
+  public void testHilbertGrid() {
+    assertCoverage(new HilbertGridTree(12));
+  }
+}
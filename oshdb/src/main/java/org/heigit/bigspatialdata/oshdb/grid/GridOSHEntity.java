@@ -1,9 +1,15 @@
 package org.heigit.bigspatialdata.oshdb.grid;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
 import java.util.Locale;
+import java.util.NoSuchElementException;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHEntityDictionary;
 import org.heigit.bigspatialdata.oshdb.index.XYGrid;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntityHeaderFilter;
 import org.heigit.bigspatialdata.oshdb.util.CellId;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
 
@@ -24,6 +30,36 @@ public abstract class GridOSHEntity
   protected final int[] index;
   protected final byte[] data;
 
+  /**
+   * Read-only view of the entity data, either wrapping {@link #data} or (for cells which are not
+   * held on the java heap) a direct or memory mapped buffer.
+   */
+  private transient ByteBuffer buffer;
+
+  /**
+   * Shared dictionary of the member nodes and ways of the entities, see
+   * {@link #getDictionary()}.
+   */
+  private transient OSHEntityDictionary dictionary;
+
+  /**
+   * Optional summary of the cell's content, see {@link GridOSHEntitySummary}.
+   */
+  private GridOSHEntitySummary summary;
+
+  /**
+   * Optional bounding boxes of blocks of this cell's entities, see
+   * {@link GridOSHEntityBlockIndex}.
+   */
+  private GridOSHEntityBlockIndex blockIndex;
+
+  /**
+   * Compression codec of the {@link #data} array (null or NONE for uncompressed cells) and the
+   * length of the uncompressed data.
+   */
+  private GridOSHEntityCompression compression;
+  private int uncompressedLength;
+
   public GridOSHEntity(final long id, final int level, final long baseId, final long baseTimestamp,
       final long baseLongitude, final long baseLatitude, final int[] index, final byte[] data) {
 
@@ -38,6 +74,102 @@ public abstract class GridOSHEntity
     this.data = data;
   }
 
+  /**
+   * Creates a grid cell whose entity data is read directly from the given buffer (without
+   * copying it onto the heap).
+   *
+   * @param data the entity data, occupying the buffer from index 0 up to its limit
+   */
+  protected GridOSHEntity(final long id, final int level, final long baseId,
+      final long baseTimestamp, final long baseLongitude, final long baseLatitude,
+      final int[] index, final ByteBuffer data) {
+
+    this.id = id;
+    this.level = level;
+    this.baseTimestamp = baseTimestamp;
+    this.baseLongitude = baseLongitude;
+    this.baseLatitude = baseLatitude;
+    this.baseId = baseId;
+
+    this.index = index;
+    this.data = null;
+    this.buffer = data;
+  }
+
+  /**
+   * Returns the entity data of this cell. Positions in the returned buffer correspond to the
+   * offsets stored in the {@link #index}, its limit is the length of the data.
+   */
+  protected ByteBuffer getBuffer() {
+    if (buffer == null) {
+      if (isCompressed()) {
+        final byte[] uncompressed = new byte[uncompressedLength];
+        try {
+          compression.decompress(ByteBuffer.wrap(data), uncompressed);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        buffer = ByteBuffer.wrap(uncompressed);
+      } else {
+        // cell was created from (or deserialized into) a heap array
+        buffer = ByteBuffer.wrap(data);
+      }
+    }
+    return buffer;
+  }
+
+  /**
+   * Returns the shared dictionary of the member nodes and ways of this cell's entities.
+   *
+   * <p>Cells built with a dictionary (see {@link GridOSHWays#compact(long, int, long, long, long,
+   * long, java.util.List, boolean)}) store it in front of the first entity record, i.e. at the
+   * data range [0, index[0]). The dictionary is read once and shared by all entities which are
+   * decoded from this cell.</p>
+   *
+   * @return the dictionary, or null if the entity records of this cell embed their members
+   */
+  protected OSHEntityDictionary getDictionary() throws IOException {
+    if (dictionary == null && index.length > 0 && index[0] > 0) {
+      dictionary = OSHEntityDictionary.read(getBuffer(), 0, index[0], baseLongitude,
+          baseLatitude);
+    }
+    return dictionary;
+  }
+
+  /**
+   * Returns true if the {@link #data} array of this cell holds compressed data.
+   */
+  boolean isCompressed() {
+    return compression != null && compression != GridOSHEntityCompression.NONE;
+  }
+
+  GridOSHEntityCompression getCompression() {
+    return isCompressed() ? compression : GridOSHEntityCompression.NONE;
+  }
+
+  int getUncompressedLength() {
+    return uncompressedLength;
+  }
+
+  /**
+   * Marks the {@link #data} of this cell as compressed with the given codec.
+   */
+  void setCompression(GridOSHEntityCompression compression, int uncompressedLength) {
+    this.compression = compression;
+    this.uncompressedLength = uncompressedLength;
+  }
+
+  /**
+   * Cells backed by an off-heap buffer are copied onto the heap when they are serialized, as the
+   * buffer itself is not serializable.
+   */
+  protected Object writeReplace() {
+    if (data != null) {
+      return this;
+    }
+    return GridOSHEntityCodec.copyOnHeap(this);
+  }
+
   public long getId() {
     return id;
   }
@@ -45,9 +177,126 @@ public abstract class GridOSHEntity
   public int getLevel() {
     return level;
   }
+
+  /**
+   * Returns the summary of this cell's content.
+   *
+   * @return the summary, or null if none was stored with this cell (e.g. for cells created by an
+   *         older version of the etl)
+   */
+  public GridOSHEntitySummary getSummary() {
+    return summary;
+  }
+
+  public void setSummary(GridOSHEntitySummary summary) {
+    this.summary = summary;
+  }
+
+  /**
+   * Returns the block index of this cell's entities.
+   *
+   * @return the block index, or null if none was stored with this cell
+   */
+  public GridOSHEntityBlockIndex getBlockIndex() {
+    return blockIndex;
+  }
+
+  /**
+   * Sets the block index of this cell's entities, which has to be computed from the entities in
+   * the order they are stored in this cell.
+   */
+  public void setBlockIndex(GridOSHEntityBlockIndex blockIndex) {
+    if (blockIndex != null && blockIndex.getBlockCount()
+        != (index.length + blockIndex.getBlockSize() - 1) / blockIndex.getBlockSize()) {
+      throw new IllegalArgumentException("block index doesn't match the entities of this cell");
+    }
+    this.blockIndex = blockIndex;
+  }
   
   public abstract Iterable<? extends OSHEntity> getEntities();
 
+  /**
+   * Returns the entities of this cell which can pass the given header filter.
+   *
+   * <p>The filter is evaluated directly on the encoded entity headers, only entities which pass
+   * it are decoded. Note that the returned entities are not guaranteed to match the query the
+   * header filter was derived from, the complete filters still have to be applied to them.</p>
+   *
+   * @param filter the conditions to check on the entity headers
+   * @return the entities of this cell which pass the header filter
+   */
+  public Iterable<? extends OSHEntity> getEntities(OSHEntityHeaderFilter filter) {
+    if (filter.isEmpty()) {
+      return getEntities();
+    }
+    final GridOSHEntityBlockIndex blocks = blockIndex;
+    return () -> new Iterator<OSHEntity>() {
+      private final ByteBuffer data = getBuffer();
+      private final int dataLength = data.limit();
+      private int pos = 0;
+      private OSHEntity next = null;
+
+      @Override
+      public boolean hasNext() {
+        try {
+          while (next == null && pos < index.length) {
+            if (blocks != null && pos % blocks.getBlockSize() == 0
+                && !blocks.testBlock(pos / blocks.getBlockSize(), filter)) {
+              // skip the whole block without looking at its entities
+              pos = Math.min(index.length, pos + blocks.getBlockSize());
+              continue;
+            }
+            int offset = index[pos];
+            int length = ((pos < index.length - 1) ? index[pos + 1] : dataLength) - offset;
+            pos++;
+            if (matchesHeader(data, offset, length, filter)) {
+              next = instance(data, offset, length);
+            }
+          }
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+        return next != null;
+      }
+
+      @Override
+      public OSHEntity next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        OSHEntity result = next;
+        next = null;
+        return result;
+      }
+    };
+  }
+
+  /**
+   * Returns the entities of this cell whose bounding boxes intersect the given one.
+   *
+   * <p>If the cell has a {@link GridOSHEntityBlockIndex}, blocks of entities which don't intersect
+   * the bounding box are skipped without being decoded. Otherwise the bounding box is only checked
+   * on the encoded header of each entity.</p>
+   *
+   * @param boundingBox the area of interest
+   * @return the entities of this cell which intersect the bounding box
+   */
+  public Iterable<? extends OSHEntity> getEntities(OSHDBBoundingBox boundingBox) {
+    return getEntities(new OSHEntityHeaderFilter(new int[0][], boundingBox));
+  }
+
+  /**
+   * Decodes the entity record at the given offset of the cell's data.
+   */
+  protected abstract OSHEntity instance(ByteBuffer data, int offset, int length)
+      throws IOException;
+
+  /**
+   * Evaluates the header filter on the entity record at the given offset of the cell's data.
+   */
+  protected abstract boolean matchesHeader(ByteBuffer data, int offset, int length,
+      OSHEntityHeaderFilter filter) throws IOException;
+
   @Override
   public String toString() {
     if (id >= 0) {
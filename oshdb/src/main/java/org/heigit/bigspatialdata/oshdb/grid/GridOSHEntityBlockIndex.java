@@ -0,0 +1,138 @@
+package org.heigit.bigspatialdata.oshdb.grid;
+
+import java.io.Serializable;
+import java.util.Comparator;
+import java.util.List;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntityHeaderFilter;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+
+/**
+ * Directory of the bounding boxes of consecutive blocks of entities of a grid cell, which allows
+ * to skip all entities of blocks which don't intersect an area of interest without decoding them.
+ *
+ * <p>This is mostly useful for low zoom cells, which hold large entities spread over a big area.
+ * The entities of such cells should be sorted along a space filling curve (see
+ * {@link #sortByLocation(List)}), so that the blocks cover small areas.</p>
+ */
+public class GridOSHEntityBlockIndex implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Default number of entities per block.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 32;
+
+  private final int blockSize;
+  // minLon, minLat, maxLon, maxLat of each block
+  private final long[] bounds;
+
+  GridOSHEntityBlockIndex(int blockSize, long[] bounds) {
+    this.blockSize = blockSize;
+    this.bounds = bounds;
+  }
+
+  /**
+   * Computes the block index of the given entities, in the order they are stored in the cell.
+   */
+  public static GridOSHEntityBlockIndex of(List<? extends OSHEntity> entities) {
+    return of(entities, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Computes the block index of the given entities, in the order they are stored in the cell.
+   *
+   * @param entities the entities of a grid cell
+   * @param blockSize the number of entities per block
+   * @return the block index of these entities
+   */
+  public static GridOSHEntityBlockIndex of(List<? extends OSHEntity> entities, int blockSize) {
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("block size has to be positive, got " + blockSize);
+    }
+    final int blocks = (entities.size() + blockSize - 1) / blockSize;
+    final long[] bounds = new long[blocks * 4];
+    for (int block = 0; block < blocks; block++) {
+      long minLon = Long.MAX_VALUE;
+      long minLat = Long.MAX_VALUE;
+      long maxLon = Long.MIN_VALUE;
+      long maxLat = Long.MIN_VALUE;
+      final int end = Math.min(entities.size(), (block + 1) * blockSize);
+      for (int i = block * blockSize; i < end; i++) {
+        final OSHDBBoundingBox bbox = entities.get(i).getBoundingBox();
+        if (bbox == null) {
+          // unknown extent: the block can never be skipped
+          minLon = Long.MIN_VALUE;
+          minLat = Long.MIN_VALUE;
+          maxLon = Long.MAX_VALUE;
+          maxLat = Long.MAX_VALUE;
+          break;
+        }
+        minLon = Math.min(minLon, bbox.getMinLonLong());
+        minLat = Math.min(minLat, bbox.getMinLatLong());
+        maxLon = Math.max(maxLon, bbox.getMaxLonLong());
+        maxLat = Math.max(maxLat, bbox.getMaxLatLong());
+      }
+      bounds[block * 4] = minLon;
+      bounds[block * 4 + 1] = minLat;
+      bounds[block * 4 + 2] = maxLon;
+      bounds[block * 4 + 3] = maxLat;
+    }
+    return new GridOSHEntityBlockIndex(blockSize, bounds);
+  }
+
+  /**
+   * Sorts the given entities along a space filling curve (z-order) through the centers of their
+   * bounding boxes, so that consecutive entities are close to each other. Entities without a
+   * bounding box are sorted to the end, ties are broken by id.
+   */
+  public static <T extends OSHEntity> void sortByLocation(List<T> entities) {
+    entities.sort(Comparator.<T>comparingLong(osh -> curvePosition(osh.getBoundingBox()))
+        .thenComparingLong(OSHEntity::getId));
+  }
+
+  private static long curvePosition(OSHDBBoundingBox bbox) {
+    if (bbox == null) {
+      return Long.MAX_VALUE;
+    }
+    final long lon = bbox.getMinLonLong() / 2 + bbox.getMaxLonLong() / 2;
+    final long lat = bbox.getMinLatLong() / 2 + bbox.getMaxLatLong() / 2;
+    // 31 bit coordinates on [-180, 180] and [-90, 90] degrees, interleaved into a 62 bit key
+    final long x = Math.max(0, Math.min(Integer.MAX_VALUE,
+        (lon + 1800000000L) * Integer.MAX_VALUE / 3600000000L));
+    final long y = Math.max(0, Math.min(Integer.MAX_VALUE,
+        (lat + 900000000L) * Integer.MAX_VALUE / 1800000000L));
+    return interleave(x) | (interleave(y) << 1);
+  }
+
+  // spreads the lower 31 bits of the value to the even bits of the result
+  private static long interleave(long value) {
+    long result = value & 0x7FFFFFFFL;
+    result = (result | (result << 16)) & 0x0000FFFF0000FFFFL;
+    result = (result | (result << 8)) & 0x00FF00FF00FF00FFL;
+    result = (result | (result << 4)) & 0x0F0F0F0F0F0F0F0FL;
+    result = (result | (result << 2)) & 0x3333333333333333L;
+    result = (result | (result << 1)) & 0x5555555555555555L;
+    return result;
+  }
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  public int getBlockCount() {
+    return bounds.length / 4;
+  }
+
+  long[] getBounds() {
+    return bounds;
+  }
+
+  /**
+   * Checks if any entity of the given block can pass the bounding box condition of the filter.
+   */
+  public boolean testBlock(int block, OSHEntityHeaderFilter filter) {
+    final int i = block * 4;
+    return filter.testBoundingBox(bounds[i], bounds[i + 1], bounds[i + 2], bounds[i + 3]);
+  }
+}
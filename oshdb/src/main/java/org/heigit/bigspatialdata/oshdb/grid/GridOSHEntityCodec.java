@@ -0,0 +1,550 @@
+package org.heigit.bigspatialdata.oshdb.grid;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+
+/**
+ * Compact binary (de)serialization of grid cells.
+ *
+ * <p>Replaces the generic java serialization (ObjectOutputStream/ObjectInputStream) of
+ * {@link GridOSHEntity} objects, which stores class descriptors with every cell and needs
+ * reflection to restore them. A serialized cell has the following layout (big endian):</p>
+ * <pre>
+ *   int   magic ("OSHC")
+ *   byte  format version
+ *   byte  osm type of the contained entities
+ *   short flags (bit 0: summary present, bit 1: entity data compressed, bit 2: block index
+ *         present, all other bits are reserved and have to be 0)
+ *   long  id
+ *   int   level
+ *   long  baseId
+ *   long  baseTimestamp
+ *   long  baseLongitude
+ *   long  baseLatitude
+ *   int   number of entities (n)
+ *   int   length of the (possibly compressed) entity data (m)
+ *   [summary, only if flagged:
+ *     long  min timestamp
+ *     long  max timestamp
+ *     int   number of entities
+ *     long  number of versions
+ *     short number of words of the tag key bloom filter (w, unsigned)
+ *     long[w] tag key bloom filter]
+ *   [compression, only if flagged:
+ *     byte  compression codec, see {@link GridOSHEntityCompression}
+ *     int   length of the uncompressed entity data]
+ *   [block index, only if flagged:
+ *     int   number of entities per block
+ *     int   number of blocks (b)
+ *     long[4b] bounding boxes of the blocks (min lon, min lat, max lon, max lat)]
+ *   int[n]  offsets of the entities in the data block
+ *   byte[m] entity data (starting with the shared member dictionary of the cell, see
+ *           {@link org.heigit.bigspatialdata.oshdb.impl.osh.OSHEntityDictionary}, if the
+ *           first offset is greater than 0)
+ * </pre>
+ *
+ * <p>Cells which were written with the legacy java serialization are detected by their stream
+ * header and are still read transparently.</p>
+ *
+ * <p>{@link #fromBuffer(ByteBuffer)} decodes a cell without copying its entity data, which allows
+ * to read cells directly from direct or memory mapped buffers.</p>
+ */
+public final class GridOSHEntityCodec {
+
+  public static final int MAGIC = 0x4F534843;
+  public static final byte VERSION = 1;
+
+  /**
+   * Size of the fixed part of a serialized cell in bytes.
+   */
+  public static final int HEADER_SIZE = 4 + 1 + 1 + 2 + 8 + 4 + 8 * 4 + 4 + 4;
+
+  private static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+
+  private static final int FLAG_SUMMARY = 1;
+  private static final int FLAG_COMPRESSED = 1 << 1;
+  private static final int FLAG_BLOCK_INDEX = 1 << 2;
+  private static final int KNOWN_FLAGS = FLAG_SUMMARY | FLAG_COMPRESSED | FLAG_BLOCK_INDEX;
+
+  private GridOSHEntityCodec() {}
+
+  /**
+   * Writes the given grid cell to the output stream.
+   *
+   * <p>The entity data is written as it is stored in the cell, i.e. compressed cells stay
+   * compressed.</p>
+   *
+   * @param grid the grid cell to serialize
+   * @param out the stream to write to
+   * @throws IOException if writing to the stream fails
+   */
+  public static void write(GridOSHEntity grid, OutputStream out) throws IOException {
+    write(grid, out, grid.getCompression());
+  }
+
+  /**
+   * Writes the given grid cell to the output stream, compressing its entity data with the given
+   * codec.
+   *
+   * @param grid the grid cell to serialize
+   * @param out the stream to write to
+   * @param compression the compression codec to use for the entity data
+   * @throws IOException if writing to the stream fails
+   */
+  public static void write(GridOSHEntity grid, OutputStream out,
+      GridOSHEntityCompression compression) throws IOException {
+    final byte[] compressed;
+    final int uncompressedLength;
+    if (compression == GridOSHEntityCompression.NONE) {
+      compressed = null;
+      uncompressedLength = grid.getBuffer().limit();
+    } else if (compression == grid.getCompression()) {
+      compressed = grid.data;
+      uncompressedLength = grid.getUncompressedLength();
+    } else {
+      final byte[] uncompressed = uncompressedData(grid);
+      compressed = compression.compress(uncompressed, 0, uncompressed.length);
+      uncompressedLength = uncompressed.length;
+    }
+
+    final DataOutputStream dos = new DataOutputStream(out);
+    dos.writeInt(MAGIC);
+    dos.writeByte(VERSION);
+    dos.writeByte(typeOf(grid).intValue());
+    final GridOSHEntitySummary summary = grid.getSummary();
+    final GridOSHEntityBlockIndex blockIndex = grid.getBlockIndex();
+    dos.writeShort((summary != null ? FLAG_SUMMARY : 0)
+        | (compressed != null ? FLAG_COMPRESSED : 0)
+        | (blockIndex != null ? FLAG_BLOCK_INDEX : 0));
+    dos.writeLong(grid.id);
+    dos.writeInt(grid.level);
+    dos.writeLong(grid.baseId);
+    dos.writeLong(grid.baseTimestamp);
+    dos.writeLong(grid.baseLongitude);
+    dos.writeLong(grid.baseLatitude);
+    dos.writeInt(grid.index.length);
+    dos.writeInt(compressed != null ? compressed.length : uncompressedLength);
+    if (summary != null) {
+      if (summary.getTagKeys().length > 0xFFFF) {
+        throw new IllegalArgumentException(
+            "tag key filter of grid cell too large: " + summary.getTagKeys().length + " words");
+      }
+      dos.writeLong(summary.getMinTimestamp());
+      dos.writeLong(summary.getMaxTimestamp());
+      dos.writeInt(summary.getEntityCount());
+      dos.writeLong(summary.getVersionCount());
+      dos.writeShort(summary.getTagKeys().length);
+      for (long word : summary.getTagKeys()) {
+        dos.writeLong(word);
+      }
+    }
+    if (compressed != null) {
+      dos.writeByte(compression.getId());
+      dos.writeInt(uncompressedLength);
+    }
+    if (blockIndex != null) {
+      dos.writeInt(blockIndex.getBlockSize());
+      dos.writeInt(blockIndex.getBlockCount());
+      for (long bound : blockIndex.getBounds()) {
+        dos.writeLong(bound);
+      }
+    }
+    for (int offset : grid.index) {
+      dos.writeInt(offset);
+    }
+    if (compressed != null) {
+      dos.write(compressed);
+    } else if (grid.data != null && !grid.isCompressed()) {
+      dos.write(grid.data);
+    } else {
+      final ByteBuffer data = grid.getBuffer().duplicate();
+      data.position(0);
+      final byte[] chunk = new byte[Math.min(data.remaining(), 64 * 1024)];
+      while (data.hasRemaining()) {
+        final int length = Math.min(data.remaining(), chunk.length);
+        data.get(chunk, 0, length);
+        dos.write(chunk, 0, length);
+      }
+    }
+    dos.flush();
+  }
+
+  /**
+   * Serializes the given grid cell into a byte array.
+   *
+   * @param grid the grid cell to serialize
+   * @return the binary representation of the grid cell
+   */
+  public static byte[] toBytes(GridOSHEntity grid) {
+    return toBytes(grid, grid.getCompression());
+  }
+
+  /**
+   * Serializes the given grid cell into a byte array, compressing its entity data with the given
+   * codec.
+   *
+   * @param grid the grid cell to serialize
+   * @param compression the compression codec to use for the entity data
+   * @return the binary representation of the grid cell
+   */
+  public static byte[] toBytes(GridOSHEntity grid, GridOSHEntityCompression compression) {
+    final int dataLength = grid.isCompressed() ? grid.data.length : grid.getBuffer().limit();
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(
+        HEADER_SIZE + sizeOf(grid.getSummary()) + 1 + 4 + sizeOf(grid.getBlockIndex())
+            + grid.index.length * 4 + dataLength);
+    try {
+      write(grid, out, compression);
+    } catch (IOException e) {
+      // cannot happen when writing into a byte array
+      throw new RuntimeException(e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Returns a copy of the given grid cell whose entity data is compressed with the given codec.
+   *
+   * <p>Compressed cells take less memory (e.g. in an ignite cache) and are decompressed on demand
+   * when their entities are accessed.</p>
+   *
+   * @param grid the grid cell to compress
+   * @param compression the compression codec to use
+   * @return the compressed grid cell
+   */
+  public static GridOSHEntity compress(GridOSHEntity grid, GridOSHEntityCompression compression) {
+    try {
+      return read(new ByteArrayInputStream(toBytes(grid, compression)));
+    } catch (IOException e) {
+      // cannot happen when reading from a byte array
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static byte[] uncompressedData(GridOSHEntity grid) {
+    if (grid.data != null && !grid.isCompressed()) {
+      return grid.data;
+    }
+    final ByteBuffer data = grid.getBuffer().duplicate();
+    data.position(0);
+    final byte[] result = new byte[data.remaining()];
+    data.get(result);
+    return result;
+  }
+
+  // cells with unknown flags use a layout this version of the codec cannot decode
+  private static void checkFlags(short flags) throws IOException {
+    if ((flags & ~KNOWN_FLAGS) != 0) {
+      throw new IOException("unsupported grid cell flags " + Integer.toHexString(flags & 0xFFFF));
+    }
+  }
+
+  private static int sizeOf(GridOSHEntitySummary summary) {
+    if (summary == null) {
+      return 0;
+    }
+    return 8 + 8 + 4 + 8 + 2 + summary.getTagKeys().length * 8;
+  }
+
+  private static int sizeOf(GridOSHEntityBlockIndex blockIndex) {
+    if (blockIndex == null) {
+      return 0;
+    }
+    return 4 + 4 + blockIndex.getBounds().length * 8;
+  }
+
+  /**
+   * Restores a grid cell from its binary representation, as written by {@link #toBytes} or by
+   * the legacy java serialization.
+   *
+   * @param bytes the serialized grid cell
+   * @return the restored grid cell
+   * @throws IOException if the data is not a valid serialized grid cell
+   */
+  public static GridOSHEntity fromBytes(byte[] bytes) throws IOException {
+    return fromBuffer(ByteBuffer.wrap(bytes));
+  }
+
+  /**
+   * Restores a grid cell from the remaining bytes of the given buffer.
+   *
+   * <p>The entity data of the returned cell is a view of the buffer's content, it is not copied.
+   * The buffer can thus be a direct or memory mapped buffer, in which case the cell's data stays
+   * off the java heap. Compressed cells are decompressed right away onto the heap. The position
+   * and limit of the buffer are not modified.</p>
+   *
+   * @param buffer the serialized grid cell
+   * @return the restored grid cell
+   * @throws IOException if the data is not a valid serialized grid cell
+   */
+  public static GridOSHEntity fromBuffer(ByteBuffer buffer) throws IOException {
+    final ByteBuffer in = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+    if (in.remaining() >= 2 && (in.getShort(0) & 0xFFFF) == JAVA_SERIALIZATION_MAGIC) {
+      final byte[] bytes = new byte[in.remaining()];
+      in.get(bytes);
+      return read(new ByteArrayInputStream(bytes));
+    }
+    if (in.remaining() < HEADER_SIZE) {
+      throw new IOException("not a serialized grid cell, too short");
+    }
+    final int magic = in.getInt();
+    if (magic != MAGIC) {
+      throw new IOException(
+          "not a serialized grid cell, unknown magic " + Integer.toHexString(magic));
+    }
+    final byte version = in.get();
+    if (version != VERSION) {
+      throw new IOException("unsupported grid cell format version " + version);
+    }
+    final OSMType type = OSMType.fromInt(in.get());
+    final short flags = in.getShort();
+    checkFlags(flags);
+    final long id = in.getLong();
+    final int level = in.getInt();
+    final long baseId = in.getLong();
+    final long baseTimestamp = in.getLong();
+    final long baseLongitude = in.getLong();
+    final long baseLatitude = in.getLong();
+    final int entities = in.getInt();
+    final int dataLength = in.getInt();
+    if (entities < 0 || dataLength < 0) {
+      throw new IOException("invalid size of grid cell");
+    }
+    final int[] index = new int[entities];
+    GridOSHEntitySummary summary = null;
+    if ((flags & FLAG_SUMMARY) != 0) {
+      if (in.remaining() < 8 + 8 + 4 + 8 + 2) {
+        throw new IOException("truncated grid cell");
+      }
+      final long minTimestamp = in.getLong();
+      final long maxTimestamp = in.getLong();
+      final int entityCount = in.getInt();
+      final long versionCount = in.getLong();
+      final long[] tagKeys = new long[in.getShort() & 0xFFFF];
+      if (in.remaining() < tagKeys.length * 8L) {
+        throw new IOException("truncated grid cell");
+      }
+      for (int i = 0; i < tagKeys.length; i++) {
+        tagKeys[i] = in.getLong();
+      }
+      summary = new GridOSHEntitySummary(minTimestamp, maxTimestamp, entityCount, versionCount,
+          tagKeys);
+    }
+    GridOSHEntityCompression compression = GridOSHEntityCompression.NONE;
+    int uncompressedLength = dataLength;
+    if ((flags & FLAG_COMPRESSED) != 0) {
+      if (in.remaining() < 1 + 4) {
+        throw new IOException("truncated grid cell");
+      }
+      compression = GridOSHEntityCompression.fromId(in.get());
+      uncompressedLength = in.getInt();
+      if (uncompressedLength < 0) {
+        throw new IOException("invalid uncompressed length of grid cell " + uncompressedLength);
+      }
+    }
+    GridOSHEntityBlockIndex blockIndex = null;
+    if ((flags & FLAG_BLOCK_INDEX) != 0) {
+      if (in.remaining() < 4 + 4) {
+        throw new IOException("truncated grid cell");
+      }
+      final int blockSize = in.getInt();
+      final int blocks = in.getInt();
+      if (blockSize <= 0 || blocks < 0 || in.remaining() < blocks * 4L * 8) {
+        throw new IOException("invalid block index of grid cell");
+      }
+      final long[] bounds = new long[blocks * 4];
+      for (int i = 0; i < bounds.length; i++) {
+        bounds[i] = in.getLong();
+      }
+      blockIndex = new GridOSHEntityBlockIndex(blockSize, bounds);
+    }
+    if (in.remaining() < index.length * 4L + dataLength) {
+      throw new IOException("truncated grid cell");
+    }
+    for (int i = 0; i < index.length; i++) {
+      index[i] = in.getInt();
+    }
+    in.limit(in.position() + dataLength);
+    final ByteBuffer data;
+    if (compression != GridOSHEntityCompression.NONE) {
+      final byte[] uncompressed = new byte[uncompressedLength];
+      compression.decompress(in, uncompressed);
+      data = ByteBuffer.wrap(uncompressed);
+    } else {
+      data = in.slice();
+    }
+
+    final GridOSHEntity grid;
+    switch (type) {
+      case NODE:
+        grid = new GridOSHNodes(id, level, baseId, baseTimestamp, baseLongitude, baseLatitude,
+            index, data);
+        break;
+      case WAY:
+        grid = new GridOSHWays(id, level, baseId, baseTimestamp, baseLongitude, baseLatitude,
+            index, data);
+        break;
+      case RELATION:
+        grid = new GridOSHRelations(id, level, baseId, baseTimestamp, baseLongitude, baseLatitude,
+            index, data);
+        break;
+      default:
+        throw new IOException("unknown osm type of grid cell " + type);
+    }
+    grid.setSummary(summary);
+    try {
+      grid.setBlockIndex(blockIndex);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("invalid block index of grid cell", e);
+    }
+    return grid;
+  }
+
+  /**
+   * Reads a grid cell from the input stream, as written by {@link #write} or by the legacy java
+   * serialization.
+   *
+   * @param in the stream to read from
+   * @return the restored grid cell
+   * @throws IOException if the data is not a valid serialized grid cell
+   */
+  public static GridOSHEntity read(InputStream in) throws IOException {
+    final DataInputStream dis = new DataInputStream(in);
+    final int head = dis.readUnsignedShort();
+    if (head == JAVA_SERIALIZATION_MAGIC) {
+      return readLegacy(dis);
+    }
+    final int magic = (head << 16) | dis.readUnsignedShort();
+    if (magic != MAGIC) {
+      throw new IOException(
+          "not a serialized grid cell, unknown magic " + Integer.toHexString(magic));
+    }
+    final byte version = dis.readByte();
+    if (version != VERSION) {
+      throw new IOException("unsupported grid cell format version " + version);
+    }
+    final OSMType type = OSMType.fromInt(dis.readByte());
+    final short flags = dis.readShort();
+    checkFlags(flags);
+    final long id = dis.readLong();
+    final int level = dis.readInt();
+    final long baseId = dis.readLong();
+    final long baseTimestamp = dis.readLong();
+    final long baseLongitude = dis.readLong();
+    final long baseLatitude = dis.readLong();
+    final int[] index = new int[dis.readInt()];
+    final byte[] data = new byte[dis.readInt()];
+    GridOSHEntitySummary summary = null;
+    if ((flags & FLAG_SUMMARY) != 0) {
+      final long minTimestamp = dis.readLong();
+      final long maxTimestamp = dis.readLong();
+      final int entityCount = dis.readInt();
+      final long versionCount = dis.readLong();
+      final long[] tagKeys = new long[dis.readUnsignedShort()];
+      for (int i = 0; i < tagKeys.length; i++) {
+        tagKeys[i] = dis.readLong();
+      }
+      summary = new GridOSHEntitySummary(minTimestamp, maxTimestamp, entityCount, versionCount,
+          tagKeys);
+    }
+    GridOSHEntityCompression compression = GridOSHEntityCompression.NONE;
+    int uncompressedLength = data.length;
+    if ((flags & FLAG_COMPRESSED) != 0) {
+      compression = GridOSHEntityCompression.fromId(dis.readByte());
+      uncompressedLength = dis.readInt();
+      if (uncompressedLength < 0) {
+        throw new IOException("invalid uncompressed length of grid cell " + uncompressedLength);
+      }
+    }
+    GridOSHEntityBlockIndex blockIndex = null;
+    if ((flags & FLAG_BLOCK_INDEX) != 0) {
+      final int blockSize = dis.readInt();
+      final int blocks = dis.readInt();
+      if (blockSize <= 0 || blocks < 0) {
+        throw new IOException("invalid block index of grid cell");
+      }
+      final long[] bounds = new long[blocks * 4];
+      for (int i = 0; i < bounds.length; i++) {
+        bounds[i] = dis.readLong();
+      }
+      blockIndex = new GridOSHEntityBlockIndex(blockSize, bounds);
+    }
+    for (int i = 0; i < index.length; i++) {
+      index[i] = dis.readInt();
+    }
+    dis.readFully(data);
+
+    final GridOSHEntity grid;
+    switch (type) {
+      case NODE:
+        grid = new GridOSHNodes(id, level, baseId, baseTimestamp, baseLongitude, baseLatitude,
+            index, data);
+        break;
+      case WAY:
+        grid = new GridOSHWays(id, level, baseId, baseTimestamp, baseLongitude, baseLatitude,
+            index, data);
+        break;
+      case RELATION:
+        grid = new GridOSHRelations(id, level, baseId, baseTimestamp, baseLongitude, baseLatitude,
+            index, data);
+        break;
+      default:
+        throw new IOException("unknown osm type of grid cell " + type);
+    }
+    grid.setSummary(summary);
+    try {
+      grid.setBlockIndex(blockIndex);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("invalid block index of grid cell", e);
+    }
+    if (compression != GridOSHEntityCompression.NONE) {
+      // the cell is kept compressed until its entities are accessed
+      grid.setCompression(compression, uncompressedLength);
+    }
+    return grid;
+  }
+
+  private static GridOSHEntity readLegacy(InputStream in) throws IOException {
+    // the first two bytes of the stream header were already consumed
+    final InputStream legacy = new SequenceInputStream(
+        new ByteArrayInputStream(new byte[] {(byte) 0xAC, (byte) 0xED}), in);
+    try (ObjectInputStream ois = new ObjectInputStream(legacy)) {
+      return (GridOSHEntity) ois.readObject();
+    } catch (ClassNotFoundException | ClassCastException e) {
+      throw new IOException("unable to read legacy grid cell", e);
+    }
+  }
+
+  /**
+   * Returns a copy of the given grid cell whose entity data is stored in a heap byte array (in
+   * the same compression as the given cell).
+   */
+  static GridOSHEntity copyOnHeap(GridOSHEntity grid) {
+    try {
+      return read(new ByteArrayInputStream(toBytes(grid)));
+    } catch (IOException e) {
+      // cannot happen when reading from a byte array
+      throw new RuntimeException(e);
+    }
+  }
+
+  static OSMType typeOf(GridOSHEntity grid) {
+    if (grid instanceof GridOSHNodes) {
+      return OSMType.NODE;
+    } else if (grid instanceof GridOSHWays) {
+      return OSMType.WAY;
+    } else if (grid instanceof GridOSHRelations) {
+      return OSMType.RELATION;
+    }
+    throw new IllegalArgumentException("unknown grid cell type " + grid.getClass().getName());
+  }
+}
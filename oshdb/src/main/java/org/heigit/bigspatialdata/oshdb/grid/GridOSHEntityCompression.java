@@ -0,0 +1,139 @@
+package org.heigit.bigspatialdata.oshdb.grid;
+
+import com.github.luben.zstd.Zstd;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * Block compression codecs for the entity data of grid cells.
+ *
+ * <p>The codec used for a cell is recorded in its header (see {@link GridOSHEntityCodec}), cells
+ * are decompressed transparently when their entities are accessed. LZ4 is very fast to decompress,
+ * Zstd achieves better compression ratios at a somewhat higher cpu cost.</p>
+ */
+public enum GridOSHEntityCompression {
+  NONE(0) {
+    @Override
+    byte[] compress(byte[] src, int offset, int length) {
+      return Arrays.copyOfRange(src, offset, offset + length);
+    }
+
+    @Override
+    void decompress(ByteBuffer src, byte[] dest) {
+      src.duplicate().get(dest);
+    }
+  },
+
+  LZ4(1) {
+    @Override
+    byte[] compress(byte[] src, int offset, int length) {
+      final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+      final byte[] buffer = scratch(compressor.maxCompressedLength(length));
+      final int compressedLength =
+          compressor.compress(src, offset, length, buffer, 0, buffer.length);
+      return Arrays.copyOf(buffer, compressedLength);
+    }
+
+    @Override
+    void decompress(ByteBuffer src, byte[] dest) throws IOException {
+      try {
+        LZ4Factory.fastestInstance().fastDecompressor()
+            .decompress(src, src.position(), ByteBuffer.wrap(dest), 0, dest.length);
+      } catch (LZ4Exception e) {
+        throw new IOException("corrupt lz4 compressed grid cell", e);
+      }
+    }
+  },
+
+  ZSTD(2) {
+    @Override
+    byte[] compress(byte[] src, int offset, int length) {
+      final byte[] buffer = scratch((int) Zstd.compressBound(length));
+      final long compressedLength = Zstd.compressByteArray(
+          buffer, 0, buffer.length, src, offset, length, ZSTD_LEVEL);
+      if (Zstd.isError(compressedLength)) {
+        throw new RuntimeException(Zstd.getErrorName(compressedLength));
+      }
+      return Arrays.copyOf(buffer, (int) compressedLength);
+    }
+
+    @Override
+    void decompress(ByteBuffer src, byte[] dest) throws IOException {
+      final byte[] input;
+      final int inputOffset;
+      if (src.hasArray()) {
+        input = src.array();
+        inputOffset = src.arrayOffset() + src.position();
+      } else {
+        // direct or memory mapped buffers are staged in a per thread buffer
+        input = scratch(src.remaining());
+        inputOffset = 0;
+        src.duplicate().get(input, 0, src.remaining());
+      }
+      final long result = Zstd.decompressByteArray(
+          dest, 0, dest.length, input, inputOffset, src.remaining());
+      if (Zstd.isError(result) || result != dest.length) {
+        throw new IOException("corrupt zstd compressed grid cell");
+      }
+    }
+  };
+
+  private static final int ZSTD_LEVEL = 3;
+
+  private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[0]);
+
+  private final byte id;
+
+  GridOSHEntityCompression(int id) {
+    this.id = (byte) id;
+  }
+
+  /**
+   * Returns the identifier of this codec as stored in the header of compressed cells.
+   */
+  public byte getId() {
+    return id;
+  }
+
+  /**
+   * Returns the codec with the given identifier.
+   *
+   * @throws IOException if there is no such codec
+   */
+  public static GridOSHEntityCompression fromId(byte id) throws IOException {
+    for (GridOSHEntityCompression compression : values()) {
+      if (compression.id == id) {
+        return compression;
+      }
+    }
+    throw new IOException("unknown grid cell compression " + id);
+  }
+
+  /**
+   * Compresses the given range of the source array.
+   */
+  abstract byte[] compress(byte[] src, int offset, int length);
+
+  /**
+   * Decompresses the remaining bytes of the source buffer into the destination array, which has
+   * the exact length of the uncompressed data. The position of the source buffer is not modified.
+   */
+  abstract void decompress(ByteBuffer src, byte[] dest) throws IOException;
+
+  /**
+   * Returns a temporary buffer of at least the given size, which is reused by subsequent
+   * (de)compressions in the same thread.
+   */
+  private static byte[] scratch(int size) {
+    byte[] buffer = SCRATCH.get();
+    if (buffer.length < size) {
+      buffer = new byte[Math.max(size, buffer.length * 2)];
+      SCRATCH.set(buffer);
+    }
+    return buffer;
+  }
+}
@@ -0,0 +1,408 @@
+package org.heigit.bigspatialdata.oshdb.grid;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+
+/**
+ * An immutable file of grid cells, which are read through memory mapped buffers.
+ *
+ * <p>The cells are stored (encoded by {@link GridOSHEntityCodec}) sorted by osm type, zoom level
+ * and cell id. For each osm type and zoom level, a directory holds the sorted cell ids together
+ * with the positions and lengths of the cells in the file. A range of cell ids on one level thus
+ * always corresponds to a contiguous range of bytes in the file, which is mapped into memory as a
+ * whole when the cells are requested. The cells' data is not copied onto the java heap, see
+ * {@link GridOSHEntityCodec#fromBuffer(java.nio.ByteBuffer)}.</p>
+ *
+ * <p>The partitions of a cell (see {@link GridOSHEntityPartitioner}) are stored as consecutive
+ * cells with the same id.</p>
+ *
+ * <p>File layout (big endian):</p>
+ * <pre>
+ *   long  magic ("OSHDBMAP")
+ *   int   format version
+ *   int   reserved (0)
+ *   long  position of the directory
+ *   long  length of the directory
+ *   ...   cells
+ *   directory:
+ *     int  number of metadata entries, followed by the (utf) key/value pairs
+ *     int  number of sections, each consisting of:
+ *       byte osm type, int zoom level, int number of cells (n),
+ *       long[n] cell ids, long[n] cell positions, int[n] cell lengths
+ * </pre>
+ *
+ * <p>Instances are thread safe.</p>
+ */
+public class GridOSHEntityFile implements Closeable {
+
+  public static final long MAGIC = 0x4F534844424D4150L;
+  public static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 8 + 4 + 4 + 8 + 8;
+
+  private final FileChannel channel;
+  private final Map<String, String> metadata;
+  private final Map<OSMType, SortedMap<Integer, Section>> sections;
+
+  private static class Section {
+    private final long[] ids;
+    private final long[] positions;
+    private final int[] lengths;
+
+    Section(long[] ids, long[] positions, int[] lengths) {
+      this.ids = ids;
+      this.positions = positions;
+      this.lengths = lengths;
+    }
+  }
+
+  private GridOSHEntityFile(FileChannel channel, Map<String, String> metadata,
+      Map<OSMType, SortedMap<Integer, Section>> sections) {
+    this.channel = channel;
+    this.metadata = metadata;
+    this.sections = sections;
+  }
+
+  /**
+   * Opens a grid cell file for reading.
+   *
+   * @param path the file to open
+   * @return the opened file, which has to be closed after usage
+   * @throws IOException if the file cannot be read or is not a grid cell file
+   */
+  public static GridOSHEntityFile open(Path path) throws IOException {
+    final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining()) {
+        if (channel.read(header, header.position()) < 0) {
+          throw new IOException("not a grid cell file: " + path);
+        }
+      }
+      header.flip();
+      if (header.getLong() != MAGIC) {
+        throw new IOException("not a grid cell file: " + path);
+      }
+      final int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException("unsupported grid cell file version " + version);
+      }
+      header.getInt(); // reserved
+      final long directoryPosition = header.getLong();
+      final long directoryLength = header.getLong();
+
+      if (directoryPosition + directoryLength > channel.size()) {
+        throw new IOException("truncated grid cell file: " + path);
+      }
+      // not closed, as this would close the channel
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(
+          Channels.newInputStream(channel.position(directoryPosition)), 1024 * 1024));
+      final Map<String, String> metadata = new LinkedHashMap<>();
+      for (int i = in.readInt(); i > 0; i--) {
+        metadata.put(in.readUTF(), in.readUTF());
+      }
+      final Map<OSMType, SortedMap<Integer, Section>> sections = new EnumMap<>(OSMType.class);
+      for (int i = in.readInt(); i > 0; i--) {
+        final OSMType type = OSMType.fromInt(in.readByte());
+        final int level = in.readInt();
+        final int size = in.readInt();
+        final long[] ids = new long[size];
+        final long[] positions = new long[size];
+        final int[] lengths = new int[size];
+        for (int j = 0; j < size; j++) {
+          ids[j] = in.readLong();
+        }
+        for (int j = 0; j < size; j++) {
+          positions[j] = in.readLong();
+        }
+        for (int j = 0; j < size; j++) {
+          lengths[j] = in.readInt();
+        }
+        sections.computeIfAbsent(type, ignored -> new TreeMap<>())
+            .put(level, new Section(ids, positions, lengths));
+      }
+      return new GridOSHEntityFile(channel, Collections.unmodifiableMap(metadata), sections);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Creates a writer for a new grid cell file.
+   *
+   * @param path the file to write, an existing file will be overwritten
+   * @return the writer, the file is completed when the writer is closed
+   * @throws IOException if the file cannot be created
+   */
+  public static Writer writer(Path path) throws IOException {
+    return new Writer(path);
+  }
+
+  /**
+   * Returns the metadata value stored under the given key, or null if there is none.
+   */
+  public String metadata(String key) {
+    return metadata.get(key);
+  }
+
+  /**
+   * Returns the zoom levels for which cells of the given type are stored in the file.
+   */
+  public Iterable<Integer> levels(OSMType type) {
+    return sections.getOrDefault(type, Collections.emptySortedMap()).keySet();
+  }
+
+  /**
+   * Returns the cells of the given type and zoom level whose ids are in the given (inclusive)
+   * range, in the order of their ids.
+   *
+   * <p>The byte range holding the requested cells is mapped into memory lazily, the cells
+   * themselves are decoded while iterating.</p>
+   */
+  public Iterable<GridOSHEntity> cells(OSMType type, int level, long fromId, long toId) {
+    final Section section = sections.getOrDefault(type, Collections.emptySortedMap()).get(level);
+    if (section == null) {
+      return Collections.emptyList();
+    }
+    final int from = lowerBound(section.ids, fromId);
+    final int to = toId == Long.MAX_VALUE ? section.ids.length : lowerBound(section.ids, toId + 1);
+    return () -> new CellIterator(section, from, to);
+  }
+
+  /**
+   * Returns the number of cells of the given type and zoom level whose ids are in the given
+   * (inclusive) range.
+   */
+  public int count(OSMType type, int level, long fromId, long toId) {
+    final Section section = sections.getOrDefault(type, Collections.emptySortedMap()).get(level);
+    if (section == null) {
+      return 0;
+    }
+    final int to = toId == Long.MAX_VALUE ? section.ids.length : lowerBound(section.ids, toId + 1);
+    return Math.max(0, to - lowerBound(section.ids, fromId));
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  // index of the first id which is not smaller than the given one: the partitions of a cell are
+  // stored under the same id, so Arrays.binarySearch could return any of them
+  private static int lowerBound(long[] ids, long id) {
+    int low = 0;
+    int high = ids.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (ids[mid] < id) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private class CellIterator implements Iterator<GridOSHEntity> {
+    private final Section section;
+    private final int to;
+    private int pos;
+
+    private MappedByteBuffer window = null;
+    private long windowStart;
+
+    CellIterator(Section section, int from, int to) {
+      this.section = section;
+      this.pos = from;
+      this.to = to;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return pos < to;
+    }
+
+    @Override
+    public GridOSHEntity next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final long position = section.positions[pos];
+      final int length = section.lengths[pos];
+      pos++;
+      try {
+        if (window == null || position + length > windowStart + window.capacity()) {
+          // map the remaining range at once, limited by the maximum size of a mapped buffer
+          final long end = section.positions[to - 1] + section.lengths[to - 1];
+          windowStart = position;
+          window = channel.map(MapMode.READ_ONLY, position,
+              Math.max(length, Math.min(end - position, Integer.MAX_VALUE)));
+        }
+        final ByteBuffer cell = window.duplicate();
+        cell.position((int) (position - windowStart));
+        cell.limit((int) (position - windowStart) + length);
+        return GridOSHEntityCodec.fromBuffer(cell);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Writes a new grid cell file.
+   *
+   * <p>Cells have to be added sorted by osm type, zoom level and id, the partitions of a cell
+   * directly after each other.</p>
+   */
+  public static class Writer implements Closeable {
+    private final Path path;
+    private final DataOutputStream out;
+    private final Map<String, String> metadata = new LinkedHashMap<>();
+    private final Map<OSMType, SortedMap<Integer, Section>> sections = new EnumMap<>(OSMType.class);
+
+    private long position = HEADER_SIZE;
+
+    private OSMType lastType = null;
+    private int lastLevel = -1;
+    private long lastId = -1;
+    private int size = 0;
+    private long[] ids = new long[1024];
+    private long[] positions = new long[1024];
+    private int[] lengths = new int[1024];
+
+    private Writer(Path path) throws IOException {
+      this.path = path;
+      this.out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(path.toFile()), 1024 * 1024));
+      out.write(new byte[HEADER_SIZE]);
+    }
+
+    /**
+     * Stores a metadata value in the file.
+     */
+    public Writer metadata(String key, String value) {
+      metadata.put(key, value);
+      return this;
+    }
+
+    /**
+     * Appends a grid cell to the file.
+     *
+     * @throws IllegalArgumentException if the cell is not sorted after the previously added cell
+     */
+    public void add(GridOSHEntity grid) throws IOException {
+      add(GridOSHEntityCodec.toBytes(grid), GridOSHEntityCodec.typeOf(grid), grid.getLevel(), grid.getId());
+    }
+
+    private void add(byte[] cell, OSMType type, int level, long id) throws IOException {
+      if (type != lastType || level != lastLevel) {
+        if (lastType != null && (type.compareTo(lastType) < 0
+            || type == lastType && level < lastLevel)) {
+          throw new IllegalArgumentException(String.format(
+              "cells not sorted: %s %d:%d after %s %d:%d", type, level, id, lastType, lastLevel,
+              lastId));
+        }
+        finishSection();
+        lastType = type;
+        lastLevel = level;
+      } else if (id < lastId) {
+        throw new IllegalArgumentException(String.format(
+            "cells not sorted: %s %d:%d after %d:%d", type, level, id, lastLevel, lastId));
+      }
+      lastId = id;
+
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+        positions = Arrays.copyOf(positions, size * 2);
+        lengths = Arrays.copyOf(lengths, size * 2);
+      }
+      ids[size] = id;
+      positions[size] = position;
+      lengths[size] = cell.length;
+      size++;
+
+      out.write(cell);
+      position += cell.length;
+    }
+
+    private void finishSection() {
+      if (size > 0) {
+        sections.computeIfAbsent(lastType, ignored -> new TreeMap<>()).put(lastLevel, new Section(
+            Arrays.copyOf(ids, size), Arrays.copyOf(positions, size), Arrays.copyOf(lengths, size)
+        ));
+      }
+      size = 0;
+      lastId = -1;
+    }
+
+    /**
+     * Writes the directory and completes the file.
+     */
+    @Override
+    public void close() throws IOException {
+      finishSection();
+      final long directoryPosition = position;
+      out.writeInt(metadata.size());
+      for (Map.Entry<String, String> entry : metadata.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeUTF(entry.getValue());
+      }
+      int count = 0;
+      for (SortedMap<Integer, Section> levels : sections.values()) {
+        count += levels.size();
+      }
+      out.writeInt(count);
+      for (Map.Entry<OSMType, SortedMap<Integer, Section>> type : sections.entrySet()) {
+        for (Map.Entry<Integer, Section> level : type.getValue().entrySet()) {
+          final Section section = level.getValue();
+          out.writeByte(type.getKey().intValue());
+          out.writeInt(level.getKey());
+          out.writeInt(section.ids.length);
+          for (long id : section.ids) {
+            out.writeLong(id);
+          }
+          for (long pos : section.positions) {
+            out.writeLong(pos);
+          }
+          for (int length : section.lengths) {
+            out.writeInt(length);
+          }
+        }
+      }
+      out.close();
+      final long directoryLength = path.toFile().length() - directoryPosition;
+
+      try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+        file.writeLong(MAGIC);
+        file.writeInt(VERSION);
+        file.writeInt(0);
+        file.writeLong(directoryPosition);
+        file.writeLong(directoryLength);
+      }
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package org.heigit.bigspatialdata.oshdb.grid;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHEntityImpl;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+
+/**
+ * Splits the entities of oversized grid cells into numbered partitions, which are stored as
+ * separate grid cells with the same zoom level and id.
+ *
+ * <p>The partitions of a cell are independent units of work for the query backends, so a few
+ * huge cells (low zoom levels, dense cities) don't dominate the runtime of a query. The entities
+ * of a split cell are sorted by location (see
+ * {@link GridOSHEntityBlockIndex#sortByLocation(List)}) before they are assigned to partitions,
+ * so that each partition covers a small area and can be skipped by its summary and block
+ * index.</p>
+ */
+public class GridOSHEntityPartitioner implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Metadata property holding the maximum number of partitions of any grid cell of an oshdb.
+   * Databases without this entry have a single partition per cell.
+   */
+  public static final String METADATA_KEY = "index.partitions";
+
+  /**
+   * A partitioner which keeps all entities of a cell in a single partition.
+   */
+  public static final GridOSHEntityPartitioner NONE = new GridOSHEntityPartitioner(0, 0);
+
+  private final int maxEntities;
+  private final long maxBytes;
+
+  /**
+   * Creates a partitioner with the given limits per partition.
+   *
+   * @param maxEntities maximum number of entities per partition, or 0 for no limit
+   * @param maxBytes maximum (uncompressed) size of the entities of a partition in bytes, or 0 for
+   *        no limit
+   */
+  public GridOSHEntityPartitioner(int maxEntities, long maxBytes) {
+    if (maxEntities < 0 || maxBytes < 0) {
+      throw new IllegalArgumentException("partition limits must not be negative");
+    }
+    this.maxEntities = maxEntities;
+    this.maxBytes = maxBytes;
+  }
+
+  public int getMaxEntities() {
+    return maxEntities;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Splits the entities of a grid cell into partitions.
+   *
+   * <p>Cells within the limits are kept as they are. The entities of all other cells are sorted
+   * by location and split into consecutive partitions. Every partition holds at least one entity,
+   * so a single entity exceeding the byte limit forms a partition of its own. If the limits would
+   * result in more than {@link CellId#MAX_PARTITIONS} partitions, the entities are distributed
+   * evenly over that many partitions instead.</p>
+   *
+   * @param entities the entities of a grid cell, in the order they are stored
+   * @return the partitions of the entities, at least one (which can be empty)
+   */
+  public <T extends OSHEntity> List<List<T>> partition(List<T> entities) {
+    if (entities.isEmpty() || maxEntities == 0 && maxBytes == 0 || fits(entities)) {
+      return Collections.singletonList(entities);
+    }
+    final List<T> sorted = new ArrayList<>(entities);
+    GridOSHEntityBlockIndex.sortByLocation(sorted);
+    List<List<T>> result = new ArrayList<>();
+    int start = 0;
+    long bytes = 0;
+    for (int i = 0; i < sorted.size(); i++) {
+      final long size = sizeOf(sorted.get(i));
+      if (i > start && (maxEntities > 0 && i - start >= maxEntities
+          || maxBytes > 0 && bytes + size > maxBytes)) {
+        result.add(sorted.subList(start, i));
+        start = i;
+        bytes = 0;
+      }
+      bytes += size;
+    }
+    result.add(sorted.subList(start, sorted.size()));
+
+    if (result.size() > CellId.MAX_PARTITIONS) {
+      result.clear();
+      for (int i = 0; i < CellId.MAX_PARTITIONS; i++) {
+        result.add(sorted.subList(
+            (int) ((long) sorted.size() * i / CellId.MAX_PARTITIONS),
+            (int) ((long) sorted.size() * (i + 1) / CellId.MAX_PARTITIONS)));
+      }
+    }
+    return result;
+  }
+
+  // true if the entities don't exceed the limits of a single partition
+  private boolean fits(List<? extends OSHEntity> entities) {
+    if (maxEntities > 0 && entities.size() > maxEntities) {
+      return false;
+    }
+    if (maxBytes > 0) {
+      long bytes = 0;
+      for (OSHEntity entity : entities) {
+        bytes += sizeOf(entity);
+      }
+      return bytes <= maxBytes;
+    }
+    return true;
+  }
+
+  private static long sizeOf(OSHEntity entity) {
+    if (entity instanceof OSHEntityImpl) {
+      return ((OSHEntityImpl) entity).getLength();
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,239 @@
+package org.heigit.bigspatialdata.oshdb.grid;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+
+/**
+ * Statistics about the content of a grid cell (partition), as stored in the statistics catalog of
+ * an oshdb.
+ *
+ * <p>Besides the size of the cell and the number of its entities and versions, the most used tag
+ * keys of the cell's entities are recorded together with the number of entities using them, which
+ * allows to estimate the amount of data a query has to process before running it.</p>
+ */
+public class GridOSHEntityStatistics implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Maximum number of tag keys recorded per cell.
+   */
+  public static final int TOP_TAG_KEYS = 16;
+
+  private final OSMType type;
+  private final int level;
+  private final long id;
+  private final int partition;
+  private final long bytes;
+  private final int entityCount;
+  private final long versionCount;
+  private final long minTimestamp;
+  private final long maxTimestamp;
+  // the most used tag keys (sorted by descending usage) and the number of entities using them
+  private final int[] tagKeys;
+  private final int[] tagKeyCounts;
+
+  /**
+   * Creates the statistics of a grid cell.
+   *
+   * @param tagKeys the most used tag keys, sorted by descending number of entities using them
+   * @param tagKeyCounts the number of entities using each of the tag keys
+   */
+  public GridOSHEntityStatistics(OSMType type, int level, long id, int partition, long bytes,
+      int entityCount, long versionCount, long minTimestamp, long maxTimestamp, int[] tagKeys,
+      int[] tagKeyCounts) {
+    if (tagKeys.length != tagKeyCounts.length) {
+      throw new IllegalArgumentException("number of tag keys and tag key counts differ");
+    }
+    this.type = type;
+    this.level = level;
+    this.id = id;
+    this.partition = partition;
+    this.bytes = bytes;
+    this.entityCount = entityCount;
+    this.versionCount = versionCount;
+    this.minTimestamp = minTimestamp;
+    this.maxTimestamp = maxTimestamp;
+    this.tagKeys = tagKeys;
+    this.tagKeyCounts = tagKeyCounts;
+  }
+
+  /**
+   * Computes the statistics of a grid cell.
+   *
+   * @param grid the grid cell
+   * @param partition the partition number of the cell, see {@link GridOSHEntityPartitioner}
+   * @param bytes the size of the stored cell in bytes
+   * @return the statistics of the cell
+   */
+  public static GridOSHEntityStatistics of(GridOSHEntity grid, int partition, long bytes) {
+    final Iterable<? extends OSHEntity> entities = grid.getEntities();
+    GridOSHEntitySummary summary = grid.getSummary();
+    if (summary == null) {
+      summary = GridOSHEntitySummary.of(entities);
+    }
+
+    final Map<Integer, Integer> counts = new HashMap<>();
+    final Set<Integer> entityKeys = new HashSet<>();
+    for (OSHEntity osh : entities) {
+      entityKeys.clear();
+      for (int key : osh.getRawTagKeys()) {
+        if (entityKeys.add(key)) {
+          counts.merge(key, 1, Integer::sum);
+        }
+      }
+    }
+    final List<Map.Entry<Integer, Integer>> sorted = new ArrayList<>(counts.entrySet());
+    sorted.sort(Map.Entry.<Integer, Integer>comparingByValue().reversed()
+        .thenComparing(Map.Entry.comparingByKey()));
+    final int size = Math.min(TOP_TAG_KEYS, sorted.size());
+    final int[] tagKeys = new int[size];
+    final int[] tagKeyCounts = new int[size];
+    for (int i = 0; i < size; i++) {
+      tagKeys[i] = sorted.get(i).getKey();
+      tagKeyCounts[i] = sorted.get(i).getValue();
+    }
+
+    return new GridOSHEntityStatistics(GridOSHEntityCodec.typeOf(grid), grid.getLevel(),
+        grid.getId(), partition, bytes, summary.getEntityCount(), summary.getVersionCount(),
+        summary.getMinTimestamp(), summary.getMaxTimestamp(), tagKeys, tagKeyCounts);
+  }
+
+  public OSMType getType() {
+    return type;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public int getPartition() {
+    return partition;
+  }
+
+  /**
+   * Returns the size of the stored cell in bytes.
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  public int getEntityCount() {
+    return entityCount;
+  }
+
+  public long getVersionCount() {
+    return versionCount;
+  }
+
+  public long getMinTimestamp() {
+    return minTimestamp;
+  }
+
+  public long getMaxTimestamp() {
+    return maxTimestamp;
+  }
+
+  /**
+   * Returns the most used tag keys of the cell, sorted by descending number of entities using
+   * them.
+   */
+  public int[] getTagKeys() {
+    return tagKeys.clone();
+  }
+
+  /**
+   * Returns the (estimated) number of entities of the cell using the given tag key.
+   *
+   * <p>For tag keys which are not among the recorded most used keys, this is the number of the
+   * least used recorded key if the list of keys is full (an upper bound), or 0 otherwise.</p>
+   */
+  public int getTagKeyCount(int key) {
+    for (int i = 0; i < tagKeys.length; i++) {
+      if (tagKeys[i] == key) {
+        return tagKeyCounts[i];
+      }
+    }
+    if (tagKeys.length < TOP_TAG_KEYS) {
+      return 0;
+    }
+    return tagKeyCounts[tagKeyCounts.length - 1];
+  }
+
+  /**
+   * Estimates the number of entities of this cell matching a tag filter.
+   *
+   * @param requiredTagKeys groups of tag keys, of each group at least one key has to be used by an
+   *        entity
+   * @return an estimated upper bound of the number of matching entities
+   */
+  public long estimateEntityCount(int[][] requiredTagKeys) {
+    long result = entityCount;
+    for (int[] keys : requiredTagKeys) {
+      long count = 0;
+      for (int key : keys) {
+        count += getTagKeyCount(key);
+      }
+      result = Math.min(result, count);
+    }
+    return result;
+  }
+
+  /**
+   * Returns a key identifying this cell (partition) in the statistics catalog.
+   */
+  public String getKey() {
+    return type.intValue() + "/" + level + "/" + id + "/" + partition;
+  }
+
+  /**
+   * Encodes the recorded tag keys and their counts as a string, see
+   * {@link #decodeTagKeys(String)}.
+   */
+  public String encodeTagKeys() {
+    final StringBuilder result = new StringBuilder();
+    for (int i = 0; i < tagKeys.length; i++) {
+      if (i > 0) {
+        result.append(',');
+      }
+      result.append(tagKeys[i]).append(':').append(tagKeyCounts[i]);
+    }
+    return result.toString();
+  }
+
+  /**
+   * Decodes tag keys and their counts encoded by {@link #encodeTagKeys()}.
+   *
+   * @return the tag keys and their counts
+   */
+  public static int[][] decodeTagKeys(String encoded) {
+    if (encoded == null || encoded.isEmpty()) {
+      return new int[][] {new int[0], new int[0]};
+    }
+    final String[] entries = encoded.split(",");
+    final int[] keys = new int[entries.length];
+    final int[] counts = new int[entries.length];
+    for (int i = 0; i < entries.length; i++) {
+      final String[] entry = entries[i].split(":", 2);
+      keys[i] = Integer.parseInt(entry[0]);
+      counts[i] = Integer.parseInt(entry[1]);
+    }
+    return new int[][] {keys, counts};
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s %d:%d/%d %d bytes, %d entities, %d versions", type, level, id,
+        partition, bytes, entityCount, versionCount);
+  }
+}
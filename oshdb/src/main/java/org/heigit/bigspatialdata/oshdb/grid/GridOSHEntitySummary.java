@@ -0,0 +1,140 @@
+package org.heigit.bigspatialdata.oshdb.grid;
+
+import java.io.Serializable;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntities;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSMEntityCursor;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+
+/**
+ * Summary of the content of a grid cell, which allows to skip whole cells before decoding their
+ * entities.
+ *
+ * <p>Contains the range of modification timestamps of the cell's entities (including the
+ * modifications of their member nodes/ways), a bloom filter of all tag keys used by any version of
+ * the cell's entities and the number of entities and versions.</p>
+ */
+public class GridOSHEntitySummary implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Number of 64 bit words of the tag key bloom filter.
+   */
+  static final int TAG_KEY_WORDS = 16;
+
+  private final long minTimestamp;
+  private final long maxTimestamp;
+  private final int entityCount;
+  private final long versionCount;
+  private final long[] tagKeys;
+
+  GridOSHEntitySummary(long minTimestamp, long maxTimestamp, int entityCount, long versionCount,
+      long[] tagKeys) {
+    this.minTimestamp = minTimestamp;
+    this.maxTimestamp = maxTimestamp;
+    this.entityCount = entityCount;
+    this.versionCount = versionCount;
+    this.tagKeys = tagKeys;
+  }
+
+  /**
+   * Computes the summary of the given entities.
+   *
+   * @param entities the entities of a grid cell
+   * @return the summary of these entities
+   */
+  public static GridOSHEntitySummary of(Iterable<? extends OSHEntity> entities) {
+    long minTimestamp = Long.MAX_VALUE;
+    long maxTimestamp = Long.MIN_VALUE;
+    int entityCount = 0;
+    long versionCount = 0;
+    final long[] tagKeys = new long[TAG_KEY_WORDS];
+    for (OSHEntity osh : entities) {
+      entityCount++;
+      final OSMEntityCursor versions = osh.getVersionCursor();
+      while (versions.next()) {
+        versionCount++;
+      }
+      for (int key : osh.getRawTagKeys()) {
+        final int bit = bit(key);
+        tagKeys[bit >>> 6] |= 1L << bit;
+      }
+      // includes the modifications of member nodes/ways
+      for (OSHDBTimestamp timestamp : OSHEntities.getModificationTimestamps(osh)) {
+        minTimestamp = Math.min(minTimestamp, timestamp.getRawUnixTimestamp());
+        maxTimestamp = Math.max(maxTimestamp, timestamp.getRawUnixTimestamp());
+      }
+    }
+    return new GridOSHEntitySummary(minTimestamp, maxTimestamp, entityCount, versionCount,
+        tagKeys);
+  }
+
+  private static int bit(int key) {
+    // fibonacci hashing onto the bits of the bloom filter
+    return (key * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(TAG_KEY_WORDS * 64));
+  }
+
+  /**
+   * Returns the timestamp of the oldest modification in this cell.
+   */
+  public long getMinTimestamp() {
+    return minTimestamp;
+  }
+
+  /**
+   * Returns the timestamp of the newest modification in this cell.
+   */
+  public long getMaxTimestamp() {
+    return maxTimestamp;
+  }
+
+  public int getEntityCount() {
+    return entityCount;
+  }
+
+  public long getVersionCount() {
+    return versionCount;
+  }
+
+  long[] getTagKeys() {
+    return tagKeys;
+  }
+
+  /**
+   * Checks if an entity in this cell could have the given tag key.
+   *
+   * @param key the tag key id
+   * @return false if no entity of this cell has ever used this tag key, true if it is possible
+   *         (but not guaranteed) that one of them did.
+   */
+  public boolean mayHaveTagKey(int key) {
+    final int bit = bit(key);
+    return (tagKeys[bit >>> 6] & (1L << bit)) != 0;
+  }
+
+  /**
+   * Checks if an entity in this cell could have any of the given tag keys.
+   *
+   * @param keys the tag key ids
+   * @return false if no entity of this cell has ever used any of these tag keys
+   */
+  public boolean mayHaveAnyTagKey(int[] keys) {
+    for (int key : keys) {
+      if (mayHaveTagKey(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks if any modification in this cell happened in the given time interval.
+   *
+   * @param from start of the interval (inclusive)
+   * @param to end of the interval (inclusive)
+   * @return false if all entities of the cell were modified only before or after the interval
+   */
+  public boolean overlaps(long from, long to) {
+    return minTimestamp <= to && maxTimestamp >= from;
+  }
+}
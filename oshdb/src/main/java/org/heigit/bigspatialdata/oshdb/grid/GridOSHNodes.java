@@ -8,6 +8,7 @@ import java.util.List;
 import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntities;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntityHeaderFilter;
 import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
 
 public class GridOSHNodes extends GridOSHEntity implements Iterable<OSHNode> {
@@ -33,10 +34,15 @@ public class GridOSHNodes extends GridOSHEntity implements Iterable<OSHNode> {
             data);
   }
 
-  private GridOSHNodes(final long id, final int level, final long baseId, final long baseTimestamp,
+  GridOSHNodes(final long id, final int level, final long baseId, final long baseTimestamp,
           final long baseLongitude, final long baseLatitude, final int[] index, final byte[] data) {
     super(id, level, baseId, baseTimestamp, baseLongitude, baseLatitude, index, data);
   }
+
+  GridOSHNodes(final long id, final int level, final long baseId, final long baseTimestamp,
+      final long baseLongitude, final long baseLatitude, final int[] index, final ByteBuffer data) {
+    super(id, level, baseId, baseTimestamp, baseLongitude, baseLatitude, index, data);
+  }
   
   @Override
   public Iterable<? extends OSHEntity> getEntities() {
@@ -46,12 +52,14 @@ public class GridOSHNodes extends GridOSHEntity implements Iterable<OSHNode> {
   @Override
   public Iterator<OSHNode> iterator() {
     return new Iterator<OSHNode>() {
+      private final ByteBuffer data = getBuffer();
+      private final int dataLength = data.limit();
       private int pos = 0;
 
       @Override
       public OSHNode next() {
         int offset = index[pos];
-        int length = ((pos < index.length - 1) ? index[pos + 1] : data.length) - offset;
+        int length = ((pos < index.length - 1) ? index[pos + 1] : dataLength) - offset;
         pos++;
         try {
           return OSHNodeImpl.instance(data, offset, length, baseId, baseTimestamp, baseLongitude,
@@ -69,6 +77,18 @@ public class GridOSHNodes extends GridOSHEntity implements Iterable<OSHNode> {
     };
   }
 
+  @Override
+  protected OSHEntity instance(ByteBuffer data, int offset, int length) throws IOException {
+    return OSHNodeImpl.instance(data, offset, length, baseId, baseTimestamp, baseLongitude,
+        baseLatitude);
+  }
+
+  @Override
+  protected boolean matchesHeader(ByteBuffer data, int offset, int length,
+      OSHEntityHeaderFilter filter) throws IOException {
+    return OSHNodeImpl.matchesHeader(data, offset, length, baseLongitude, baseLatitude, filter);
+  }
+
   @Override
   public String toString() {
     return String.format("Grid-Cell of OSHNodes %s", super.toString());
@@ -5,9 +5,11 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.List;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHEntityDictionary;
 import org.heigit.bigspatialdata.oshdb.impl.osh.OSHRelationImpl;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntities;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntityHeaderFilter;
 import org.heigit.bigspatialdata.oshdb.osh.OSHRelation;
 
 public class GridOSHRelations extends GridOSHEntity implements Iterable<OSHRelation> {
@@ -17,15 +19,44 @@ public class GridOSHRelations extends GridOSHEntity implements Iterable<OSHRelat
   public static GridOSHRelations compact(final long id, final int level, final long baseId,
           final long baseTimestamp, final long baseLongitude, final long baseLatitude,
           final List<OSHRelation> list) throws IOException {
+    return compact(id, level, baseId, baseTimestamp, baseLongitude, baseLatitude, list, false);
+  }
+
+  /**
+   * Builds a grid cell of the given relations.
+   *
+   * @param shareMembers if true, the histories of the member nodes and ways of all relations are
+   *        stored only once in a dictionary of the cell (see {@link OSHEntityDictionary}), which
+   *        the relation records reference. Otherwise every relation record embeds its own copy
+   *        of its members.
+   */
+  public static GridOSHRelations compact(final long id, final int level, final long baseId,
+      final long baseTimestamp, final long baseLongitude, final long baseLatitude,
+      final List<OSHRelation> list, final boolean shareMembers) throws IOException {
 
     int offset = 0;
 
     final ByteArrayOutputStream out = new ByteArrayOutputStream();
     final int[] index = new int[list.size()];
+    OSHEntityDictionary.Builder dictionary = null;
+    if (shareMembers) {
+      dictionary = new OSHEntityDictionary.Builder();
+      for (OSHRelation osh : list) {
+        dictionary.addNodes(osh.getNodes());
+        dictionary.addWays(osh.getWays());
+      }
+      if (dictionary.isEmpty()) {
+        dictionary = null;
+      } else {
+        final ByteBuffer buffer = dictionary.build(baseLongitude, baseLatitude);
+        out.write(buffer.array(), 0, buffer.remaining());
+        offset += buffer.remaining();
+      }
+    }
     // TODO user iterator!!
     for (int i = 0; i < index.length; i++) {
       final OSHRelation osh = list.get(i);
-      final ByteBuffer buffer = OSHRelationImpl.buildRecord(OSHEntities.toList(osh.getVersions()),osh.getNodes(),osh.getWays(),baseId, baseTimestamp, baseLongitude, baseLatitude);
+      final ByteBuffer buffer = OSHRelationImpl.buildRecord(OSHEntities.toList(osh.getVersions()),osh.getNodes(),osh.getWays(),baseId, baseTimestamp, baseLongitude, baseLatitude, dictionary);
       index[i] = offset;
       out.write(buffer.array(),0,buffer.remaining());
       offset += buffer.remaining();
@@ -35,10 +66,15 @@ public class GridOSHRelations extends GridOSHEntity implements Iterable<OSHRelat
             data);
   }
 
-  private GridOSHRelations(final long id, final int level, final long baseId, final long baseTimestamp,
+  GridOSHRelations(final long id, final int level, final long baseId, final long baseTimestamp,
           final long baseLongitude, final long baseLatitude, final int[] index, final byte[] data) {
     super(id, level, baseId, baseTimestamp, baseLongitude, baseLatitude, index, data);
   }
+
+  GridOSHRelations(final long id, final int level, final long baseId, final long baseTimestamp,
+      final long baseLongitude, final long baseLatitude, final int[] index, final ByteBuffer data) {
+    super(id, level, baseId, baseTimestamp, baseLongitude, baseLatitude, index, data);
+  }
   
   @Override
   public Iterable<? extends OSHEntity> getEntities() {
@@ -48,15 +84,18 @@ public class GridOSHRelations extends GridOSHEntity implements Iterable<OSHRelat
   @Override
   public Iterator<OSHRelation> iterator() {
     return new Iterator<OSHRelation>() {
+      private final ByteBuffer data = getBuffer();
+      private final int dataLength = data.limit();
       private int pos = 0;
 
       @Override
       public OSHRelation next() {
         int offset = index[pos];
-        int length = ((pos < index.length - 1) ? index[pos + 1] : data.length) - offset;
+        int length = ((pos < index.length - 1) ? index[pos + 1] : dataLength) - offset;
         pos++;
         try {
-          return OSHRelationImpl.instance(data, offset, length, baseId, baseTimestamp, baseLongitude, baseLatitude);
+          return OSHRelationImpl.instance(data, offset, length, baseId, baseTimestamp, baseLongitude, baseLatitude,
+              getDictionary());
         } catch (IOException e) {
           e.printStackTrace();
         }
@@ -70,6 +109,18 @@ public class GridOSHRelations extends GridOSHEntity implements Iterable<OSHRelat
     };
   }
 
+  @Override
+  protected OSHEntity instance(ByteBuffer data, int offset, int length) throws IOException {
+    return OSHRelationImpl.instance(data, offset, length, baseId, baseTimestamp, baseLongitude,
+        baseLatitude, getDictionary());
+  }
+
+  @Override
+  protected boolean matchesHeader(ByteBuffer data, int offset, int length,
+      OSHEntityHeaderFilter filter) throws IOException {
+    return OSHRelationImpl.matchesHeader(data, offset, length, baseLongitude, baseLatitude, filter);
+  }
+
   @Override
   public String toString() {
     return String.format("Grid-Cell of OSHRelations %s", super.toString());
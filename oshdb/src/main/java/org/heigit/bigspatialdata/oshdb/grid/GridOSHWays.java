@@ -5,9 +5,11 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.List;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHEntityDictionary;
 import org.heigit.bigspatialdata.oshdb.impl.osh.OSHWayImpl;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntities;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntityHeaderFilter;
 import org.heigit.bigspatialdata.oshdb.osh.OSHWay;
 
 public class GridOSHWays extends GridOSHEntity implements Iterable<OSHWay> {
@@ -17,12 +19,39 @@ public class GridOSHWays extends GridOSHEntity implements Iterable<OSHWay> {
   public static GridOSHWays compact(final long id, final int level, final long baseId, final long baseTimestamp,
           final long baseLongitude, final long baseLatitude, final List<OSHWay> list)
           throws IOException {
+    return compact(id, level, baseId, baseTimestamp, baseLongitude, baseLatitude, list, false);
+  }
+
+  /**
+   * Builds a grid cell of the given ways.
+   *
+   * @param shareNodes if true, the histories of the nodes of all ways are stored only once in a
+   *        dictionary of the cell (see {@link OSHEntityDictionary}), which the way records
+   *        reference. Otherwise every way record embeds its own copy of its nodes.
+   */
+  public static GridOSHWays compact(final long id, final int level, final long baseId,
+      final long baseTimestamp, final long baseLongitude, final long baseLatitude,
+      final List<OSHWay> list, final boolean shareNodes) throws IOException {
     final ByteArrayOutputStream out = new ByteArrayOutputStream();
     final int[] index = new int[list.size()];
     int offset = 0;
+    OSHEntityDictionary.Builder dictionary = null;
+    if (shareNodes) {
+      dictionary = new OSHEntityDictionary.Builder();
+      for (OSHWay osh : list) {
+        dictionary.addNodes(osh.getNodes());
+      }
+      if (dictionary.isEmpty()) {
+        dictionary = null;
+      } else {
+        final ByteBuffer buffer = dictionary.build(baseLongitude, baseLatitude);
+        out.write(buffer.array(), 0, buffer.remaining());
+        offset += buffer.remaining();
+      }
+    }
     for (int i = 0; i < index.length; i++) {
       final OSHWay osh = list.get(i);
-      final ByteBuffer buffer = OSHWayImpl.buildRecord(OSHEntities.toList(osh.getVersions()), osh.getNodes(), baseId, baseTimestamp, baseLongitude, baseLatitude);
+      final ByteBuffer buffer = OSHWayImpl.buildRecord(OSHEntities.toList(osh.getVersions()), osh.getNodes(), baseId, baseTimestamp, baseLongitude, baseLatitude, dictionary);
       index[i] = offset;
       out.write(buffer.array(), 0, buffer.remaining());
       offset += buffer.remaining();
@@ -36,6 +65,11 @@ public class GridOSHWays extends GridOSHEntity implements Iterable<OSHWay> {
           final long baseLongitude, final long baseLatitude, final int[] index, final byte[] data) {
     super(id, level, baseId, baseTimestamp, baseLongitude, baseLatitude, index, data);
   }
+
+  GridOSHWays(final long id, final int level, final long baseId, final long baseTimestamp,
+      final long baseLongitude, final long baseLatitude, final int[] index, final ByteBuffer data) {
+    super(id, level, baseId, baseTimestamp, baseLongitude, baseLatitude, index, data);
+  }
   
   @Override
   public Iterable<? extends OSHEntity> getEntities() {
@@ -45,16 +79,18 @@ public class GridOSHWays extends GridOSHEntity implements Iterable<OSHWay> {
   @Override
   public Iterator<OSHWay> iterator() {
     return new Iterator<OSHWay>() {
+      private final ByteBuffer data = getBuffer();
+      private final int dataLength = data.limit();
       private int pos = 0;
 
       @Override
       public OSHWay next() {
         int offset = index[pos];
-        int length = ((pos < index.length - 1) ? index[pos + 1] : data.length) - offset;
+        int length = ((pos < index.length - 1) ? index[pos + 1] : dataLength) - offset;
         pos++;
         try {
           return OSHWayImpl.instance(data, offset, length, baseId, baseTimestamp, baseLongitude,
-                  baseLatitude);
+                  baseLatitude, getDictionary());
         } catch (IOException e) {
           e.printStackTrace();
         }
@@ -68,6 +104,18 @@ public class GridOSHWays extends GridOSHEntity implements Iterable<OSHWay> {
     };
   }
 
+  @Override
+  protected OSHEntity instance(ByteBuffer data, int offset, int length) throws IOException {
+    return OSHWayImpl.instance(data, offset, length, baseId, baseTimestamp, baseLongitude,
+        baseLatitude, getDictionary());
+  }
+
+  @Override
+  protected boolean matchesHeader(ByteBuffer data, int offset, int length,
+      OSHEntityHeaderFilter filter) throws IOException {
+    return OSHWayImpl.matchesHeader(data, offset, length, baseLongitude, baseLatitude, filter);
+  }
+
   @Override
   public String toString() {
     return String.format("Grid-Cell of OSHWays %s", super.toString());
@@ -0,0 +1,258 @@
+package org.heigit.bigspatialdata.oshdb.impl.osh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntities;
+import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
+import org.heigit.bigspatialdata.oshdb.osh.OSHWay;
+import org.heigit.bigspatialdata.oshdb.util.bytearray.ByteArrayOutputWrapper;
+import org.heigit.bigspatialdata.oshdb.util.bytearray.ByteArrayWrapper;
+
+/**
+ * Deduplicated node and way histories which are shared by the entity records of a grid cell.
+ *
+ * <p>Way and relation records normally embed a full copy of the histories of all their member
+ * nodes (and ways). Records built with a dictionary instead reference the members by their index
+ * in the dictionary, so that e.g. junction nodes of several ways are stored and decoded only once
+ * per cell. The decoded members are kept by the dictionary and are shared by all entities of the
+ * cell.</p>
+ *
+ * <p>The dictionary is encoded as follows (the ways reference their nodes in the same
+ * dictionary):</p>
+ * <pre>
+ *   uint32   number of nodes (n)
+ *   [uint64  id of the first node, uint32[n] lengths of the node records, only if n &gt; 0]
+ *   node records, sorted by id and with the id of the first node as base id
+ *   uint32   number of ways (m)
+ *   [uint64  id of the first way, uint32[m] lengths of the way records, only if m &gt; 0]
+ *   way records, sorted by id and with the id of the first way as base id
+ * </pre>
+ */
+public class OSHEntityDictionary {
+
+  private final ByteBuffer data;
+  private final long baseLongitude;
+  private final long baseLatitude;
+
+  private final long firstNodeId;
+  private final int[] nodeOffsets;
+  private final long firstWayId;
+  private final int[] wayOffsets;
+
+  // decoded lazily, see getNode() and getWay()
+  private final OSHNode[] nodes;
+  private final OSHWay[] ways;
+
+  private OSHEntityDictionary(final ByteBuffer data, final long baseLongitude,
+      final long baseLatitude, final long firstNodeId, final int[] nodeOffsets,
+      final long firstWayId, final int[] wayOffsets) {
+    this.data = data;
+    this.baseLongitude = baseLongitude;
+    this.baseLatitude = baseLatitude;
+    this.firstNodeId = firstNodeId;
+    this.nodeOffsets = nodeOffsets;
+    this.firstWayId = firstWayId;
+    this.wayOffsets = wayOffsets;
+    this.nodes = new OSHNode[nodeOffsets.length - 1];
+    this.ways = new OSHWay[wayOffsets.length - 1];
+  }
+
+  /**
+   * Reads the dictionary stored at the given (absolute) offset of the buffer, without copying it.
+   */
+  public static OSHEntityDictionary read(final ByteBuffer data, final int offset,
+      final int length, final long baseLongitude, final long baseLatitude) throws IOException {
+    final ByteArrayWrapper wrapper = ByteArrayWrapper.newInstance(data, offset, length);
+
+    final int nodeCount = wrapper.readUInt32();
+    final long firstNodeId = nodeCount > 0 ? wrapper.readUInt64() : 0;
+    final int[] nodeOffsets = readOffsets(wrapper, nodeCount);
+    wrapper.seek(nodeOffsets[nodeCount]);
+
+    final int wayCount = wrapper.readUInt32();
+    final long firstWayId = wayCount > 0 ? wrapper.readUInt64() : 0;
+    final int[] wayOffsets = readOffsets(wrapper, wayCount);
+
+    return new OSHEntityDictionary(data, baseLongitude, baseLatitude, firstNodeId, nodeOffsets,
+        firstWayId, wayOffsets);
+  }
+
+  // returns the absolute offsets of the records followed by the end of the last record
+  private static int[] readOffsets(final ByteArrayWrapper wrapper, final int count)
+      throws IOException {
+    final int[] lengths = new int[count];
+    for (int i = 0; i < count; i++) {
+      lengths[i] = wrapper.readUInt32();
+    }
+    final int[] offsets = new int[count + 1];
+    offsets[0] = wrapper.getPos();
+    for (int i = 0; i < count; i++) {
+      offsets[i + 1] = offsets[i] + lengths[i];
+    }
+    return offsets;
+  }
+
+  public int getNodeCount() {
+    return nodes.length;
+  }
+
+  public int getWayCount() {
+    return ways.length;
+  }
+
+  /**
+   * Returns the node with the given index of this dictionary. The node is decoded only once.
+   */
+  public OSHNode getNode(final int index) throws IOException {
+    OSHNode node = nodes[index];
+    if (node == null) {
+      node = OSHNodeImpl.instance(data, nodeOffsets[index],
+          nodeOffsets[index + 1] - nodeOffsets[index], firstNodeId, 0, baseLongitude,
+          baseLatitude);
+      nodes[index] = node;
+    }
+    return node;
+  }
+
+  /**
+   * Returns the way with the given index of this dictionary. The way is decoded only once.
+   */
+  public OSHWay getWay(final int index) throws IOException {
+    OSHWay way = ways[index];
+    if (way == null) {
+      way = OSHWayImpl.instance(data, wayOffsets[index],
+          wayOffsets[index + 1] - wayOffsets[index], firstWayId, 0, baseLongitude,
+          baseLatitude, this);
+      ways[index] = way;
+    }
+    return way;
+  }
+
+  /**
+   * Collects the nodes and ways of the entities of a cell and assigns them their index in the
+   * dictionary.
+   *
+   * <p>All members have to be added before the first index is requested, entity records can only
+   * be built after that.</p>
+   */
+  public static class Builder {
+    private final SortedMap<Long, OSHNode> nodes = new TreeMap<>();
+    private final SortedMap<Long, OSHWay> ways = new TreeMap<>();
+
+    private Map<Long, Integer> nodeIndex = null;
+    private Map<Long, Integer> wayIndex = null;
+
+    public void addNodes(Collection<OSHNode> nodes) {
+      checkNotFrozen();
+      for (OSHNode node : nodes) {
+        this.nodes.putIfAbsent(node.getId(), node);
+      }
+    }
+
+    /**
+     * Adds the given ways and their nodes to the dictionary.
+     */
+    public void addWays(Collection<OSHWay> ways) throws IOException {
+      checkNotFrozen();
+      for (OSHWay way : ways) {
+        if (this.ways.putIfAbsent(way.getId(), way) == null) {
+          addNodes(way.getNodes());
+        }
+      }
+    }
+
+    private void checkNotFrozen() {
+      if (nodeIndex != null) {
+        throw new IllegalStateException(
+            "members can't be added after the dictionary indices have been assigned");
+      }
+    }
+
+    private void freeze() {
+      if (nodeIndex == null) {
+        nodeIndex = indexOf(nodes);
+        wayIndex = indexOf(ways);
+      }
+    }
+
+    private static Map<Long, Integer> indexOf(SortedMap<Long, ?> entities) {
+      final Map<Long, Integer> result = new HashMap<>(entities.size());
+      for (Long id : entities.keySet()) {
+        result.put(id, result.size());
+      }
+      return result;
+    }
+
+    public boolean isEmpty() {
+      return nodes.isEmpty() && ways.isEmpty();
+    }
+
+    /**
+     * Returns the index of the node with the given id, or -1 if it isn't part of the dictionary.
+     */
+    public int getNodeIndex(long id) {
+      freeze();
+      return nodeIndex.getOrDefault(id, -1);
+    }
+
+    /**
+     * Returns the index of the way with the given id, or -1 if it isn't part of the dictionary.
+     */
+    public int getWayIndex(long id) {
+      freeze();
+      return wayIndex.getOrDefault(id, -1);
+    }
+
+    /**
+     * Encodes the dictionary.
+     *
+     * @param baseLongitude the base longitude of the cell the dictionary belongs to
+     * @param baseLatitude the base latitude of the cell the dictionary belongs to
+     */
+    public ByteBuffer build(final long baseLongitude, final long baseLatitude)
+        throws IOException {
+      freeze();
+      final ByteArrayOutputWrapper output = new ByteArrayOutputWrapper();
+
+      final long firstNodeId = nodes.isEmpty() ? 0 : nodes.firstKey();
+      final List<ByteBuffer> nodeRecords = new ArrayList<>(nodes.size());
+      for (OSHNode node : nodes.values()) {
+        nodeRecords.add(OSHNodeImpl.buildRecord(OSHEntities.toList(node.getVersions()),
+            firstNodeId, 0, baseLongitude, baseLatitude));
+      }
+      writeRecords(output, firstNodeId, nodeRecords);
+
+      final long firstWayId = ways.isEmpty() ? 0 : ways.firstKey();
+      final List<ByteBuffer> wayRecords = new ArrayList<>(ways.size());
+      for (OSHWay way : ways.values()) {
+        wayRecords.add(OSHWayImpl.buildRecord(OSHEntities.toList(way.getVersions()),
+            way.getNodes(), firstWayId, 0, baseLongitude, baseLatitude, this));
+      }
+      writeRecords(output, firstWayId, wayRecords);
+
+      return ByteBuffer.wrap(output.array(), 0, output.length());
+    }
+
+    private static void writeRecords(final ByteArrayOutputWrapper output, final long firstId,
+        final List<ByteBuffer> records) throws IOException {
+      output.writeUInt32(records.size());
+      if (records.isEmpty()) {
+        return;
+      }
+      output.writeUInt64(firstId);
+      for (ByteBuffer record : records) {
+        output.writeUInt32(record.remaining());
+      }
+      for (ByteBuffer record : records) {
+        output.writeByteArray(record.array(), 0, record.remaining());
+      }
+    }
+  }
+}
@@ -2,17 +2,26 @@ package org.heigit.bigspatialdata.oshdb.impl.osh;
 
 import java.io.IOException;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.NoSuchElementException;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import javax.annotation.Nonnull;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntityHeaderFilter;
+import org.heigit.bigspatialdata.oshdb.osh.OSMEntityCursor;
 import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTagKey;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
 import org.heigit.bigspatialdata.oshdb.util.bytearray.ByteArrayOutputWrapper;
+import org.heigit.bigspatialdata.oshdb.util.bytearray.ByteArrayWrapper;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
 
 public abstract class OSHEntityImpl
     implements OSHEntity, Comparable<OSHEntity>{
@@ -35,6 +44,8 @@ public abstract class OSHEntityImpl
 
     boolean firstVersion = true;
     boolean timestampsNotInOrder = false;
+    long previousTimestamp = 0;
+    boolean restarted = false;
 
     public Builder(final ByteArrayOutputWrapper output, final long baseTimestamp) {
       this.output = output;
@@ -49,6 +60,18 @@ public abstract class OSHEntityImpl
       return keySet;
     }
 
+    /**
+     * Resets the delta encoding, such that the next version can be decoded without reading any of
+     * the previous ones. Used for the entries of the {@link VersionDirectory}.
+     */
+    public void restart() {
+      lastVersion = 0;
+      lastTimestamp = 0;
+      lastChangeset = 0;
+      lastUserId = 0;
+      restarted = true;
+    }
+
     public void build(OSMEntity version, byte changed) throws IOException {
       int v = (version.getVersion() * (!version.isVisible() ? -1 : 1));
       output.writeSInt32(v - lastVersion);
@@ -56,9 +79,10 @@ public abstract class OSHEntityImpl
 
       output.writeSInt64(
           (version.getTimestamp().getRawUnixTimestamp() - lastTimestamp) - baseTimestamp);
-      if (!firstVersion && lastTimestamp < version.getTimestamp().getRawUnixTimestamp())
+      if (!firstVersion && previousTimestamp < version.getTimestamp().getRawUnixTimestamp())
         timestampsNotInOrder = true;
       lastTimestamp = version.getTimestamp().getRawUnixTimestamp();
+      previousTimestamp = lastTimestamp;
 
       output.writeSInt64(version.getChangesetId() - lastChangeset);
       lastChangeset = version.getChangesetId();
@@ -69,7 +93,16 @@ public abstract class OSHEntityImpl
 
       int[] keyValues = version.getRawTags();
 
-      if (version.isVisible() && !Arrays.equals(keyValues, lastKeyValues)) {
+      if (restarted) {
+        // the decoder starts again with empty tags, deleted versions keep the previous ones
+        if (!version.isVisible()) {
+          keyValues = lastKeyValues;
+        }
+        if (keyValues.length > 0) {
+          changed |= CHANGED_TAGS;
+        }
+        restarted = false;
+      } else if (version.isVisible() && !Arrays.equals(keyValues, lastKeyValues)) {
         changed |= CHANGED_TAGS;
       }
 
@@ -95,7 +128,135 @@ public abstract class OSHEntityImpl
 
   }
 
-  protected final byte[] data;
+  /**
+   * Directory of the versions of an entity, which allows to start decoding its versions in the
+   * middle of its history instead of replaying all of it.
+   *
+   * <p>Holds the relative byte offset and the timestamp of every {@link #STRIDE}th version
+   * (starting with the version at index {@link #STRIDE}). The delta encoding of the versions is
+   * restarted at each of these versions. It is only stored for entities with more than
+   * {@link #STRIDE} versions, whose timestamps decrease along with their versions.</p>
+   */
+  protected static class VersionDirectory {
+    public static final int STRIDE = 16;
+
+    private final int[] offsets;
+    private final long[] timestamps;
+
+    VersionDirectory(int[] offsets, long[] timestamps) {
+      this.offsets = offsets;
+      this.timestamps = timestamps;
+    }
+
+    /**
+     * Checks if the given versions (sorted by version, newest first) should get a directory.
+     */
+    public static boolean isUseful(List<? extends OSMEntity> versions) {
+      if (versions.size() <= STRIDE) {
+        return false;
+      }
+      for (int i = 1; i < versions.size(); i++) {
+        if (versions.get(i).getTimestamp().compareTo(versions.get(i - 1).getTimestamp()) > 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    public static VersionDirectory read(ByteArrayWrapper wrapper, long baseTimestamp)
+        throws IOException {
+      final int size = wrapper.readUInt32();
+      final int[] offsets = new int[size];
+      final long[] timestamps = new long[size];
+      int offset = 0;
+      long timestamp = 0;
+      for (int i = 0; i < size; i++) {
+        offset = wrapper.readUInt32() + offset;
+        timestamp = wrapper.readSInt64() + timestamp;
+        offsets[i] = offset;
+        timestamps[i] = baseTimestamp + timestamp;
+      }
+      return new VersionDirectory(offsets, timestamps);
+    }
+
+    public void write(ByteArrayOutputWrapper output, long baseTimestamp) throws IOException {
+      output.writeUInt32(offsets.length);
+      int lastOffset = 0;
+      long lastTimestamp = 0;
+      for (int i = 0; i < offsets.length; i++) {
+        output.writeUInt32(offsets[i] - lastOffset);
+        lastOffset = offsets[i];
+        output.writeSInt64((timestamps[i] - baseTimestamp) - lastTimestamp);
+        lastTimestamp = timestamps[i] - baseTimestamp;
+      }
+    }
+
+    public int size() {
+      return offsets.length;
+    }
+
+    /**
+     * Returns the offset of the given entry, relative to the start of the version data.
+     */
+    public int getOffset(int entry) {
+      return offsets[entry];
+    }
+
+    /**
+     * Returns the entry to start decoding at, in order to find the version valid at the given
+     * timestamp, or -1 if the versions have to be decoded from the beginning.
+     */
+    public int seek(long timestamp) {
+      // timestamps are descending: find the first entry not newer than the timestamp
+      int low = 0;
+      int high = timestamps.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (timestamps[mid] > timestamp) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low - 1;
+    }
+
+    /**
+     * Collects the offsets and timestamps of the versions at which a {@link Builder} restarts
+     * the delta encoding.
+     */
+    public static class Collector {
+      private final int[] offsets;
+      private final long[] timestamps;
+      private int size = 0;
+
+      public Collector(int versions) {
+        final int size = (versions - 1) / STRIDE;
+        offsets = new int[size];
+        timestamps = new long[size];
+      }
+
+      /**
+       * Returns true if the version at the given index (of the versions sorted newest first) is
+       * an entry of the directory, in which case its offset and timestamp are recorded.
+       */
+      public boolean add(int index, int offset, OSMEntity osm) {
+        if (index == 0 || index % STRIDE != 0) {
+          return false;
+        }
+        offsets[size] = offset;
+        timestamps[size] = osm.getTimestamp().getRawUnixTimestamp();
+        size++;
+        return true;
+      }
+
+      public VersionDirectory build() {
+        return new VersionDirectory(offsets, timestamps);
+      }
+    }
+  }
+
+  protected final ByteBuffer data;
   protected final int offset;
   protected final int length;
   protected final long baseTimestamp;
@@ -108,11 +269,29 @@ public abstract class OSHEntityImpl
   protected final int[] keys;
   protected final int dataOffset;
   protected final int dataLength;
+  protected final VersionDirectory versionDirectory;
 
   public OSHEntityImpl(final byte[] data, final int offset, final int length, final long baseId,
       final long baseTimestamp, final long baseLongitude, final long baseLatitude,
       final byte header, final long id, final OSHDBBoundingBox bbox, final int[] keys,
       final int dataOffset, final int dataLength) {
+    this(ByteBuffer.wrap(data), offset, length, baseId, baseTimestamp, baseLongitude, baseLatitude,
+        header, id, bbox, keys, dataOffset, dataLength);
+  }
+
+  public OSHEntityImpl(final ByteBuffer data, final int offset, final int length, final long baseId,
+      final long baseTimestamp, final long baseLongitude, final long baseLatitude,
+      final byte header, final long id, final OSHDBBoundingBox bbox, final int[] keys,
+      final int dataOffset, final int dataLength) {
+    this(data, offset, length, baseId, baseTimestamp, baseLongitude, baseLatitude, header, id,
+        bbox, keys, dataOffset, dataLength, null);
+  }
+
+  protected OSHEntityImpl(final ByteBuffer data, final int offset, final int length,
+      final long baseId, final long baseTimestamp, final long baseLongitude,
+      final long baseLatitude, final byte header, final long id, final OSHDBBoundingBox bbox,
+      final int[] keys, final int dataOffset, final int dataLength,
+      final VersionDirectory versionDirectory) {
     this.data = data;
     this.offset = offset;
     this.length = length;
@@ -127,14 +306,274 @@ public abstract class OSHEntityImpl
     this.keys = keys;
     this.dataOffset = dataOffset;
     this.dataLength = dataLength;
+    this.versionDirectory = versionDirectory;
+  }
+
+  /**
+   * Evaluates a header filter on the encoded header of an entity, without decoding the entity.
+   *
+   * @param wrapper positioned right after the entity's header byte
+   * @param hasBoundingBox if the header contains a bounding box
+   * @param hasTags if the header contains a tag key list
+   * @return false if the entity can't pass the filter
+   */
+  static boolean matchesHeader(final ByteArrayWrapper wrapper, final boolean hasBoundingBox,
+      final boolean hasTags, final long baseLongitude, final long baseLatitude,
+      final OSHEntityHeaderFilter filter) throws IOException {
+    if (hasBoundingBox) {
+      final long minLon = baseLongitude + wrapper.readSInt64();
+      final long maxLon = minLon + wrapper.readUInt64();
+      final long minLat = baseLatitude + wrapper.readSInt64();
+      final long maxLat = minLat + wrapper.readUInt64();
+      if (!filter.testBoundingBox(minLon, minLat, maxLon, maxLat)) {
+        return false;
+      }
+    }
+    final long mask = filter.getTagKeyGroupsMask();
+    if (mask == 0) {
+      return true;
+    }
+    long matched = 0;
+    if (hasTags) {
+      final int size = wrapper.readUInt32();
+      for (int i = 0; i < size && matched != mask; i++) {
+        matched |= filter.testTagKey(wrapper.readUInt32());
+      }
+    }
+    return matched == mask;
+  }
+
+  /**
+   * Returns the versions of this entity starting at the one valid at the given timestamp.
+   *
+   * <p>If the entity has a {@link VersionDirectory}, decoding starts at the closest preceding
+   * entry of the directory instead of the newest version.</p>
+   */
+  @Override
+  public Iterable<? extends OSMEntity> getVersions(OSHDBTimestamp timestamp) {
+    if (versionDirectory == null) {
+      return OSHEntity.super.getVersions(timestamp);
+    }
+    final int entry = versionDirectory.seek(timestamp.getRawUnixTimestamp());
+    return () -> {
+      final PeekingIterator<OSMEntity> itr = Iterators.peekingIterator(iterator(entry));
+      while (itr.hasNext()
+          && itr.peek().getTimestamp().getRawUnixTimestamp() > timestamp.getRawUnixTimestamp()) {
+        itr.next();
+      }
+      return itr;
+    };
+  }
+
+  @Override
+  public OSMEntityCursor getVersionCursor(OSHDBTimestamp timestamp) {
+    final int entry =
+        versionDirectory != null ? versionDirectory.seek(timestamp.getRawUnixTimestamp()) : -1;
+    final VersionCursor cursor = createVersionCursor(entry);
+    if (cursor == null) {
+      return OSHEntity.super.getVersionCursor(timestamp);
+    }
+    cursor.skipNewer(timestamp.getRawUnixTimestamp());
+    return cursor;
+  }
+
+  /**
+   * Returns an iterator over the versions of this entity, starting at the given entry of its
+   * {@link VersionDirectory} (or at the newest version if the entry is -1).
+   */
+  protected Iterator<? extends OSMEntity> iterator(int entry) {
+    return getVersions().iterator();
+  }
+
+  /**
+   * Returns a cursor decoding the versions of this entity, starting at the given entry of its
+   * {@link VersionDirectory} (or at the newest version if the entry is -1), or null if this kind
+   * of entity doesn't support cursors.
+   */
+  protected VersionCursor createVersionCursor(int entry) {
+    return null;
+  }
+
+  /**
+   * Cursor decoding the versions of this entity directly from its data, see
+   * {@link OSMEntityCursor}. Subclasses decode their type specific changes in
+   * {@link #readChanges(ByteArrayWrapper, byte)}.
+   */
+  protected abstract class VersionCursor implements OSMEntityCursor {
+    private final ByteArrayWrapper wrapper;
+    private int nextEntry;
+    private boolean pending = false;
+
+    protected int version = 0;
+    protected long timestamp = 0;
+    protected long changeset = 0;
+    protected int userId = 0;
+    protected int[] keyValues = new int[0];
+
+    protected VersionCursor(int entry) {
+      final int start = getVersionsOffset(entry);
+      wrapper = ByteArrayWrapper.newInstance(data, start, dataLength - (start - dataOffset));
+      nextEntry = entry + 1;
+    }
+
+    /**
+     * Reads the type specific changes of the current version.
+     */
+    protected abstract void readChanges(ByteArrayWrapper wrapper, byte changed) throws IOException;
+
+    /**
+     * Resets the type specific state, at the entries of the version directory.
+     */
+    protected abstract void restart();
+
+    @Override
+    public boolean next() {
+      if (pending) {
+        pending = false;
+        return true;
+      }
+      if (wrapper.hasLeft() <= 0) {
+        return false;
+      }
+      try {
+        if (isVersionDirectoryEntry(nextEntry, wrapper.getPos())) {
+          // the delta encoding restarts at the entries of the version directory
+          version = 0;
+          timestamp = 0;
+          changeset = 0;
+          userId = 0;
+          keyValues = new int[0];
+          restart();
+          nextEntry++;
+        }
+        version = wrapper.readSInt32() + version;
+        timestamp = wrapper.readSInt64() + timestamp;
+        changeset = wrapper.readSInt64() + changeset;
+
+        final byte changed = wrapper.readRawByte();
+
+        if ((changed & Builder.CHANGED_USER_ID) != 0) {
+          userId = wrapper.readSInt32() + userId;
+        }
+
+        if ((changed & Builder.CHANGED_TAGS) != 0) {
+          final int size = wrapper.readUInt32();
+          keyValues = new int[size];
+          for (int i = 0; i < size; i++) {
+            keyValues[i] = wrapper.readUInt32();
+          }
+        }
+
+        readChanges(wrapper, changed);
+        return true;
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      return false;
+    }
+
+    /**
+     * Skips all versions newer than the given timestamp, such that the next call to
+     * {@link #next()} moves to the version valid at this timestamp.
+     */
+    void skipNewer(long timestamp) {
+      while (next()) {
+        if (getTimestamp() <= timestamp) {
+          pending = true;
+          return;
+        }
+      }
+    }
+
+    @Override
+    public int getVersion() {
+      return Math.abs(version);
+    }
+
+    @Override
+    public boolean isVisible() {
+      return version >= 0;
+    }
+
+    @Override
+    public long getTimestamp() {
+      return baseTimestamp + timestamp;
+    }
+
+    @Override
+    public long getChangesetId() {
+      return changeset;
+    }
+
+    @Override
+    public int getUserId() {
+      return userId;
+    }
+
+    @Override
+    public int[] getRawTags() {
+      return keyValues;
+    }
+  }
+
+  /**
+   * Iterator materializing the versions of a {@link VersionCursor}.
+   */
+  protected static class VersionIterator<T extends OSMEntity> implements Iterator<T> {
+    private final VersionCursor cursor;
+    private boolean advanced = false;
+    private boolean hasNext;
+
+    protected VersionIterator(VersionCursor cursor) {
+      this.cursor = cursor;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (!advanced) {
+        hasNext = cursor.next();
+        advanced = true;
+      }
+      return hasNext;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      advanced = false;
+      return (T) cursor.materialize();
+    }
+  }
+
+  /**
+   * Returns the absolute position of the versions starting at the given entry of the
+   * {@link VersionDirectory} (or of all versions if the entry is -1).
+   */
+  protected int getVersionsOffset(int entry) {
+    return entry < 0 ? dataOffset : dataOffset + versionDirectory.getOffset(entry);
+  }
+
+  /**
+   * Checks if the version at the given absolute position is the given entry of the
+   * {@link VersionDirectory}, i.e. if the decoder has to be reset before reading it.
+   */
+  protected boolean isVersionDirectoryEntry(int entry, int position) {
+    return versionDirectory != null && entry < versionDirectory.size()
+        && position == getVersionsOffset(entry);
   }
 
   public byte[] getData() {
-    if (offset == 0 && length == data.length) {
-      return data;
+    if (data.hasArray() && data.arrayOffset() == 0 && offset == 0
+        && length == data.array().length) {
+      return data.array();
     }
     byte[] result = new byte[length];
-    System.arraycopy(data, offset, result, 0, length);
+    ByteBuffer source = data.duplicate();
+    source.position(offset);
+    source.get(result);
     return result;
   }
 
@@ -200,7 +639,11 @@ public abstract class OSHEntityImpl
   }
 
   protected int writeTo(ObjectOutput out) throws IOException {
-    out.write(data, offset, length);
+    if (data.hasArray()) {
+      out.write(data.array(), data.arrayOffset() + offset, length);
+    } else {
+      out.write(getData());
+    }
     return length;
   }
 
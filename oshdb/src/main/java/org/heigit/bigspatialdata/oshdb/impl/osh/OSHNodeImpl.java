@@ -9,7 +9,10 @@ import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import org.heigit.bigspatialdata.oshdb.osh.NodeCoordinateTimeline;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntityHeaderFilter;
 import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
+import org.heigit.bigspatialdata.oshdb.osh.OSMNodeCursor;
 import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
 import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
 import org.heigit.bigspatialdata.oshdb.osm.OSMType;
@@ -30,6 +33,7 @@ public class OSHNodeImpl extends OSHEntityImpl implements OSHNode, Iterable<OSMN
   private static final int HEADER_TIMESTAMPS_NOT_IN_ORDER = 1 << 1;
   private static final int HEADER_HAS_TAGS = 1 << 2;
   private static final int HEADER_HAS_BOUNDINGBOX = 1 << 3;
+  private static final int HEADER_HAS_VERSION_DIRECTORY = 1 << 4;
 
   public static OSHNodeImpl instance(final byte[] data, final int offset, final int length)
       throws IOException {
@@ -39,6 +43,19 @@ public class OSHNodeImpl extends OSHEntityImpl implements OSHNode, Iterable<OSMN
   public static OSHNodeImpl instance(final byte[] data, final int offset, final int length,
       final long baseNodeId, final long baseTimestamp, final long baseLongitude,
       final long baseLatitude) throws IOException {
+    return instance(ByteBuffer.wrap(data), offset, length, baseNodeId, baseTimestamp, baseLongitude,
+        baseLatitude);
+  }
+
+  /**
+   * Decodes the entity record at the given (absolute) offset of the buffer without copying it.
+   *
+   * <p>The buffer can be a heap, direct or memory mapped buffer. Its position and limit are not
+   * modified, the entity keeps a reference to the buffer and reads its versions lazily.</p>
+   */
+  public static OSHNodeImpl instance(final ByteBuffer data, final int offset, final int length,
+      final long baseNodeId, final long baseTimestamp, final long baseLongitude,
+      final long baseLatitude) throws IOException {
 
     ByteArrayWrapper wrapper = ByteArrayWrapper.newInstance(data, offset, length);
     // header holds data on bitlevel and can then be compared to stereotypical
@@ -67,6 +84,12 @@ public class OSHNodeImpl extends OSHEntityImpl implements OSHNode, Iterable<OSMN
       keys = new int[0];
     }
     final long id = wrapper.readUInt64() + baseNodeId;
+    final VersionDirectory versionDirectory;
+    if ((header & HEADER_HAS_VERSION_DIRECTORY) != 0) {
+      versionDirectory = VersionDirectory.read(wrapper, baseTimestamp);
+    } else {
+      versionDirectory = null;
+    }
     final int dataOffset = wrapper.getPos();
 
     // TODO do we need dataLength?
@@ -74,15 +97,32 @@ public class OSHNodeImpl extends OSHEntityImpl implements OSHNode, Iterable<OSMN
     final int dataLength = length - (dataOffset - offset);
 
     return new OSHNodeImpl(data, offset, length, baseNodeId, baseTimestamp, baseLongitude, baseLatitude,
-        header, id, bbox, keys, dataOffset, dataLength);
+        header, id, bbox, keys, dataOffset, dataLength, versionDirectory);
   }
 
-  private OSHNodeImpl(final byte[] data, final int offset, final int length, final long baseNodeId,
+
+  /**
+   * Checks if the entity record at the given offset of the buffer can pass the given filter, by
+   * only looking at its encoded header. Nothing is allocated apart from a reader for the record.
+   */
+  public static boolean matchesHeader(final ByteBuffer data, final int offset, final int length,
+      final long baseLongitude, final long baseLatitude, final OSHEntityHeaderFilter filter)
+      throws IOException {
+    final ByteArrayWrapper wrapper = ByteArrayWrapper.newInstance(data, offset, length);
+    final byte header = wrapper.readRawByte();
+    return matchesHeader(wrapper, (header & HEADER_HAS_BOUNDINGBOX) != 0, (header & HEADER_HAS_TAGS) != 0,
+        baseLongitude, baseLatitude, filter);
+  }
+
+  // decoded lazily, see getCoordinateTimeline()
+  private transient NodeCoordinateTimeline coordinateTimeline = null;
+
+  private OSHNodeImpl(final ByteBuffer data, final int offset, final int length, final long baseNodeId,
       final long baseTimestamp, final long baseLongitude, final long baseLatitude,
       final byte header, final long id, final OSHDBBoundingBox bbox, final int[] keys,
-      final int dataOffset, final int dataLength) {
+      final int dataOffset, final int dataLength, final VersionDirectory versionDirectory) {
     super(data, offset, length, baseNodeId, baseTimestamp, baseLongitude, baseLatitude, header, id,
-        bbox, keys, dataOffset, dataLength);
+        bbox, keys, dataOffset, dataLength, versionDirectory);
   }
 
   @Override
@@ -124,62 +164,72 @@ public class OSHNodeImpl extends OSHEntityImpl implements OSHNode, Iterable<OSMN
 
   @Override
   public Iterator<OSMNode> iterator() {
-    return new Iterator<OSMNode>() {
-      ByteArrayWrapper wrapper = ByteArrayWrapper.newInstance(data, dataOffset, dataLength);
+    return iterator(-1);
+  }
 
-      int version = 0;
-      long timestamp = 0;
-      long changeset = 0;
-      int userId = 0;
-      int[] keyValues = new int[0];
+  @Override
+  protected Iterator<OSMNode> iterator(final int entry) {
+    return new VersionIterator<>(createVersionCursor(entry));
+  }
 
-      private long longitude = 0;
-      private long latitude = 0;
+  @Override
+  public OSMNodeCursor getVersionCursor() {
+    return new NodeCursor(-1);
+  }
 
-      @Override
-      public boolean hasNext() {
-        return wrapper.hasLeft() > 0;
-      }
+  @Override
+  protected VersionCursor createVersionCursor(int entry) {
+    return new NodeCursor(entry);
+  }
+
+  @Override
+  public NodeCoordinateTimeline getCoordinateTimeline() {
+    // the timeline is immutable, so concurrent initializations are harmless
+    NodeCoordinateTimeline timeline = coordinateTimeline;
+    if (timeline == null) {
+      timeline = NodeCoordinateTimeline.of(this);
+      coordinateTimeline = timeline;
+    }
+    return timeline;
+  }
+
+  private class NodeCursor extends VersionCursor implements OSMNodeCursor {
+    private long longitude = 0;
+    private long latitude = 0;
+
+    NodeCursor(int entry) {
+      super(entry);
+    }
 
-      @Override
-      public OSMNode next() {
-        try {
-          version = wrapper.readSInt32() + version;
-          timestamp = wrapper.readSInt64() + timestamp;
-          changeset = wrapper.readSInt64() + changeset;
-
-          byte changed = wrapper.readRawByte();
-
-          if ((changed & CHANGED_USER_ID) != 0) {
-            userId = wrapper.readSInt32() + userId;
-          }
-
-          if ((changed & CHANGED_TAGS) != 0) {
-            int size = wrapper.readUInt32();
-            if (size < 0) {
-              System.out.println("Something went wrong!");
-            }
-            keyValues = new int[size];
-            for (int i = 0; i < size; i++) {
-              keyValues[i] = wrapper.readUInt32();
-            }
-          }
-
-          if ((changed & CHANGED_LOCATION) != 0) {
-            longitude = wrapper.readSInt64() + longitude;
-            latitude = wrapper.readSInt64() + latitude;
-          }
-
-          return new OSMNode(id, version, new OSHDBTimestamp(baseTimestamp + timestamp), changeset,
-              userId, keyValues, (version > 0) ? baseLongitude + longitude : 0,
-              (version > 0) ? baseLatitude + latitude : 0);
-        } catch (IOException e) {
-          e.printStackTrace();
-        }
-
-        return null;
+    @Override
+    protected void readChanges(ByteArrayWrapper wrapper, byte changed) throws IOException {
+      if ((changed & CHANGED_LOCATION) != 0) {
+        longitude = wrapper.readSInt64() + longitude;
+        latitude = wrapper.readSInt64() + latitude;
       }
-    };
+    }
+
+    @Override
+    protected void restart() {
+      longitude = 0;
+      latitude = 0;
+    }
+
+    @Override
+    public long getLon() {
+      return version > 0 ? baseLongitude + longitude : 0;
+    }
+
+    @Override
+    public long getLat() {
+      return version > 0 ? baseLatitude + latitude : 0;
+    }
+
+    @Override
+    public OSMNode materialize() {
+      return new OSMNode(id, version, new OSHDBTimestamp(getTimestamp()), changeset, userId,
+          keyValues, getLon(), getLat());
+    }
   }
 
   public static OSHNodeImpl build(List<OSMNode> versions) throws IOException {
@@ -211,10 +261,19 @@ public class OSHNodeImpl extends OSHEntityImpl implements OSHNode, Iterable<OSMN
     long maxLat = Long.MIN_VALUE;
 
     Builder builder = new Builder(output, baseTimestamp);
+    VersionDirectory.Collector directory =
+        VersionDirectory.isUseful(versions) ? new VersionDirectory.Collector(versions.size()) : null;
 
-    for (OSMNode node : versions) {
+    for (int i = 0; i < versions.size(); i++) {
+      OSMNode node = versions.get(i);
       OSMEntity version = node;
 
+      if (directory != null && directory.add(i, output.length(), version)) {
+        builder.restart();
+        lastLongitude = baseLongitude;
+        lastLatitude = baseLatitude;
+      }
+
       byte changed = 0;
 
       if (version.isVisible()
@@ -252,6 +311,9 @@ public class OSHNodeImpl extends OSHEntityImpl implements OSHNode, Iterable<OSMN
     if (minLon != maxLon || minLat != maxLat) {
       header |= HEADER_HAS_BOUNDINGBOX;
     }
+    if (directory != null) {
+      header |= HEADER_HAS_VERSION_DIRECTORY;
+    }
 
     record.writeByte(header);
     if ((header & HEADER_HAS_BOUNDINGBOX) != 0) {
@@ -269,6 +331,9 @@ public class OSHNodeImpl extends OSHEntityImpl implements OSHNode, Iterable<OSMN
     }
 
     record.writeUInt64(id - baseId);
+    if (directory != null) {
+      directory.build().write(record, baseTimestamp);
+    }
     record.writeByteArray(output.array(), 0, output.length());
     
     return ByteBuffer.wrap(record.array(), 0, record.length());
@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntities;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntityHeaderFilter;
 import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
 import org.heigit.bigspatialdata.oshdb.osh.OSHRelation;
 import org.heigit.bigspatialdata.oshdb.osh.OSHWay;
@@ -42,6 +43,7 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
   private static final int HEADER_HAS_TAGS = 1 << 2;
   private static final int HEADER_HAS_NODES = 1 << 3;
   private static final int HEADER_HAS_WAYS = 1 << 4;
+  private static final int HEADER_MEMBERS_IN_DICTIONARY = 1 << 5;
 
   private final int[] nodeIndex;
   private final int nodeDataOffset;
@@ -51,6 +53,9 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
   private final int wayDataOffset;
   private final int wayDataLength;
 
+  // if set, the nodeIndex and wayIndex hold the indices of the members in this dictionary
+  private final OSHEntityDictionary dictionary;
+
   public static OSHRelationImpl instance(final byte[] data, final int offset, final int length)
       throws IOException {
     return instance(data, offset, length, 0, 0, 0, 0);
@@ -59,6 +64,33 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
   public static OSHRelationImpl instance(final byte[] data, final int offset, final int length,
       final long baseId, final long baseTimestamp, final long baseLongitude,
       final long baseLatitude) throws IOException {
+    return instance(ByteBuffer.wrap(data), offset, length, baseId, baseTimestamp, baseLongitude,
+        baseLatitude);
+  }
+
+  /**
+   * Decodes the entity record at the given (absolute) offset of the buffer without copying it.
+   *
+   * <p>The buffer can be a heap, direct or memory mapped buffer. Its position and limit are not
+   * modified, the entity keeps a reference to the buffer and reads its versions lazily.</p>
+   */
+  public static OSHRelationImpl instance(final ByteBuffer data, final int offset, final int length,
+      final long baseId, final long baseTimestamp, final long baseLongitude,
+      final long baseLatitude) throws IOException {
+    return instance(data, offset, length, baseId, baseTimestamp, baseLongitude, baseLatitude,
+        null);
+  }
+
+  /**
+   * Decodes the entity record at the given (absolute) offset of the buffer, resolving its member
+   * nodes and ways in the given shared dictionary of the cell.
+   *
+   * @param dictionary the dictionary of the cell the record belongs to, can be null if the record
+   *        embeds its members
+   */
+  public static OSHRelationImpl instance(final ByteBuffer data, final int offset, final int length,
+      final long baseId, final long baseTimestamp, final long baseLongitude,
+      final long baseLatitude, final OSHEntityDictionary dictionary) throws IOException {
 
     final ByteArrayWrapper wrapper = ByteArrayWrapper.newInstance(data, offset, length);
     final byte header = wrapper.readRawByte();
@@ -83,9 +115,16 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
     }
 
     final long id = wrapper.readUInt64() + baseId;
+    final boolean inDictionary = (header & HEADER_MEMBERS_IN_DICTIONARY) != 0;
+    if (inDictionary && dictionary == null) {
+      throw new IOException("relation " + id + " references the shared dictionary of its cell");
+    }
     final int[] nodeIndex;
     final int nodeDataLength;
-    if ((header & HEADER_HAS_NODES) != 0) {
+    if ((header & HEADER_HAS_NODES) != 0 && inDictionary) {
+      nodeIndex = readDictionaryIndex(wrapper);
+      nodeDataLength = 0;
+    } else if ((header & HEADER_HAS_NODES) != 0) {
       final int nodeIndexLength = wrapper.readUInt32();
       nodeIndex = new int[nodeIndexLength];
       int index = 0;
@@ -105,7 +144,10 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
 
     final int[] wayIndex;
     final int wayDataLength;
-    if ((header & HEADER_HAS_WAYS) != 0) {
+    if ((header & HEADER_HAS_WAYS) != 0 && inDictionary) {
+      wayIndex = readDictionaryIndex(wrapper);
+      wayDataLength = 0;
+    } else if ((header & HEADER_HAS_WAYS) != 0) {
       final int wayIndexLength = wrapper.readUInt32();
       wayIndex = new int[wayIndexLength];
       int index = 0;
@@ -132,15 +174,40 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
         header, id, bbox, keys, //
         dataOffset, dataLength, //
         nodeIndex, nodeDataOffset, nodeDataLength, //
-        wayIndex, wayDataOffset, wayDataLength);
+        wayIndex, wayDataOffset, wayDataLength, //
+        inDictionary ? dictionary : null);
   }
 
-  private OSHRelationImpl(final byte[] data, final int offset, final int length, final long baseId,
+  private static int[] readDictionaryIndex(final ByteArrayWrapper wrapper) throws IOException {
+    final int[] result = new int[wrapper.readUInt32()];
+    int index = 0;
+    for (int i = 0; i < result.length; i++) {
+      index = wrapper.readSInt32() + index;
+      result[i] = index;
+    }
+    return result;
+  }
+
+
+  /**
+   * Checks if the entity record at the given offset of the buffer can pass the given filter, by
+   * only looking at its encoded header. Nothing is allocated apart from a reader for the record.
+   */
+  public static boolean matchesHeader(final ByteBuffer data, final int offset, final int length,
+      final long baseLongitude, final long baseLatitude, final OSHEntityHeaderFilter filter)
+      throws IOException {
+    final ByteArrayWrapper wrapper = ByteArrayWrapper.newInstance(data, offset, length);
+    final byte header = wrapper.readRawByte();
+    return matchesHeader(wrapper, true, (header & HEADER_HAS_TAGS) != 0,
+        baseLongitude, baseLatitude, filter);
+  }
+
+  private OSHRelationImpl(final ByteBuffer data, final int offset, final int length, final long baseId,
       final long baseTimestamp, final long baseLongitude, final long baseLatitude,
       final byte header, final long id, final OSHDBBoundingBox bbox, final int[] keys,
       final int dataOffset, final int dataLength, final int[] nodeIndex, final int nodeDataOffset,
       final int nodeDataLength, final int[] wayIndex, final int wayDataOffset,
-      final int wayDataLength) {
+      final int wayDataLength, final OSHEntityDictionary dictionary) {
     super(data, offset, length, baseId, baseTimestamp, baseLongitude, baseLatitude, header, id,
         bbox, keys, dataOffset, dataLength);
 
@@ -152,6 +219,8 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
     this.wayDataOffset = wayDataOffset;
     this.wayDataLength = wayDataLength;
 
+    this.dictionary = dictionary;
+
   }
 
   @Override
@@ -273,6 +342,12 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
 
   public List<OSHNode> getNodes() throws IOException {
     List<OSHNode> nodes = new ArrayList<>(nodeIndex.length);
+    if (dictionary != null) {
+      for (int index : nodeIndex) {
+        nodes.add(dictionary.getNode(index));
+      }
+      return nodes;
+    }
     for (int index = 0; index < nodeIndex.length; index++) {
       int offset = nodeIndex[index];
       int length =
@@ -286,6 +361,12 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
 
   public List<OSHWay> getWays() throws IOException {
     List<OSHWay> ways = new ArrayList<>(wayIndex.length);
+    if (dictionary != null) {
+      for (int index : wayIndex) {
+        ways.add(dictionary.getWay(index));
+      }
+      return ways;
+    }
     for (int index = 0; index < wayIndex.length; index++) {
       int offset = wayIndex[index];
       int length = ((index < wayIndex.length - 1) ? wayIndex[index + 1] : wayDataLength) - offset;
@@ -311,6 +392,21 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
   public static ByteBuffer buildRecord(final List<OSMRelation> versions, final Collection<OSHNode> nodes,
       final Collection<OSHWay> ways, final long baseId, final long baseTimestamp,
       final long baseLongitude, final long baseLatitude) throws IOException {
+    return buildRecord(versions, nodes, ways, baseId, baseTimestamp, baseLongitude, baseLatitude,
+        null);
+  }
+
+  /**
+   * Builds the record of a relation whose member nodes and ways are referenced by their index in
+   * the given shared dictionary, instead of being embedded into the record.
+   *
+   * @param dictionary the dictionary of the cell the record belongs to, which has to contain all
+   *        the given nodes and ways (or null to embed the members)
+   */
+  public static ByteBuffer buildRecord(final List<OSMRelation> versions,
+      final Collection<OSHNode> nodes, final Collection<OSHWay> ways, final long baseId,
+      final long baseTimestamp, final long baseLongitude, final long baseLatitude,
+      final OSHEntityDictionary.Builder dictionary) throws IOException {
     Collections.sort(versions, Collections.reverseOrder());
     ByteArrayOutputWrapper output = new ByteArrayOutputWrapper();
 
@@ -351,6 +447,12 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
 
       
       
+      if (dictionary != null) {
+        nodeOffsets.put(node.getId(), idx);
+        nodeByteArrayIndex[idx++] = dictionaryIndex(dictionary.getNodeIndex(node.getId()),
+            "node", node.getId());
+        continue;
+      }
       ByteBuffer buffer = OSHNodeImpl.buildRecord(OSHEntities.toList(node.getVersions()), 0, 0, baseLongitude, baseLatitude);
       nodeOffsets.put(node.getId(), idx);
       nodeByteArrayIndex[idx++] = offset;
@@ -371,6 +473,12 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
       minLat = Math.min(minLat, bbox.getMinLatLong());
       maxLat = Math.max(maxLat, bbox.getMaxLatLong());
       
+      if (dictionary != null) {
+        wayOffsets.put(way.getId(), idx);
+        wayByteArrayIndex[idx++] = dictionaryIndex(dictionary.getWayIndex(way.getId()),
+            "way", way.getId());
+        continue;
+      }
       ByteBuffer buffer = OSHWayImpl.buildRecord(OSHEntities.toList(way.getVersions()), way.getNodes(), 0, 0, baseLongitude, baseLatitude);
       wayOffsets.put(way.getId(), idx);
       wayByteArrayIndex[idx++] = offset;
@@ -452,6 +560,9 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
     if (!ways.isEmpty()) {
       header |= HEADER_HAS_WAYS;
     }
+    if (dictionary != null && (!nodes.isEmpty() || !ways.isEmpty())) {
+      header |= HEADER_MEMBERS_IN_DICTIONARY;
+    }
 
     record.writeByte(header);
 
@@ -469,6 +580,17 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
 
     record.writeUInt64(id - baseId);
 
+    if ((header & HEADER_MEMBERS_IN_DICTIONARY) != 0) {
+      if (!nodes.isEmpty()) {
+        writeDictionaryIndex(record, nodeByteArrayIndex);
+      }
+      if (!ways.isEmpty()) {
+        writeDictionaryIndex(record, wayByteArrayIndex);
+      }
+      record.writeByteArray(output.array(), 0, output.length());
+      return ByteBuffer.wrap(record.array(), 0, record.length());
+    }
+
     if (!nodes.isEmpty()) {
       record.writeUInt32(nodeByteArrayIndex.length);
       for (int i = 0; i < nodeByteArrayIndex.length; i++) {
@@ -492,8 +614,28 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
     return ByteBuffer.wrap(record.array(), 0, record.length());
   }
 
+  private static int dictionaryIndex(int index, String type, long id) {
+    if (index < 0) {
+      throw new IllegalArgumentException(type + " " + id + " is missing in the dictionary");
+    }
+    return index;
+  }
+
+  private static void writeDictionaryIndex(ByteArrayOutputWrapper record, int[] index)
+      throws IOException {
+    record.writeUInt32(index.length);
+    int lastIndex = 0;
+    for (int i = 0; i < index.length; i++) {
+      lastIndex = record.writeSInt32Delta(index[i], lastIndex);
+    }
+  }
+
   public void writeTo(ByteArrayOutputWrapper out) throws IOException {
-    out.writeByteArray(data, offset, length);
+    if (data.hasArray()) {
+      out.writeByteArray(data.array(), data.arrayOffset() + offset, length);
+    } else {
+      out.writeByteArray(getData());
+    }
   }
 
   private Object writeReplace() {
@@ -520,6 +662,14 @@ public class OSHRelationImpl extends OSHEntityImpl implements OSHRelation, Itera
 
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
+      if (entity.dictionary != null) {
+        // the dictionary of the cell isn't serialized along, embed the members into the record
+        ByteBuffer record = buildRecord(OSHEntities.toList(entity.getVersions()),
+            entity.getNodes(), entity.getWays(), 0, 0, 0, 0);
+        out.writeInt(record.remaining());
+        out.write(record.array(), 0, record.remaining());
+        return;
+      }
       out.writeInt(entity.getLength());
       entity.writeTo(out);
     }
@@ -15,8 +15,10 @@ import java.util.List;
 import java.util.Map;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntities;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntityHeaderFilter;
 import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
 import org.heigit.bigspatialdata.oshdb.osh.OSHWay;
+import org.heigit.bigspatialdata.oshdb.osh.OSMEntityCursor;
 import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
 import org.heigit.bigspatialdata.oshdb.osm.OSMMember;
 import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
@@ -39,10 +41,17 @@ public class OSHWayImpl extends OSHEntityImpl implements OSHWay, Iterable<OSMWay
   private static final int HEADER_TIMESTAMPS_NOT_IN_ORDER = 1 << 1;
   private static final int HEADER_HAS_TAGS = 1 << 2;
   private static final byte HEADER_HAS_NO_NODES = 1 << 3;
+  private static final int HEADER_HAS_VERSION_DIRECTORY = 1 << 4;
+  private static final int HEADER_NODES_IN_DICTIONARY = 1 << 5;
 
   private final int[] nodeIndex;
   private final int nodeDataOffset;
   private final int nodeDataLength;
+  // if set, the nodeIndex holds the indices of the nodes in this dictionary
+  private final OSHEntityDictionary dictionary;
+
+  // decoded lazily, see getNodes()
+  private transient List<OSHNode> nodes = null;
 
   public static OSHWayImpl instance(final byte[] data, final int offset, final int length)
       throws IOException {
@@ -52,6 +61,33 @@ public class OSHWayImpl extends OSHEntityImpl implements OSHWay, Iterable<OSMWay
   public static OSHWayImpl instance(final byte[] data, final int offset, final int length,
       final long baseId, final long baseTimestamp, final long baseLongitude,
       final long baseLatitude) throws IOException {
+    return instance(ByteBuffer.wrap(data), offset, length, baseId, baseTimestamp, baseLongitude,
+        baseLatitude);
+  }
+
+  /**
+   * Decodes the entity record at the given (absolute) offset of the buffer without copying it.
+   *
+   * <p>The buffer can be a heap, direct or memory mapped buffer. Its position and limit are not
+   * modified, the entity keeps a reference to the buffer and reads its versions lazily.</p>
+   */
+  public static OSHWayImpl instance(final ByteBuffer data, final int offset, final int length,
+      final long baseId, final long baseTimestamp, final long baseLongitude,
+      final long baseLatitude) throws IOException {
+    return instance(data, offset, length, baseId, baseTimestamp, baseLongitude, baseLatitude,
+        null);
+  }
+
+  /**
+   * Decodes the entity record at the given (absolute) offset of the buffer, resolving its nodes
+   * in the given shared dictionary of the cell.
+   *
+   * @param dictionary the dictionary of the cell the record belongs to, can be null if the record
+   *        embeds its nodes
+   */
+  public static OSHWayImpl instance(final ByteBuffer data, final int offset, final int length,
+      final long baseId, final long baseTimestamp, final long baseLongitude,
+      final long baseLatitude, final OSHEntityDictionary dictionary) throws IOException {
 
     ByteArrayWrapper wrapper = ByteArrayWrapper.newInstance(data, offset, length);
     final byte header = wrapper.readRawByte();
@@ -78,7 +114,19 @@ public class OSHWayImpl extends OSHEntityImpl implements OSHWay, Iterable<OSMWay
 
     final int[] nodeIndex;
     final int nodeDataLength;
-    if ((header & HEADER_HAS_NO_NODES) == 0) {
+    if ((header & HEADER_NODES_IN_DICTIONARY) != 0) {
+      if (dictionary == null) {
+        throw new IOException("way " + id + " references the shared dictionary of its cell");
+      }
+      final int nodeIndexLength = wrapper.readUInt32();
+      nodeIndex = new int[nodeIndexLength];
+      int index = 0;
+      for (int i = 0; i < nodeIndexLength; i++) {
+        index = wrapper.readSInt32() + index;
+        nodeIndex[i] = index;
+      }
+      nodeDataLength = 0;
+    } else if ((header & HEADER_HAS_NO_NODES) == 0) {
       final int nodeIndexLength = wrapper.readUInt32();
       nodeIndex = new int[nodeIndexLength];
       int index = 0;
@@ -94,25 +142,51 @@ public class OSHWayImpl extends OSHEntityImpl implements OSHWay, Iterable<OSMWay
 
     final int nodeDataOffset = wrapper.getPos();
 
-    final int dataOffset = nodeDataOffset + nodeDataLength;
+    final VersionDirectory versionDirectory;
+    if ((header & HEADER_HAS_VERSION_DIRECTORY) != 0) {
+      wrapper.seek(nodeDataOffset + nodeDataLength);
+      versionDirectory = VersionDirectory.read(wrapper, baseTimestamp);
+    } else {
+      versionDirectory = null;
+    }
+
+    final int dataOffset = versionDirectory != null ? wrapper.getPos()
+        : nodeDataOffset + nodeDataLength;
     final int dataLength = length - (dataOffset - offset);
 
     return new OSHWayImpl(data, offset, length, baseId, baseTimestamp, baseLongitude, baseLatitude,
-        header, id, bbox, keys, dataOffset, dataLength, nodeIndex, nodeDataOffset, nodeDataLength);
+        header, id, bbox, keys, dataOffset, dataLength, nodeIndex, nodeDataOffset, nodeDataLength,
+        (header & HEADER_NODES_IN_DICTIONARY) != 0 ? dictionary : null, versionDirectory);
   }
 
-  private OSHWayImpl(final byte[] data, final int offset, final int length, final long baseId,
+
+  /**
+   * Checks if the entity record at the given offset of the buffer can pass the given filter, by
+   * only looking at its encoded header. Nothing is allocated apart from a reader for the record.
+   */
+  public static boolean matchesHeader(final ByteBuffer data, final int offset, final int length,
+      final long baseLongitude, final long baseLatitude, final OSHEntityHeaderFilter filter)
+      throws IOException {
+    final ByteArrayWrapper wrapper = ByteArrayWrapper.newInstance(data, offset, length);
+    final byte header = wrapper.readRawByte();
+    return matchesHeader(wrapper, true, (header & HEADER_HAS_TAGS) != 0,
+        baseLongitude, baseLatitude, filter);
+  }
+
+  private OSHWayImpl(final ByteBuffer data, final int offset, final int length, final long baseId,
       final long baseTimestamp, final long baseLongitude, final long baseLatitude,
       final byte header, final long id, final OSHDBBoundingBox bbox, final int[] keys,
       final int dataOffset, final int dataLength, final int[] nodeIndex, final int nodeDataOffset,
-      final int nodeDataLength) {
+      final int nodeDataLength, final OSHEntityDictionary dictionary,
+      final VersionDirectory versionDirectory) {
     super(data, offset, length, baseId, baseTimestamp, baseLongitude, baseLatitude, header, id,
-        bbox, keys, dataOffset, dataLength);
+        bbox, keys, dataOffset, dataLength, versionDirectory);
 
 
     this.nodeIndex = nodeIndex;
     this.nodeDataOffset = nodeDataOffset;
     this.nodeDataLength = nodeDataLength;
+    this.dictionary = dictionary;
   }
 
   @Override
@@ -122,81 +196,114 @@ public class OSHWayImpl extends OSHEntityImpl implements OSHWay, Iterable<OSMWay
 
   @Override
   public Iterator<OSMWay> iterator() {
-    try {
-      final List<OSHNode> nodes = this.getNodes();
-      return new Iterator<OSMWay>() {
-        ByteArrayWrapper wrapper = ByteArrayWrapper.newInstance(data, dataOffset, dataLength);
-
-        int version = 0;
-        long timestamp = 0;
-        long changeset = 0;
-        int userId = 0;
-        int[] keyValues = new int[0];
-
-        OSMMember[] members = new OSMMember[0];
-
-        @Override
-        public boolean hasNext() {
-          return wrapper.hasLeft() > 0;
-        }
+    return iterator(-1);
+  }
 
-        @Override
-        public OSMWay next() {
-          try {
-            version = wrapper.readSInt32() + version;
-            timestamp = wrapper.readSInt64() + timestamp;
-            changeset = wrapper.readSInt64() + changeset;
+  @Override
+  protected Iterator<OSMWay> iterator(final int entry) {
+    return new VersionIterator<>(createVersionCursor(entry));
+  }
 
-            byte changed = wrapper.readRawByte();
+  @Override
+  public OSMEntityCursor getVersionCursor() {
+    return new WayCursor(-1);
+  }
 
-            if ((changed & CHANGED_USER_ID) != 0) {
-              userId = wrapper.readSInt32() + userId;
-            }
+  @Override
+  protected VersionCursor createVersionCursor(int entry) {
+    return new WayCursor(entry);
+  }
 
-            if ((changed & CHANGED_TAGS) != 0) {
-              int size = wrapper.readUInt32();
-              keyValues = new int[size];
-              for (int i = 0; i < size; i++) {
-                keyValues[i] = wrapper.readUInt32();
-              }
-            }
+  /**
+   * Cursor over the versions of this way. The node references are kept as primitive ids/indices,
+   * the member objects of a version are only created when it is materialized.
+   */
+  private class WayCursor extends VersionCursor {
+    private int refCount = 0;
+    // index of the referenced node in the node data of this way (or -1 if the node is missing)
+    private int[] refIndex = new int[0];
+    private long[] refIds = new long[0];
+
+    private List<OSHNode> wayNodes = null;
+    private OSMMember[] members = new OSMMember[0];
+
+    WayCursor(int entry) {
+      super(entry);
+    }
 
-            if ((changed & CHANGED_REFS) != 0) {
-              int size = wrapper.readUInt32();
-              members = new OSMMember[size];
-              long memberId = 0;
-              int memberOffset = 0;
-              OSHEntity member = null;
-              for (int i = 0; i < size; i++) {
-                memberOffset = wrapper.readUInt32();
-                if (memberOffset > 0) {
-                  member = nodes.get(memberOffset - 1);
-                  memberId = member.getId();
-
-                } else {
-                  member = null;
-                  memberId = wrapper.readSInt64() + memberId;
-                }
-                members[i] = new OSMMember(memberId, OSMType.NODE, -1, member);
-              }
+    @Override
+    protected void readChanges(ByteArrayWrapper wrapper, byte changed) throws IOException {
+      if ((changed & CHANGED_REFS) != 0) {
+        refCount = wrapper.readUInt32();
+        if (refIndex.length < refCount) {
+          refIndex = new int[refCount];
+          refIds = new long[refCount];
+        }
+        long memberId = 0;
+        for (int i = 0; i < refCount; i++) {
+          final int memberOffset = wrapper.readUInt32();
+          if (memberOffset > 0) {
+            // the ids of following refs are delta encoded against the id of this node
+            if (wayNodes == null) {
+              wayNodes = getNodes();
             }
+            refIndex[i] = memberOffset - 1;
+            memberId = wayNodes.get(refIndex[i]).getId();
+            refIds[i] = memberId;
+          } else {
+            refIndex[i] = -1;
+            memberId = wrapper.readSInt64() + memberId;
+            refIds[i] = memberId;
+          }
+        }
+        members = null;
+      }
+    }
 
-            return new OSMWay(id, version, new OSHDBTimestamp(baseTimestamp + timestamp), changeset,
-                userId, keyValues, members);
+    @Override
+    protected void restart() {
+      refCount = 0;
+      members = new OSMMember[0];
+    }
 
-          } catch (IOException e) {
-            e.printStackTrace();
-          }
-          return null;
+    @Override
+    public OSMWay materialize() {
+      if (members == null) {
+        // consecutive versions with the same refs share their member array
+        members = new OSMMember[refCount];
+        for (int i = 0; i < refCount; i++) {
+          final OSHEntity member = refIndex[i] >= 0 ? wayNodes.get(refIndex[i]) : null;
+          members[i] = new OSMMember(refIds[i], OSMType.NODE, -1, member);
         }
-      };
-    } catch (IOException e1) {
+      }
+      return new OSMWay(id, version, new OSHDBTimestamp(getTimestamp()), changeset, userId,
+          keyValues, members);
     }
-    return Collections.emptyIterator();
   }
 
+  /**
+   * Returns the nodes of this way. The node objects are decoded once and shared by all versions
+   * of the way, which allows them to keep their decoded location history (see
+   * {@link OSHNode#getCoordinateTimeline()}) when the way geometry is built repeatedly.
+   */
+  @Override
   public List<OSHNode> getNodes() throws IOException {
+    List<OSHNode> result = nodes;
+    if (result == null) {
+      result = Collections.unmodifiableList(decodeNodes());
+      nodes = result;
+    }
+    return result;
+  }
+
+  private List<OSHNode> decodeNodes() throws IOException {
     List<OSHNode> nodes = new ArrayList<>(nodeIndex.length);
+    if (dictionary != null) {
+      for (int index : nodeIndex) {
+        nodes.add(dictionary.getNode(index));
+      }
+      return nodes;
+    }
     long lastId = 0;
     for (int index = 0; index < nodeIndex.length; index++) {
       int offset = nodeIndex[index];
@@ -223,6 +330,19 @@ public class OSHWayImpl extends OSHEntityImpl implements OSHWay, Iterable<OSMWay
   public static ByteBuffer buildRecord(List<OSMWay> versions, Collection<OSHNode> nodes, final long baseId,
       final long baseTimestamp, final long baseLongitude, final long baseLatitude)
       throws IOException {
+    return buildRecord(versions, nodes, baseId, baseTimestamp, baseLongitude, baseLatitude, null);
+  }
+
+  /**
+   * Builds the record of a way whose nodes are referenced by their index in the given shared
+   * dictionary, instead of being embedded into the record.
+   *
+   * @param dictionary the dictionary of the cell the record belongs to, which has to contain all
+   *        the given nodes (or null to embed the nodes)
+   */
+  public static ByteBuffer buildRecord(List<OSMWay> versions, Collection<OSHNode> nodes,
+      final long baseId, final long baseTimestamp, final long baseLongitude,
+      final long baseLatitude, final OSHEntityDictionary.Builder dictionary) throws IOException {
     Collections.sort(versions, Collections.reverseOrder());
     ByteArrayOutputWrapper output = new ByteArrayOutputWrapper();
 
@@ -243,13 +363,22 @@ public class OSHWayImpl extends OSHEntityImpl implements OSHWay, Iterable<OSMWay
     long lastId = 0;
     for (OSHNode node : nodes) {
       final long nodeId = node.getId();
-      
-      ByteBuffer buffer = OSHNodeImpl.buildRecord(OSHEntities.toList(node.getVersions()), lastId, 0, baseLongitude, baseLatitude);
-      lastId = nodeId;
-      nodeOffsets.put(node.getId(), idx);
-      nodeByteArrayIndex[idx++] = offset;
-      offset = buffer.remaining();
-      nodeData.writeByteArray(buffer.array(), 0, buffer.remaining());
+
+      if (dictionary != null) {
+        final int dictionaryIndex = dictionary.getNodeIndex(nodeId);
+        if (dictionaryIndex < 0) {
+          throw new IllegalArgumentException("node " + nodeId + " is missing in the dictionary");
+        }
+        nodeOffsets.put(nodeId, idx);
+        nodeByteArrayIndex[idx++] = dictionaryIndex;
+      } else {
+        ByteBuffer buffer = OSHNodeImpl.buildRecord(OSHEntities.toList(node.getVersions()), lastId, 0, baseLongitude, baseLatitude);
+        lastId = nodeId;
+        nodeOffsets.put(node.getId(), idx);
+        nodeByteArrayIndex[idx++] = offset;
+        offset = buffer.remaining();
+        nodeData.writeByteArray(buffer.array(), 0, buffer.remaining());
+      }
 
       Iterator<OSMNode> osmItr = node.getVersions().iterator();
       while (osmItr.hasNext()) {
@@ -265,13 +394,25 @@ public class OSHWayImpl extends OSHEntityImpl implements OSHWay, Iterable<OSMWay
     }
 
     Builder builder = new Builder(output, baseTimestamp);
+    VersionDirectory.Collector directory =
+        VersionDirectory.isUseful(versions) ? new VersionDirectory.Collector(versions.size()) : null;
 
-    for (OSMWay way : versions) {
+    for (int i = 0; i < versions.size(); i++) {
+      OSMWay way = versions.get(i);
       OSMEntity version = way;
 
       byte changed = 0;
       OSMMember[] refs = way.getRefs();
-      if (version.isVisible() && !memberEquals(refs, lastRefs)) {
+      if (directory != null && directory.add(i, output.length(), version)) {
+        builder.restart();
+        // the decoder starts again without refs, deleted versions keep the previous ones
+        if (!version.isVisible()) {
+          refs = lastRefs;
+        }
+        if (refs.length > 0) {
+          changed |= CHANGED_REFS;
+        }
+      } else if (version.isVisible() && !memberEquals(refs, lastRefs)) {
         changed |= CHANGED_REFS;
       }
 
@@ -308,6 +449,11 @@ public class OSHWayImpl extends OSHEntityImpl implements OSHWay, Iterable<OSMWay
     }
     if (nodes.isEmpty()) {
       header |= HEADER_HAS_NO_NODES;
+    } else if (dictionary != null) {
+      header |= HEADER_NODES_IN_DICTIONARY;
+    }
+    if (directory != null) {
+      header |= HEADER_HAS_VERSION_DIRECTORY;
     }
 
     record.writeByte(header);
@@ -326,7 +472,13 @@ public class OSHWayImpl extends OSHEntityImpl implements OSHWay, Iterable<OSMWay
 
     record.writeUInt64(id - baseId);
 
-    if ((header & HEADER_HAS_NO_NODES) == 0) {
+    if ((header & HEADER_NODES_IN_DICTIONARY) != 0) {
+      record.writeUInt32(nodeByteArrayIndex.length);
+      int lastIndex = 0;
+      for (int i = 0; i < nodeByteArrayIndex.length; i++) {
+        lastIndex = record.writeSInt32Delta(nodeByteArrayIndex[i], lastIndex);
+      }
+    } else if ((header & HEADER_HAS_NO_NODES) == 0) {
       record.writeUInt32(nodeByteArrayIndex.length);
       for (int i = 0; i < nodeByteArrayIndex.length; i++) {
         record.writeUInt32(nodeByteArrayIndex[i]);
@@ -336,6 +488,9 @@ public class OSHWayImpl extends OSHEntityImpl implements OSHWay, Iterable<OSMWay
       record.writeByteArray(nodeData.array(), 0, nodeData.length());
     }
 
+    if (directory != null) {
+      directory.build().write(record, baseTimestamp);
+    }
     record.writeByteArray(output.array(), 0, output.length());
     return ByteBuffer.wrap(record.array(),0,record.length());
   }
@@ -376,6 +531,14 @@ public class OSHWayImpl extends OSHEntityImpl implements OSHWay, Iterable<OSMWay
 
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {
+      if (entity.dictionary != null) {
+        // the dictionary of the cell isn't serialized along, embed the nodes into the record
+        ByteBuffer record = buildRecord(OSHEntities.toList(entity.getVersions()),
+            entity.getNodes(), 0, 0, 0, 0);
+        out.writeInt(record.remaining());
+        out.write(record.array(), 0, record.remaining());
+        return;
+      }
       out.writeInt(entity.getLength());
       entity.writeTo(out);
     }
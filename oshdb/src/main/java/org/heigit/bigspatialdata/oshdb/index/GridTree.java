@@ -0,0 +1,93 @@
+package org.heigit.bigspatialdata.oshdb.index;
+
+import java.io.Serializable;
+import org.heigit.bigspatialdata.oshdb.OSHDB;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+
+/**
+ * Numbering of the grid cells of all zoom levels of an oshdb.
+ *
+ * <p>The numbering used by a database is stored in its metadata under the key
+ * {@link #METADATA_KEY}, databases without this entry use the {@link XYGridTree}.</p>
+ */
+public interface GridTree extends Serializable {
+
+  /**
+   * Metadata property holding the name of the grid used by an oshdb.
+   */
+  String METADATA_KEY = "index.grid";
+
+  /**
+   * Returns the name of this grid, as stored in the metadata of a database.
+   */
+  String getName();
+
+  /**
+   * Returns the cell of the given zoom level which covers the given coordinate.
+   */
+  CellId getId(int level, long longitude, long latitude);
+
+  /**
+   * Calculate cell, a line or relation should be stored in.
+   */
+  CellId getInsertId(OSHDBBoundingBox bbox);
+
+  /**
+   * Get the ranges of CellIds in all zoom levels for a given bbox.
+   *
+   * @param bbox the area of interest
+   * @param enlarge if true, cells which can hold entities extending into the bbox are included
+   */
+  Iterable<CellIdRange> bbox2CellIdRanges(OSHDBBoundingBox bbox, boolean enlarge);
+
+  /**
+   * Calculate the bounding box of a cell.
+   *
+   * @param cellId the cell
+   * @param enlarge if true, the bbox is enlarged to the area entities of this cell can cover
+   */
+  OSHDBBoundingBox getBoundingBox(CellId cellId, boolean enlarge);
+
+  /**
+   * Calculate the bounding box of all cells of a range of cell ids.
+   *
+   * <p>The default implementation joins the bounding boxes of all cells of the range, which works
+   * for any numbering of the cells but takes time linear in the size of the range. Grids should
+   * override it with a computation based on their numbering.</p>
+   *
+   * @param range a range of cells of one zoom level
+   * @param enlarge if true, the bbox is enlarged to the area entities of these cells can cover
+   */
+  default OSHDBBoundingBox getBoundingBox(CellIdRange range, boolean enlarge) {
+    final int level = range.getStart().getZoomLevel();
+    final long end = range.getEnd().getId();
+    final OSHDBBoundingBox result = getBoundingBox(range.getStart(), enlarge);
+    for (long id = range.getStart().getId(); id < end; ) {
+      id++;
+      result.add(getBoundingBox(new CellId(level, id), enlarge));
+    }
+    return result;
+  }
+
+  /**
+   * Creates the grid with the given name.
+   *
+   * @param name the name of the grid, the xy grid is used if null
+   * @param maxzoom the maximum zoom to be used
+   * @throws IllegalArgumentException if there is no grid with this name
+   */
+  static GridTree of(String name, int maxzoom) {
+    if (name == null || XYGridTree.NAME.equalsIgnoreCase(name)) {
+      return new XYGridTree(maxzoom);
+    } else if (HilbertGridTree.NAME.equalsIgnoreCase(name)) {
+      return new HilbertGridTree(maxzoom);
+    }
+    throw new IllegalArgumentException("unknown grid: " + name);
+  }
+
+  static GridTree of(String name) {
+    return of(name, OSHDB.MAXZOOM);
+  }
+}
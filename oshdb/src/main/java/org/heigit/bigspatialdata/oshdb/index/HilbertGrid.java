@@ -0,0 +1,329 @@
+package org.heigit.bigspatialdata.oshdb.index;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.heigit.bigspatialdata.oshdb.index.XYGrid.IdRange;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+
+/**
+ * HilbertGrid spans the same equal degree grid over the world as the {@link XYGrid}, but numbers
+ * its cells along a Hilbert curve.
+ *
+ * <p>The western and the eastern hemisphere are each covered by a square of 2^(zoom-1) x
+ * 2^(zoom-1) cells, which are traversed by a Hilbert curve one after the other (the curve of the
+ * western square ends next to the start of the curve of the eastern square). Cells which are close
+ * to each other therefore mostly get close ids, and a bounding box is covered by only a few
+ * contiguous ranges of ids instead of one range per row of cells.</p>
+ */
+public class HilbertGrid implements Grid, Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Calculate the OSHDBBoundingBox of a specific GridCell.
+   *
+   * @param cellID the cell, numbered by a HilbertGrid
+   * @param enlarge if true, the bbox is enlarged by one cell to the north-east
+   */
+  public static OSHDBBoundingBox getBoundingBox(final CellId cellID, boolean enlarge) {
+    HilbertGrid grid = new HilbertGrid(cellID.getZoomLevel());
+    return XYGrid.getBoundingBox(
+        new CellId(cellID.getZoomLevel(), grid.toXYId(cellID.getId())), enlarge);
+  }
+
+  private final XYGrid xyGrid;
+  // side length (in cells) of the squares of both hemispheres
+  private final long side;
+
+  /**
+   * @param zoom The zoom to be used, see {@link XYGrid#XYGrid(int)}.
+   */
+  public HilbertGrid(final int zoom) {
+    this.xyGrid = new XYGrid(zoom);
+    this.side = xyGrid.getLevel() == 0 ? 1 : 1L << (xyGrid.getLevel() - 1);
+  }
+
+  public int getLevel() {
+    return xyGrid.getLevel();
+  }
+
+  /**
+   * Returns the covering tile of a coordinate, see {@link XYGrid#getId(double, double)}.
+   *
+   * @return the ID of the tile or -1 if the coordinate is outside of the grid
+   */
+  @Override
+  public long getId(double longitude, double latitude) {
+    return fromXYId(xyGrid.getId(longitude, latitude));
+  }
+
+  public long getId(long longitude, long latitude) {
+    return fromXYId(xyGrid.getId(longitude, latitude));
+  }
+
+  /**
+   * Converts the id of a cell in the {@link XYGrid} of the same zoom level to its id in this grid.
+   */
+  public long fromXYId(long xyId) {
+    if (xyId < 0 || getLevel() == 0) {
+      return xyId;
+    }
+    final long x = xyId % (2 * side);
+    final long y = xyId / (2 * side);
+    return (x / side) * side * side + xy2d(side, x % side, y);
+  }
+
+  /**
+   * Converts the id of a cell in this grid to its id in the {@link XYGrid} of the same zoom level.
+   */
+  public long toXYId(long id) {
+    if (id < 0 || getLevel() == 0) {
+      return id;
+    }
+    final long half = id / (side * side);
+    final long[] xy = d2xy(side, id % (side * side));
+    return xy[1] * 2 * side + half * side + xy[0];
+  }
+
+  /**
+   * Calculates BBOX of given Cell.
+   *
+   * @param cellId ID of a cell calculated by getID
+   * @return a BBOX for that cell
+   */
+  public OSHDBBoundingBox getCellDimensions(final long cellId) {
+    return xyGrid.getCellDimensions(toXYId(cellId));
+  }
+
+  /**
+   * Calculates the BBOX of a range of cells.
+   *
+   * @param start ID of the first cell of the range
+   * @param end ID of the last cell of the range
+   * @param enlarge if true, the bbox is enlarged by one cell to the north-east
+   * @return a BBOX covering all cells of the range
+   */
+  public OSHDBBoundingBox getRangeDimensions(long start, long end, boolean enlarge) {
+    if (getLevel() == 0) {
+      return XYGrid.getBoundingBox(new CellId(0, 0), enlarge);
+    }
+    OSHDBBoundingBox result = null;
+    // split the range into the aligned squares of the curve it consists of
+    while (start <= end) {
+      long size = 1;
+      while (size < side && start % (size * size * 4) == 0 && start + size * size * 4 - 1 <= end) {
+        size *= 2;
+      }
+      final long[] xy = d2xy(side, start % (side * side));
+      final long minX = start / (side * side) * side + xy[0] / size * size;
+      final long minY = xy[1] / size * size;
+      OSHDBBoundingBox square = XYGrid.getBoundingBox(
+          new CellId(getLevel(), minY * 2 * side + minX), false);
+      square.add(XYGrid.getBoundingBox(
+          new CellId(getLevel(), (minY + size - 1) * 2 * side + minX + size - 1), enlarge));
+      if (result == null) {
+        result = square;
+      } else {
+        result.add(square);
+      }
+      start += size * size;
+    }
+    return result;
+  }
+
+  /**
+   * Returns number of Cells within given BBOX, see {@link XYGrid#getEstimatedIdCount}.
+   */
+  public long getEstimatedIdCount(final OSHDBBoundingBox data) {
+    return xyGrid.getEstimatedIdCount(data);
+  }
+
+  /**
+   * Calculates all tiles, that lie within a bounding-box, as contiguous ranges of ids.
+   *
+   * @param bbox The bounding box. First dimension is longitude, second is latitude.
+   * @param enlarge if true, the BBOX is enlarged by one tile to the south-west (bottom-left)
+   *        direction, if false only holds tiles that intersect with the given BBOX.
+   * @return the sorted ranges of tile ids, including {@link IdRange#INVALID} if the bbox extends
+   *         over the range of valid coordinates
+   */
+  public Set<IdRange> bbox2CellIdRanges(OSHDBBoundingBox bbox, boolean enlarge) {
+    return bbox2CellIdRanges(bbox, enlarge, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Calculates the tiles, that lie within a bounding-box, as at most maxRanges ranges of ids.
+   *
+   * <p>If the tiles of the bbox would need more ranges, the ranges with the smallest gaps between
+   * them are merged, so the result can also contain some tiles outside of the bbox.</p>
+   *
+   * @param bbox The bounding box. First dimension is longitude, second is latitude.
+   * @param enlarge if true, the BBOX is enlarged by one tile to the south-west (bottom-left)
+   *        direction, if false only holds tiles that intersect with the given BBOX.
+   * @param maxRanges the maximum number of ranges to return (not counting
+   *        {@link IdRange#INVALID})
+   * @return the sorted ranges of tile ids, including {@link IdRange#INVALID} if the bbox extends
+   *         over the range of valid coordinates
+   */
+  public Set<IdRange> bbox2CellIdRanges(OSHDBBoundingBox bbox, boolean enlarge, int maxRanges) {
+    Set<IdRange> rows = xyGrid.bbox2CellIdRanges(bbox, enlarge);
+    if (rows == null) {
+      return null;
+    }
+    Set<IdRange> result = new TreeSet<>();
+    if (rows.remove(IdRange.INVALID)) {
+      result.add(IdRange.INVALID);
+    }
+    if (getLevel() == 0) {
+      result.addAll(rows);
+      return result;
+    }
+
+    // the rows of the xy grid form one rectangle, or two at the date line
+    Map<Long, long[]> rectangles = new TreeMap<>();
+    for (IdRange row : rows) {
+      final long y = row.getStart() / (2 * side);
+      final long minX = row.getStart() % (2 * side);
+      final long maxX = row.getEnd() % (2 * side);
+      long[] rectangle = rectangles.computeIfAbsent(minX * 2 * side + maxX,
+          ignored -> new long[] {minX, y, maxX, y});
+      rectangle[1] = Math.min(rectangle[1], y);
+      rectangle[3] = Math.max(rectangle[3], y);
+    }
+
+    List<IdRange> ranges = new ArrayList<>();
+    for (long half = 0; half < 2; half++) {
+      decompose(half * side * side, side, half * side, rectangles.values(), ranges);
+    }
+    result.addAll(mergeRanges(ranges, maxRanges));
+    return result;
+  }
+
+  // appends the ranges of the cells of the square starting at curve position d, which lie in the
+  // given rectangles (minX, minY, maxX, maxY) to the result, in curve order
+  private void decompose(long d, long size, long offsetX, Collection<long[]> rectangles,
+      List<IdRange> result) {
+    final long[] xy = d2xy(side, d % (side * side));
+    final long minX = offsetX + xy[0] / size * size;
+    final long minY = xy[1] / size * size;
+    final long maxX = minX + size - 1;
+    final long maxY = minY + size - 1;
+    boolean intersects = false;
+    for (long[] rectangle : rectangles) {
+      if (minX >= rectangle[0] && maxX <= rectangle[2]
+          && minY >= rectangle[1] && maxY <= rectangle[3]) {
+        append(result, d, d + size * size - 1);
+        return;
+      }
+      intersects |= minX <= rectangle[2] && maxX >= rectangle[0]
+          && minY <= rectangle[3] && maxY >= rectangle[1];
+    }
+    if (!intersects) {
+      return;
+    }
+    final long quarter = size * size / 4;
+    for (int i = 0; i < 4; i++) {
+      decompose(d + i * quarter, size / 2, offsetX, rectangles, result);
+    }
+  }
+
+  private static void append(List<IdRange> ranges, long start, long end) {
+    if (!ranges.isEmpty() && ranges.get(ranges.size() - 1).getEnd() + 1 == start) {
+      start = ranges.remove(ranges.size() - 1).getStart();
+    }
+    ranges.add(IdRange.of(start, end));
+  }
+
+  /**
+   * Merges the given sorted and disjoint ranges into at most maxRanges ranges, by closing the
+   * smallest gaps between them.
+   */
+  static List<IdRange> mergeRanges(List<IdRange> ranges, int maxRanges) {
+    if (ranges.size() <= Math.max(1, maxRanges)) {
+      return ranges;
+    }
+    final long[] gaps = new long[ranges.size() - 1];
+    for (int i = 0; i < gaps.length; i++) {
+      gaps[i] = ranges.get(i + 1).getStart() - ranges.get(i).getEnd();
+    }
+    int toClose = ranges.size() - Math.max(1, maxRanges);
+    final long[] sortedGaps = gaps.clone();
+    Arrays.sort(sortedGaps);
+    final long threshold = sortedGaps[toClose - 1];
+    // gaps of exactly the threshold size are closed from the start until enough are closed
+    int closeAtThreshold = toClose;
+    for (long gap : gaps) {
+      if (gap < threshold) {
+        closeAtThreshold--;
+      }
+    }
+
+    List<IdRange> result = new ArrayList<>(ranges.size() - toClose);
+    long start = ranges.get(0).getStart();
+    for (int i = 0; i < gaps.length; i++) {
+      boolean close = gaps[i] < threshold;
+      if (!close && gaps[i] == threshold && closeAtThreshold > 0) {
+        close = true;
+        closeAtThreshold--;
+      }
+      if (!close) {
+        result.add(IdRange.of(start, ranges.get(i).getEnd()));
+        start = ranges.get(i + 1).getStart();
+      }
+    }
+    result.add(IdRange.of(start, ranges.get(ranges.size() - 1).getEnd()));
+    return result;
+  }
+
+  // position of the cell (x,y) on the Hilbert curve through a square of n x n cells
+  static long xy2d(long n, long x, long y) {
+    long d = 0;
+    for (long s = n / 2; s > 0; s /= 2) {
+      final long rx = (x & s) > 0 ? 1 : 0;
+      final long ry = (y & s) > 0 ? 1 : 0;
+      d += s * s * ((3 * rx) ^ ry);
+      // rotate the quadrant
+      if (ry == 0) {
+        if (rx == 1) {
+          x = s - 1 - x;
+          y = s - 1 - y;
+        }
+        final long t = x;
+        x = y;
+        y = t;
+      }
+    }
+    return d;
+  }
+
+  // cell (x,y) at position d of the Hilbert curve through a square of n x n cells
+  static long[] d2xy(long n, long d) {
+    long x = 0;
+    long y = 0;
+    for (long s = 1; s < n; s *= 2) {
+      final long rx = 1 & (d / 2);
+      final long ry = 1 & (d ^ rx);
+      // rotate the quadrant
+      if (ry == 0) {
+        if (rx == 1) {
+          x = s - 1 - x;
+          y = s - 1 - y;
+        }
+        final long t = x;
+        x = y;
+        y = t;
+      }
+      x += s * rx;
+      y += s * ry;
+      d /= 4;
+    }
+    return new long[] {x, y};
+  }
+}
@@ -0,0 +1,112 @@
+package org.heigit.bigspatialdata.oshdb.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.heigit.bigspatialdata.oshdb.OSHDB;
+import org.heigit.bigspatialdata.oshdb.index.XYGrid.IdRange;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+
+/**
+ * Multi zoomlevel functionality for the HilbertGrid.
+ *
+ * <p>Cells are inserted into the same zoom levels as with the {@link XYGridTree}, only their ids
+ * differ. The cells of a bbox are returned as at most {@link #getMaxRanges()} ranges per zoom
+ * level, which can include some cells outside of the bbox.</p>
+ */
+public class HilbertGridTree implements GridTree {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Name of this grid in the metadata of a database, see {@link GridTree#METADATA_KEY}.
+   */
+  public static final String NAME = "hilbert";
+
+  /**
+   * Default maximum number of cell id ranges per zoom level.
+   */
+  public static final int DEFAULT_MAX_RANGES = 16;
+
+  private final int maxLevel;
+  private final int maxRanges;
+  private final Map<Integer, HilbertGrid> gridMap = new TreeMap<>();
+
+  /**
+   * Initialises all zoomlevel up until the given one.
+   *
+   * @param maxzoom the maximum zoom to be used
+   * @param maxRanges the maximum number of cell id ranges per zoom level returned by
+   *        {@link #bbox2CellIdRanges(OSHDBBoundingBox, boolean)}
+   */
+  public HilbertGridTree(int maxzoom, int maxRanges) {
+    if (maxRanges < 1) {
+      throw new IllegalArgumentException("maximum number of ranges has to be positive");
+    }
+    this.maxLevel = maxzoom;
+    this.maxRanges = maxRanges;
+    for (int i = 0; i <= maxzoom; i++) {
+      gridMap.put(i, new HilbertGrid(i));
+    }
+  }
+
+  public HilbertGridTree(int maxzoom) {
+    this(maxzoom, DEFAULT_MAX_RANGES);
+  }
+
+  public HilbertGridTree() {
+    this(OSHDB.MAXZOOM);
+  }
+
+  public int getMaxRanges() {
+    return maxRanges;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public CellId getId(int level, long longitude, long latitude) {
+    return new CellId(level, gridMap.get(level).getId(longitude, latitude));
+  }
+
+  @Override
+  public CellId getInsertId(OSHDBBoundingBox bbox) {
+    for (int i = maxLevel; i >= 0; i--) {
+      if (gridMap.get(i).getEstimatedIdCount(bbox) > 2) {
+        continue;
+      }
+      return new CellId(i, gridMap.get(i).getId(bbox.getMinLonLong(), bbox.getMinLatLong()));
+    }
+    return null;
+  }
+
+  @Override
+  public Iterable<CellIdRange> bbox2CellIdRanges(OSHDBBoundingBox bbox, boolean enlarge) {
+    List<CellIdRange> result = new ArrayList<>();
+    for (int level = 0; level <= maxLevel; level++) {
+      for (IdRange range : gridMap.get(level).bbox2CellIdRanges(bbox, enlarge, maxRanges)) {
+        result.add(CellIdRange.of(
+            new CellId(level, range.getStart()),
+            new CellId(level, range.getEnd())
+        ));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public OSHDBBoundingBox getBoundingBox(CellId cellId, boolean enlarge) {
+    return HilbertGrid.getBoundingBox(cellId, enlarge);
+  }
+
+  @Override
+  public OSHDBBoundingBox getBoundingBox(CellIdRange range, boolean enlarge) {
+    return gridMap.get(range.getStart().getZoomLevel()).getRangeDimensions(
+        range.getStart().getId(), range.getEnd().getId(), enlarge);
+  }
+}
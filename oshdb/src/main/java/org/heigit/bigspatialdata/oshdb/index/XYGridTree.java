@@ -14,8 +14,14 @@ import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
 /**
  * Multi zoomlevel functionality for the XYGrid.
  */
-public class XYGridTree implements Serializable {
+public class XYGridTree implements GridTree {
   private static final long serialVersionUID = 1L;
+
+  /**
+   * Name of this grid in the metadata of a database, see {@link GridTree#METADATA_KEY}.
+   */
+  public static final String NAME = "xy";
+
   private final int maxLevel;
   private final Map<Integer, XYGrid> gridMap = new TreeMap<>();
 
@@ -35,6 +41,37 @@ public class XYGridTree implements Serializable {
     this(OSHDB.MAXZOOM);
   }
 
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public CellId getId(int level, long longitude, long latitude) {
+    return new CellId(level, gridMap.get(level).getId(longitude, latitude));
+  }
+
+  @Override
+  public OSHDBBoundingBox getBoundingBox(CellId cellId, boolean enlarge) {
+    return XYGrid.getBoundingBox(cellId, enlarge);
+  }
+
+  @Override
+  public OSHDBBoundingBox getBoundingBox(CellIdRange range, boolean enlarge) {
+    final int level = range.getStart().getZoomLevel();
+    final long columns = 1L << gridMap.get(level).getLevel();
+    long start = range.getStart().getId();
+    long end = range.getEnd().getId();
+    if (start / columns != end / columns) {
+      // the range spans several rows -> all columns of these rows
+      start = start - start % columns;
+      end = end - end % columns + columns - 1;
+    }
+    OSHDBBoundingBox result = XYGrid.getBoundingBox(new CellId(level, start), enlarge);
+    result.add(XYGrid.getBoundingBox(new CellId(level, end), enlarge));
+    return result;
+  }
+
   /**
    * Get CellIds in all zoomlevel for a given point.
    *
@@ -86,6 +123,7 @@ public class XYGridTree implements Serializable {
    * @param bbox
    * @return
    */
+  @Override
   public CellId getInsertId(OSHDBBoundingBox bbox) {
     for (int i=maxLevel; i>=0; i--) {
       if (gridMap.get(i).getEstimatedIdCount(bbox) > 2) {
@@ -215,6 +253,7 @@ public class XYGridTree implements Serializable {
    * @param enlarge
    * @return
    */
+  @Override
   @SuppressWarnings("Convert2Lambda")
   public Iterable<CellIdRange> bbox2CellIdRanges(final OSHDBBoundingBox bbox, final boolean enlarge) {
     return new Iterable<CellIdRange>() {
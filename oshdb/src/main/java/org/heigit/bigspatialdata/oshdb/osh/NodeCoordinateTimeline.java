@@ -0,0 +1,128 @@
+package org.heigit.bigspatialdata.oshdb.osh;
+
+import java.util.Arrays;
+import org.heigit.bigspatialdata.oshdb.OSHDB;
+
+/**
+ * Columnar location history of an osh node: the timestamps of all versions in ascending order
+ * with the corresponding visibility and coordinates as primitive arrays.
+ *
+ * <p>Allows to resolve the location of a node at arbitrary timestamps by binary search, without
+ * decoding and materializing the node's versions again. Used when building way geometries, see
+ * {@link OSHNode#getCoordinateTimeline()}.</p>
+ */
+public class NodeCoordinateTimeline {
+  private final long[] timestamps;
+  private final long[] longitudes;
+  private final long[] latitudes;
+  private final boolean[] visible;
+  private final boolean ordered;
+
+  private NodeCoordinateTimeline(long[] timestamps, long[] longitudes, long[] latitudes,
+      boolean[] visible) {
+    this.timestamps = timestamps;
+    this.longitudes = longitudes;
+    this.latitudes = latitudes;
+    this.visible = visible;
+    boolean ordered = true;
+    for (int i = 1; i < timestamps.length && ordered; i++) {
+      ordered = timestamps[i - 1] <= timestamps[i];
+    }
+    this.ordered = ordered;
+  }
+
+  /**
+   * Decodes the location history of the given osh node.
+   */
+  public static NodeCoordinateTimeline of(OSHNode osh) {
+    int size = 0;
+    long[] timestamps = new long[4];
+    long[] longitudes = new long[4];
+    long[] latitudes = new long[4];
+    boolean[] visible = new boolean[4];
+    OSMNodeCursor cursor = osh.getVersionCursor();
+    while (cursor.next()) {
+      if (size == timestamps.length) {
+        timestamps = Arrays.copyOf(timestamps, size * 2);
+        longitudes = Arrays.copyOf(longitudes, size * 2);
+        latitudes = Arrays.copyOf(latitudes, size * 2);
+        visible = Arrays.copyOf(visible, size * 2);
+      }
+      timestamps[size] = cursor.getTimestamp();
+      longitudes[size] = cursor.getLon();
+      latitudes[size] = cursor.getLat();
+      visible[size] = cursor.isVisible();
+      size++;
+    }
+    // versions are decoded newest first
+    final long[] ascTimestamps = new long[size];
+    final long[] ascLongitudes = new long[size];
+    final long[] ascLatitudes = new long[size];
+    final boolean[] ascVisible = new boolean[size];
+    for (int i = 0; i < size; i++) {
+      ascTimestamps[i] = timestamps[size - 1 - i];
+      ascLongitudes[i] = longitudes[size - 1 - i];
+      ascLatitudes[i] = latitudes[size - 1 - i];
+      ascVisible[i] = visible[size - 1 - i];
+    }
+    return new NodeCoordinateTimeline(ascTimestamps, ascLongitudes, ascLatitudes, ascVisible);
+  }
+
+  public int size() {
+    return timestamps.length;
+  }
+
+  /**
+   * Returns the index of the version which is valid at the given timestamp (the same version as
+   * returned by {@link OSHEntities#getByTimestamp(OSHEntity,
+   * org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp)}).
+   *
+   * @return the index of the version or -1 if the node didn't exist at this time
+   */
+  public int indexAt(long timestamp) {
+    if (!ordered) {
+      // the first matching version in the (newest first) order of the osh node
+      for (int i = timestamps.length - 1; i >= 0; i--) {
+        if (timestamps[i] <= timestamp) {
+          return i;
+        }
+      }
+      return -1;
+    }
+    int low = 0;
+    int high = timestamps.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (timestamps[mid] <= timestamp) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low - 1;
+  }
+
+  public long getTimestamp(int index) {
+    return timestamps[index];
+  }
+
+  public boolean isVisible(int index) {
+    return visible[index];
+  }
+
+  public long getLon(int index) {
+    return longitudes[index];
+  }
+
+  public long getLat(int index) {
+    return latitudes[index];
+  }
+
+  public double getLongitude(int index) {
+    return longitudes[index] * OSHDB.GEOM_PRECISION;
+  }
+
+  public double getLatitude(int index) {
+    return latitudes[index] * OSHDB.GEOM_PRECISION;
+  }
+}
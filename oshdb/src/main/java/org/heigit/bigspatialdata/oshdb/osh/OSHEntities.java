@@ -2,24 +2,22 @@ package org.heigit.bigspatialdata.oshdb.osh;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.SortedMap;
-import java.util.SortedSet;
 import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.Map.Entry;
 import java.util.function.Predicate;
-import java.util.stream.Stream;
 import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
 import org.heigit.bigspatialdata.oshdb.osm.OSMMember;
 import org.heigit.bigspatialdata.oshdb.osm.OSMRelation;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
 import org.heigit.bigspatialdata.oshdb.osm.OSMWay;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
-import com.google.common.collect.Lists;
 
 public abstract class OSHEntities {
   
@@ -35,9 +33,55 @@ public abstract class OSHEntities {
 
   public static SortedMap<OSHDBTimestamp, OSMEntity> getByTimestamps(
       OSHEntity osh, List<OSHDBTimestamp> byTimestamps) {
-    return getByTimestamps(osh.getVersions(), byTimestamps);
+    SortedMap<OSHDBTimestamp, OSMEntity> result = new TreeMap<>();
+    final long[] timestamps = new long[byTimestamps.size()];
+    for (int i = 0; i < timestamps.length; i++) {
+      timestamps[i] = byTimestamps.get(i).getRawUnixTimestamp();
+    }
+    final OSMEntity[] versions = new OSMEntity[timestamps.length];
+    getByTimestamps(osh, timestamps, timestamps.length, versions);
+    for (int i = 0; i < timestamps.length; i++) {
+      if (versions[i] != null) {
+        result.put(byTimestamps.get(i), versions[i]);
+      }
+    }
+    return result;
   }
-  
+
+  /**
+   * Looks up the versions of an osh entity which were valid at the given timestamps.
+   *
+   * <p>Only the versions which are valid at one of the timestamps are materialized. Consecutive
+   * timestamps at which the same version was valid reference the same osm entity object.</p>
+   *
+   * @param osh the osh entity to work on
+   * @param timestamps the timestamps (in ascending order)
+   * @param length the number of timestamps to look up, i.e. the used length of the arrays
+   * @param result receives the version valid at timestamps[i] at index i, or null if the entity
+   *        didn't exist yet at this time
+   */
+  public static void getByTimestamps(OSHEntity osh, long[] timestamps, int length,
+      OSMEntity[] result) {
+    Arrays.fill(result, 0, length, null);
+    if (length == 0) {
+      return;
+    }
+    // versions newer than the last requested timestamp can be skipped
+    int i = length - 1;
+    OSMEntityCursor cursor = osh.getVersionCursor(new OSHDBTimestamp(timestamps[i]));
+    while (i >= 0 && cursor.next()) {
+      final long timestamp = cursor.getTimestamp();
+      if (timestamp > timestamps[i]) {
+        continue;
+      }
+      OSMEntity osm = cursor.materialize();
+      while (i >= 0 && timestamp <= timestamps[i]) {
+        result[i] = osm;
+        i--;
+      }
+    }
+  }
+
   public static SortedMap<OSHDBTimestamp, OSMEntity> getByTimestamps(
       Iterable<? extends OSMEntity> versions, List<OSHDBTimestamp> byTimestamps) {
     SortedMap<OSHDBTimestamp, OSMEntity> result = new TreeMap<>();
@@ -72,7 +116,8 @@ public abstract class OSHEntities {
 
   public static OSMEntity getByTimestamp(OSHEntity osh,
       OSHDBTimestamp timestamp) {
-    return getByTimestamp(osh.getVersions(), timestamp);
+    OSMEntityCursor cursor = osh.getVersionCursor(timestamp);
+    return cursor.next() ? cursor.materialize() : null;
   }
   
   public static OSMEntity getByTimestamp(Iterable<? extends OSMEntity> versions,
@@ -114,59 +159,75 @@ public abstract class OSHEntities {
    */
   public static Map<OSHDBTimestamp, Long> getChangesetTimestamps(
       OSHEntity osh) {
-    if (osh instanceof OSHWay) {
-      return getChangesetTimestamps((OSHWay) osh);
-    } else if (osh instanceof OSHRelation) {
-      return getChangesetTimestamps((OSHRelation) osh);
-    }
-    return getChangesetTimestamps((OSHNode) osh);
-  }
-
-  static Map<OSHDBTimestamp, Long> getChangesetTimestamps(OSHNode osh) {
+    OSHEntityTimeline timeline = new OSHEntityTimeline();
+    getChangesetTimestamps(osh, timeline);
     Map<OSHDBTimestamp, Long> result = new TreeMap<>();
-    osh.getVersions().forEach(osm -> result.putIfAbsent(osm.getTimestamp(), osm.getChangesetId()));
+    for (int i = 0; i < timeline.size(); i++) {
+      result.put(new OSHDBTimestamp(timeline.getTimestamp(i)), timeline.getChangeset(i));
+    }
     return result;
   }
 
-  static Map<OSHDBTimestamp, Long> getChangesetTimestamps(OSHWay osh) {
-    Map<OSHDBTimestamp, Long> result = new TreeMap<>();
-
-    List<OSMWay> ways = toList(osh.getVersions());
-    ways.forEach(osm -> {
-      result.put(osm.getTimestamp(), osm.getChangesetId());
-    });
-
-    // recurse way nodes
-    try {
-      osh.getNodes().forEach(oshNode -> {
-        if (oshNode != null)
-          oshNode.getVersions().forEach(
-              osmNode -> result.putIfAbsent(osmNode.getTimestamp(), osmNode.getChangesetId()));
-      });
-    } catch (IOException e) {
+  /**
+   * Fills a timeline with the changeset ids which correspond to modifications of this entity or
+   * any of its child entities.
+   *
+   * <p>If there are several modifications at the same timestamp, the changeset of the entity
+   * itself has precedence over the ones of its child entities. The version column of the timeline
+   * contains the version number of the corresponding (possibly child) entity.</p>
+   *
+   * @param osh the osh entity to work on
+   * @param result the timeline to fill (sorted by timestamp, without duplicates)
+   */
+  public static void getChangesetTimestamps(OSHEntity osh, OSHEntityTimeline result) {
+    result.clear();
+    if (osh instanceof OSHNode) {
+      addNodeChangesetTimestamps((OSHNode) osh, result);
+    } else {
+      addChangesetTimestamps(osh, result);
     }
-
-    return result;
+    result.sortUnique();
   }
 
-  static Map<OSHDBTimestamp, Long> getChangesetTimestamps(OSHRelation osh) {
-    Map<OSHDBTimestamp, Long> result = new TreeMap<>();
-
-    List<OSMRelation> rels = toList(osh.getVersions());
-    rels.forEach(osmRel -> {
-      result.put(osmRel.getTimestamp(), osmRel.getChangesetId());
-    });
+  private static void addChangesetTimestamps(OSHEntity osh, OSHEntityTimeline result) {
+    // the oldest of several way/relation versions with the same timestamp has precedence
+    final int start = result.size();
+    OSMEntityCursor cursor = osh.getVersionCursor();
+    while (cursor.next()) {
+      result.add(cursor.getTimestamp(), cursor.getChangesetId(), cursor.getVersion());
+    }
+    result.reverse(start, result.size());
 
-    // recurse rel members
+    // recurse way nodes and relation members
     try {
-      Stream.concat(osh.getNodes().stream(), osh.getWays().stream()).forEach(oshEntity -> {
-        if (oshEntity != null)
-          OSHEntities.getChangesetTimestamps(oshEntity).forEach(result::putIfAbsent);
-      });
+      if (osh instanceof OSHWay) {
+        for (OSHNode oshNode : ((OSHWay) osh).getNodes()) {
+          if (oshNode != null) {
+            addNodeChangesetTimestamps(oshNode, result);
+          }
+        }
+      } else if (osh instanceof OSHRelation) {
+        for (OSHNode oshNode : ((OSHRelation) osh).getNodes()) {
+          if (oshNode != null) {
+            addNodeChangesetTimestamps(oshNode, result);
+          }
+        }
+        for (OSHWay oshWay : ((OSHRelation) osh).getWays()) {
+          if (oshWay != null) {
+            addChangesetTimestamps(oshWay, result);
+          }
+        }
+      }
     } catch (IOException e) {
     }
+  }
 
-    return result;
+  private static void addNodeChangesetTimestamps(OSHNode osh, OSHEntityTimeline result) {
+    // the newest of several node versions with the same timestamp has precedence
+    OSMNodeCursor cursor = osh.getVersionCursor();
+    while (cursor.next()) {
+      result.add(cursor.getTimestamp(), cursor.getChangesetId(), cursor.getVersion());
+    }
   }
 
   /**
@@ -177,11 +238,7 @@ public abstract class OSHEntities {
    * @return a list of timestamps where this entity has been modified
    */
   public static List<OSHDBTimestamp> getModificationTimestamps(OSHEntity osh) {
-    if (osh instanceof OSHWay)
-      return getModificationTimestamps((OSHWay) osh, true);
-    if (osh instanceof OSHRelation)
-      return getModificationTimestamps((OSHRelation) osh, true);
-    return getModificationTimestamps((OSHNode) osh, true);
+    return getModificationTimestamps(osh, true);
   }
 
   /**
@@ -197,28 +254,13 @@ public abstract class OSHEntities {
    */
   static List<OSHDBTimestamp> getModificationTimestamps(OSHEntity osh,
       boolean recurse) {
-    if (osh instanceof OSHWay)
-      return getModificationTimestamps((OSHWay) osh, recurse);
-    if (osh instanceof OSHRelation)
-      return getModificationTimestamps((OSHRelation) osh, recurse);
-    return getModificationTimestamps((OSHNode) osh, recurse);
-  }
-
-  static List<OSHDBTimestamp> getModificationTimestamps(OSHNode osh,
-      @SuppressWarnings({"unused", "SameParameterValue"}) boolean recurse) {
-    List<OSHDBTimestamp> result = new ArrayList<>();
-    for (OSMEntity osm : osh.getVersions()) {
-      result.add(osm.getTimestamp());
+    OSHEntityTimeline timeline = new OSHEntityTimeline();
+    if (osh instanceof OSHNode) {
+      addAllVersionTimestamps(osh, timeline);
+    } else {
+      addModificationTimestamps(osh, recurse, null, timeline);
     }
-    return Lists.reverse(result);
-  }
-
-  static List<OSHDBTimestamp> getModificationTimestamps(OSHWay osh, boolean recurse) {
-    return _getModificationTimestamps(osh, recurse, null);
-  }
-
-  static List<OSHDBTimestamp> getModificationTimestamps(OSHRelation osh, boolean recurse) {
-    return _getModificationTimestamps(osh, recurse, null);
+    return timeline.toTimestampList();
   }
 
   /**
@@ -239,31 +281,75 @@ public abstract class OSHEntities {
    */
   public static List<OSHDBTimestamp> getModificationTimestamps(OSHEntity osh,
       Predicate<OSMEntity> osmEntityFilter, Map<OSHDBTimestamp, Long> changesetTimestamps) {
-    List<OSHDBTimestamp> allModificationTimestamps;
-    if (osh instanceof OSHWay) {
-      allModificationTimestamps = getModificationTimestamps((OSHWay) osh, osmEntityFilter);
-    } else if (osh instanceof OSHRelation) {
-      allModificationTimestamps = getModificationTimestamps((OSHRelation) osh, osmEntityFilter);
-    } else {
-      allModificationTimestamps = getModificationTimestamps((OSHNode) osh, osmEntityFilter);
+    OSHEntityTimeline changesets = new OSHEntityTimeline(changesetTimestamps.size());
+    for (Entry<OSHDBTimestamp, Long> changeset : changesetTimestamps.entrySet()) {
+      changesets.add(changeset.getKey().getRawUnixTimestamp(), changeset.getValue(), 0);
     }
+    changesets.sortUnique();
+    OSHEntityTimeline timeline = new OSHEntityTimeline();
+    getModificationTimestamps(osh, osmEntityFilter, changesets, timeline);
+    return timeline.toTimestampList();
+  }
 
-    if (allModificationTimestamps.size() <= 1) {
-      return allModificationTimestamps;
+  /**
+   * Fills a timeline with all timestamps at which this entity (or one or more of its child
+   * entities) has been modified and matches a given condition/filter, grouped by changeset as
+   * described in {@link #getModificationTimestamps(OSHEntity, Predicate, Map)}.
+   *
+   * <p>The changeset column of the resulting timeline is taken from the given changeset
+   * timeline (or -1 if a timestamp is not contained in it).</p>
+   *
+   * @param osh the osh entity to work on
+   * @param osmEntityFilter only timestamps for which the entity matches this filter are returned
+   * @param changesetTimestamps changeset timeline of the osh entity, as returned by
+   *        {@link #getChangesetTimestamps(OSHEntity, OSHEntityTimeline)}
+   * @param result the timeline to fill (sorted by timestamp)
+   */
+  public static void getModificationTimestamps(OSHEntity osh,
+      Predicate<OSMEntity> osmEntityFilter, OSHEntityTimeline changesetTimestamps,
+      OSHEntityTimeline result) {
+    getModificationTimestamps(osh, osmEntityFilter, result);
+    final int size = result.size();
+    if (size == 0) {
+      return;
     }
-    // group modification timestamps by changeset
-    List<OSHDBTimestamp> result = new ArrayList<>();
-    allModificationTimestamps = Lists.reverse(allModificationTimestamps);
-    Long nextChangeset = -1L;
-    for (OSHDBTimestamp timestamp : allModificationTimestamps) {
-      Long changeset = changesetTimestamps.get(timestamp);
-      if (!Objects.equals(changeset, nextChangeset)) {
-        result.add(timestamp);
+    // single forward merge of both (sorted) timelines: looks up the changeset of each
+    // modification and keeps only the last timestamp of consecutive modifications belonging to
+    // the same changeset
+    int kept = 0;
+    int c = advance(changesetTimestamps, result.getTimestamp(0), 0);
+    long changeset = lookupChangeset(changesetTimestamps, result.getTimestamp(0), c);
+    for (int i = 0; i < size; i++) {
+      final long nextChangeset;
+      if (i + 1 < size) {
+        c = advance(changesetTimestamps, result.getTimestamp(i + 1), c);
+        nextChangeset = lookupChangeset(changesetTimestamps, result.getTimestamp(i + 1), c);
+      } else {
+        nextChangeset = -1;
       }
-      nextChangeset = changeset;
+      if (changeset != nextChangeset || size == 1) {
+        result.set(kept++, i);
+        result.setChangeset(kept - 1, changeset);
+      }
+      changeset = nextChangeset;
+    }
+    result.truncate(kept);
+  }
+
+  // moves the position in a timeline forward to the first entry not older than the timestamp
+  private static int advance(OSHEntityTimeline timeline, long timestamp, int position) {
+    while (position < timeline.size() && timeline.getTimestamp(position) < timestamp) {
+      position++;
     }
+    return position;
+  }
 
-    return Lists.reverse(result);
+  private static long lookupChangeset(OSHEntityTimeline changesetTimestamps, long timestamp,
+      int position) {
+    return position < changesetTimestamps.size()
+        && changesetTimestamps.getTimestamp(position) == timestamp
+        ? changesetTimestamps.getChangeset(position)
+        : -1;
   }
 
   /**
@@ -276,204 +362,128 @@ public abstract class OSHEntities {
    */
   public static List<OSHDBTimestamp> getModificationTimestamps(OSHEntity osh,
       Predicate<OSMEntity> osmEntityFilter) {
-    if (osh instanceof OSHWay) {
-      return getModificationTimestamps((OSHWay) osh, osmEntityFilter);
-    } else if (osh instanceof OSHRelation) {
-      return getModificationTimestamps((OSHRelation) osh, osmEntityFilter);
-    }
-    return getModificationTimestamps((OSHNode) osh, osmEntityFilter);
+    OSHEntityTimeline timeline = new OSHEntityTimeline();
+    getModificationTimestamps(osh, osmEntityFilter, timeline);
+    return timeline.toTimestampList();
   }
 
-  static List<OSHDBTimestamp> getModificationTimestamps(OSHNode osh,
-      Predicate<OSMEntity> osmEntityFilter) {
-    List<OSHDBTimestamp> result = new ArrayList<>();
-    OSHDBTimestamp prevNonmatch = null;
-    for (OSMEntity osm : osh.getVersions()) {
-      if (osm.isVisible() && (osmEntityFilter == null || osmEntityFilter.test(osm))) {
-        if (prevNonmatch != null) {
-          result.add(prevNonmatch);
-          prevNonmatch = null;
-        }
-        result.add(osm.getTimestamp());
-      } else {
-        prevNonmatch = osm.getTimestamp();
-      }
+  /**
+   * Fills a timeline with all timestamps at which this entity (or one or more of its child
+   * entities) has been modified and matches a given condition/filter.
+   *
+   * <p>The changeset and version columns of the resulting timeline contain the changeset and
+   * version number of (one of) the entity versions modified at the respective timestamp.</p>
+   *
+   * @param osh the osh entity to work on
+   * @param osmEntityFilter only timestamps for which the entity matches this filter are returned
+   * @param result the timeline to fill (sorted by timestamp)
+   */
+  public static void getModificationTimestamps(OSHEntity osh,
+      Predicate<OSMEntity> osmEntityFilter, OSHEntityTimeline result) {
+    result.clear();
+    if (osh instanceof OSHNode) {
+      addMatchingNodeTimestamps((OSHNode) osh, osmEntityFilter, result);
+    } else {
+      addModificationTimestamps(osh, true, osmEntityFilter, result);
     }
-    return Lists.reverse(result);
-  }
-
-  static List<OSHDBTimestamp> getModificationTimestamps(OSHWay osh,
-      Predicate<OSMEntity> osmEntityFilter) {
-    return _getModificationTimestamps(osh, true, osmEntityFilter);
   }
 
-  static List<OSHDBTimestamp> getModificationTimestamps(OSHRelation osh,
-      Predicate<OSMEntity> osmEntityFilter) {
-    return _getModificationTimestamps(osh, true, osmEntityFilter);
+  // adds the timestamps of all versions (in ascending order)
+  private static void addAllVersionTimestamps(OSHEntity osh, OSHEntityTimeline result) {
+    final int start = result.size();
+    OSMEntityCursor cursor = osh.getVersionCursor();
+    while (cursor.next()) {
+      result.add(cursor.getTimestamp(), cursor.getChangesetId(), cursor.getVersion());
+    }
+    result.reverse(start, result.size());
   }
 
-  private static List<OSHDBTimestamp> _getModificationTimestamps(OSHWay osh, boolean recurse,
-      Predicate<OSMEntity> osmEntityFilter) {
-    List<OSHDBTimestamp> wayTs = new ArrayList<>();
-    List<OSMWay> versions = Lists.newLinkedList(osh.getVersions());
-    OSHDBTimestamp prevNonmatch = null;
-    for (OSMWay osm : versions) {
-      if (osm.isVisible() && (osmEntityFilter == null || osmEntityFilter.test(osm))) {
-        if (prevNonmatch != null) {
-          wayTs.add(prevNonmatch);
-          prevNonmatch = null;
+  private static void addMatchingNodeTimestamps(OSHNode osh,
+      Predicate<OSMEntity> osmEntityFilter, OSHEntityTimeline result) {
+    boolean hasPrevNonmatch = false;
+    long prevNonmatch = 0;
+    long prevNonmatchChangeset = 0;
+    int prevNonmatchVersion = 0;
+    OSMNodeCursor cursor = osh.getVersionCursor();
+    while (cursor.next()) {
+      // the filter is the only reason to materialize the node versions
+      if (cursor.isVisible() && (osmEntityFilter == null
+          || osmEntityFilter.test(cursor.materialize()))) {
+        if (hasPrevNonmatch) {
+          result.add(prevNonmatch, prevNonmatchChangeset, prevNonmatchVersion);
+          hasPrevNonmatch = false;
         }
-        wayTs.add(osm.getTimestamp());
+        result.add(cursor.getTimestamp(), cursor.getChangesetId(), cursor.getVersion());
       } else {
-        prevNonmatch = osm.getTimestamp();
+        hasPrevNonmatch = true;
+        prevNonmatch = cursor.getTimestamp();
+        prevNonmatchChangeset = cursor.getChangesetId();
+        prevNonmatchVersion = cursor.getVersion();
       }
     }
-    if (!recurse) {
-      return Lists.reverse(wayTs);
-    }
-
-    Map<OSHNode, LinkedList<OSHDBTimestamp>> childEntityTs = new TreeMap<>();
+    result.reverse(0, result.size());
+  }
 
-    OSHDBTimestamp nextT = new OSHDBTimestamp(Long.MAX_VALUE);
-    for (OSMWay osm : versions) {
-      OSHDBTimestamp thisT = osm.getTimestamp();
+  /**
+   * Adds the modification timestamps of a way or relation to the given (empty) timeline.
+   *
+   * <p>The modifications of child entities are included for the time intervals in which they
+   * are members of a (matching) version of the way or relation.</p>
+   */
+  private static void addModificationTimestamps(OSHEntity osh, boolean recurse,
+      Predicate<OSMEntity> osmEntityFilter, OSHEntityTimeline result) {
+    // modification timelines of the child entities, computed once per child
+    Map<OSHEntity, OSHEntityTimeline> childTimelines =
+        recurse ? new IdentityHashMap<>() : Collections.emptyMap();
+    OSMEntity prevNonmatch = null;
+    long nextT = Long.MAX_VALUE;
+    for (OSMEntity osm : osh.getVersions()) {
+      final long thisT = osm.getTimestamp().getRawUnixTimestamp();
       if (!osm.isVisible() || (osmEntityFilter != null && !osmEntityFilter.test(osm))) {
+        prevNonmatch = osm;
         nextT = thisT;
         continue;
       }
-      OSMMember[] nds = osm.getRefs();
-      for (OSMMember nd : nds) {
-        OSHNode oshNode = (OSHNode) nd.getEntity();
-        if (oshNode == null)
-          continue;
-        LinkedList<OSHDBTimestamp> childEntityValidityTimestamps;
-        if (!childEntityTs.containsKey(oshNode)) {
-          childEntityValidityTimestamps = new LinkedList<>();
-          childEntityTs.put(oshNode, childEntityValidityTimestamps);
-        } else {
-          childEntityValidityTimestamps = childEntityTs.get(oshNode);
-        }
-        if (childEntityValidityTimestamps.size() > 0
-            && childEntityValidityTimestamps.getFirst().equals(nextT)) {
-          // merge consecutive time intervals
-          childEntityValidityTimestamps.pop();
-          childEntityValidityTimestamps.push(thisT);
-        } else {
-          childEntityValidityTimestamps.push(nextT);
-          childEntityValidityTimestamps.push(thisT);
-        }
-      }
-      nextT = thisT;
-    }
-
-    SortedSet<OSHDBTimestamp> result = new TreeSet<>(wayTs);
-
-    for (Entry<OSHNode, LinkedList<OSHDBTimestamp>> childEntityT : childEntityTs.entrySet()) {
-      Iterator<OSHDBTimestamp> modTs = getModificationTimestamps(childEntityT.getKey()).iterator();
-      LinkedList<OSHDBTimestamp> validMemberTs = childEntityT.getValue();
-      OSHDBTimestamp current = modTs.next();
-      outerTLoop: while (!validMemberTs.isEmpty()) {
-        OSHDBTimestamp fromTs = validMemberTs.pop();
-        OSHDBTimestamp toTs = validMemberTs.pop();
-        while (current.compareTo(fromTs) < 0) {
-          if (!modTs.hasNext())
-            break outerTLoop;
-          current = modTs.next();
-        }
-        while (current.compareTo(toTs) <= 0) {
-          result.add(current);
-          if (!modTs.hasNext())
-            break outerTLoop;
-          current = modTs.next();
-        }
-      }
-    }
-
-    return new ArrayList<>(result);
-  }
-
-  private static List<OSHDBTimestamp> _getModificationTimestamps(OSHRelation osh, boolean recurse,
-      Predicate<OSMEntity> osmEntityFilter) {
-    List<OSHDBTimestamp> relTs = new ArrayList<>();
-    OSHDBTimestamp prevNonmatch = null;
-    List<OSMRelation> versions = Lists.newLinkedList(osh.getVersions());
-    for (OSMRelation osm : versions) {
-      if (osm.isVisible() && (osmEntityFilter == null || osmEntityFilter.test(osm))) {
-        if (prevNonmatch != null) {
-          relTs.add(prevNonmatch);
-          prevNonmatch = null;
-        }
-        relTs.add(osm.getTimestamp());
-      } else {
-        prevNonmatch = osm.getTimestamp();
+      if (prevNonmatch != null) {
+        result.add(prevNonmatch.getTimestamp().getRawUnixTimestamp(),
+            prevNonmatch.getChangesetId(), prevNonmatch.getVersion());
+        prevNonmatch = null;
       }
-    }
-    if (!recurse) {
-      return Lists.reverse(relTs);
-    }
-
-    Map<OSHEntity, LinkedList<OSHDBTimestamp>> childEntityTs = new TreeMap<>();
-    OSHDBTimestamp nextT = new OSHDBTimestamp(Long.MAX_VALUE);
-    for (OSMRelation osmRelation : versions) {
-      OSHDBTimestamp thisT = osmRelation.getTimestamp();
-      if (!osmRelation.isVisible() ||
-          (osmEntityFilter != null && !osmEntityFilter.test(osmRelation))) {
-        nextT = thisT;
-        continue;
-      }
-      for (OSMMember member : osmRelation.getMembers()) {
-        switch (member.getType()) {
-          case NODE:
-          case WAY:
-            OSHEntity oshEntity = member.getEntity();
-            if (oshEntity == null)
-              continue;
-            LinkedList<OSHDBTimestamp> childEntityValidityTimestamps;
-            if (!childEntityTs.containsKey(oshEntity)) {
-              childEntityValidityTimestamps = new LinkedList<>();
-              childEntityTs.put(oshEntity, childEntityValidityTimestamps);
-            } else {
-              childEntityValidityTimestamps = childEntityTs.get(oshEntity);
-            }
-            if (childEntityValidityTimestamps.size() > 0
-                && childEntityValidityTimestamps.getFirst().equals(nextT)) {
-              // merge consecutive time intervals
-              childEntityValidityTimestamps.pop();
-              childEntityValidityTimestamps.push(thisT);
+      result.add(thisT, osm.getChangesetId(), osm.getVersion());
+      if (recurse) {
+        final OSMMember[] members = osm instanceof OSMWay
+            ? ((OSMWay) osm).getRefs()
+            : ((OSMRelation) osm).getMembers();
+        for (OSMMember member : members) {
+          final OSHEntity child = member.getEntity();
+          if (child == null || member.getType() == OSMType.RELATION) {
+            continue;
+          }
+          OSHEntityTimeline childTimeline = childTimelines.get(child);
+          if (childTimeline == null) {
+            childTimeline = new OSHEntityTimeline();
+            if (child instanceof OSHNode) {
+              addAllVersionTimestamps(child, childTimeline);
             } else {
-              childEntityValidityTimestamps.push(nextT);
-              childEntityValidityTimestamps.push(thisT);
+              addModificationTimestamps(child, true, null, childTimeline);
             }
-          default:
-            break;
+            childTimeline.sortUnique();
+            childTimelines.put(child, childTimeline);
+          }
+          // modifications of the child while it was a member of this version
+          for (int i = childTimeline.lowerBound(thisT);
+              i < childTimeline.size() && childTimeline.getTimestamp(i) <= nextT; i++) {
+            result.add(childTimeline.getTimestamp(i), childTimeline.getChangeset(i),
+                childTimeline.getVersion(i));
+          }
         }
       }
       nextT = thisT;
     }
-
-    SortedSet<OSHDBTimestamp> result = new TreeSet<>(relTs);
-
-    for (Entry<OSHEntity, LinkedList<OSHDBTimestamp>> childEntityT : childEntityTs.entrySet()) {
-      Iterator<OSHDBTimestamp> modTs = getModificationTimestamps(childEntityT.getKey()).iterator();
-      LinkedList<OSHDBTimestamp> validMemberTs = childEntityT.getValue();
-      OSHDBTimestamp current = modTs.next();
-      outerTLoop: while (!validMemberTs.isEmpty()) {
-        OSHDBTimestamp fromTs = validMemberTs.pop();
-        OSHDBTimestamp toTs = validMemberTs.pop();
-        while (current.compareTo(fromTs) < 0) {
-          if (!modTs.hasNext())
-            break outerTLoop;
-          current = modTs.next();
-        }
-        while (current.compareTo(toTs) <= 0) {
-          result.add(current);
-          if (!modTs.hasNext())
-            break outerTLoop;
-          current = modTs.next();
-        }
-      }
+    if (recurse) {
+      result.sortUnique();
+    } else {
+      result.reverse(0, result.size());
     }
-
-    return new ArrayList<>(result);
   }
 }
@@ -7,6 +7,9 @@ import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
 import org.heigit.bigspatialdata.oshdb.osm.OSMType;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTagKey;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
 
 public interface OSHEntity {
 
@@ -23,7 +26,40 @@ public interface OSHEntity {
   boolean hasTagKey(int key);
 
   Iterable<? extends OSMEntity> getVersions();
+
+  /**
+   * Returns the versions of this entity (in the same order as {@link #getVersions()}), starting
+   * with the first version which is not newer than the given timestamp.
+   *
+   * <p>Implementations may seek directly to this version instead of decoding all newer ones.</p>
+   */
+  default Iterable<? extends OSMEntity> getVersions(OSHDBTimestamp timestamp) {
+    return () -> {
+      final PeekingIterator<OSMEntity> itr = Iterators.peekingIterator(getVersions().iterator());
+      while (itr.hasNext()
+          && itr.peek().getTimestamp().getRawUnixTimestamp() > timestamp.getRawUnixTimestamp()) {
+        itr.next();
+      }
+      return itr;
+    };
+  }
   
+  /**
+   * Returns a cursor over the versions of this entity, which doesn't create an osm entity object
+   * for every version, see {@link OSMEntityCursor}.
+   */
+  default OSMEntityCursor getVersionCursor() {
+    return OSMEntityCursor.of(getVersions());
+  }
+
+  /**
+   * Returns a cursor over the versions of this entity, starting with the first version which is
+   * not newer than the given timestamp, see {@link #getVersions(OSHDBTimestamp)}.
+   */
+  default OSMEntityCursor getVersionCursor(OSHDBTimestamp timestamp) {
+    return OSMEntityCursor.of(getVersions(timestamp));
+  }
+
   default List<OSHNode> getNodes() throws IOException {
     return Collections.emptyList();
   }
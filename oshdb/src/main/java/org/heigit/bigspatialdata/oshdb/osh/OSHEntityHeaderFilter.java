@@ -0,0 +1,87 @@
+package org.heigit.bigspatialdata.oshdb.osh;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+
+/**
+ * Filter conditions which can be evaluated on the encoded header of an osh entity (its bounding
+ * box and the union of its tag keys), before the entity is decoded.
+ *
+ * <p>Used to scan grid cells without materializing entities which can't match a query anyway,
+ * see {@link org.heigit.bigspatialdata.oshdb.grid.GridOSHEntity#getEntities(OSHEntityHeaderFilter)}.
+ * Passing the header filter doesn't imply that an entity matches all the query's filters, these
+ * still have to be applied to the decoded entities.</p>
+ */
+public class OSHEntityHeaderFilter implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final int[][] tagKeys;
+  private final OSHDBBoundingBox boundingBox;
+
+  /**
+   * Creates a new header filter.
+   *
+   * @param tagKeys groups of tag keys: an entity has to have (at some point of its history) at
+   *        least one of the keys of each group
+   * @param boundingBox (optional) the entity's bounding box has to intersect this one
+   */
+  public OSHEntityHeaderFilter(int[][] tagKeys, OSHDBBoundingBox boundingBox) {
+    this.tagKeys = new int[tagKeys.length][];
+    for (int i = 0; i < tagKeys.length; i++) {
+      this.tagKeys[i] = tagKeys[i].clone();
+      Arrays.sort(this.tagKeys[i]);
+    }
+    this.boundingBox = boundingBox;
+  }
+
+  /**
+   * Returns true if this filter accepts every entity.
+   */
+  public boolean isEmpty() {
+    return tagKeys.length == 0 && boundingBox == null;
+  }
+
+  /**
+   * Returns the number of tag key groups of this filter.
+   */
+  public int getTagKeyGroups() {
+    return tagKeys.length;
+  }
+
+  /**
+   * Returns a bit mask of the tag key groups which are satisfied by the given key.
+   *
+   * <p>An entity passes the tag key conditions of this filter if the union of the masks of all its
+   * keys is {@link #getTagKeyGroupsMask()}.</p>
+   */
+  public long testTagKey(int key) {
+    long result = 0;
+    for (int i = 0; i < tagKeys.length; i++) {
+      if (Arrays.binarySearch(tagKeys[i], key) >= 0) {
+        result |= 1L << i;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the bit mask of all tag key groups, or 0 if there are too many groups to be evaluated
+   * on the entity header (in which case the tag keys are not checked).
+   */
+  public long getTagKeyGroupsMask() {
+    if (tagKeys.length == 0 || tagKeys.length >= Long.SIZE) {
+      return 0;
+    }
+    return (1L << tagKeys.length) - 1;
+  }
+
+  /**
+   * Checks if the given bounding box (of an entity) intersects the one of this filter.
+   */
+  public boolean testBoundingBox(long minLon, long minLat, long maxLon, long maxLat) {
+    return boundingBox == null
+        || maxLat >= boundingBox.getMinLatLong() && minLat <= boundingBox.getMaxLatLong()
+        && maxLon >= boundingBox.getMinLonLong() && minLon <= boundingBox.getMaxLonLong();
+  }
+}
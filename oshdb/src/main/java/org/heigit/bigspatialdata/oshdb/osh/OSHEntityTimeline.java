@@ -0,0 +1,237 @@
+package org.heigit.bigspatialdata.oshdb.osh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+
+/**
+ * A growable list of (timestamp, changeset, version) triples stored in parallel primitive arrays.
+ *
+ * <p>Used as a reusable replacement of lists and sorted maps of {@link OSHDBTimestamp} objects when
+ * working with the history of osh entities, see the timeline methods of {@link OSHEntities}. After
+ * {@link #sortUnique()} (or when filled by these methods) the timestamps are sorted in ascending
+ * order, which allows to look up entries by binary search.</p>
+ */
+public class OSHEntityTimeline {
+  private long[] timestamps;
+  private long[] changesets;
+  private int[] versions;
+  private int size = 0;
+
+  // scratch space of sortUnique
+  private int[] order = new int[0];
+  private int[] orderBuffer = new int[0];
+  private long[] spareTimestamps = new long[0];
+  private long[] spareChangesets = new long[0];
+  private int[] spareVersions = new int[0];
+
+  public OSHEntityTimeline() {
+    this(16);
+  }
+
+  public OSHEntityTimeline(int capacity) {
+    timestamps = new long[capacity];
+    changesets = new long[capacity];
+    versions = new int[capacity];
+  }
+
+  /**
+   * Removes all entries, the allocated arrays are kept for reuse.
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  public void add(long timestamp, long changeset, int version) {
+    if (size == timestamps.length) {
+      final int capacity = Math.max(16, size * 2);
+      timestamps = Arrays.copyOf(timestamps, capacity);
+      changesets = Arrays.copyOf(changesets, capacity);
+      versions = Arrays.copyOf(versions, capacity);
+    }
+    timestamps[size] = timestamp;
+    changesets[size] = changeset;
+    versions[size] = version;
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public long getTimestamp(int index) {
+    return timestamps[index];
+  }
+
+  public long getChangeset(int index) {
+    return changesets[index];
+  }
+
+  public int getVersion(int index) {
+    return versions[index];
+  }
+
+  public void setChangeset(int index, long changeset) {
+    changesets[index] = changeset;
+  }
+
+  /**
+   * Copies the entry at index src to index dest.
+   */
+  public void set(int dest, int src) {
+    timestamps[dest] = timestamps[src];
+    changesets[dest] = changesets[src];
+    versions[dest] = versions[src];
+  }
+
+  /**
+   * Removes all entries from the given index on.
+   */
+  public void truncate(int size) {
+    this.size = Math.min(this.size, size);
+  }
+
+  /**
+   * Returns the backing array of the timestamps, of which only the first {@link #size()} entries
+   * are valid.
+   */
+  public long[] getTimestamps() {
+    return timestamps;
+  }
+
+  /**
+   * Returns the index of the given timestamp in this (sorted) timeline.
+   *
+   * @return the index of the timestamp or -1 if it is not contained in this timeline
+   */
+  public int indexOf(long timestamp) {
+    final int index = Arrays.binarySearch(timestamps, 0, size, timestamp);
+    return index >= 0 ? index : -1;
+  }
+
+  /**
+   * Returns the index of the first entry of this (sorted) timeline which is not older than the
+   * given timestamp, or {@link #size()} if there is no such entry.
+   */
+  public int lowerBound(long timestamp) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (timestamps[mid] < timestamp) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Reverses the order of the entries in the range [from, to).
+   */
+  public void reverse(int from, int to) {
+    for (int i = from, j = to - 1; i < j; i++, j--) {
+      final long timestamp = timestamps[i];
+      timestamps[i] = timestamps[j];
+      timestamps[j] = timestamp;
+      final long changeset = changesets[i];
+      changesets[i] = changesets[j];
+      changesets[j] = changeset;
+      final int version = versions[i];
+      versions[i] = versions[j];
+      versions[j] = version;
+    }
+  }
+
+  /**
+   * Sorts the entries by their timestamp and removes duplicate timestamps. Of entries with the
+   * same timestamp the one which was added first is kept.
+   */
+  public void sortUnique() {
+    boolean sorted = true;
+    for (int i = 1; i < size && sorted; i++) {
+      sorted = timestamps[i - 1] <= timestamps[i];
+    }
+    if (!sorted) {
+      if (order.length < size) {
+        order = new int[size];
+        orderBuffer = new int[size];
+      }
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+      }
+      mergeSort(0, size);
+      if (spareTimestamps.length < timestamps.length) {
+        spareTimestamps = new long[timestamps.length];
+        spareChangesets = new long[timestamps.length];
+        spareVersions = new int[timestamps.length];
+      }
+      for (int i = 0; i < size; i++) {
+        spareTimestamps[i] = timestamps[order[i]];
+        spareChangesets[i] = changesets[order[i]];
+        spareVersions[i] = versions[order[i]];
+      }
+      final long[] sortedTimestamps = spareTimestamps;
+      final long[] sortedChangesets = spareChangesets;
+      final int[] sortedVersions = spareVersions;
+      spareTimestamps = timestamps;
+      spareChangesets = changesets;
+      spareVersions = versions;
+      timestamps = sortedTimestamps;
+      changesets = sortedChangesets;
+      versions = sortedVersions;
+    }
+    int unique = 0;
+    for (int i = 0; i < size; i++) {
+      if (unique > 0 && timestamps[unique - 1] == timestamps[i]) {
+        continue;
+      }
+      timestamps[unique] = timestamps[i];
+      changesets[unique] = changesets[i];
+      versions[unique] = versions[i];
+      unique++;
+    }
+    size = unique;
+  }
+
+  // stable sort of the index range [from, to) of the order array by timestamp
+  private void mergeSort(int from, int to) {
+    if (to - from < 2) {
+      return;
+    }
+    final int mid = (from + to) >>> 1;
+    mergeSort(from, mid);
+    mergeSort(mid, to);
+    if (timestamps[order[mid - 1]] <= timestamps[order[mid]]) {
+      return;
+    }
+    System.arraycopy(order, from, orderBuffer, from, to - from);
+    int left = from;
+    int right = mid;
+    for (int i = from; i < to; i++) {
+      if (right >= to
+          || left < mid && timestamps[orderBuffer[left]] <= timestamps[orderBuffer[right]]) {
+        order[i] = orderBuffer[left++];
+      } else {
+        order[i] = orderBuffer[right++];
+      }
+    }
+  }
+
+  /**
+   * Returns the timestamps of this timeline as a list of {@link OSHDBTimestamp} objects.
+   */
+  public List<OSHDBTimestamp> toTimestampList() {
+    List<OSHDBTimestamp> result = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      result.add(new OSHDBTimestamp(timestamps[i]));
+    }
+    return result;
+  }
+}
@@ -12,4 +12,17 @@ public interface OSHNode extends OSHEntity {
 
   @Override
   Iterable<OSMNode> getVersions();
+
+  @Override
+  default OSMNodeCursor getVersionCursor() {
+    return OSMNodeCursor.of(getVersions());
+  }
+
+  /**
+   * Returns the location history of this node, which allows to look up its coordinates at any
+   * timestamp without materializing its versions.
+   */
+  default NodeCoordinateTimeline getCoordinateTimeline() {
+    return NodeCoordinateTimeline.of(this);
+  }
 }
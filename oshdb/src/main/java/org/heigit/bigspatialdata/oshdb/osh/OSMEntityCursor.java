@@ -0,0 +1,73 @@
+package org.heigit.bigspatialdata.oshdb.osh;
+
+import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
+
+/**
+ * A mutable cursor over the versions of an osh entity (newest version first).
+ *
+ * <p>In contrast to {@link OSHEntity#getVersions()}, moving the cursor doesn't create
+ * {@link OSMEntity} objects: the properties of the current version are accessed through primitive
+ * getters, and an immutable osm entity is only created on request by {@link #materialize()}.</p>
+ *
+ * <pre>
+ * OSMEntityCursor cursor = osh.getVersionCursor();
+ * while (cursor.next()) {
+ *   long timestamp = cursor.getTimestamp();
+ *   ...
+ * }
+ * </pre>
+ */
+public interface OSMEntityCursor {
+
+  /**
+   * Moves the cursor to the next (older) version.
+   *
+   * @return false if there are no more versions
+   */
+  boolean next();
+
+  int getVersion();
+
+  boolean isVisible();
+
+  /**
+   * Returns the raw unix timestamp of the current version.
+   */
+  long getTimestamp();
+
+  long getChangesetId();
+
+  int getUserId();
+
+  /**
+   * Returns the tags of the current version as [KID1,VID1,KID2,VID2...KIDn,VIDn].
+   *
+   * <p>The returned array may be shared with other versions and must not be modified.</p>
+   */
+  int[] getRawTags();
+
+  default boolean hasTagKey(int key) {
+    final int[] tags = getRawTags();
+    for (int i = 0; i < tags.length; i += 2) {
+      if (tags[i] == key) {
+        return true;
+      }
+      if (tags[i] > key) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Creates an immutable osm entity of the current version.
+   */
+  OSMEntity materialize();
+
+  /**
+   * Returns a cursor over the given (already materialized) versions.
+   */
+  static OSMEntityCursor of(Iterable<? extends OSMEntity> versions) {
+    return new VersionIteratorCursor<>(versions.iterator());
+  }
+}
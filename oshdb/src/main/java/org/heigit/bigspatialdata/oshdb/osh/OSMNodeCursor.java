@@ -0,0 +1,29 @@
+package org.heigit.bigspatialdata.oshdb.osh;
+
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+
+/**
+ * A cursor over the versions of an osh node, see {@link OSMEntityCursor}.
+ */
+public interface OSMNodeCursor extends OSMEntityCursor {
+
+  /**
+   * Returns the longitude of the current version (0 for deleted versions).
+   */
+  long getLon();
+
+  /**
+   * Returns the latitude of the current version (0 for deleted versions).
+   */
+  long getLat();
+
+  @Override
+  OSMNode materialize();
+
+  /**
+   * Returns a cursor over the given (already materialized) node versions.
+   */
+  static OSMNodeCursor of(Iterable<OSMNode> versions) {
+    return new VersionIteratorCursor.Nodes(versions.iterator());
+  }
+}
@@ -0,0 +1,78 @@
+package org.heigit.bigspatialdata.oshdb.osh;
+
+import java.util.Iterator;
+import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+
+/**
+ * Cursor over already materialized versions, used for osh entities which don't provide a cursor
+ * decoding their versions directly.
+ */
+class VersionIteratorCursor<T extends OSMEntity> implements OSMEntityCursor {
+  private final Iterator<? extends T> versions;
+  protected T current;
+
+  VersionIteratorCursor(Iterator<? extends T> versions) {
+    this.versions = versions;
+  }
+
+  @Override
+  public boolean next() {
+    if (!versions.hasNext()) {
+      return false;
+    }
+    current = versions.next();
+    return current != null;
+  }
+
+  @Override
+  public int getVersion() {
+    return current.getVersion();
+  }
+
+  @Override
+  public boolean isVisible() {
+    return current.isVisible();
+  }
+
+  @Override
+  public long getTimestamp() {
+    return current.getTimestamp().getRawUnixTimestamp();
+  }
+
+  @Override
+  public long getChangesetId() {
+    return current.getChangesetId();
+  }
+
+  @Override
+  public int getUserId() {
+    return current.getUserId();
+  }
+
+  @Override
+  public int[] getRawTags() {
+    return current.getRawTags();
+  }
+
+  @Override
+  public T materialize() {
+    return current;
+  }
+
+  static class Nodes extends VersionIteratorCursor<OSMNode> implements OSMNodeCursor {
+    Nodes(Iterator<OSMNode> versions) {
+      super(versions);
+    }
+
+    @Override
+    public long getLon() {
+      return current.getLon();
+    }
+
+    @Override
+    public long getLat() {
+      return current.getLat();
+    }
+  }
+}
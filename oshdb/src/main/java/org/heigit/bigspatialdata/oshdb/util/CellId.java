@@ -33,20 +33,66 @@ public class CellId implements Serializable {
     this.id = id;
   }
 
+  /**
+   * Highest zoom level whose cell ids leave room for a partition number in a level id, see
+   * {@link #getLevelId(int, long, int)}.
+   */
+  public static final int MAX_PARTITIONED_ZOOM = 24;
+
+  /**
+   * Maximum number of partitions of a cell which can be encoded in a level id.
+   */
+  public static final int MAX_PARTITIONS = 256;
+
   public static long getLevelId(int zoomlevel, long id) {
     return ((long) zoomlevel) << 56 | id;
   }
 
+  /**
+   * Combines zoom level, id and partition number of a cell into a single long.
+   *
+   * <p>The partition number is stored in the bits 48-55, which are unused by the cell ids of zoom
+   * levels up to {@link #MAX_PARTITIONED_ZOOM}. Partition 0 gives the same value as
+   * {@link #getLevelId(int, long)}.</p>
+   *
+   * @throws IllegalArgumentException if the partition can't be encoded for this cell
+   */
+  public static long getLevelId(int zoomlevel, long id, int partition) {
+    if (partition == 0) {
+      return getLevelId(zoomlevel, id);
+    }
+    if (partition < 0 || partition >= MAX_PARTITIONS || zoomlevel > MAX_PARTITIONED_ZOOM) {
+      throw new IllegalArgumentException(
+          "cannot encode partition " + partition + " of a cell at zoom level " + zoomlevel);
+    }
+    return ((long) zoomlevel) << 56 | ((long) partition) << 48 | id;
+  }
+
   public long getLevelId() {
     return getLevelId(zoomLevel, id);
   }
 
   public static CellId fromLevelId(long levelId) {
-    final long id = levelId & 0x00FFFFFFFFFFFFFFL;
     final int zoomlevel = (int) (levelId >>> 56);
+    final long id;
+    if (zoomlevel > MAX_PARTITIONED_ZOOM) {
+      id = levelId & 0x00FFFFFFFFFFFFFFL;
+    } else {
+      id = levelId & 0x0000FFFFFFFFFFFFL;
+    }
     return new CellId(zoomlevel, id);
   }
 
+  /**
+   * Returns the partition number of a cell encoded by {@link #getLevelId(int, long, int)}.
+   */
+  public static int getPartition(long levelId) {
+    if ((int) (levelId >>> 56) > MAX_PARTITIONED_ZOOM) {
+      return 0;
+    }
+    return (int) (levelId >>> 48) & 0xFF;
+  }
+
   /**
    *
    * @return
@@ -35,6 +35,11 @@ public class OSHDBTimestamp implements Comparable<OSHDBTimestamp>, Serializable
     else
       return super.equals(other);
   }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(this._tstamp);
+  }
   
   public Date toDate() {
     return new Date(this._tstamp * 1000);
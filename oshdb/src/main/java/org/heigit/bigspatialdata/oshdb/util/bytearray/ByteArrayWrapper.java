@@ -1,6 +1,7 @@
 package org.heigit.bigspatialdata.oshdb.util.bytearray;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public class ByteArrayWrapper {
@@ -14,9 +15,10 @@ public class ByteArrayWrapper {
   }
 
   protected final byte[] buffer;
-  private final int offset;
-  private final int bufferSize;
-  private int bufferPos;
+  protected final int base;
+  protected final int offset;
+  protected final int bufferSize;
+  protected int bufferPos;
 
   public static ByteArrayWrapper newInstance(final byte[] buffer) {
     return newInstance(buffer, 0, buffer.length);
@@ -26,15 +28,41 @@ public class ByteArrayWrapper {
     return new ByteArrayWrapper(buffer, offset, len);
   }
 
+  /**
+   * Returns a reader for a region of the given buffer without copying its content.
+   *
+   * <p>Positions (offset, {@link #getPos()}, {@link #seek(int)}) are absolute indices into the
+   * buffer. Heap buffers which are backed by an accessible array are read through the (faster)
+   * array based implementation, all others (direct, memory mapped or read only buffers) through a
+   * {@link ByteBufferWrapper}.</p>
+   */
+  public static ByteArrayWrapper newInstance(final ByteBuffer buffer, final int offset,
+      final int len) {
+    if (buffer.hasArray()) {
+      return new ByteArrayWrapper(buffer.array(), buffer.arrayOffset(), offset, len);
+    }
+    return new ByteBufferWrapper(buffer, offset, len);
+  }
+
   public ByteArrayWrapper(final byte[] buffer, final int offset, final int len) {
+    this(buffer, 0, offset, len);
+  }
+
+  /**
+   * @param base index in the array which corresponds to position 0 of the reader, i.e. all
+   *        positions (offset, {@link #getPos()}, {@link #seek(int)}) are relative to it
+   */
+  protected ByteArrayWrapper(final byte[] buffer, final int base, final int offset,
+      final int len) {
     this.buffer = buffer;
-    this.offset = offset;
-    bufferSize = offset + len;
-    bufferPos = offset;
+    this.base = base;
+    this.offset = base + offset;
+    bufferSize = this.offset + len;
+    bufferPos = this.offset;
   }
 
   public int getPos() {
-    return bufferPos;
+    return bufferPos - base;
   }
 
   public void reset() {
@@ -42,11 +70,11 @@ public class ByteArrayWrapper {
   }
 
   public void skipTo(int pos) {
-    bufferPos = pos;
+    bufferPos = base + pos;
   }
 
   public void seek(int pos) {
-    bufferPos = pos;
+    bufferPos = base + pos;
   }
 
   public int hasLeft() {
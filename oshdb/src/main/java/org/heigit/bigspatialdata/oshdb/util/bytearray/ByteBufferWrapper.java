@@ -0,0 +1,60 @@
+package org.heigit.bigspatialdata.oshdb.util.bytearray;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ByteArrayWrapper} reading from an arbitrary {@link ByteBuffer} (e.g. a direct or a
+ * memory mapped buffer) instead of an on-heap byte array.
+ *
+ * <p>Only absolute get operations are used, so the position and limit of the underlying buffer
+ * are never modified and one buffer can be shared between several readers (and threads).</p>
+ */
+public class ByteBufferWrapper extends ByteArrayWrapper {
+
+  private final ByteBuffer byteBuffer;
+
+  public ByteBufferWrapper(final ByteBuffer buffer, final int offset, final int len) {
+    super(null, offset, len);
+    this.byteBuffer = buffer;
+  }
+
+  @Override
+  public int readRawVarint32() throws IOException {
+    return (int) readRawVarint64();
+  }
+
+  @Override
+  public long readRawVarint64() throws IOException {
+    int pos = bufferPos;
+    if (pos < bufferSize) {
+      final byte b = byteBuffer.get(pos);
+      if (b >= 0) {
+        bufferPos = pos + 1;
+        return b;
+      }
+    }
+    return readRawVarint64SlowPath();
+  }
+
+  @Override
+  public byte readRawByte() throws IOException {
+    if (bufferPos == bufferSize) {
+      throw truncatedMessage();
+    }
+    return byteBuffer.get(bufferPos++);
+  }
+
+  @Override
+  public byte[] readByteArray(int size) throws IOException {
+    if (size <= this.bufferSize - this.bufferPos && size > 0) {
+      byte[] result = new byte[size];
+      ByteBuffer source = byteBuffer.duplicate();
+      source.position(bufferPos);
+      source.get(result);
+      bufferPos += size;
+      return result;
+    }
+    return new byte[0];
+  }
+}
@@ -0,0 +1,110 @@
+package org.heigit.bigspatialdata.oshdb.grid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHWayImpl;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntityHeaderFilter;
+import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
+import org.heigit.bigspatialdata.oshdb.osh.OSHWay;
+import org.heigit.bigspatialdata.oshdb.osm.OSMMember;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.osm.OSMWay;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.junit.Test;
+
+public class GridOSHEntityBlockIndexTest {
+
+  // ways of two nodes spread in a 20x10 degree raster, in id order (i.e. not sorted by location)
+  private static List<OSHWay> ways() throws IOException {
+    List<OSHWay> ways = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      long lon = ((i * 7) % 20) * 10000000L;
+      long lat = ((i / 20 * 3 + i) % 10) * 10000000L;
+      OSHNode first = OSHNodeImpl.build(Arrays.asList(new OSMNode(1000L + 2 * i, 1,
+          new OSHDBTimestamp(1L), 1L, 1, new int[] {}, lon, lat)));
+      OSHNode second = OSHNodeImpl.build(Arrays.asList(new OSMNode(1001L + 2 * i, 1,
+          new OSHDBTimestamp(1L), 1L, 1, new int[] {}, lon + 1000000L, lat + 1000000L)));
+      List<OSMWay> versions = new ArrayList<>();
+      versions.add(new OSMWay(i + 1, 1, new OSHDBTimestamp(2L), 1L, 1, new int[] {1, 1},
+          new OSMMember[] {new OSMMember(first.getId(), OSMType.NODE, 0),
+              new OSMMember(second.getId(), OSMType.NODE, 0)}));
+      ways.add(OSHWayImpl.build(versions, Arrays.asList(first, second)));
+    }
+    return ways;
+  }
+
+  private static List<Long> ids(Iterable<? extends OSHEntity> entities) {
+    return StreamSupport.stream(entities.spliterator(), false)
+        .map(OSHEntity::getId).sorted().collect(Collectors.toList());
+  }
+
+  private static int intersectingBlocks(GridOSHEntityBlockIndex blockIndex, OSHDBBoundingBox bbox) {
+    OSHEntityHeaderFilter filter = new OSHEntityHeaderFilter(new int[0][], bbox);
+    int result = 0;
+    for (int block = 0; block < blockIndex.getBlockCount(); block++) {
+      if (blockIndex.testBlock(block, filter)) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testGetEntities() throws IOException {
+    List<OSHWay> ways = ways();
+    GridOSHEntityBlockIndex.sortByLocation(ways);
+    GridOSHWays cell = GridOSHWays.compact(1, 2, 1, 0, 0, 0, ways);
+    cell.setBlockIndex(GridOSHEntityBlockIndex.of(ways, 16));
+    assertEquals(13, cell.getBlockIndex().getBlockCount());
+
+    OSHDBBoundingBox bbox = new OSHDBBoundingBox(2.5, 3.5, 5.5, 7.5);
+    List<Long> expected = ids(ways.stream()
+        .filter(osh -> osh.getBoundingBox().intersects(bbox)).collect(Collectors.toList()));
+    assertTrue(expected.size() > 0);
+    assertEquals(expected, ids(cell.getEntities(bbox)));
+
+    // nearby ways are grouped into the same blocks
+    int intersectingBlocks = intersectingBlocks(cell.getBlockIndex(), bbox);
+    assertTrue(intersectingBlocks < cell.getBlockIndex().getBlockCount());
+    assertTrue(intersectingBlocks < intersectingBlocks(GridOSHEntityBlockIndex.of(ways(), 16), bbox));
+
+    // the whole cell is returned for a bounding box covering all entities
+    assertEquals(200, ids(cell.getEntities(new OSHDBBoundingBox(-180, -90, 180, 90))).size());
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    List<OSHWay> ways = ways();
+    GridOSHEntityBlockIndex.sortByLocation(ways);
+    GridOSHWays cell = GridOSHWays.compact(1, 2, 1, 0, 0, 0, ways);
+    cell.setBlockIndex(GridOSHEntityBlockIndex.of(ways));
+
+    GridOSHEntity decoded = GridOSHEntityCodec.fromBytes(GridOSHEntityCodec.toBytes(cell));
+    assertEquals(cell.getBlockIndex().getBlockSize(), decoded.getBlockIndex().getBlockSize());
+    assertArrayEquals(cell.getBlockIndex().getBounds(), decoded.getBlockIndex().getBounds());
+
+    GridOSHEntity read = GridOSHEntityCodec.read(
+        new ByteArrayInputStream(GridOSHEntityCodec.toBytes(cell)));
+    assertArrayEquals(cell.getBlockIndex().getBounds(), read.getBlockIndex().getBounds());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMismatchingBlockIndex() throws IOException {
+    List<OSHWay> ways = ways();
+    GridOSHWays cell = GridOSHWays.compact(1, 2, 1, 0, 0, 0, ways.subList(0, 10));
+    cell.setBlockIndex(GridOSHEntityBlockIndex.of(ways, 4));
+  }
+}
@@ -0,0 +1,215 @@
+package org.heigit.bigspatialdata.oshdb.grid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHWayImpl;
+import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
+import org.heigit.bigspatialdata.oshdb.osh.OSHWay;
+import org.heigit.bigspatialdata.oshdb.osm.OSMMember;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.osm.OSMWay;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.junit.Test;
+
+public class GridOSHEntityCodecTest {
+
+  private static List<OSHNode> nodes() throws IOException {
+    List<OSHNode> hosmNodes = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      List<OSMNode> versions = new ArrayList<>();
+      versions.add(new OSMNode(123L + 10 * i, 1, new OSHDBTimestamp(123001L + 10 * i), 0L, 123,
+          new int[] {1, 1}, 86809727L - 1000000 * i, 494094984L - 1000000 * i));
+      versions.add(new OSMNode(123L + 10 * i, 2, new OSHDBTimestamp(123002L + 10 * i), 0L, 123,
+          new int[] {}, 86809727L - 1000000 * i, 494094984L - 1000000 * i));
+      hosmNodes.add(OSHNodeImpl.build(versions));
+    }
+    return hosmNodes;
+  }
+
+  @Test
+  public void testNodesRoundTrip() throws IOException {
+    GridOSHNodes cell = GridOSHNodes.rebase(123, 2, 100, 100000L, 86000000, 490000000, nodes());
+
+    byte[] bytes = GridOSHEntityCodec.toBytes(cell);
+    GridOSHEntity decoded = GridOSHEntityCodec.fromBytes(bytes);
+
+    assertTrue(decoded instanceof GridOSHNodes);
+    assertEquals(cell.getId(), decoded.getId());
+    assertEquals(cell.getLevel(), decoded.getLevel());
+    assertArrayEquals(cell.index, decoded.index);
+    assertEquals(cell.getBuffer(), decoded.getBuffer());
+    assertEquals(GridOSHEntityCodec.HEADER_SIZE + cell.index.length * 4 + cell.data.length,
+        bytes.length);
+
+    Iterator<OSHNode> expected = cell.iterator();
+    for (OSHNode node : (GridOSHNodes) decoded) {
+      OSHNode exp = expected.next();
+      assertEquals(exp.getId(), node.getId());
+      assertEquals(exp.getVersions().iterator().next().toString(),
+          node.getVersions().iterator().next().toString());
+    }
+  }
+
+  @Test
+  public void testWaysRoundTrip() throws IOException {
+    List<OSHNode> nodes = nodes();
+    OSMMember[] refs = new OSMMember[] {
+        new OSMMember(123L, OSMType.NODE, 0), new OSMMember(133L, OSMType.NODE, 0)
+    };
+    List<OSMWay> versions = new ArrayList<>();
+    versions.add(new OSMWay(1L, 1, new OSHDBTimestamp(123005L), 1L, 1, new int[] {1, 2}, refs));
+    List<OSHWay> ways = new ArrayList<>();
+    ways.add(OSHWayImpl.build(versions, nodes.subList(0, 2)));
+    GridOSHWays cell = GridOSHWays.compact(7, 3, 0, 100000L, 86000000, 490000000, ways);
+
+    GridOSHEntity decoded = GridOSHEntityCodec.fromBytes(GridOSHEntityCodec.toBytes(cell));
+
+    assertTrue(decoded instanceof GridOSHWays);
+    OSHWay way = ((GridOSHWays) decoded).iterator().next();
+    assertEquals(1L, way.getId());
+    assertEquals(2, way.getNodes().size());
+  }
+
+  @Test
+  public void testLegacyFallback() throws IOException {
+    GridOSHNodes cell = GridOSHNodes.rebase(123, 2, 100, 100000L, 86000000, 490000000, nodes());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+      oos.writeObject(cell);
+    }
+
+    GridOSHEntity decoded = GridOSHEntityCodec.fromBytes(out.toByteArray());
+
+    assertTrue(decoded instanceof GridOSHNodes);
+    assertEquals(cell.getId(), decoded.getId());
+    assertArrayEquals(cell.data, decoded.data);
+  }
+
+  @Test
+  public void testDirectBuffer() throws IOException {
+    GridOSHNodes cell = GridOSHNodes.rebase(123, 2, 100, 100000L, 86000000, 490000000, nodes());
+    byte[] bytes = GridOSHEntityCodec.toBytes(cell);
+    ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 3);
+    direct.position(3);
+    direct.put(bytes);
+    direct.position(3);
+
+    GridOSHEntity decoded = GridOSHEntityCodec.fromBuffer(direct);
+
+    assertEquals(3, direct.position());
+    assertEquals(null, decoded.data);
+    Iterator<OSHNode> expected = cell.iterator();
+    for (OSHNode node : (GridOSHNodes) decoded) {
+      OSHNode exp = expected.next();
+      assertEquals(exp.getId(), node.getId());
+      assertEquals(exp.getBoundingBox(), node.getBoundingBox());
+      assertEquals(exp.toString(), node.toString());
+    }
+
+    // serialized (e.g. when sent to another node) cells are copied onto the heap
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+      oos.writeObject(decoded);
+    }
+    GridOSHEntity copy = GridOSHEntityCodec.fromBytes(out.toByteArray());
+    assertArrayEquals(bytes, GridOSHEntityCodec.toBytes(copy));
+  }
+
+  @Test
+  public void testCompression() throws IOException, ClassNotFoundException {
+    GridOSHNodes cell = GridOSHNodes.rebase(123, 2, 100, 100000L, 86000000, 490000000, nodes());
+    for (GridOSHEntityCompression compression : GridOSHEntityCompression.values()) {
+      byte[] bytes = GridOSHEntityCodec.toBytes(cell, compression);
+
+      // decompressed right away
+      GridOSHEntity decoded = GridOSHEntityCodec.fromBytes(bytes);
+      assertEquals(cell.getBuffer(), decoded.getBuffer());
+
+      // kept compressed until accessed
+      GridOSHEntity compressed = GridOSHEntityCodec.read(new ByteArrayInputStream(bytes));
+      assertEquals(compression != GridOSHEntityCompression.NONE, compressed.isCompressed());
+      assertArrayEquals(bytes, GridOSHEntityCodec.toBytes(compressed));
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+        oos.writeObject(compressed);
+      }
+      try (ObjectInputStream ois =
+          new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+        compressed = (GridOSHEntity) ois.readObject();
+      }
+      Iterator<OSHNode> expected = cell.iterator();
+      for (OSHNode node : (GridOSHNodes) compressed) {
+        assertEquals(expected.next().toString(), node.toString());
+      }
+      assertFalse(expected.hasNext());
+
+      // change compression of an already compressed cell
+      assertArrayEquals(GridOSHEntityCodec.toBytes(cell),
+          GridOSHEntityCodec.toBytes(compressed, GridOSHEntityCompression.NONE));
+      assertEquals(cell.getBuffer(),
+          GridOSHEntityCodec.compress(compressed, GridOSHEntityCompression.ZSTD).getBuffer());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnknownCompression() throws IOException {
+    GridOSHNodes cell = GridOSHNodes.rebase(123, 2, 100, 100000L, 86000000, 490000000, nodes());
+    byte[] bytes = GridOSHEntityCodec.toBytes(cell, GridOSHEntityCompression.ZSTD);
+    // compression codec id
+    bytes[GridOSHEntityCodec.HEADER_SIZE] = 0x7f;
+    GridOSHEntityCodec.fromBytes(bytes);
+  }
+
+  @Test
+  public void testUnknownFlags() throws IOException {
+    GridOSHNodes cell = GridOSHNodes.rebase(123, 2, 100, 100000L, 86000000, 490000000, nodes());
+    byte[] bytes = GridOSHEntityCodec.toBytes(cell);
+    // flags of a future format extension
+    bytes[7] |= 1 << 5;
+    try {
+      GridOSHEntityCodec.fromBytes(bytes);
+      fail("cell with unknown flags was decoded");
+    } catch (IOException e) {
+      // expected
+    }
+    try {
+      GridOSHEntityCodec.read(new ByteArrayInputStream(bytes));
+      fail("cell with unknown flags was decoded");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testLargeTagKeyFilter() throws IOException {
+    GridOSHNodes cell = GridOSHNodes.rebase(123, 2, 100, 100000L, 86000000, 490000000, nodes());
+    long[] tagKeys = new long[40000];
+    tagKeys[tagKeys.length - 1] = 42;
+    cell.setSummary(new GridOSHEntitySummary(1, 2, 3, 6, tagKeys));
+    byte[] bytes = GridOSHEntityCodec.toBytes(cell);
+
+    assertArrayEquals(tagKeys, GridOSHEntityCodec.fromBytes(bytes).getSummary().getTagKeys());
+    assertArrayEquals(tagKeys, GridOSHEntityCodec.read(new ByteArrayInputStream(bytes))
+        .getSummary().getTagKeys());
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidData() throws IOException {
+    GridOSHEntityCodec.fromBytes(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+  }
+}
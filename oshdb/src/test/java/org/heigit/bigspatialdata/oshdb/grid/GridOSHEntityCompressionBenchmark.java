@@ -0,0 +1,105 @@
+package org.heigit.bigspatialdata.oshdb.grid;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
+import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
+
+/**
+ * Compares the compression codecs of grid cells on the cells of an existing H2 oshdb.
+ *
+ * <p>For every codec the total size of the serialized cells and the time to encode, decode and
+ * to iterate over all entity versions of the cells is reported.</p>
+ *
+ * <p>Usage: {@code GridOSHEntityCompressionBenchmark <path to h2 oshdb> [rounds]}</p>
+ */
+public class GridOSHEntityCompressionBenchmark {
+
+  private static List<GridOSHEntity> readCells(Connection conn) throws SQLException, IOException {
+    final List<GridOSHEntity> cells = new ArrayList<>();
+    try (Statement stmt = conn.createStatement()) {
+      for (String table : new String[] {"grid_node", "grid_way", "grid_relation"}) {
+        try (ResultSet rst = stmt.executeQuery("select data from " + table)) {
+          while (rst.next()) {
+            cells.add(GridOSHEntityCodec.read(rst.getBinaryStream(1)));
+          }
+        }
+      }
+    }
+    return cells;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static long iterate(GridOSHEntity cell) {
+    long versions = 0;
+    for (OSHEntity osh : (Iterable<OSHEntity>) cell) {
+      for (OSMEntity ignored : osh.getVersions()) {
+        versions++;
+      }
+    }
+    return versions;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("usage: GridOSHEntityCompressionBenchmark <h2 oshdb> [rounds]");
+      return;
+    }
+    final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+    final List<GridOSHEntity> cells;
+    try (Connection conn = DriverManager.getConnection("jdbc:h2:" + args[0], "sa", "")) {
+      cells = readCells(conn);
+    }
+    System.out.printf("%d cells%n", cells.size());
+    System.out.printf("%-6s %14s %8s %12s %12s %12s%n",
+        "codec", "bytes", "ratio", "encode ms", "decode ms", "iterate ms");
+
+    long uncompressedSize = 0;
+    for (GridOSHEntityCompression compression : GridOSHEntityCompression.values()) {
+      long size = 0;
+      long encodeNanos = Long.MAX_VALUE;
+      long decodeNanos = Long.MAX_VALUE;
+      long iterateNanos = Long.MAX_VALUE;
+      long versions = 0;
+      for (int round = 0; round < rounds; round++) {
+        final List<byte[]> encoded = new ArrayList<>(cells.size());
+        long start = System.nanoTime();
+        for (GridOSHEntity cell : cells) {
+          encoded.add(GridOSHEntityCodec.toBytes(cell, compression));
+        }
+        encodeNanos = Math.min(encodeNanos, System.nanoTime() - start);
+
+        size = 0;
+        final List<GridOSHEntity> decoded = new ArrayList<>(cells.size());
+        start = System.nanoTime();
+        for (byte[] bytes : encoded) {
+          size += bytes.length;
+          decoded.add(GridOSHEntityCodec.read(new ByteArrayInputStream(bytes)));
+        }
+        decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+
+        // includes the lazy decompression of the cells
+        versions = 0;
+        start = System.nanoTime();
+        for (GridOSHEntity cell : decoded) {
+          versions += iterate(cell);
+        }
+        iterateNanos = Math.min(iterateNanos, System.nanoTime() - start);
+      }
+      if (compression == GridOSHEntityCompression.NONE) {
+        uncompressedSize = size;
+      }
+      System.out.printf("%-6s %14d %8.3f %12.1f %12.1f %12.1f (%d versions)%n",
+          compression, size, (double) size / uncompressedSize, encodeNanos / 1e6,
+          decodeNanos / 1e6, iterateNanos / 1e6, versions);
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package org.heigit.bigspatialdata.oshdb.grid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
+import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GridOSHEntityFileTest {
+  private Path path;
+
+  @Before
+  public void createFile() throws IOException {
+    path = File.createTempFile("oshdb-test", ".oshdb").toPath();
+  }
+
+  @After
+  public void deleteFile() {
+    path.toFile().delete();
+  }
+
+  private static GridOSHNodes cell(int level, long id) throws IOException {
+    List<OSHNode> nodes = new ArrayList<>();
+    List<OSMNode> versions = new ArrayList<>();
+    versions.add(new OSMNode(id, 1, new OSHDBTimestamp(123001L), 0L, 123, new int[] {},
+        86809727L, 494094984L));
+    nodes.add(OSHNodeImpl.build(versions));
+    return GridOSHNodes.rebase(id, level, 0, 0, 0, 0, nodes);
+  }
+
+  private static List<Long> ids(Iterable<GridOSHEntity> cells) {
+    List<Long> result = new ArrayList<>();
+    for (GridOSHEntity cell : cells) {
+      // the cells' content has to be readable
+      OSHNode node = ((GridOSHNodes) cell).iterator().next();
+      assertEquals(cell.getId(), node.getId());
+      result.add(cell.getId());
+    }
+    return result;
+  }
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    try (GridOSHEntityFile.Writer writer = GridOSHEntityFile.writer(path)) {
+      writer.metadata("data.timerange", "2008-01-01T00:00:00Z,2018-01-01T00:00:00Z");
+      writer.add(cell(2, 1));
+      writer.add(cell(2, 3));
+      writer.add(cell(2, 7));
+      writer.add(cell(5, 2));
+      writer.add(cell(5, 100));
+    }
+
+    try (GridOSHEntityFile file = GridOSHEntityFile.open(path)) {
+      assertEquals("2008-01-01T00:00:00Z,2018-01-01T00:00:00Z", file.metadata("data.timerange"));
+      assertNull(file.metadata("foo"));
+
+      assertEquals(3, ids(file.cells(OSMType.NODE, 2, 0, Long.MAX_VALUE)).size());
+      assertEquals(2, ids(file.cells(OSMType.NODE, 2, 2, 7)).size());
+      assertEquals(Long.valueOf(3), ids(file.cells(OSMType.NODE, 2, 2, 6)).get(0));
+      assertEquals(1, ids(file.cells(OSMType.NODE, 5, 100, 100)).size());
+      assertEquals(0, ids(file.cells(OSMType.NODE, 5, 3, 99)).size());
+      assertEquals(0, ids(file.cells(OSMType.NODE, 3, 0, 10)).size());
+      assertFalse(file.cells(OSMType.WAY, 2, 0, 10).iterator().hasNext());
+      assertEquals(2, file.count(OSMType.NODE, 2, 2, 7));
+    }
+  }
+
+  @Test
+  public void testPartitionedCells() throws IOException {
+    try (GridOSHEntityFile.Writer writer = GridOSHEntityFile.writer(path)) {
+      writer.add(cell(2, 1));
+      writer.add(cell(2, 3));
+      writer.add(cell(2, 3));
+      writer.add(cell(2, 4));
+    }
+
+    try (GridOSHEntityFile file = GridOSHEntityFile.open(path)) {
+      assertEquals(2, ids(file.cells(OSMType.NODE, 2, 3, 3)).size());
+      assertEquals(3, ids(file.cells(OSMType.NODE, 2, 2, 4)).size());
+      assertEquals(3, file.count(OSMType.NODE, 2, 3, 10));
+    }
+  }
+
+  @Test
+  public void testManyPartitionedCells() throws IOException {
+    try (GridOSHEntityFile.Writer writer = GridOSHEntityFile.writer(path)) {
+      writer.add(cell(2, 1));
+      for (int i = 0; i < 3; i++) {
+        writer.add(cell(2, 3));
+      }
+      writer.add(cell(2, 4));
+      for (int i = 0; i < 5; i++) {
+        writer.add(cell(2, 6));
+      }
+      writer.add(cell(2, 8));
+    }
+
+    try (GridOSHEntityFile file = GridOSHEntityFile.open(path)) {
+      // single cells
+      assertEquals(3, ids(file.cells(OSMType.NODE, 2, 3, 3)).size());
+      assertEquals(3, file.count(OSMType.NODE, 2, 3, 3));
+      assertEquals(5, ids(file.cells(OSMType.NODE, 2, 6, 6)).size());
+      assertEquals(5, file.count(OSMType.NODE, 2, 6, 6));
+      assertEquals(0, ids(file.cells(OSMType.NODE, 2, 5, 5)).size());
+      assertEquals(0, file.count(OSMType.NODE, 2, 5, 5));
+      // ranges starting or ending at partitioned cells
+      assertEquals(4, ids(file.cells(OSMType.NODE, 2, 1, 3)).size());
+      assertEquals(4, file.count(OSMType.NODE, 2, 1, 3));
+      assertEquals(9, ids(file.cells(OSMType.NODE, 2, 3, 6)).size());
+      assertEquals(9, file.count(OSMType.NODE, 2, 3, 6));
+      assertEquals(6, ids(file.cells(OSMType.NODE, 2, 4, 7)).size());
+      assertEquals(6, file.count(OSMType.NODE, 2, 4, 7));
+      assertEquals(11, file.count(OSMType.NODE, 2, 0, Long.MAX_VALUE));
+      List<Long> ids = ids(file.cells(OSMType.NODE, 2, 2, 6));
+      assertEquals(Long.valueOf(3), ids.get(0));
+      assertEquals(Long.valueOf(6), ids.get(ids.size() - 1));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsortedCells() throws IOException {
+    try (GridOSHEntityFile.Writer writer = GridOSHEntityFile.writer(path)) {
+      writer.add(cell(2, 3));
+      writer.add(cell(2, 1));
+    }
+  }
+}
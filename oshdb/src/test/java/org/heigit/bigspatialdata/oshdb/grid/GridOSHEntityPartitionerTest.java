@@ -0,0 +1,99 @@
+package org.heigit.bigspatialdata.oshdb.grid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHEntityImpl;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
+import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.junit.Test;
+
+public class GridOSHEntityPartitionerTest {
+
+  private static List<OSHNode> nodes(int count) throws IOException {
+    List<OSHNode> nodes = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      nodes.add(OSHNodeImpl.build(Arrays.asList(new OSMNode(i + 1, 1, new OSHDBTimestamp(1L),
+          1L, 1, new int[] {}, i * 1000L, i * 1000L))));
+    }
+    return nodes;
+  }
+
+  private static void assertConsecutive(List<OSHNode> nodes, List<List<OSHNode>> partitions) {
+    List<OSHNode> joined = new ArrayList<>();
+    partitions.forEach(joined::addAll);
+    assertEquals(nodes, joined);
+  }
+
+  @Test
+  public void testNone() throws IOException {
+    List<OSHNode> nodes = nodes(100);
+    assertEquals(Collections.singletonList(nodes), GridOSHEntityPartitioner.NONE.partition(nodes));
+    assertEquals(1, new GridOSHEntityPartitioner(10, 0).partition(new ArrayList<>()).size());
+  }
+
+  @Test
+  public void testMaxEntities() throws IOException {
+    List<OSHNode> nodes = nodes(95);
+    List<List<OSHNode>> partitions = new GridOSHEntityPartitioner(10, 0).partition(nodes);
+    assertEquals(10, partitions.size());
+    assertEquals(10, partitions.get(0).size());
+    assertEquals(5, partitions.get(9).size());
+    assertConsecutive(nodes, partitions);
+  }
+
+  @Test
+  public void testMaxBytes() throws IOException {
+    List<OSHNode> nodes = nodes(100);
+    final long maxBytes = 200;
+    List<List<OSHNode>> partitions = new GridOSHEntityPartitioner(0, maxBytes).partition(nodes);
+    assertTrue(partitions.size() > 1);
+    for (List<OSHNode> partition : partitions) {
+      long bytes = 0;
+      for (OSHNode node : partition) {
+        bytes += ((OSHEntityImpl) node).getLength();
+      }
+      assertTrue(bytes <= maxBytes || partition.size() == 1);
+    }
+    assertConsecutive(nodes, partitions);
+  }
+
+  @Test
+  public void testSortedByLocation() throws IOException {
+    // nodes alternating between two distant areas
+    List<OSHNode> nodes = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      long longitude = (i % 2 == 0 ? -1000000000L : 1000000000L) + i * 1000L;
+      nodes.add(OSHNodeImpl.build(Arrays.asList(new OSMNode(i + 1, 1, new OSHDBTimestamp(1L),
+          1L, 1, new int[] {}, longitude, 100000000L))));
+    }
+    List<List<OSHNode>> partitions = new GridOSHEntityPartitioner(50, 0).partition(nodes);
+    assertEquals(2, partitions.size());
+    for (List<OSHNode> partition : partitions) {
+      assertEquals(50, partition.size());
+      long sign = Long.signum(partition.get(0).getBoundingBox().getMinLonLong());
+      for (OSHNode node : partition) {
+        assertEquals(sign, Long.signum(node.getBoundingBox().getMinLonLong()));
+      }
+    }
+    // cells within the limits are not reordered
+    assertEquals(Collections.singletonList(nodes),
+        new GridOSHEntityPartitioner(100, 0).partition(nodes));
+  }
+
+  @Test
+  public void testMaxPartitions() throws IOException {
+    List<OSHNode> nodes = nodes(1000);
+    List<List<OSHNode>> partitions = new GridOSHEntityPartitioner(1, 0).partition(nodes);
+    assertEquals(CellId.MAX_PARTITIONS, partitions.size());
+    assertConsecutive(nodes, partitions);
+  }
+}
@@ -0,0 +1,86 @@
+package org.heigit.bigspatialdata.oshdb.grid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
+import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMType;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.junit.Test;
+
+public class GridOSHEntityStatisticsTest {
+
+  // 10 nodes, all with tag key 1, every second with key 2 and the first one also with key 3
+  private static GridOSHNodes grid() throws IOException {
+    List<OSHNode> nodes = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      int[] tags = i == 0 ? new int[] {1, 1, 2, 1, 3, 1}
+          : i % 2 == 0 ? new int[] {1, 1, 2, 1} : new int[] {1, 1};
+      nodes.add(OSHNodeImpl.build(Arrays.asList(
+          new OSMNode(i + 1, 1, new OSHDBTimestamp(100L + i), 1L, 1, new int[] {1, 1}, 0L, 0L),
+          new OSMNode(i + 1, 2, new OSHDBTimestamp(200L + i), 2L, 1, tags, 0L, 0L))));
+    }
+    return GridOSHNodes.rebase(7, 3, 0, 0, 0, 0, nodes);
+  }
+
+  @Test
+  public void testOf() throws IOException {
+    GridOSHEntityStatistics statistics = GridOSHEntityStatistics.of(grid(), 2, 1234);
+    assertEquals(OSMType.NODE, statistics.getType());
+    assertEquals(3, statistics.getLevel());
+    assertEquals(7, statistics.getId());
+    assertEquals(2, statistics.getPartition());
+    assertEquals(1234, statistics.getBytes());
+    assertEquals(10, statistics.getEntityCount());
+    assertEquals(20, statistics.getVersionCount());
+    assertEquals(100, statistics.getMinTimestamp());
+    assertEquals(209, statistics.getMaxTimestamp());
+    assertArrayEquals(new int[] {1, 2, 3}, statistics.getTagKeys());
+    assertEquals(10, statistics.getTagKeyCount(1));
+    assertEquals(5, statistics.getTagKeyCount(2));
+    assertEquals(1, statistics.getTagKeyCount(3));
+    assertEquals(0, statistics.getTagKeyCount(4));
+  }
+
+  @Test
+  public void testEstimateEntityCount() throws IOException {
+    GridOSHEntityStatistics statistics = GridOSHEntityStatistics.of(grid(), 0, 0);
+    assertEquals(10, statistics.estimateEntityCount(new int[0][]));
+    assertEquals(5, statistics.estimateEntityCount(new int[][] {{2}}));
+    assertEquals(6, statistics.estimateEntityCount(new int[][] {{2, 3}}));
+    assertEquals(1, statistics.estimateEntityCount(new int[][] {{1}, {3}}));
+    assertEquals(0, statistics.estimateEntityCount(new int[][] {{4}}));
+    // no entity can match an empty group of keys
+    assertEquals(0, statistics.estimateEntityCount(new int[][] {{}}));
+  }
+
+  @Test
+  public void testTopTagKeys() {
+    int[] keys = new int[GridOSHEntityStatistics.TOP_TAG_KEYS];
+    int[] counts = new int[GridOSHEntityStatistics.TOP_TAG_KEYS];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i;
+      counts[i] = 100 - i;
+    }
+    GridOSHEntityStatistics statistics = new GridOSHEntityStatistics(OSMType.WAY, 1, 1, 0, 0,
+        200, 400, 0, 0, keys, counts);
+    // keys which aren't recorded can at most be used as often as the least used recorded key
+    assertEquals(100 - keys.length + 1, statistics.getTagKeyCount(1000));
+  }
+
+  @Test
+  public void testEncodeTagKeys() throws IOException {
+    GridOSHEntityStatistics statistics = GridOSHEntityStatistics.of(grid(), 0, 0);
+    assertEquals("1:10,2:5,3:1", statistics.encodeTagKeys());
+    int[][] decoded = GridOSHEntityStatistics.decodeTagKeys(statistics.encodeTagKeys());
+    assertArrayEquals(new int[] {1, 2, 3}, decoded[0]);
+    assertArrayEquals(new int[] {10, 5, 1}, decoded[1]);
+    assertEquals(0, GridOSHEntityStatistics.decodeTagKeys("")[0].length);
+  }
+}
@@ -0,0 +1,99 @@
+package org.heigit.bigspatialdata.oshdb.grid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
+import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
+import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
+import org.junit.Test;
+
+public class GridOSHEntitySummaryTest {
+
+  private static List<OSHNode> nodes() throws IOException {
+    List<OSHNode> hosmNodes = new ArrayList<>();
+    List<OSMNode> versions = new ArrayList<>();
+    versions.add(new OSMNode(123L, 2, new OSHDBTimestamp(2000L), 0L, 123,
+        new int[] {1, 1, 7, 2}, 86809727L, 494094984L));
+    versions.add(new OSMNode(123L, 1, new OSHDBTimestamp(1000L), 0L, 123,
+        new int[] {1, 1}, 86809727L, 494094984L));
+    hosmNodes.add(OSHNodeImpl.build(versions));
+    versions = new ArrayList<>();
+    versions.add(new OSMNode(124L, 1, new OSHDBTimestamp(1500L), 0L, 123,
+        new int[] {3, 1}, 86809727L, 494094984L));
+    hosmNodes.add(OSHNodeImpl.build(versions));
+    return hosmNodes;
+  }
+
+  @Test
+  public void testSummary() throws IOException {
+    GridOSHEntitySummary summary = GridOSHEntitySummary.of(nodes());
+
+    assertEquals(1000L, summary.getMinTimestamp());
+    assertEquals(2000L, summary.getMaxTimestamp());
+    assertEquals(2, summary.getEntityCount());
+    assertEquals(3, summary.getVersionCount());
+    assertTrue(summary.mayHaveTagKey(1));
+    assertTrue(summary.mayHaveTagKey(3));
+    assertTrue(summary.mayHaveTagKey(7));
+    assertFalse(summary.mayHaveTagKey(2));
+    assertFalse(summary.mayHaveAnyTagKey(new int[] {2, 4}));
+    assertTrue(summary.mayHaveAnyTagKey(new int[] {2, 7}));
+    assertFalse(summary.mayHaveAnyTagKey(new int[0]));
+    assertTrue(summary.overlaps(0L, 1000L));
+    assertTrue(summary.overlaps(1200L, 1300L));
+    assertFalse(summary.overlaps(2001L, 3000L));
+    assertFalse(summary.overlaps(0L, 999L));
+  }
+
+  @Test
+  public void testCodec() throws IOException {
+    GridOSHNodes cell = GridOSHNodes.rebase(123, 2, 100, 0L, 86000000, 490000000, nodes());
+    assertNull(GridOSHEntityCodec.fromBytes(GridOSHEntityCodec.toBytes(cell)).getSummary());
+
+    cell.setSummary(GridOSHEntitySummary.of(nodes()));
+    byte[] bytes = GridOSHEntityCodec.toBytes(cell);
+    GridOSHEntitySummary decoded = GridOSHEntityCodec.fromBytes(bytes).getSummary();
+    assertEquals(1000L, decoded.getMinTimestamp());
+    assertEquals(2000L, decoded.getMaxTimestamp());
+    assertEquals(2, decoded.getEntityCount());
+    assertEquals(3, decoded.getVersionCount());
+    assertArrayEquals(cell.getSummary().getTagKeys(), decoded.getTagKeys());
+
+    decoded = GridOSHEntityCodec.read(new ByteArrayInputStream(bytes)).getSummary();
+    assertArrayEquals(cell.getSummary().getTagKeys(), decoded.getTagKeys());
+    // entity data is still readable after the summary
+    List<Long> ids = new ArrayList<>();
+    for (OSHNode node : (GridOSHNodes) GridOSHEntityCodec.fromBytes(bytes)) {
+      ids.add(node.getId());
+    }
+    assertEquals(2, ids.size());
+    assertEquals(Long.valueOf(124L), ids.get(1));
+  }
+
+  @Test
+  public void testJavaSerialization() throws IOException, ClassNotFoundException {
+    GridOSHNodes cell = GridOSHNodes.rebase(123, 2, 100, 0L, 86000000, 490000000, nodes());
+    cell.setSummary(GridOSHEntitySummary.of(nodes()));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+      oos.writeObject(cell);
+    }
+    try (ObjectInputStream ois =
+        new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      GridOSHEntity copy = (GridOSHEntity) ois.readObject();
+      assertEquals(2000L, copy.getSummary().getMaxTimestamp());
+    }
+  }
+}
@@ -2,13 +2,16 @@ package org.heigit.bigspatialdata.oshdb.grid;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntityHeaderFilter;
 import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
 import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
 import static org.junit.Assert.assertEquals;
 
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
 import org.junit.Test;
 
@@ -70,4 +73,38 @@ public class GridOSHNodesTest {
     assertEquals(expResult, result);
   }
 
+  @Test
+  public void testHeaderFilter() throws IOException {
+    List<OSHNode> hosmNodes = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      List<OSMNode> versions = new ArrayList<>();
+      versions.add(new OSMNode(123l + 10 * i, 1, new OSHDBTimestamp(123001l + 10 * i), 0l, 123, new int[] {i, 1},
+          86809727l - 1000000 * i, 494094984l - 1000000 * i));
+      versions.add(new OSMNode(123l + 10 * i, 2, new OSHDBTimestamp(123002l + 10 * i), 0l, 123, new int[] {},
+          86809727l - 1000000 * i - 1, 494094984l - 1000000 * i - 1));
+      hosmNodes.add(OSHNodeImpl.build(versions));
+    }
+    GridOSHNodes cell = GridOSHNodes.rebase(123, 2, 100, 100000l, 86000000, 490000000, hosmNodes);
+
+    List<Long> ids = new ArrayList<>();
+    cell.getEntities(new OSHEntityHeaderFilter(new int[][] {{1, 2}}, null))
+        .forEach(osh -> ids.add(osh.getId()));
+    assertEquals(Arrays.asList(133l, 143l), ids);
+
+    ids.clear();
+    cell.getEntities(new OSHEntityHeaderFilter(new int[][] {{1, 2}, {0, 2}}, null))
+        .forEach(osh -> ids.add(osh.getId()));
+    assertEquals(Arrays.asList(143l), ids);
+
+    ids.clear();
+    cell.getEntities(new OSHEntityHeaderFilter(new int[0][],
+        new OSHDBBoundingBox(8.5, 48.5, 8.6, 49.4))).forEach(osh -> ids.add(osh.getId()));
+    assertEquals(Arrays.asList(133l), ids);
+
+    ids.clear();
+    cell.getEntities(new OSHEntityHeaderFilter(new int[][] {{3}}, null))
+        .forEach(osh -> ids.add(osh.getId()));
+    assertEquals(0, ids.size());
+  }
+
 }
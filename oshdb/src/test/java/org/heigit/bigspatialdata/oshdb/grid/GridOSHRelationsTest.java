@@ -1,11 +1,13 @@
 package org.heigit.bigspatialdata.oshdb.grid;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
 import org.heigit.bigspatialdata.oshdb.impl.osh.OSHRelationImpl;
 import org.heigit.bigspatialdata.oshdb.impl.osh.OSHWayImpl;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntities;
 import org.heigit.bigspatialdata.oshdb.osh.OSHEntity;
 import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
 import org.heigit.bigspatialdata.oshdb.osh.OSHRelation;
@@ -16,6 +18,8 @@ import org.heigit.bigspatialdata.oshdb.osm.OSMRelation;
 import org.heigit.bigspatialdata.oshdb.osm.OSMType;
 import org.heigit.bigspatialdata.oshdb.osm.OSMWay;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
 import org.junit.Test;
@@ -126,4 +130,60 @@ public class GridOSHRelationsTest {
     assertEquals(expResult, result);
   }
 
+  @Test
+  public void testMemberDictionary() throws IOException {
+    OSHNode node100 = buildHOSMNode(
+            Arrays.asList(new OSMNode(100l, 1, new OSHDBTimestamp(1l), 0l, 123, new int[]{1, 2}, 494094984l, 86809727l)));
+    OSHNode node102 = buildHOSMNode(
+            Arrays.asList(new OSMNode(102l, 1, new OSHDBTimestamp(1l), 0l, 123, new int[]{2, 1}, 494094984l, 86809727l)));
+    OSHNode node104 = buildHOSMNode(
+            Arrays.asList(new OSMNode(104l, 1, new OSHDBTimestamp(1l), 0l, 123, new int[]{2, 4}, 494094984l, 86809727l)));
+
+    OSHWay way200 = buildHOSMWay(Arrays.asList(new OSMWay(200, 1, new OSHDBTimestamp(3333l), 4444l, 23, new int[]{1, 2}, new OSMMember[]{new OSMMember(100, OSMType.NODE, 0), new OSMMember(104, OSMType.NODE, 0)})), Arrays.asList(node100, node104));
+    OSHWay way202 = buildHOSMWay(Arrays.asList(new OSMWay(202, 1, new OSHDBTimestamp(3333l), 4444l, 23, new int[]{1, 2}, new OSMMember[]{new OSMMember(100, OSMType.NODE, 0), new OSMMember(102, OSMType.NODE, 0)})), Arrays.asList(node100, node102));
+
+    OSHRelation relation300 = OSHRelationImpl.build(Arrays.asList(//
+            new OSMRelation(300, 1, new OSHDBTimestamp(3333l), 4444l, 23, new int[]{}, new OSMMember[]{new OSMMember(100, OSMType.NODE, 0, null), new OSMMember(102, OSMType.NODE, 0, null)}), //
+            new OSMRelation(300, 2, new OSHDBTimestamp(3333l), 4444l, 23, new int[]{1, 2}, new OSMMember[]{new OSMMember(100, OSMType.NODE, 0, null), new OSMMember(102, OSMType.NODE, 0, null), new OSMMember(202, OSMType.WAY, 1, null)})), //
+            Arrays.asList(node100, node102), Arrays.asList(way202));
+
+    OSHRelation relation301 = OSHRelationImpl.build(Arrays.asList(//
+            new OSMRelation(301, 1, new OSHDBTimestamp(3333l), 4444l, 23, new int[]{}, new OSMMember[]{new OSMMember(200, OSMType.WAY, 1, null), new OSMMember(202, OSMType.WAY, 1, null)}), //
+            new OSMRelation(301, 2, new OSHDBTimestamp(3333l), 4444l, 23, new int[]{1, 2}, new OSMMember[]{new OSMMember(200, OSMType.WAY, 1, null), new OSMMember(202, OSMType.WAY, 1, null)})), //
+            Arrays.asList(), Arrays.asList(way200, way202));
+
+    List<OSHRelation> relations = Arrays.asList(relation300, relation301);
+    GridOSHRelations embedded = GridOSHRelations.compact(1, 2, 1234, 0, 0, 0, relations);
+    GridOSHRelations shared = GridOSHRelations.compact(1, 2, 1234, 0, 0, 0, relations, true);
+    assertTrue(shared.getBuffer().limit() < embedded.getBuffer().limit());
+
+    List<OSHRelation> embeddedRelations = new ArrayList<>();
+    embedded.forEach(embeddedRelations::add);
+    List<OSHRelation> sharedRelations = new ArrayList<>();
+    shared.forEach(sharedRelations::add);
+    assertEquals(embeddedRelations.size(), sharedRelations.size());
+    for (int i = 0; i < sharedRelations.size(); i++) {
+      OSHRelation expected = embeddedRelations.get(i);
+      OSHRelation actual = sharedRelations.get(i);
+      assertEquals(expected.getId(), actual.getId());
+      assertEquals(expected.getBoundingBox(), actual.getBoundingBox());
+      assertEquals(OSHEntities.toList(expected.getVersions()).toString(),
+          OSHEntities.toList(actual.getVersions()).toString());
+      assertEquals(print((List<OSHEntity>) (List) expected.getNodes()),
+          print((List<OSHEntity>) (List) actual.getNodes()));
+      assertEquals(print((List<OSHEntity>) (List) expected.getWays()),
+          print((List<OSHEntity>) (List) actual.getWays()));
+      for (int w = 0; w < actual.getWays().size(); w++) {
+        assertEquals(OSHEntities.toList(expected.getWays().get(w).getVersions()).toString(),
+            OSHEntities.toList(actual.getWays().get(w).getVersions()).toString());
+      }
+    }
+
+    // members are decoded once per cell and shared between the relations and ways
+    OSHRelation shared300 = sharedRelations.get(0);
+    OSHRelation shared301 = sharedRelations.get(1);
+    assertSame(shared300.getWays().get(0), shared301.getWays().get(1));
+    assertSame(shared300.getNodes().get(0), shared301.getWays().get(0).getNodes().get(0));
+  }
+
 }
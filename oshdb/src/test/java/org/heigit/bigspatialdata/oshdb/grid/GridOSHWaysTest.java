@@ -1,11 +1,16 @@
 package org.heigit.bigspatialdata.oshdb.grid;
 
 import java.io.IOException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
 import org.heigit.bigspatialdata.oshdb.impl.osh.OSHWayImpl;
+import org.heigit.bigspatialdata.oshdb.osh.OSHEntities;
 import org.heigit.bigspatialdata.oshdb.osh.OSHNode;
 import org.heigit.bigspatialdata.oshdb.osh.OSHWay;
 import org.heigit.bigspatialdata.oshdb.osm.OSMMember;
@@ -13,6 +18,8 @@ import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
 import org.heigit.bigspatialdata.oshdb.osm.OSMType;
 import org.heigit.bigspatialdata.oshdb.osm.OSMWay;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
 import org.junit.Test;
@@ -53,4 +60,59 @@ public class GridOSHWaysTest {
     assertEquals(expResult, result);
   }
 
+  @Test
+  public void testMemberDictionary() throws IOException, ClassNotFoundException {
+    List<OSHWay> hosmWays = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      List<OSMWay> versions = new ArrayList<>();
+      versions.add(
+              new OSMWay(123 + i, 1, new OSHDBTimestamp(3333l), 4444l, 23, new int[]{1, 1, 2, 1}, new OSMMember[]{new OSMMember(102, OSMType.NODE, 0), new OSMMember(104, OSMType.NODE, 0)}));
+      versions.add(
+              new OSMWay(123 + i, 3, new OSHDBTimestamp(3334l), 4444l, 23, new int[]{1, 1, 2, 2}, new OSMMember[]{new OSMMember(100, OSMType.NODE, 0), new OSMMember(104, OSMType.NODE, 0), new OSMMember(105, OSMType.NODE, 0)}));
+      hosmWays.add(OSHWayImpl.build(versions, Arrays.asList(node104, node100, node102)));
+    }
+
+    GridOSHWays embedded = GridOSHWays.compact(2, 2, 100, 100000l, 86000000, 490000000, hosmWays);
+    GridOSHWays shared = GridOSHWays.compact(2, 2, 100, 100000l, 86000000, 490000000, hosmWays, true);
+    assertTrue(shared.getBuffer().limit() < embedded.getBuffer().limit());
+
+    List<OSHWay> embeddedWays = new ArrayList<>();
+    embedded.forEach(embeddedWays::add);
+    List<OSHWay> sharedWays = new ArrayList<>();
+    shared.forEach(sharedWays::add);
+    assertEquals(embeddedWays.size(), sharedWays.size());
+    for (int i = 0; i < sharedWays.size(); i++) {
+      OSHWay expected = embeddedWays.get(i);
+      OSHWay actual = sharedWays.get(i);
+      assertEquals(expected.getId(), actual.getId());
+      assertEquals(expected.getBoundingBox(), actual.getBoundingBox());
+      assertEquals(OSHEntities.toList(expected.getVersions()).toString(), OSHEntities.toList(actual.getVersions()).toString());
+      assertEquals(expected.getNodes().size(), actual.getNodes().size());
+      for (int n = 0; n < actual.getNodes().size(); n++) {
+        assertEquals(expected.getNodes().get(n).getId(), actual.getNodes().get(n).getId());
+        assertEquals(OSHEntities.toList(expected.getNodes().get(n).getVersions()).toString(),
+            OSHEntities.toList(actual.getNodes().get(n).getVersions()).toString());
+      }
+      for (OSMWay way : actual.getVersions()) {
+        for (OSMMember ref : way.getRefs()) {
+          assertEquals(ref.getId() == 105, ref.getEntity() == null);
+        }
+      }
+    }
+    // the node histories are decoded once per cell
+    assertSame(sharedWays.get(0).getNodes().get(0), sharedWays.get(2).getNodes().get(0));
+
+    // single ways are serialized without the dictionary of their cell
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+      oos.writeObject(sharedWays.get(1));
+    }
+    OSHWay deserialized;
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      deserialized = (OSHWay) ois.readObject();
+    }
+    assertEquals(OSHEntities.toList(sharedWays.get(1).getVersions()).toString(), OSHEntities.toList(deserialized.getVersions()).toString());
+    assertEquals(3, deserialized.getNodes().size());
+  }
+
 }
@@ -0,0 +1,157 @@
+package org.heigit.bigspatialdata.oshdb.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.heigit.bigspatialdata.oshdb.index.XYGrid.IdRange;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
+import org.heigit.bigspatialdata.oshdb.util.CellId;
+import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
+import org.junit.Test;
+
+public class HilbertGridTest {
+
+  private static Set<Long> cells(Set<IdRange> ranges) {
+    Set<Long> result = new HashSet<>();
+    for (IdRange range : ranges) {
+      for (long id = range.getStart(); id <= range.getEnd(); id++) {
+        result.add(id);
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testIds() {
+    for (int zoom = 0; zoom <= 5; zoom++) {
+      HilbertGrid grid = new HilbertGrid(zoom);
+      long cellCount = zoom == 0 ? 1 : (1L << zoom) * (1L << (zoom - 1));
+      Set<Long> ids = new HashSet<>();
+      for (long xyId = 0; xyId < cellCount; xyId++) {
+        long id = grid.fromXYId(xyId);
+        assertTrue(id >= 0 && id < cellCount);
+        assertEquals(xyId, grid.toXYId(id));
+        ids.add(id);
+      }
+      assertEquals(cellCount, ids.size());
+      // consecutive ids are neighbouring cells
+      for (long id = 1; id < cellCount; id++) {
+        OSHDBBoundingBox previous = grid.getCellDimensions(id - 1);
+        OSHDBBoundingBox current = grid.getCellDimensions(id);
+        long dx = Math.abs(previous.getMinLonLong() - current.getMinLonLong());
+        long dy = Math.abs(previous.getMinLatLong() - current.getMinLatLong());
+        assertTrue(dx == 0 || dy == 0);
+      }
+    }
+  }
+
+  @Test
+  public void testGetId() {
+    XYGrid xyGrid = new XYGrid(6);
+    HilbertGrid grid = new HilbertGrid(6);
+    assertEquals(grid.fromXYId(xyGrid.getId(8.67, 49.41)), grid.getId(8.67, 49.41));
+    assertTrue(grid.getCellDimensions(grid.getId(8.67, 49.41))
+        .intersects(new OSHDBBoundingBox(8.67, 49.41, 8.67, 49.41)));
+    assertEquals(-1, grid.getId(200.0, 0.0));
+  }
+
+  @Test
+  public void testBbox2CellIdRanges() {
+    OSHDBBoundingBox[] bboxes = {
+        new OSHDBBoundingBox(8.6, 49.3, 8.8, 49.5),
+        new OSHDBBoundingBox(-20.0, -10.0, 30.0, 40.0),
+        new OSHDBBoundingBox(170.0, -5.0, -170.0, 5.0),
+        new OSHDBBoundingBox(-190.0, -95.0, 190.0, 95.0)
+    };
+    for (int zoom : new int[] {0, 1, 4, 9}) {
+      XYGrid xyGrid = new XYGrid(zoom);
+      HilbertGrid grid = new HilbertGrid(zoom);
+      for (OSHDBBoundingBox bbox : bboxes) {
+        for (boolean enlarge : new boolean[] {false, true}) {
+          Set<IdRange> xyRanges = xyGrid.bbox2CellIdRanges(bbox, enlarge);
+          Set<Long> expected = new HashSet<>();
+          for (long xyId : cells(xyRanges)) {
+            expected.add(grid.fromXYId(xyId));
+          }
+          Set<IdRange> ranges = grid.bbox2CellIdRanges(bbox, enlarge);
+          assertEquals(expected, cells(ranges));
+
+          // merged ranges cover at least the cells of the bbox
+          Set<IdRange> merged = grid.bbox2CellIdRanges(bbox, enlarge, 2);
+          merged.remove(IdRange.INVALID);
+          assertTrue(merged.size() <= 2);
+          Set<Long> mergedCells = cells(merged);
+          expected.remove(-1L);
+          assertTrue(mergedCells.containsAll(expected));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFewerRanges() {
+    OSHDBBoundingBox bbox = new OSHDBBoundingBox(8.0, 49.0, 9.0, 50.0);
+    Set<IdRange> xyRanges = new XYGrid(14).bbox2CellIdRanges(bbox, true);
+    Set<IdRange> ranges = new HilbertGrid(14).bbox2CellIdRanges(bbox, true, 16);
+    assertEquals(47, xyRanges.size());
+    assertEquals(16, ranges.size());
+    // only few additional cells are covered by the merged ranges
+    assertTrue(cells(ranges).size() < cells(xyRanges).size() * 1.2);
+  }
+
+  @Test
+  public void testRangeBoundingBox() {
+    HilbertGridTree tree = new HilbertGridTree(5);
+    XYGridTree xyTree = new XYGridTree(5);
+    for (int level : new int[] {0, 1, 3, 5}) {
+      HilbertGrid grid = new HilbertGrid(level);
+      long cellCount = level == 0 ? 1 : (1L << level) * (1L << (level - 1));
+      for (long[] range : new long[][] {{0, 0}, {0, cellCount - 1}, {1, cellCount / 2},
+          {cellCount / 3, cellCount / 3 + 5}}) {
+        long start = Math.min(range[0], cellCount - 1);
+        long end = Math.min(range[1], cellCount - 1);
+        for (boolean enlarge : new boolean[] {false, true}) {
+          OSHDBBoundingBox expected = null;
+          for (long id = start; id <= end; id++) {
+            OSHDBBoundingBox cell = xyTree.getBoundingBox(
+                new CellId(level, grid.toXYId(id)), enlarge);
+            if (expected == null) {
+              expected = cell;
+            } else {
+              expected.add(cell);
+            }
+          }
+          assertEquals(expected, tree.getBoundingBox(
+              CellIdRange.of(new CellId(level, start), new CellId(level, end)), enlarge));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTree() {
+    HilbertGridTree tree = new HilbertGridTree(6, 3);
+    OSHDBBoundingBox bbox = new OSHDBBoundingBox(8.6, 49.3, 8.8, 49.5);
+    CellId insertId = tree.getInsertId(bbox);
+    assertEquals(6, insertId.getZoomLevel());
+    assertTrue(tree.getBoundingBox(insertId, true).intersects(bbox));
+
+    int[] rangesPerLevel = new int[7];
+    boolean containsInsertId = false;
+    for (CellIdRange range : tree.bbox2CellIdRanges(bbox, true)) {
+      rangesPerLevel[range.getStart().getZoomLevel()]++;
+      containsInsertId |= range.getStart().getZoomLevel() == insertId.getZoomLevel()
+          && range.getStart().getId() <= insertId.getId()
+          && range.getEnd().getId() >= insertId.getId();
+    }
+    assertTrue(containsInsertId);
+    for (int count : rangesPerLevel) {
+      assertTrue(count >= 1 && count <= 3);
+    }
+
+    assertEquals(HilbertGridTree.NAME, GridTree.of("hilbert").getName());
+    assertEquals(XYGridTree.NAME, GridTree.of(null).getName());
+  }
+}
@@ -4,6 +4,7 @@ import com.google.common.collect.Sets;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import org.heigit.bigspatialdata.oshdb.index.XYGridTree.CellIdRange;
 import org.heigit.bigspatialdata.oshdb.util.OSHDBBoundingBox;
 import org.heigit.bigspatialdata.oshdb.util.CellId;
 import static org.junit.Assert.assertEquals;
@@ -97,4 +98,57 @@ public class XYGridTreeTest {
     assertEquals(0, expectedCellIds.size());
   }
 
+
+  @Test
+  public void testRangeBoundingBox() {
+    XYGridTree instance = new XYGridTree(3);
+    // part of a row
+    assertEquals(new OSHDBBoundingBox(0.0, 0.0, 89.9999999, 44.9999999),
+        instance.getBoundingBox(CellIdRange.of(new CellId(3, 20L), new CellId(3, 21L)), false));
+    assertEquals(new OSHDBBoundingBox(0.0, 0.0, 134.9999999, 90.0),
+        instance.getBoundingBox(CellIdRange.of(new CellId(3, 20L), new CellId(3, 21L)), true));
+    // several rows cover the whole width
+    assertEquals(new OSHDBBoundingBox(-180.0, 0.0, 179.9999999, 90.0),
+        instance.getBoundingBox(CellIdRange.of(new CellId(3, 20L), new CellId(3, 21L + 8)),
+            false));
+  }
+
+  @Test
+  public void testDefaultRangeBoundingBox() {
+    XYGridTree instance = new XYGridTree(3);
+    // a grid which doesn't implement the bounding box of ranges itself
+    GridTree grid = new GridTree() {
+      @Override
+      public String getName() {
+        return instance.getName();
+      }
+
+      @Override
+      public CellId getId(int level, long longitude, long latitude) {
+        return instance.getId(level, longitude, latitude);
+      }
+
+      @Override
+      public CellId getInsertId(OSHDBBoundingBox bbox) {
+        return instance.getInsertId(bbox);
+      }
+
+      @Override
+      public Iterable<CellIdRange> bbox2CellIdRanges(OSHDBBoundingBox bbox, boolean enlarge) {
+        return instance.bbox2CellIdRanges(bbox, enlarge);
+      }
+
+      @Override
+      public OSHDBBoundingBox getBoundingBox(CellId cellId, boolean enlarge) {
+        return instance.getBoundingBox(cellId, enlarge);
+      }
+    };
+    for (long[] range : new long[][] {{20, 20}, {20, 21}, {20, 29}, {0, 127}}) {
+      for (boolean enlarge : new boolean[] {false, true}) {
+        CellIdRange cellIdRange = CellIdRange.of(new CellId(3, range[0]), new CellId(3, range[1]));
+        assertEquals(instance.getBoundingBox(cellIdRange, enlarge),
+            grid.getBoundingBox(cellIdRange, enlarge));
+      }
+    }
+  }
 }
@@ -0,0 +1,54 @@
+package org.heigit.bigspatialdata.oshdb.osh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class OSHEntityTimelineTest {
+
+  @Test
+  public void testSortUnique() {
+    OSHEntityTimeline timeline = new OSHEntityTimeline(2);
+    timeline.add(5, 50, 1);
+    timeline.add(3, 30, 1);
+    timeline.add(5, 51, 2);
+    timeline.add(1, 10, 1);
+    timeline.add(3, 31, 2);
+    timeline.sortUnique();
+
+    assertEquals(3, timeline.size());
+    assertEquals(1, timeline.getTimestamp(0));
+    assertEquals(3, timeline.getTimestamp(1));
+    assertEquals(5, timeline.getTimestamp(2));
+    // the first added entry of a timestamp is kept
+    assertEquals(30, timeline.getChangeset(1));
+    assertEquals(50, timeline.getChangeset(2));
+    assertEquals(1, timeline.getVersion(2));
+
+    timeline.clear();
+    assertTrue(timeline.isEmpty());
+  }
+
+  @Test
+  public void testLookup() {
+    OSHEntityTimeline timeline = new OSHEntityTimeline();
+    for (int i = 10; i > 0; i--) {
+      timeline.add(i * 10, i, i);
+    }
+    timeline.reverse(0, timeline.size());
+
+    assertEquals(4, timeline.indexOf(50));
+    assertEquals(-1, timeline.indexOf(55));
+    assertEquals(0, timeline.lowerBound(0));
+    assertEquals(5, timeline.lowerBound(55));
+    assertEquals(5, timeline.lowerBound(60));
+    assertEquals(10, timeline.lowerBound(101));
+
+    timeline.set(0, 9);
+    timeline.truncate(1);
+    assertEquals(1, timeline.size());
+    assertEquals(100, timeline.getTimestamp(0));
+    assertEquals(10, timeline.getChangeset(0));
+  }
+}
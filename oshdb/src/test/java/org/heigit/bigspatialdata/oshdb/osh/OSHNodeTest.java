@@ -4,9 +4,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import org.heigit.bigspatialdata.oshdb.impl.osh.OSHNodeImpl;
+import org.heigit.bigspatialdata.oshdb.osm.OSMEntity;
 import org.heigit.bigspatialdata.oshdb.osm.OSMNode;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import org.heigit.bigspatialdata.oshdb.util.OSHDBTimestamp;
 import org.junit.Test;
@@ -86,6 +90,122 @@ public class OSHNodeTest {
     assertEquals(2l, tss.get(1).getRawUnixTimestamp());
   }
 
+  @Test
+  public void testVersionDirectory() throws IOException {
+    List<OSMNode> versions = new ArrayList<>();
+    for (int v = 1; v <= 40; v++) {
+      // deleted versions at the restart points of the delta encoding
+      int version = v == 24 || v == 8 ? -v : v;
+      long[] lonLat = (v / 5) % 2 == 0 ? LONLAT_A : LONLAT_B;
+      versions.add(new OSMNode(123L, version, new OSHDBTimestamp(1000L * v), v, v % 2,
+          v % 3 == 0 ? TAGS_A : TAGS_B, lonLat[0], lonLat[1]));
+    }
+    OSHNode hnode = OSHNodeImpl.build(new ArrayList<>(versions));
+
+    // versions are decoded newest first, deleted ones keep the tags of the previous version
+    List<OSMNode> decoded = OSHEntities.toList(hnode.getVersions());
+    assertEquals(40, decoded.size());
+    int[] lastTags = new int[0];
+    for (int i = 0; i < 40; i++) {
+      OSMNode expected = versions.get(39 - i);
+      OSMNode actual = decoded.get(i);
+      assertEquals(expected.getVersion(), actual.getVersion());
+      assertEquals(expected.getTimestamp(), actual.getTimestamp());
+      assertEquals(expected.getChangesetId(), actual.getChangesetId());
+      assertEquals(expected.getUserId(), actual.getUserId());
+      if (expected.isVisible()) {
+        lastTags = expected.getRawTags();
+        assertEquals(expected.getLon(), actual.getLon());
+        assertEquals(expected.getLat(), actual.getLat());
+      }
+      assertArrayEquals(lastTags, actual.getRawTags());
+    }
+
+    List<OSHDBTimestamp> timestamps = new ArrayList<>();
+    for (long t = 0; t <= 41000; t += 500) {
+      OSHDBTimestamp timestamp = new OSHDBTimestamp(t);
+      timestamps.add(timestamp);
+      OSMEntity expected = OSHEntities.getByTimestamp(decoded, timestamp);
+      OSMEntity actual = OSHEntities.getByTimestamp(hnode, timestamp);
+      assertEquals(String.valueOf(expected), String.valueOf(actual));
+    }
+    assertEquals(OSHEntities.getByTimestamps(decoded, timestamps).toString(),
+        OSHEntities.getByTimestamps(hnode, timestamps).toString());
+    assertEquals(OSHEntities.getByTimestamps(decoded, timestamps.subList(0, 30)).toString(),
+        OSHEntities.getByTimestamps(hnode, timestamps.subList(0, 30)).toString());
+  }
+
+  @Test
+  public void testCoordinateTimeline() throws IOException {
+    List<OSMNode> versions = new ArrayList<>();
+    for (int v = 1; v <= 40; v++) {
+      int version = v == 24 || v == 8 ? -v : v;
+      long[] lonLat = (v / 5) % 2 == 0 ? LONLAT_A : LONLAT_B;
+      versions.add(new OSMNode(123L, version, new OSHDBTimestamp(1000L * v), v, v % 2,
+          v % 3 == 0 ? TAGS_A : TAGS_B, lonLat[0], lonLat[1]));
+    }
+    OSHNode hnode = OSHNodeImpl.build(new ArrayList<>(versions));
+
+    NodeCoordinateTimeline timeline = hnode.getCoordinateTimeline();
+    assertEquals(40, timeline.size());
+    assertTrue(timeline == hnode.getCoordinateTimeline());
+    for (long t = 0; t <= 41000; t += 500) {
+      OSMNode expected = (OSMNode) OSHEntities.getByTimestamp(hnode, new OSHDBTimestamp(t));
+      int index = timeline.indexAt(t);
+      if (expected == null) {
+        assertEquals(-1, index);
+        continue;
+      }
+      assertEquals(expected.getTimestamp().getRawUnixTimestamp(), timeline.getTimestamp(index));
+      assertEquals(expected.isVisible(), timeline.isVisible(index));
+      if (expected.isVisible()) {
+        assertEquals(expected.getLon(), timeline.getLon(index));
+        assertEquals(expected.getLat(), timeline.getLat(index));
+        assertEquals(expected.getLongitude(), timeline.getLongitude(index), 0.0);
+        assertEquals(expected.getLatitude(), timeline.getLatitude(index), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testVersionCursor() throws IOException {
+    List<OSMNode> versions = new ArrayList<>();
+    for (int v = 1; v <= 40; v++) {
+      int version = v == 24 || v == 8 ? -v : v;
+      long[] lonLat = (v / 5) % 2 == 0 ? LONLAT_A : LONLAT_B;
+      versions.add(new OSMNode(123L, version, new OSHDBTimestamp(1000L * v), v, v % 2,
+          v % 3 == 0 ? TAGS_A : TAGS_B, lonLat[0], lonLat[1]));
+    }
+    OSHNode hnode = OSHNodeImpl.build(new ArrayList<>(versions));
+
+    OSMNodeCursor cursor = hnode.getVersionCursor();
+    for (OSMNode expected : hnode.getVersions()) {
+      assertTrue(cursor.next());
+      assertEquals(expected.getVersion(), cursor.getVersion());
+      assertEquals(expected.isVisible(), cursor.isVisible());
+      assertEquals(expected.getTimestamp().getRawUnixTimestamp(), cursor.getTimestamp());
+      assertEquals(expected.getChangesetId(), cursor.getChangesetId());
+      assertEquals(expected.getUserId(), cursor.getUserId());
+      assertArrayEquals(expected.getRawTags(), cursor.getRawTags());
+      assertEquals(expected.hasTagKey(1), cursor.hasTagKey(1));
+      assertEquals(expected.getLon(), cursor.getLon());
+      assertEquals(expected.getLat(), cursor.getLat());
+      assertEquals(expected.toString(), cursor.materialize().toString());
+    }
+    assertFalse(cursor.next());
+
+    // cursors starting at a timestamp
+    for (long t = 0; t <= 41000; t += 500) {
+      OSHDBTimestamp timestamp = new OSHDBTimestamp(t);
+      OSMEntityCursor atTimestamp = hnode.getVersionCursor(timestamp);
+      for (OSMEntity expected : hnode.getVersions(timestamp)) {
+        assertTrue(atTimestamp.next());
+        assertEquals(expected.toString(), atTimestamp.materialize().toString());
+      }
+      assertFalse(atTimestamp.next());
+    }
+  }
+
   @Test
   public void testToString() throws IOException {
     List<OSMNode> versions = new ArrayList<>(2);
@@ -1,6 +1,7 @@
 package org.heigit.bigspatialdata.oshdb.osh;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -254,4 +255,27 @@ public class OSHRelationTest {
     assertEquals(expResult, result);
   }
 
+
+  @Test
+  public void testInstanceFromDirectBuffer() throws IOException {
+    List<OSMRelation> versions = new ArrayList<>();
+    versions.add(new OSMRelation(300, 1, new OSHDBTimestamp(3333l), 4444l, 23, new int[]{1, 1}, new OSMMember[]{new OSMMember(100, OSMType.NODE, 0), new OSMMember(200, OSMType.WAY, 0), new OSMMember(202, OSMType.WAY, 0)}));
+    OSHRelationImpl hrelation = (OSHRelationImpl) OSHRelationImpl.build(versions, Arrays.asList(node100), Arrays.asList(way200, way202));
+
+    byte[] record = hrelation.getData();
+    ByteBuffer direct = ByteBuffer.allocateDirect(record.length + 10);
+    direct.position(10);
+    direct.put(record);
+
+    OSHRelation decoded = OSHRelationImpl.instance(direct, 10, record.length, 0, 0, 0, 0);
+    assertEquals(hrelation.getId(), decoded.getId());
+    assertEquals(hrelation.getBoundingBox(), decoded.getBoundingBox());
+    assertEquals(1, decoded.getNodes().size());
+    assertEquals(2, decoded.getWays().size());
+    assertEquals(2, decoded.getWays().get(0).getNodes().size());
+    assertEquals(
+        Iterables.getOnlyElement(hrelation.getVersions()).toString(),
+        Iterables.getOnlyElement(decoded.getVersions()).toString());
+    assertArrayEquals(record, ((OSHRelationImpl) decoded).getData());
+  }
 }
@@ -13,6 +13,7 @@ import org.heigit.bigspatialdata.oshdb.osm.OSMType;
 import org.heigit.bigspatialdata.oshdb.osm.OSMWay;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -28,6 +29,77 @@ public class OSHWayTest {
   OSHNode node104 = buildHOSMNode(
           Arrays.asList(new OSMNode(104l, 1, new OSHDBTimestamp(1l), 0l, 123, new int[]{2, 4}, 494094984l, 86809727l)));
 
+  @Test
+  public void testVersionDirectory() throws IOException {
+    OSMMember[] refsA = new OSMMember[]{new OSMMember(100, OSMType.NODE, 0), new OSMMember(104, OSMType.NODE, 0)};
+    OSMMember[] refsB = new OSMMember[]{new OSMMember(102, OSMType.NODE, 0), new OSMMember(105, OSMType.NODE, 0)};
+    List<OSMWay> versions = new ArrayList<>();
+    for (int v = 1; v <= 40; v++) {
+      // deleted versions at the restart points of the delta encoding
+      int version = v == 24 || v == 8 ? -v : v;
+      versions.add(new OSMWay(123, version, new OSHDBTimestamp(1000L * v), v, v % 2,
+          v % 3 == 0 ? new int[]{1, 1} : new int[]{2, 2}, (v / 5) % 2 == 0 ? refsA : refsB));
+    }
+    OSHWay hway = OSHWayImpl.build(new ArrayList<>(versions), Arrays.asList(node100, node102, node104));
+
+    // versions are decoded newest first, deleted ones keep the members of the previous version
+    List<OSMWay> decoded = OSHEntities.toList(hway.getVersions());
+    assertEquals(40, decoded.size());
+    OSMWay lastVisible = null;
+    for (int i = 0; i < 40; i++) {
+      OSMWay expected = versions.get(39 - i);
+      OSMWay actual = decoded.get(i);
+      assertEquals(expected.getVersion(), actual.getVersion());
+      assertEquals(expected.getTimestamp(), actual.getTimestamp());
+      assertEquals(expected.getUserId(), actual.getUserId());
+      if (expected.isVisible()) {
+        lastVisible = expected;
+      }
+      assertTrue(Arrays.equals(lastVisible.getRawTags(), actual.getRawTags()));
+      assertEquals(lastVisible.getRefs().length, actual.getRefs().length);
+      for (int j = 0; j < actual.getRefs().length; j++) {
+        assertEquals(lastVisible.getRefs()[j].getId(), actual.getRefs()[j].getId());
+      }
+    }
+
+    for (long t = 0; t <= 41000; t += 500) {
+      OSHDBTimestamp timestamp = new OSHDBTimestamp(t);
+      assertEquals(String.valueOf(OSHEntities.getByTimestamp(decoded, timestamp)),
+          String.valueOf(OSHEntities.getByTimestamp(hway, timestamp)));
+    }
+  }
+
+  @Test
+  public void testVersionCursor() throws IOException {
+    OSMMember[] refsA = new OSMMember[]{new OSMMember(100, OSMType.NODE, 0), new OSMMember(104, OSMType.NODE, 0)};
+    // node 106 is not part of the osh way
+    OSMMember[] refsB = new OSMMember[]{new OSMMember(106, OSMType.NODE, 0), new OSMMember(102, OSMType.NODE, 0)};
+    List<OSMWay> versions = new ArrayList<>();
+    for (int v = 1; v <= 40; v++) {
+      int version = v == 24 || v == 8 ? -v : v;
+      versions.add(new OSMWay(123, version, new OSHDBTimestamp(1000L * v), v, v % 2,
+          v % 3 == 0 ? new int[]{1, 1} : new int[]{2, 2}, (v / 5) % 2 == 0 ? refsA : refsB));
+    }
+    OSHWay hway = OSHWayImpl.build(new ArrayList<>(versions), Arrays.asList(node100, node102, node104));
+
+    OSMEntityCursor cursor = hway.getVersionCursor();
+    for (OSMWay expected : hway.getVersions()) {
+      assertTrue(cursor.next());
+      assertEquals(expected.getVersion(), cursor.getVersion());
+      assertEquals(expected.getTimestamp().getRawUnixTimestamp(), cursor.getTimestamp());
+      assertEquals(expected.getChangesetId(), cursor.getChangesetId());
+      assertTrue(Arrays.equals(expected.getRawTags(), cursor.getRawTags()));
+      OSMWay actual = (OSMWay) cursor.materialize();
+      assertEquals(expected.toString(), actual.toString());
+      assertEquals(expected.getRefs().length, actual.getRefs().length);
+      for (int j = 0; j < actual.getRefs().length; j++) {
+        assertEquals(expected.getRefs()[j].getId(), actual.getRefs()[j].getId());
+        assertEquals(expected.getRefs()[j].getEntity() == null, actual.getRefs()[j].getEntity() == null);
+      }
+    }
+    assertFalse(cursor.next());
+  }
+
   @Test
   public void testGetNodes() throws IOException {
     List<OSMWay> versions = new ArrayList<>();
@@ -41,6 +113,13 @@ public class OSHWayTest {
 
     List<OSHNode> nodes = hway.getNodes();
     assertEquals(3, nodes.size());
+    // the decoded nodes (and their location histories) are shared by all versions of the way
+    assertTrue(nodes == hway.getNodes());
+    for (OSMWay way : hway.getVersions()) {
+      for (OSMMember ref : way.getRefs()) {
+        assertTrue(nodes.contains(ref.getEntity()));
+      }
+    }
 
   }
 
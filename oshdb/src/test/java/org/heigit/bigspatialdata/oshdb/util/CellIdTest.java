@@ -29,5 +29,19 @@ public class CellIdTest {
     int result = instance.getZoomLevel();
     assertEquals(expResult, result);
   }
-  
+
+  @Test
+  public void testLevelIdPartition() {
+    long levelId = CellId.getLevelId(15, 123456L, 3);
+    assertEquals(new CellId(15, 123456L), CellId.fromLevelId(levelId));
+    assertEquals(3, CellId.getPartition(levelId));
+    assertEquals(CellId.getLevelId(15, 123456L), CellId.getLevelId(15, 123456L, 0));
+    assertEquals(0, CellId.getPartition(CellId.getLevelId(15, 123456L)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLevelIdPartitionOutOfRange() {
+    CellId.getLevelId(15, 1L, CellId.MAX_PARTITIONS);
+  }
+
 }